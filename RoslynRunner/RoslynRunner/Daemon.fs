@@ -0,0 +1,159 @@
+﻿module Daemon
+
+open System
+open System.IO
+open System.Net
+open System.Net.Sockets
+open System.Reflection
+open System.Security.Cryptography
+open System.Text
+
+let ProtocolVersion = "1"
+
+// sha-256 of the runner binary, the plugin computes the same value from the extracted runner
+let Fingerprint() =
+    use sha = SHA256.Create()
+    use stream = File.OpenRead(Assembly.GetEntryAssembly().Location)
+    BitConverter.ToString(sha.ComputeHash(stream)).Replace("-", "").ToLowerInvariant()
+
+// forwards console output of an analysis to the plugin, one "OUT <line>" per line
+type LineForwarder(target : StreamWriter) =
+    inherit TextWriter()
+    let line = new StringBuilder()
+
+    override this.Encoding = Encoding.UTF8
+
+    override this.Write(c : char) =
+        if c = '\n' then
+            this.Flush()
+        else
+            line.Append(c) |> ignore
+
+    override this.Flush() =
+        let text = line.ToString().Trim('\r')
+        line.Clear() |> ignore
+        if text <> "" then
+            target.WriteLine("OUT " + text)
+
+// answers the handshake of a client arriving while another analysis runs, the console output
+// of the daemon belongs to that analysis so requests are never run concurrently
+let RefuseBusy(client : TcpClient, token : string) =
+    use stream = client.GetStream()
+    stream.ReadTimeout <- 10000
+    let reader = new StreamReader(stream, new UTF8Encoding(false))
+    let writer = new StreamWriter(stream, new UTF8Encoding(false))
+    writer.AutoFlush <- true
+    let hello = reader.ReadLine()
+    let parts = if hello = null then [||] else hello.Split(' ')
+    if parts.Length <> 4 || parts.[0] <> "HELLO" || parts.[3] <> token then
+        writer.WriteLine("DENIED")
+    else
+        writer.WriteLine("BUSY")
+
+let HandleClient(client : TcpClient, fingerprint : string, token : string, run : string [] -> int) =
+    use stream = client.GetStream()
+    let reader = new StreamReader(stream, new UTF8Encoding(false))
+    let writer = new StreamWriter(stream, new UTF8Encoding(false))
+    writer.AutoFlush <- true
+
+    let hello = reader.ReadLine()
+    let parts = if hello = null then [||] else hello.Split(' ')
+    if parts.Length <> 4 || parts.[0] <> "HELLO" || parts.[3] <> token then
+        writer.WriteLine("DENIED")
+        true
+    elif parts.[1] <> ProtocolVersion || parts.[2] <> fingerprint then
+        // plugin ships other runner binaries, exit so it can start its own daemon
+        writer.WriteLine("MISMATCH " + ProtocolVersion + " " + fingerprint)
+        false
+    else
+        writer.WriteLine("OK")
+        let command = reader.ReadLine()
+        if command = "RUN" then
+            let mutable arguments = List.Empty
+            let mutable argument = reader.ReadLine()
+            while argument <> null && argument <> "" do
+                arguments <- arguments @ [argument]
+                argument <- reader.ReadLine()
+
+            let console = Console.Out
+            let forwarder = new LineForwarder(writer)
+            Console.SetOut(forwarder)
+            let exitCode =
+                try
+                    try
+                        run (List.toArray arguments)
+                    with
+                    | ex ->
+                        printf "    Failed: %A\n" ex
+                        1
+                finally
+                    forwarder.Flush()
+                    Console.SetOut(console)
+            writer.WriteLine("EXIT " + string exitCode)
+        true
+
+// serves analysis requests one at a time on loopback until idle for the given time, clients
+// connecting during an analysis are answered BUSY
+let Serve(portFile : string, idleSeconds : int, run : string [] -> int) =
+    let fingerprint = Fingerprint()
+    let token = Guid.NewGuid().ToString("N")
+    let listener = new TcpListener(IPAddress.Loopback, 0)
+    listener.Start()
+    let port = (listener.LocalEndpoint :?> IPEndPoint).Port
+
+    // publish atomically so clients never read a half written port file
+    Directory.CreateDirectory(Path.GetDirectoryName(Path.GetFullPath(portFile))) |> ignore
+    let pid = Diagnostics.Process.GetCurrentProcess().Id
+    let tempFile = sprintf "%s.%i" portFile pid
+    File.WriteAllText(tempFile, sprintf "%i %s %s %i" port fingerprint token pid)
+    if File.Exists(portFile) then
+        File.Delete(portFile)
+    File.Move(tempFile, portFile)
+    printf "[RoslynRunner] : Daemon %i listening on port %i\r\n" pid port
+
+    // set once the current analysis completes, or when a client requires the daemon to exit
+    let idle = new Threading.ManualResetEvent(true)
+    let stop = new Threading.ManualResetEvent(false)
+    let serve (client : TcpClient) =
+        try
+            try
+                if not(HandleClient(client, fingerprint, token, run)) then
+                    stop.Set() |> ignore
+            with
+            | ex -> printf "[RoslynRunner] : Request failed %s\r\n" ex.Message
+        finally
+            client.Close()
+            idle.Set() |> ignore
+
+    let mutable accept = listener.BeginAcceptTcpClient(null, null)
+    let mutable running = true
+    while running do
+        let signaled = Threading.WaitHandle.WaitAny([| accept.AsyncWaitHandle; stop :> Threading.WaitHandle |], TimeSpan.FromSeconds(float idleSeconds))
+        if signaled = 0 then
+            let client = listener.EndAcceptTcpClient(accept)
+            accept <- listener.BeginAcceptTcpClient(null, null)
+            if idle.WaitOne(0) then
+                idle.Reset() |> ignore
+                Threading.Tasks.Task.Run(Action(fun () -> serve client)) |> ignore
+            else
+                try
+                    try
+                        RefuseBusy(client, token)
+                    with
+                    | ex -> printf "[RoslynRunner] : Busy answer failed %s\r\n" ex.Message
+                finally
+                    client.Close()
+        elif signaled = 1 then
+            running <- false
+        elif idle.WaitOne(0) then
+            printf "[RoslynRunner] : Idle for %i seconds, daemon exits\r\n" idleSeconds
+            running <- false
+
+    // let the current analysis complete before exiting
+    idle.WaitOne() |> ignore
+    listener.Stop()
+    try
+        if File.Exists(portFile) && File.ReadAllText(portFile).StartsWith(sprintf "%i " port) then
+            File.Delete(portFile)
+    with
+    | _ -> ()
@@ -23,6 +23,8 @@ let ShowHelp () =
         Console.WriteLine ("    /U|/u:<username>")
         Console.WriteLine ("    /P|/p:<password>")
         Console.WriteLine ("    /delete-all-rules")
+        Console.WriteLine ("    /daemon [/portfile:<port file>] [/idle:<seconds>]")
+        Console.WriteLine ("    /catalog:<catalog file> /analyzers:<assembly or folder;...>")
     
 let GetDiagnostics(solution:string, externalAnalysers:string [], root : string) =
     let mutable paths : Map<string, string> = Map.empty
@@ -57,90 +59,140 @@ let GetDiagnostics(solution:string, externalAnalysers:string [], root : string)
     List.toArray pathstoreturn
 
 
-[<EntryPoint>]
-let main argv = 
-    let arguments = XmlHelper.parseArgs(argv)
-    
-    if arguments.ContainsKey("h") then
+let RunWithArguments(arguments : Map<string, seq<string>>) =
+    if not(arguments.ContainsKey("o")) then
+        Console.WriteLine ("    Mission /O")
         ShowHelp()
-    elif arguments.ContainsKey("i") then
-        if not(arguments.ContainsKey("o")) then
-            Console.WriteLine ("    Mission /O")
-            ShowHelp()
-        else
-            try
-                let input = arguments.["i"] |> Seq.head
-                let output = arguments.["o"] |> Seq.head
-
-                if File.Exists(output) then
-                    File.Delete(output)
-
-                let username = try arguments.["u"] |> Seq.head with | ex -> "admin"
-                let userpassword = try arguments.["p"] |> Seq.head with | ex -> if username = "admin" then "admin" else ""
-
-                let optionsInput = XmlHelper.InputXml.Parse(File.ReadAllText(input))
-
-                let solutionPath =
-                    if Path.IsPathRooted(optionsInput.Settings.SolutionToUse) then
-                        optionsInput.Settings.SolutionToUse
-                    else
-                        Path.Combine(optionsInput.Settings.SolutionRoot, optionsInput.Settings.SolutionToUse)
-
-                let solutiondata = MSBuildHelper.CreateSolutionData(solutionPath)
-                let mutable diagnostiResults : Diagnostic list = List.Empty
-                let options = new XmlHelper.OptionsToUse()
-                options.ParseOptions(solutionPath, optionsInput)
-                let rest = new SonarRestService(new JsonSonarConnector()) :> ISonarRestService
-                let token = SonarHelpers.GetConnectionToken(rest, options.Url, username, userpassword)
-                if arguments.ContainsKey("deleteallrules") then
-                    let profiles = SonarHelpers.GetProfilesFromServer(options.ProjectKey, rest, token, true)
-                    if profiles.ContainsKey("cs") then SonarHelpers.DeleteRoslynRulesInProfiles(rest, token, profiles.["cs"])
-                    if profiles.ContainsKey("vbnet") then SonarHelpers.DeleteRoslynRulesInProfiles(rest, token, profiles.["vbnet"])
-                elif arguments.ContainsKey("deletealldiagnosticsfromserver") then
-                    let diagnosticRefs = GetDiagnostics(options.Solution, options.ExtenalDiagnostics, options.Root)
-                    let diagnostics = SonarHelpers.SyncRulesInServer(diagnosticRefs, options.Root, rest, token, options.EnableRules, options.ProjectKey, true)
-
-                    for diagnostic in diagnostics do
-                        for diag in diagnostic.Value do
-                            for sup in diag.Analyser.SupportedDiagnostics do
-                                let rule = Rule()
-                                rule.Key <- "roslyn-cs:" + sup.Id
-                                let result = rest.DeleteRule(token, rule)
-                                printf "result: %A" result
-                else                    
-                    printf "[RoslynRunner] : ProjectKey: %s \r\n" options.ProjectKey
-                    printf "[RoslynRunner] : Populate Diagnostics\r\n"
-                    let diagnosticRefs = GetDiagnostics(options.Solution, options.ExtenalDiagnostics, options.Root)
-                    printf "[RoslynRunner] : Sync Rules in Server\r\n"
-                    let diagnostics = SonarHelpers.SyncRulesInServer(diagnosticRefs, options.Root, rest, token, options.EnableRules, options.ProjectKey, true)
-                    let profiles = 
+        1
+    else
+        try
+            let input = arguments.["i"] |> Seq.head
+            let output = arguments.["o"] |> Seq.head
+
+            if File.Exists(output) then
+                File.Delete(output)
+
+            let username = try arguments.["u"] |> Seq.head with | ex -> "admin"
+            let userpassword = try arguments.["p"] |> Seq.head with | ex -> if username = "admin" then "admin" else ""
+
+            let optionsInput = XmlHelper.InputXml.Parse(File.ReadAllText(input))
+
+            let solutionPath =
+                if Path.IsPathRooted(optionsInput.Settings.SolutionToUse) then
+                    optionsInput.Settings.SolutionToUse
+                else
+                    Path.Combine(optionsInput.Settings.SolutionRoot, optionsInput.Settings.SolutionToUse)
+
+            let solutiondata = MSBuildHelper.CreateSolutionData(solutionPath)
+            let options = new XmlHelper.OptionsToUse()
+            options.ParseOptions(solutionPath, optionsInput)
+            let writeResults = XmlHelper.CreateOutputWriter(output, options.OutputFormat)
+            let rest = new SonarRestService(new JsonSonarConnector()) :> ISonarRestService
+            let token = SonarHelpers.GetConnectionToken(rest, options.Url, username, userpassword)
+            if arguments.ContainsKey("deleteallrules") then
+                let profiles = SonarHelpers.GetProfilesFromServer(options.ProjectKey, rest, token, true)
+                if profiles.ContainsKey("cs") then SonarHelpers.DeleteRoslynRulesInProfiles(rest, token, profiles.["cs"])
+                if profiles.ContainsKey("vbnet") then SonarHelpers.DeleteRoslynRulesInProfiles(rest, token, profiles.["vbnet"])
+                0
+            elif arguments.ContainsKey("deletealldiagnosticsfromserver") then
+                let diagnosticRefs = GetDiagnostics(options.Solution, options.ExtenalDiagnostics, options.Root)
+                let diagnostics = SonarHelpers.SyncRulesInServer(diagnosticRefs, options.Root, rest, token, options.EnableRules, options.ProjectKey, true)
+
+                for diagnostic in diagnostics do
+                    for diag in diagnostic.Value do
+                        for sup in diag.Analyser.SupportedDiagnostics do
+                            let rule = Rule()
+                            rule.Key <- "roslyn-cs:" + sup.Id
+                            let result = rest.DeleteRule(token, rule)
+                            printf "result: %A" result
+                0
+            else                    
+                printf "[RoslynRunner] : ProjectKey: %s \r\n" options.ProjectKey
+                printf "[RoslynRunner] : Populate Diagnostics\r\n"
+                let diagnosticRefs = GetDiagnostics(options.Solution, options.ExtenalDiagnostics, options.Root)
+                // the plugin sends the rules of the web profile, profiles are fetched for rule sets, which rewrite them, or by older plugins
+                let activeRules = if options.UseWebProfile then options.ActiveRules else None
+                let profiles =
+                    if options.SyncRules then
+                        printf "[RoslynRunner] : Sync Rules in Server\r\n"
+                        // rules of the analyzers bundled in the plugin catalog already exist in the server
+                        let diagnostics = SonarHelpers.SyncRulesInServerOnce(options.Url, diagnosticRefs, options.Root, rest, token, options.EnableRules, options.ProjectKey, options.CreateRules)
                         if options.UseWebProfile then
-                            printf "[RoslynRunner] : Use Web Profile : Delete Complete Profile\r\n"
-                            SonarHelpers.DeleteCompleteProfile(token, rest, options.ProjectKey)
-                            printf "[RoslynRunner] : Get Profiles\r\n"
-                            SonarHelpers.GetProfilesFromServer(options.ProjectKey, rest, token, false)
+                            if options.CleanProfiles then
+                                printf "[RoslynRunner] : Use Web Profile : Delete Complete Profile\r\n"
+                                SonarHelpers.DeleteCompleteProfile(token, rest, options.ProjectKey)
+                            match activeRules with
+                            | Some rules ->
+                                printf "[RoslynRunner] : Use %i active rules of the plugin\r\n" rules.Count
+                                new System.Collections.Generic.Dictionary<string, Profile>()
+                            | None ->
+                                printf "[RoslynRunner] : Get Profiles\r\n"
+                                SonarHelpers.GetProfilesFromServer(options.ProjectKey, rest, token, false)
                         else
                             // read rule set and enable all rules that might be disabled
                             printf "[RoslynRunner] : Create and Assign Profile in Server\r\n"
                             SonarHelpers.CreateAndAssignProfileInServer(options.ProjectKey, rest, token, diagnostics)
+                    else
+                        // another runner of the same scan synchronizes rules and profiles
+                        match activeRules with
+                        | Some rules ->
+                            printf "[RoslynRunner] : Use %i active rules of the plugin\r\n" rules.Count
+                            new System.Collections.Generic.Dictionary<string, Profile>()
+                        | None ->
+                            printf "[RoslynRunner] : Get Profiles\r\n"
+                            SonarHelpers.GetProfilesFromServer(options.ProjectKey, rest, token, false)
+                let rules = RoslynHelper.RuleLookup(profiles, activeRules)
+                let diagnostics = SonarHelpers.SyncRulesInServerOnce(options.Url, diagnosticRefs, options.Root, rest, token, options.EnableRules, options.ProjectKey, options.SyncRules && options.CreateRules)
 
-                    for project in solutiondata.Projects do
-                        printf "[RoslynRunner] : Analyse: %s \r\n" project.Value.Path
-                        options.PopulateProjectOptions(project.Value.Path)
-                        if diagnostics.Count = 0 then
-                            printf "[RoslynRunner] : No diagnostics configured or found : see https://sites.google.com/site/jmecsoftware/ for more information\r\n"
-                        else
-                            for dll in diagnostics do
-                                if dll.Value.Length <> 0 then
-                                    printf "[RoslynRunner] : Run analyzers in : %s\r\n" dll.Key
-                                    let resourceswithissues = RoslynHelper.RunAnalysis(profiles, dll.Value, options)
-                                    resourceswithissues |> Seq.iter (fun x -> diagnostiResults <- diagnostiResults @ [x])
-
-                    XmlHelper.WriteToOutputFile(output, diagnostiResults)
-            with
-            | ex -> printf "    Failed: %A" ex
-        ()
+                if options.ReadyFile <> "" then
+                    File.WriteAllText(options.ReadyFile, "")
+
+                let telemetry = new RoslynHelper.AnalyzerTelemetry()
+
+                for project in solutiondata.Projects |> Seq.filter (fun project -> options.IsProjectSelected(project.Value.Path)) |> Seq.takeWhile (fun _ -> not(options.IsCancelled())) do
+                    printf "[RoslynRunner] : Analyse: %s \r\n" project.Value.Path
+                    options.PopulateProjectOptions(project.Value.Path)
+                    if diagnostics.Count = 0 then
+                        printf "[RoslynRunner] : No diagnostics configured or found : see https://sites.google.com/site/jmecsoftware/ for more information\r\n"
+                    else
+                        for dll in diagnostics |> Seq.takeWhile (fun _ -> not(options.IsCancelled())) do
+                            if dll.Value.Length <> 0 then
+                                printf "[RoslynRunner] : Run analyzers in : %s\r\n" dll.Key
+                                let resourceswithissues = RoslynHelper.RunAnalysis(rules, dll.Value, options, telemetry)
+                                // flush per analysis so the plugin can import while we run
+                                writeResults resourceswithissues
+
+                writeResults List.Empty
+                if options.TelemetryFile <> "" then
+                    telemetry.Write(options.TelemetryFile)
+                if options.IsCancelled() then
+                    printf "[RoslynRunner] : Cancelled, results are partial\r\n"
+                    3
+                else
+                    0
+        with
+        | ex ->
+            printf "    Failed: %A" ex
+            1
+
+[<EntryPoint>]
+let main argv = 
+    let arguments = XmlHelper.parseArgs(argv)
+    
+    if arguments.ContainsKey("h") then
+        ShowHelp()
+        0
+    elif arguments.ContainsKey("daemon") then
+        let portFile = try arguments.["portfile"] |> Seq.head with | ex -> Path.Combine(Environment.GetFolderPath(Environment.SpecialFolder.UserProfile), ".sonar", "roslyn", "daemon", "daemon.port")
+        let idleSeconds = try int (arguments.["idle"] |> Seq.head) with | ex -> 600
+        Daemon.Serve(portFile, idleSeconds, fun args -> RunWithArguments(XmlHelper.parseArgs(args)))
+        0
+    elif arguments.ContainsKey("catalog") then
+        let analyzers = try arguments.["analyzers"] |> Seq.head with | ex -> ""
+        SonarHelpers.WriteRuleCatalog(analyzers.Split([|';'|], StringSplitOptions.RemoveEmptyEntries), arguments.["catalog"] |> Seq.head)
+        0
+    elif arguments.ContainsKey("i") then
+        RunWithArguments(arguments)
     else
         ShowHelp()
-
-    0
+        0
@@ -29,40 +29,78 @@ type RosDiag() =
     member val Analyser : DiagnosticAnalyzer = null with get, set 
     member val Languages : string [] = [||] with get, set
 
-let LoadDiagnosticsFromPath(path : string) = 
+// execution time and action counts of each analyzer and issues of each rule, summed over the analysed projects
+type AnalyzerTelemetry() =
+    let analyzers = new System.Collections.Generic.Dictionary<string, string * TimeSpan * int64 * string>()
+    let rules = new System.Collections.Generic.Dictionary<string, int64>()
+
+    member this.Add(analyzer : DiagnosticAnalyzer, info : AnalyzerTelemetryInfo) =
+        let name = analyzer.GetType().FullName
+        let assembly = Path.GetFileName(analyzer.GetType().Assembly.Location)
+        let ids = analyzer.SupportedDiagnostics |> Seq.map (fun descriptor -> descriptor.Id) |> Seq.distinct |> String.concat ";"
+        let actions =
+            int64 (info.CompilationStartActionsCount + info.CompilationEndActionsCount + info.CompilationActionsCount +
+                   info.SyntaxTreeActionsCount + info.SemanticModelActionsCount + info.SymbolActionsCount + info.SyntaxNodeActionsCount +
+                   info.CodeBlockStartActionsCount + info.CodeBlockEndActionsCount + info.CodeBlockActionsCount)
+        match analyzers.TryGetValue(name) with
+        | true, (_, time, count, _) -> analyzers.[name] <- (assembly, time + info.ExecutionTime, count + actions, ids)
+        | _ -> analyzers.[name] <- (assembly, info.ExecutionTime, actions, ids)
+
+    member this.AddIssue(id : string) =
+        match rules.TryGetValue(id) with
+        | true, count -> rules.[id] <- count + 1L
+        | _ -> rules.[id] <- 1L
+
+    // tab separated lines read by the plugin: "analyzer name assembly millis actions ids" and "rule id issues"
+    member this.Write(path : string) =
+        use writer = new StreamWriter(path, false, new System.Text.UTF8Encoding(false))
+        writer.Write("#roslyn-telemetry;1\n")
+        for entry in analyzers do
+            let assembly, time, actions, ids = entry.Value
+            writer.Write(String.Join("\t", [| "analyzer"; entry.Key; assembly; string (int64 time.TotalMilliseconds); string actions; ids |]) + "\n")
+        for entry in rules do
+            writer.Write(String.Join("\t", [| "rule"; entry.Key; string entry.Value |]) + "\n")
+
+// analyzers already loaded by this process, reused by later requests when running as daemon
+let private loadedAnalyzers = new System.Collections.Generic.Dictionary<string, DateTime * RosDiag List>()
+let mutable private resolverRegistered = false
+
+let private LoadAnalyzersFromAssembly(path : string) = 
     
     let runningPath = Directory.GetParent(Assembly.GetExecutingAssembly().CodeBase.Replace("file:///", "")).ToString()
 
-    AppDomain.CurrentDomain.add_AssemblyResolve(fun _ args ->
+    if not(resolverRegistered) then
+        resolverRegistered <- true
+        AppDomain.CurrentDomain.add_AssemblyResolve(fun _ args ->
             
-        let name = System.Reflection.AssemblyName(args.Name)
+            let name = System.Reflection.AssemblyName(args.Name)
         
-        let path = Path.Combine(runningPath, name.Name + ".dll")
+            let path = Path.Combine(runningPath, name.Name + ".dll")
 
-        if name.Name = "System.Windows.Interactivity" || name.Name = "FSharp.Core.resources" || name.Name.EndsWith(".resources") then
-            null
-        else
-            printf "Request to load %s %s\n\r" args.Name (path)
+            if name.Name = "System.Windows.Interactivity" || name.Name = "FSharp.Core.resources" || name.Name.EndsWith(".resources") then
+                null
+            else
+                printf "Request to load %s %s\n\r" args.Name (path)
             
-            let existingAssembly = 
-                System.AppDomain.CurrentDomain.GetAssemblies()
-                |> Seq.tryFind(fun a -> System.Reflection.AssemblyName.ReferenceMatchesDefinition(name, a.GetName()))
-            match existingAssembly with
-            | Some a -> a
-            | None -> 
-                let path = Path.Combine(runningPath, name.Name + ".dll")
-                if File.Exists(path) then 
-                    let inFileAssembly = Assembly.LoadFile(path)
-                    inFileAssembly
-                else
-                    let folder = Path.GetDirectoryName(path)
-                    let path = Path.Combine(folder, name.Name + ".dll")
-                    if File.Exists(path) then
+                let existingAssembly = 
+                    System.AppDomain.CurrentDomain.GetAssemblies()
+                    |> Seq.tryFind(fun a -> System.Reflection.AssemblyName.ReferenceMatchesDefinition(name, a.GetName()))
+                match existingAssembly with
+                | Some a -> a
+                | None -> 
+                    let path = Path.Combine(runningPath, name.Name + ".dll")
+                    if File.Exists(path) then 
                         let inFileAssembly = Assembly.LoadFile(path)
                         inFileAssembly
                     else
-                        null
-    )
+                        let folder = Path.GetDirectoryName(path)
+                        let path = Path.Combine(folder, name.Name + ".dll")
+                        if File.Exists(path) then
+                            let inFileAssembly = Assembly.LoadFile(path)
+                            inFileAssembly
+                        else
+                            null
+        )
 
     let assembly = Assembly.LoadFrom(path)
 
@@ -89,7 +127,51 @@ let LoadDiagnosticsFromPath(path : string) =
     analyzers    
 
 
-let UpdateDiagnostics(externlProfileIn : System.Collections.Generic.Dictionary<string, Profile>, checksRoslyn : RosDiag List) =
+let LoadDiagnosticsFromPath(path : string) =
+    let stamp = File.GetLastWriteTimeUtc(path)
+    match loadedAnalyzers.TryGetValue(path) with
+    | true, (loadedStamp, analyzers) when loadedStamp = stamp ->
+        printf "[RoslynRunner] Reuse %i diagnostic analyzers from %s\n\r" analyzers.Length (path)
+        analyzers
+    | _ ->
+        let analyzers = LoadAnalyzersFromAssembly(path)
+        loadedAnalyzers.[path] <- (stamp, analyzers)
+        analyzers
+
+// rules to run: the active rules sent by the plugin, or the quality profiles fetched from the server
+type RuleLookup(profiles : System.Collections.Generic.Dictionary<string, Profile>, activeRules : Map<string, XmlHelper.ActiveRule> option) =
+    let profileRule(key : string) =
+        let language = if key.StartsWith("roslyn-vbnet:") then "vbnet" else "cs"
+        if profiles.ContainsKey(language) then profiles.[language].GetRule(key) else null
+
+    member this.IsActive(key : string) =
+        match activeRules with
+        | Some rules -> rules.ContainsKey(key)
+        | None -> profileRule(key) <> null
+
+    // value of a parameter of an active rule, by key; without key, the only parameter sent by the plugin
+    // or the first one of the server profile
+    member this.Param(key : string, paramKey : string) =
+        match activeRules with
+        | Some rules ->
+            match rules.TryFind(key) with
+            | Some rule ->
+                match rule.Params |> List.tryFind (fun (name, _) -> name = paramKey) with
+                | Some (_, value) -> Some value
+                | None when paramKey = "" && rule.Params.Length = 1 -> Some (snd rule.Params.Head)
+                | None -> None
+            | None -> None
+        | None ->
+            let rule = profileRule(key)
+            if rule = null || rule.Params.Count = 0 then
+                None
+            else
+                match rule.Params |> Seq.tryFind (fun param -> param.Key = paramKey) with
+                | Some param -> Some param.DefaultValue
+                | None when paramKey = "" -> Some rule.Params.[0].DefaultValue
+                | None -> None
+
+let UpdateDiagnostics(rules : RuleLookup, checksRoslyn : RosDiag List) =
     let mutable builder = List.empty
     let mutable ids = List.empty
     for check in checksRoslyn do
@@ -98,42 +180,45 @@ let UpdateDiagnostics(externlProfileIn : System.Collections.Generic.Dictionary<s
             for diagnostic in check.Analyser.SupportedDiagnostics do
                 if not(checkadded) then                    
                     for lang in check.Languages do
-                        let language, repo = 
+                        let repo = 
                             if lang.Equals("C#") then
-                                "cs", "roslyn-cs"
+                                "roslyn-cs"
                             else
-                                "vbnet", "roslyn-vbnet"
+                                "roslyn-vbnet"
                             
                         let id = repo + ":" + diagnostic.Id
-                        let rule = externlProfileIn.[language].GetRule(id)
-                        if rule <> null then
+                        if rules.IsActive(id) then
                             checkadded <- true
                             builder <- builder @ [check]
                             ids <- ids @ [new System.Collections.Generic.KeyValuePair<string, ReportDiagnostic>(diagnostic.Id, ReportDiagnostic.Warn)]
 
 
-                            if rule.Params.Count <> 0 then
-                                let fields = check.GetType().GetProperties()
-                                for field in fields do
-                                    let attributes = field.GetCustomAttributes().ToImmutableArray()
-                                    if attributes.Length = 1 &&
-                                        attributes.[0].TypeId.ToString().EndsWith("Common.RuleParameterAttribute") then
+                            let fields = check.GetType().GetProperties()
+                            for field in fields do
+                                let attributes = field.GetCustomAttributes().ToImmutableArray()
+                                if attributes.Length = 1 &&
+                                    attributes.[0].TypeId.ToString().EndsWith("Common.RuleParameterAttribute") then
+                                    // the parameter is chosen by the key declared on the attribute
+                                    let keyProperty = attributes.[0].GetType().GetProperty("Key")
+                                    let paramKey = if keyProperty = null then "" else string (keyProperty.GetValue(attributes.[0]))
+                                    match rules.Param(id, paramKey) with
+                                    | Some paramValue ->
                                         try
                                             let typeOfField = field.PropertyType
                                             let typeOfFiledName = field.PropertyType.Name
                                             if typeOfFiledName.Equals("IImmutableSet`1") then
-                                                let elems = rule.Params.[0].DefaultValue.Replace("\"", "").Split(',').ToImmutableHashSet()
+                                                let elems = paramValue.Replace("\"", "").Split(',').ToImmutableHashSet()
                                                 field.SetValue(check, elems)
                                             else
-                                                let changedValue = Convert.ChangeType(rule.Params.[0].DefaultValue.Replace("\"", ""), typeOfField)
+                                                let changedValue = Convert.ChangeType(paramValue.Replace("\"", ""), typeOfField)
                                                 field.SetValue(check, changedValue)
 
                                             let value = field.GetValue(check)
-                                            System.Diagnostics.Debug.WriteLine("Applied Rule Parameter: " + diagnostic.Id + " = " + rule.Params.[0].DefaultValue)
+                                            System.Diagnostics.Debug.WriteLine("Applied Rule Parameter: " + diagnostic.Id + " = " + paramValue)
                                         with
                                         | ex -> 
-                                            System.Diagnostics.Debug.WriteLine("Applied Rule Parameter: " + diagnostic.Id + " = " + rule.Params.[0].DefaultValue)
-                                ()
+                                            System.Diagnostics.Debug.WriteLine("Applied Rule Parameter: " + diagnostic.Id + " = " + paramValue)
+                                    | None -> ()
         with
         | ex -> System.Diagnostics.Debug.WriteLine("Cannot Add Check Failed: " + check.ToString() + " : " +  ex.Message)
 
@@ -142,7 +227,7 @@ let UpdateDiagnostics(externlProfileIn : System.Collections.Generic.Dictionary<s
     builder, ids
 
 
-let runRoslynOnCompilationUnit(compilation : Compilation, ids, builder : DiagnosticAnalyzer list, additionaldocs : System.Collections.Generic.IEnumerable<TextDocument>, sonarAdditionalDocument : string [], userWebProfile : bool) =
+let runRoslynOnCompilationUnit(compilation : Compilation, ids, builder : DiagnosticAnalyzer list, additionaldocs : System.Collections.Generic.IEnumerable<TextDocument>, sonarAdditionalDocument : string [], userWebProfile : bool, telemetry : AnalyzerTelemetry) =
         
     let mutable docs = List.Empty
     if userWebProfile then
@@ -162,17 +247,21 @@ let runRoslynOnCompilationUnit(compilation : Compilation, ids, builder : Diagnos
         ).WithSpecificDiagnosticOptions(ids)
         
     let compilationWithOptions = compilation.WithOptions(options)
-    let analyserMain = compilationWithOptions.WithAnalyzers(builder.ToImmutableArray(), optionsWithAdditionalFiles, (new CancellationTokenSource()).Token)
+    let analyzers = builder.ToImmutableArray()
+    let analyserMain = compilationWithOptions.WithAnalyzers(analyzers, new CompilationWithAnalyzersOptions(optionsWithAdditionalFiles, null, true, true))
 
-    analyserMain.GetAnalyzerDiagnosticsAsync().Result
+    let diagnostics = analyserMain.GetAnalyzerDiagnosticsAsync().Result
+    for analyzer in analyzers do
+        telemetry.Add(analyzer, analyserMain.GetAnalyzerTelemetryInfoAsync(analyzer, CancellationToken.None).Result)
+    diagnostics
 
-let RunAnalysis(profiles : System.Collections.Generic.Dictionary<string, Profile>, roslynCheckers : RosDiag List, options : XmlHelper.OptionsToUse) =
+let RunAnalysis(rules : RuleLookup, roslynCheckers : RosDiag List, options : XmlHelper.OptionsToUse, telemetry : AnalyzerTelemetry) =
     let mutable issuestoret = List.Empty
 
     try
         use workspace = MSBuildWorkspace.Create()
         let solution = workspace.OpenSolutionAsync(options.Solution).Result
-        let builder, ids = UpdateDiagnostics(profiles, roslynCheckers)
+        let builder, ids = UpdateDiagnostics(rules, roslynCheckers)
                
         let csharpDiags =
             let mutable diagret = List.Empty
@@ -194,7 +283,7 @@ let RunAnalysis(profiles : System.Collections.Generic.Dictionary<string, Profile
                     let compilation = project.GetCompilationAsync().Result
                     let specificDiagnosticsOptions = project.CompilationOptions.SpecificDiagnosticOptions
                     if project.Language.ToString().Equals("C#") then
-                        let result = runRoslynOnCompilationUnit(compilation, ids.ToImmutableDictionary(), csharpDiags, project.AdditionalDocuments, options.AdditionalFiles, options.UseWebProfile)
+                        let result = runRoslynOnCompilationUnit(compilation, ids.ToImmutableDictionary(), csharpDiags, project.AdditionalDocuments, options.AdditionalFiles, options.UseWebProfile, telemetry)
                         for issue in result do
                             let add = 
                                 if not(options.UseWebProfile) then
@@ -215,15 +304,12 @@ let RunAnalysis(profiles : System.Collections.Generic.Dictionary<string, Profile
                                         else
                                             false
                                 else
-                                    let rule = profiles.["cs"].GetRule("roslyn-cs:" + issue.Id)
-                                    if rule <> null then
-                                        true
-                                    else
-                                        false
+                                    rules.IsActive("roslyn-cs:" + issue.Id)
                             if add then
+                                telemetry.AddIssue(issue.Id)
                                 issuestoret <- issuestoret @ [issue]
                     else
-                        let result = runRoslynOnCompilationUnit(compilation, ids.ToImmutableDictionary(), vbnetDiags, project.AdditionalDocuments, options.AdditionalFiles, options.UseWebProfile)
+                        let result = runRoslynOnCompilationUnit(compilation, ids.ToImmutableDictionary(), vbnetDiags, project.AdditionalDocuments, options.AdditionalFiles, options.UseWebProfile, telemetry)
 
                         for issue in result do
                             let add = 
@@ -245,12 +331,9 @@ let RunAnalysis(profiles : System.Collections.Generic.Dictionary<string, Profile
                                         else
                                             false
                                 else
-                                    let rule = profiles.["vbnet"].GetRule("roslyn-vbnet:" + issue.Id)
-                                    if rule <> null then
-                                        true
-                                    else
-                                        false
+                                    rules.IsActive("roslyn-vbnet:" + issue.Id)
                             if add then
+                                telemetry.AddIssue(issue.Id)
                                 issuestoret <- issuestoret @ [issue]
 
         else
@@ -3,6 +3,7 @@
 open System
 open System.IO
 open System.Reflection
+open System.Text
 open VSSonarPlugins
 open VSSonarPlugins.Types
 open SonarRestService
@@ -180,7 +181,8 @@ let DeleteCompleteProfile(token : ISonarConfiguration, rest : ISonarRestService,
                                   
 let SyncRulesInServer(paths : string [], baseroot : string, rest : ISonarRestService, token : ISonarConfiguration, enable : bool, projectKey : string, create : bool) =
 
-    let profiles = GetProfilesFromServer(projectKey, rest, token, true)
+    // profiles are only needed to create the missing rules
+    let profiles = if create then GetProfilesFromServer(projectKey, rest, token, true) else new System.Collections.Generic.Dictionary<string, Profile>()
     let mutable diagnosticList = Map.empty
 
     // make sure rules are created in sonar first
@@ -199,6 +201,25 @@ let SyncRulesInServer(paths : string [], baseroot : string, rest : ISonarRestSer
 
     diagnosticList
 
+// rule synchronizations done by this process, a daemon skips them while the analyzers are unchanged
+let private syncedRules = new System.Collections.Generic.Dictionary<string, Map<string, RoslynHelper.RosDiag List>>()
+
+let SyncRulesInServerOnce(url : string, paths : string [], baseroot : string, rest : ISonarRestService, token : ISonarConfiguration, enable : bool, projectKey : string, create : bool) =
+    let stamps =
+        paths
+        |> Array.map (fun path ->
+            let abspath = if Path.IsPathRooted(path) then path else Path.GetFullPath(Path.Combine(baseroot, path))
+            if File.Exists(abspath) then abspath + "@" + string (File.GetLastWriteTimeUtc(abspath).Ticks) else abspath)
+    let key = String.Join("|", Array.append [| url; projectKey; string enable; string create |] stamps)
+    match syncedRules.TryGetValue(key) with
+    | true, diagnostics ->
+        printf "[RoslynRunner] : Rules already synchronized by this runner\r\n"
+        diagnostics
+    | _ ->
+        let diagnostics = SyncRulesInServer(paths, baseroot, rest, token, enable, projectKey, create)
+        syncedRules.[key] <- diagnostics
+        diagnostics
+
 let GetConnectionToken(service : ISonarRestService, address : string , userName : string, password : string) = 
     let token = new VSSonarPlugins.Types.ConnectionConfiguration(address, userName, password, 4.5)
     token.SonarVersion <- float (service.GetServerInfo(token))
@@ -211,3 +232,53 @@ let DeleteRoslynRulesInProfiles(service : ISonarRestService, token : VSSonarPlug
             let errors = service.DeleteRule(token, rule)
             for error in errors do
                 printf "Cannot Delete Rule: %s\r\n" error
+
+// rules of the analyzers in the given assemblies or folders, written as the rule catalog bundled in the plugin:
+// a header with the byte range of each repository, then one line per rule sorted by repository and id
+let WriteRuleCatalog(paths : string [], output : string) =
+    let escape (value : string) =
+        if value = null then "" else value.Replace("\\", "\\\\").Replace("\t", "\\t").Replace("\r", "").Replace("\n", "\\n")
+
+    let assemblies =
+        paths
+        |> Array.collect (fun path ->
+            if Directory.Exists(path) then
+                Directory.GetFiles(path, "*.dll", SearchOption.AllDirectories)
+            elif File.Exists(path) then
+                [| path |]
+            else
+                printf "[RoslynRunner] %s PATH not found\r\n" path
+                [||])
+
+    let rules = new System.Collections.Generic.SortedDictionary<string, string>(StringComparer.Ordinal)
+    for assembly in assemblies do
+        for analyser in RoslynHelper.LoadDiagnosticsFromPath(assembly) do
+            for lang in analyser.Languages do
+                let repo = if lang.ToLower().Equals("c#") then "roslyn-cs" else "roslyn-vbnet"
+                for diag in analyser.Analyser.SupportedDiagnostics do
+                    let key = repo + "\t" + diag.Id
+                    if not(rules.ContainsKey(key)) then
+                        let fields =
+                            [| repo; escape diag.Id; string diag.DefaultSeverity; escape (diag.Title.ToString()); escape diag.Category
+                               escape diag.HelpLinkUri; escape (diag.Description.ToString()) |]
+                        rules.[key] <- String.Join("\t", fields) + "\n"
+
+    let sections =
+        rules
+        |> Seq.groupBy (fun entry -> entry.Key.Substring(0, entry.Key.IndexOf('\t')))
+        |> Seq.map (fun (repo, entries) -> repo, Seq.length entries, Encoding.UTF8.GetBytes(String.Join("", entries |> Seq.map (fun entry -> entry.Value))))
+        |> Seq.toList
+
+    let header = new StringBuilder("#roslyn-rules;1\n")
+    let mutable offset = 0
+    for (repo, count, bytes) in sections do
+        header.Append(sprintf "@%s\t%i\t%i\t%i\n" repo offset bytes.Length count) |> ignore
+        offset <- offset + bytes.Length
+    header.Append("#\n") |> ignore
+
+    use stream = new FileStream(output, FileMode.Create)
+    let headerBytes = Encoding.UTF8.GetBytes(header.ToString())
+    stream.Write(headerBytes, 0, headerBytes.Length)
+    for (_, _, bytes) in sections do
+        stream.Write(bytes, 0, bytes.Length)
+    printf "[RoslynRunner] : Wrote %i rules of %i assemblies to %s\r\n" rules.Count assemblies.Length output
@@ -68,6 +68,21 @@ type InputXml = XmlProvider<"""
       <EnableRules>true</EnableRules>   
       <UseSonarWebProfile>true</UseSonarWebProfile>   
       <AdditionalFiles>file1;file2</AdditionalFiles>
+      <OutputFormat>binary</OutputFormat>
+      <Projects>a.csproj;b.vbproj</Projects>
+      <SyncRules>true</SyncRules>
+      <CreateRules>true</CreateRules>
+      <CleanProfiles>true</CleanProfiles>
+      <ReadyFile>path</ReadyFile>
+      <CancelFile>path</CancelFile>
+      <TelemetryFile>path</TelemetryFile>
+      <ActiveRules>
+        <Rule Repository="roslyn-cs" Id="CA1001" Severity="MAJOR">
+          <Param Key="maximum" Value="10" />
+          <Param Key="names" Value="a,b" />
+        </Rule>
+        <Rule Repository="roslyn-vbnet" Id="CA1002" Severity="MINOR" />
+      </ActiveRules>
   </Settings>
 </AnalysisInput>
 """>
@@ -111,18 +126,99 @@ type SonarResoureIssues(path : string) =
     member val ResourcePath : string = path with get
     member val Issues : SonarIssue List = List.empty with get, set
 
-let WriteToOutputFile(outputfile : string, resources : Diagnostic List) = 
-    use streamfile = new StreamWriter(outputfile, true)
-    
+// first line of the output, tells the plugin fields are escaped
+let OutputFileHeader = "#roslyn-results;1"
+
+let EscapeField(value : string) =
+    let builder = new StringBuilder(value.Length)
+    for c in value do
+        match c with
+        | '\\' -> builder.Append("\\\\") |> ignore
+        | ';' -> builder.Append("\\;") |> ignore
+        | '\n' -> builder.Append("\\n") |> ignore
+        | '\r' -> builder.Append("\\r") |> ignore
+        | _ -> builder.Append(c) |> ignore
+    builder.ToString()
+
+let WriteToOutputFile(outputfile : string, resources : Diagnostic List) =
+    let writeHeader = not(File.Exists(outputfile)) || (new FileInfo(outputfile)).Length = 0L
+    use streamfile = new StreamWriter(outputfile, true, new UTF8Encoding(false))
+
+    if writeHeader then
+        streamfile.WriteLine(OutputFileHeader)
+
     let AppendIssueToFile(issue : Diagnostic) =
-        let linecontent = sprintf "%s;%i;%s;%s" issue.Location.SourceTree.FilePath (issue.Location.GetLineSpan().StartLinePosition.Line + 1) issue.Id (issue.GetMessage())
+        let linecontent = sprintf "%s;%i;%s;%s" (EscapeField(issue.Location.SourceTree.FilePath)) (issue.Location.GetLineSpan().StartLinePosition.Line + 1) (EscapeField(issue.Id)) (EscapeField(issue.GetMessage()))
         streamfile.WriteLine(linecontent)
 
     resources |> Seq.iter (fun m -> AppendIssueToFile(m))
 
     streamfile.Flush()
 
+// binary results: "RSLB", version, 3 reserved bytes, then records of type byte, varint length, payload
+// paths and rule ids are written once to a table and referenced by index from issue records, messages are inline
+type BinaryOutputWriter(outputfile : string) =
+    let maxInternedStrings = 1 <<< 20
+    let strings = new System.Collections.Generic.Dictionary<string, int>()
+    let mutable nextString = 0
+
+    let writeVarint (stream : Stream) (value : uint64) =
+        let mutable remaining = value
+        while remaining >= 0x80UL do
+            stream.WriteByte(byte ((remaining &&& 0x7FUL) ||| 0x80UL))
+            remaining <- remaining >>> 7
+        stream.WriteByte(byte remaining)
+
+    let writeRecord (stream : Stream) (recordType : byte) (payload : byte []) =
+        stream.WriteByte(recordType)
+        writeVarint stream (uint64 payload.Length)
+        stream.Write(payload, 0, payload.Length)
+
+    let stringIndex (stream : Stream) (value : string) =
+        match strings.TryGetValue(value) with
+        | true, index -> index
+        | _ ->
+            writeRecord stream 1uy (Encoding.UTF8.GetBytes(value))
+            let index = nextString
+            nextString <- nextString + 1
+            if strings.Count < maxInternedStrings then
+                strings.Add(value, index)
+            index
+
+    member this.Write(resources : Diagnostic List) =
+        use stream = new FileStream(outputfile, FileMode.Append, FileAccess.Write, FileShare.Read)
+        use buffered = new BufferedStream(stream, 1 <<< 16)
+
+        if stream.Length = 0L then
+            buffered.Write([| byte 'R'; byte 'S'; byte 'L'; byte 'B'; 2uy; 0uy; 0uy; 0uy |], 0, 8)
 
+        use payload = new MemoryStream()
+        for issue in resources do
+            let path = stringIndex buffered issue.Location.SourceTree.FilePath
+            let rule = stringIndex buffered issue.Id
+            payload.SetLength(0L)
+            writeVarint payload (uint64 path)
+            writeVarint payload (uint64 (issue.Location.GetLineSpan().StartLinePosition.Line + 1))
+            writeVarint payload (uint64 rule)
+            let message = Encoding.UTF8.GetBytes(issue.GetMessage())
+            payload.Write(message, 0, message.Length)
+            writeRecord buffered 3uy (payload.ToArray())
+
+        buffered.Flush()
+
+let CreateOutputWriter(outputfile : string, format : string) : (Diagnostic List -> unit) =
+    if format = "binary" then
+        let writer = new BinaryOutputWriter(outputfile)
+        fun resources -> writer.Write(resources)
+    else
+        fun resources -> WriteToOutputFile(outputfile, resources)
+
+
+
+// rule active in the quality profile of the scan, as sent by the plugin
+type ActiveRule =
+    { Key : string
+      Params : (string * string) list }
 
 type OptionsToUse() = 
     member val Url : string = "" with get, set
@@ -138,6 +234,17 @@ type OptionsToUse() =
     member val EnableRules : bool = true with get, set
     member val ProjectPath : string = "" with get, set
     member val ExtenalDiagnostics : string [] = [||] with get, set
+    member val OutputFormat : string = "text" with get, set
+    member val Projects : string [] = [||] with get, set
+    member val SyncRules : bool = true with get, set
+    member val CreateRules : bool = true with get, set
+    // false once the plugin synchronized the web profiles of the project with the same analyzers
+    member val CleanProfiles : bool = true with get, set
+    member val ReadyFile : string = "" with get, set
+    member val CancelFile : string = "" with get, set
+    member val TelemetryFile : string = "" with get, set
+    // active rules by repository:id, None when the plugin did not send them
+    member val ActiveRules : Map<string, ActiveRule> option = None with get, set
 
     member this.ParseOptions(solutionPath:string, options:InputXml.AnalysisInput) =
 
@@ -151,6 +258,29 @@ type OptionsToUse() =
 
         this.Solution <- solutionPath
         this.EnableRules <- try options.Settings.EnableRules with | ex -> true
+        this.OutputFormat <- try options.Settings.OutputFormat with | ex -> "text"
+        this.Projects <-
+            try
+                options.Settings.Projects.Split([|';'|], StringSplitOptions.RemoveEmptyEntries)
+                |> Array.map (fun path -> Path.GetFullPath(path))
+            with
+            | ex -> [||]
+        this.SyncRules <- try options.Settings.SyncRules with | ex -> true
+        this.CreateRules <- try options.Settings.CreateRules with | ex -> true
+        this.CleanProfiles <- try options.Settings.CleanProfiles with | ex -> true
+        this.ReadyFile <- try options.Settings.ReadyFile with | ex -> ""
+        this.CancelFile <- try options.Settings.CancelFile with | ex -> ""
+        this.TelemetryFile <- try options.Settings.TelemetryFile with | ex -> ""
+        this.ActiveRules <-
+            try
+                options.Settings.ActiveRules.Rules
+                |> Array.map (fun rule ->
+                    let key = rule.Repository + ":" + rule.Id
+                    key, { Key = key; Params = rule.Params |> Array.map (fun param -> param.Key, param.Value) |> Array.toList })
+                |> Map.ofArray
+                |> Some
+            with
+            | ex -> None
 
 
         this.ProjectKey <- 
@@ -159,6 +289,14 @@ type OptionsToUse() =
             else
                 options.Settings.ProjectKey
 
+    // projects of the solution handled by this runner, all of them when the plugin did not split the solution
+    member this.IsProjectSelected(projectPath:string) =
+        this.Projects.Length = 0 || this.Projects |> Array.exists (fun path -> String.Equals(path, Path.GetFullPath(projectPath), StringComparison.OrdinalIgnoreCase))
+
+    // the plugin creates the cancel file when its time budget is spent, results written so far are kept
+    member this.IsCancelled() =
+        this.CancelFile <> "" && File.Exists(this.CancelFile)
+
     member this.PopulateProjectOptions(projectPath:string) =
         this.ProjectPath <- projectPath
         if File.Exists(this.ProjectPath) then
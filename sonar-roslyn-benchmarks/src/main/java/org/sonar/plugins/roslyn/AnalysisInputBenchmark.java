@@ -0,0 +1,120 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonar.api.batch.sensor.internal.SensorContextTester;
+import org.sonar.api.config.internal.MapSettings;
+
+/**
+ * Generation of the AnalysisInput XML handed to the runner, with and without additional files.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AnalysisInputBenchmark {
+
+  @Param({"0", "20"})
+  public int additionalFiles;
+
+  private File dir;
+  private SensorContextTester context;
+  private RoslynSensor sensor;
+  private String solution;
+  private File input;
+  private File output;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("roslyn-input").toFile();
+    File workDir = new File(dir, ".sonar");
+    Files.createDirectories(workDir.toPath());
+    context = SensorContextTester.create(dir);
+    context.fileSystem().setWorkDir(workDir.toPath());
+
+    MapSettings settings = new MapSettings();
+    settings.setProperty("sonar.projectKey", "bench");
+    settings.setProperty("sonar.host.url", "http://localhost:9000");
+    settings.setProperty(RoslynPlugin.ENABLE_RULES_KEY, "true");
+    settings.setProperty(RoslynPlugin.SYNC_PROFILE_TYPE_KEY, "true");
+    settings.setProperty(RoslynPlugin.DIAGNOSTICS_PATH_KEY, new File(dir, "analyzers").getAbsolutePath());
+    List<String> indexes = new ArrayList<>();
+    for (int i = 0; i < additionalFiles; i++) {
+      String prefix = RoslynPlugin.ADDITIONAL_FILES_KEY + "." + i + ".";
+      settings.setProperty(prefix + RoslynPlugin.ADDITIONAL_FILES_NAME_KEY, "additional" + i + ".xml");
+      settings.setProperty(prefix + RoslynPlugin.ADDITIONAL_FILES_CONTENT_KEY, "<settings><value>" + i + "</value></settings>");
+      indexes.add(Integer.toString(i));
+    }
+    if (!indexes.isEmpty()) {
+      settings.setProperty(RoslynPlugin.ADDITIONAL_FILES_KEY, String.join(",", indexes));
+    }
+
+    context.setSettings(settings);
+    sensor = new RoslynSensor(null, context.config(), new RoslynAnalysisCoordinator(dir, workDir));
+    solution = new File(dir, "Solution.sln").getAbsolutePath();
+    input = new File(workDir, "roslyn-analysis-input.xml");
+    output = new File(workDir, "roslyn-analysis-output.xml");
+  }
+
+  @TearDown(Level.Trial)
+  public void delete() throws IOException {
+    SyntheticInputs.deleteRecursively(dir);
+  }
+
+  @Benchmark
+  public List<String> prepareArguments() throws IOException {
+    return sensor.prepareArguments(context, solution, input, output, "");
+  }
+}
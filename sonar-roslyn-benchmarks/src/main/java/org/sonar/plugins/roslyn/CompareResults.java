@@ -0,0 +1,160 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH result files written with {@code -rf json}, printing the change of every
+ * benchmark score. Exits with status 1 when a benchmark got slower than the threshold.
+ *
+ * Usage: {@code CompareResults baseline.json current.json [threshold percent, default 5]}
+ */
+public final class CompareResults {
+
+  private CompareResults() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: CompareResults baseline.json current.json [threshold percent]");
+      System.exit(2);
+    }
+    double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 5.0;
+    Map<String, Score> baseline = read(args[0]);
+    Map<String, Score> current = read(args[1]);
+
+    int regressions = 0;
+    System.out.println(String.format(Locale.ENGLISH, "%-80s %14s %14s %9s", "Benchmark", "Baseline", "Current", "Change"));
+    for (Map.Entry<String, Score> entry : current.entrySet()) {
+      Score before = baseline.get(entry.getKey());
+      Score after = entry.getValue();
+      if (before == null) {
+        System.out.println(String.format(Locale.ENGLISH, "%-80s %14s %14s %9s", entry.getKey(), "-", after, "new"));
+        continue;
+      }
+      // average and single shot times get worse when higher, throughputs when lower
+      double change = (after.value - before.value) / before.value * 100;
+      boolean slower = after.higherIsBetter() ? change < -threshold : change > threshold;
+      if (slower) {
+        regressions++;
+      }
+      System.out.println(String.format(Locale.ENGLISH, "%-80s %14s %14s %+8.1f%%%s", entry.getKey(), before, after, change,
+        slower ? "  REGRESSION" : ""));
+    }
+    System.out.println(regressions + " regressions above " + threshold + "%");
+    System.exit(regressions == 0 ? 0 : 1);
+  }
+
+  static Map<String, Score> read(String file) throws IOException {
+    Map<String, Score> scores = new LinkedHashMap<>();
+    try (Reader in = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8);
+      JsonPullReader reader = new JsonPullReader(in)) {
+      reader.beginArray();
+      while (reader.hasNext()) {
+        String benchmark = null;
+        Map<String, String> params = new TreeMap<>();
+        Score score = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+          String name = reader.nextName();
+          if ("benchmark".equals(name)) {
+            benchmark = reader.nextString();
+          } else if ("params".equals(name)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+              params.put(reader.nextName(), reader.nextString());
+            }
+            reader.endObject();
+          } else if ("primaryMetric".equals(name)) {
+            score = readMetric(reader);
+          } else {
+            reader.skipValue();
+          }
+        }
+        reader.endObject();
+        if (benchmark != null && score != null) {
+          scores.put(params.isEmpty() ? benchmark : (benchmark + " " + params), score);
+        }
+      }
+      reader.endArray();
+    }
+    return scores;
+  }
+
+  private static Score readMetric(JsonPullReader reader) throws IOException {
+    double value = Double.NaN;
+    String unit = "";
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("score".equals(name)) {
+        value = Double.parseDouble(reader.nextString());
+      } else if ("scoreUnit".equals(name)) {
+        unit = reader.nextString();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new Score(value, unit);
+  }
+
+  static final class Score {
+    private final double value;
+    private final String unit;
+
+    Score(double value, String unit) {
+      this.value = value;
+      this.unit = unit;
+    }
+
+    boolean higherIsBetter() {
+      return unit.startsWith("ops/");
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ENGLISH, "%.3f %s", value, unit);
+    }
+  }
+}
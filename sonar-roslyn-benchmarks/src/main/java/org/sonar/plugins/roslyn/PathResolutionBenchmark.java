@@ -0,0 +1,133 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+
+/**
+ * Index construction and resolution of runner paths to input files on a synthetic file system.
+ * The queries mix exact paths, Windows separators, other casing and unknown files.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PathResolutionBenchmark {
+
+  private static final int QUERIES = 10000;
+
+  @Param({"1000", "100000"})
+  public int files;
+
+  private File dir;
+  private DefaultFileSystem fileSystem;
+  private InputFileIndex index;
+  private List<String> queries;
+
+  @Setup(Level.Trial)
+  public void generate() throws IOException {
+    dir = Files.createTempDirectory("roslyn-paths").toFile();
+    fileSystem = new DefaultFileSystem(dir.toPath());
+    for (int i = 0; i < files; i++) {
+      fileSystem.add(new TestInputFileBuilder("bench", SyntheticInputs.relativePath(i))
+        .setModuleBaseDir(dir.toPath())
+        .setLanguage("cs")
+        .build());
+    }
+    index = InputFileIndex.build(fileSystem);
+
+    List<String> paths = SyntheticInputs.sourcePaths(dir, files);
+    Random random = new Random(42);
+    queries = new ArrayList<>(QUERIES);
+    for (int i = 0; i < QUERIES; i++) {
+      String path = paths.get(random.nextInt(paths.size()));
+      switch (i % 4) {
+        case 0:
+          queries.add(path);
+          break;
+        case 1:
+          queries.add(path.replace('/', '\\'));
+          break;
+        case 2:
+          queries.add(path.toUpperCase(Locale.ENGLISH));
+          break;
+        default:
+          queries.add(path.replace(".cs", ".g.cs"));
+          break;
+      }
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void delete() throws IOException {
+    SyntheticInputs.deleteRecursively(dir);
+  }
+
+  @Benchmark
+  public InputFileIndex build() {
+    return InputFileIndex.build(fileSystem);
+  }
+
+  @Benchmark
+  public void resolve(Blackhole blackhole) {
+    for (String query : queries) {
+      blackhole.consume(index.resolve(query));
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Decoding of runner results files in both formats.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResultsParsingBenchmark {
+
+  @Param({"10000", "1000000", "10000000"})
+  public int issues;
+
+  @Param({"text", "binary"})
+  public String format;
+
+  private File dir;
+  private File results;
+
+  @Setup(Level.Trial)
+  public void generate() throws IOException {
+    dir = Files.createTempDirectory("roslyn-parsing").toFile();
+    results = new File(dir, "roslyn-analysis-output.xml");
+    SyntheticInputs.writeResults(results, format, SyntheticInputs.sourcePaths(dir, 5000), issues, 42);
+  }
+
+  @TearDown(Level.Trial)
+  public void delete() throws IOException {
+    SyntheticInputs.deleteRecursively(dir);
+  }
+
+  @Benchmark
+  public long parse(Blackhole blackhole) throws IOException {
+    RoslynResultsDecoder decoder = RoslynResultsDecoder.create(blackhole::consume);
+    decoder.read(results);
+    return decoder.records();
+  }
+}
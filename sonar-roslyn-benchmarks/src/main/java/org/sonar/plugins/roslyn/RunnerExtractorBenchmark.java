@@ -0,0 +1,104 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to get the runner executable from the extractor, with an empty cache as after a plugin
+ * upgrade and with the runner already extracted by an earlier scan.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RunnerExtractorBenchmark {
+
+  private File dir;
+  private File zip;
+  private File cold;
+  private File warm;
+
+  @Setup(Level.Trial)
+  public void generate() throws IOException {
+    dir = Files.createTempDirectory("roslyn-extractor").toFile();
+    zip = new File(dir, "RoslynRunner.zip");
+    SyntheticInputs.writeRunnerZip(zip, 400, 128 * 1024, 42);
+    warm = new File(dir, "warm");
+    extractor(warm).executableFile();
+  }
+
+  @Setup(Level.Invocation)
+  public void clean() throws IOException {
+    cold = new File(dir, "cold");
+    SyntheticInputs.deleteRecursively(cold);
+  }
+
+  @TearDown(Level.Trial)
+  public void delete() throws IOException {
+    SyntheticInputs.deleteRecursively(dir);
+  }
+
+  @Benchmark
+  public File coldCache() throws IOException {
+    return extractor(cold).executableFile();
+  }
+
+  @Benchmark
+  public File warmCache() throws IOException {
+    return extractor(warm).executableFile();
+  }
+
+  private RoslynRunnerExtractor extractor(File cache) {
+    return new RoslynRunnerExtractor(cache, new File(dir, "fallback"), () -> Files.newInputStream(zip.toPath()));
+  }
+}
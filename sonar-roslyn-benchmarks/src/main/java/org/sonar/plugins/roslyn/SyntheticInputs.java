@@ -0,0 +1,158 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generators of synthetic inputs for the benchmarks: source paths laid out like a solution,
+ * runner results in both output formats, and runner zips. The same seed always gives the same
+ * content so runs can be compared.
+ */
+final class SyntheticInputs {
+
+  private static final String[] MESSAGES = {
+    "The variable '%s' is declared but never used",
+    "Make '%s' readonly; it is only assigned in the constructor",
+    "Remove the unnecessary cast to '%s'",
+    "Use 'nameof(%s)' instead of a string literal",
+    "Field '%s' should be private; consider a property"
+  };
+
+  private SyntheticInputs() {
+  }
+
+  /**
+   * Absolute paths of source files spread over projects of 200 files in folders of 20.
+   */
+  static List<String> sourcePaths(File root, int files) {
+    List<String> paths = new ArrayList<>(files);
+    for (int i = 0; i < files; i++) {
+      paths.add(new File(root, relativePath(i)).getAbsolutePath());
+    }
+    return paths;
+  }
+
+  static String relativePath(int file) {
+    return "Project" + (file / 200) + "/Folder" + (file / 20 % 10) + "/Source" + file + ".cs";
+  }
+
+  static RoslynIssue issue(Random random, List<String> paths) {
+    String path = paths.get(random.nextInt(paths.size()));
+    String rule = "CS" + (1000 + random.nextInt(300));
+    String message = String.format(MESSAGES[random.nextInt(MESSAGES.length)], "identifier" + random.nextInt(5000));
+    return new RoslynIssue(path, 1 + random.nextInt(2000), rule, message);
+  }
+
+  /**
+   * Writes a results file of the given format, "text" or "binary".
+   */
+  static void writeResults(File output, String format, List<String> paths, int issues, long seed) throws IOException {
+    Random random = new Random(seed);
+    if ("binary".equals(format)) {
+      try (RoslynBinaryResultsWriter writer = new RoslynBinaryResultsWriter(new BufferedOutputStream(Files.newOutputStream(output.toPath()), 1 << 16))) {
+        for (int i = 0; i < issues; i++) {
+          writer.write(issue(random, paths));
+        }
+      }
+      return;
+    }
+
+    try (BufferedWriter writer = Files.newBufferedWriter(output.toPath(), StandardCharsets.UTF_8)) {
+      writer.write(RoslynResultsParser.HEADER);
+      writer.write('\n');
+      for (int i = 0; i < issues; i++) {
+        RoslynIssue issue = issue(random, paths);
+        writer.write(escape(issue.path()));
+        writer.write(';');
+        writer.write(Integer.toString(issue.line()));
+        writer.write(';');
+        writer.write(escape(issue.ruleId()));
+        writer.write(';');
+        writer.write(escape(issue.message()));
+        writer.write('\n');
+      }
+    }
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace(";", "\\;").replace("\n", "\\n").replace("\r", "\\r");
+  }
+
+  /**
+   * Writes a zip shaped like the runner: one executable and many assemblies of random sizes
+   * around the given average, half of them barely compressible.
+   */
+  static void writeRunnerZip(File output, int entries, int averageSize, long seed) throws IOException {
+    Random random = new Random(seed);
+    try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(output.toPath()), 1 << 16);
+      ZipOutputStream zip = new ZipOutputStream(file)) {
+      zip.putNextEntry(new ZipEntry("RoslynRunner.exe"));
+      zip.write(new byte[averageSize]);
+      for (int i = 1; i < entries; i++) {
+        byte[] content = new byte[averageSize / 2 + random.nextInt(averageSize)];
+        if (i % 2 == 0) {
+          random.nextBytes(content);
+        } else {
+          for (int j = 0; j < content.length; j++) {
+            content[j] = (byte) (j % 251);
+          }
+        }
+        zip.putNextEntry(new ZipEntry((i % 3 == 0 ? "lib/" : "") + "Assembly" + i + ".dll"));
+        zip.write(content);
+      }
+    }
+  }
+
+  static void deleteRecursively(File file) throws IOException {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    Files.deleteIfExists(file.toPath());
+  }
+}
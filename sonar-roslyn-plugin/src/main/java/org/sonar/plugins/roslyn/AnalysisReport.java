@@ -0,0 +1,192 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.sonar.api.utils.command.StreamConsumer;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.api.utils.text.JsonWriter;
+
+/**
+ * Times the phases of one sensor execution with a monotonic clock and counts what the import
+ * did. The report is written as JSON into the work directory and summarized in the log.
+ *
+ * The runner phase is split in the loading of the workspace, until the runner announces the
+ * analysis of its first project, and the analysis itself.
+ */
+public class AnalysisReport {
+
+  public static final Logger LOG = Loggers.get(AnalysisReport.class);
+  public static final String FILE = "roslyn-analysis-report.json";
+  static final String FIRST_PROJECT_MARKER = "[RoslynRunner] : Analyse:";
+
+  private final long start = System.nanoTime();
+  private final Map<String, Long> phases = new LinkedHashMap<>();
+  private final Map<String, Long> counters = new LinkedHashMap<>();
+  private final List<ResourceMonitor> monitors = new ArrayList<>();
+  private final AtomicLong firstProject = new AtomicLong(Long.MAX_VALUE);
+
+  /**
+   * Starts timing a phase, times of phases run more than once add up.
+   */
+  public Phase phase(String name) {
+    return new Phase(name, System.nanoTime());
+  }
+
+  public final class Phase implements AutoCloseable {
+    private final String name;
+    private final long started;
+
+    private Phase(String name, long started) {
+      this.name = name;
+      this.started = started;
+    }
+
+    @Override
+    public void close() {
+      add(name, System.nanoTime() - started);
+    }
+  }
+
+  public synchronized void add(String phase, long nanos) {
+    phases.merge(phase, nanos, Long::sum);
+  }
+
+  public synchronized void count(String counter, long value) {
+    counters.merge(counter, value, Long::sum);
+  }
+
+  /**
+   * Adds the resources sampled by the monitor of a runner.
+   */
+  public synchronized void resources(ResourceMonitor monitor) {
+    monitors.add(monitor);
+  }
+
+  /**
+   * Consumer of runner output noting when the first project analysis starts.
+   */
+  public StreamConsumer runnerOutput(final StreamConsumer consumer) {
+    return line -> {
+      if (firstProject.get() == Long.MAX_VALUE && line.contains(FIRST_PROJECT_MARKER)) {
+        firstProject.compareAndSet(Long.MAX_VALUE, System.nanoTime());
+      }
+      consumer.consumeLine(line);
+    };
+  }
+
+  /**
+   * Records a runner execution, split in workspace loading and analysis when the runner
+   * announced a project.
+   */
+  public void runner(long started, long ended) {
+    add("runner", ended - started);
+    long first = firstProject.getAndSet(Long.MAX_VALUE);
+    if (first != Long.MAX_VALUE && first >= started && first <= ended) {
+      add("runner.workspaceLoad", first - started);
+      add("runner.analysis", ended - first);
+    }
+  }
+
+  synchronized Map<String, Long> phases() {
+    return new LinkedHashMap<>(phases);
+  }
+
+  synchronized Map<String, Long> counters() {
+    return new LinkedHashMap<>(counters);
+  }
+
+  private synchronized List<ResourceMonitor> monitors() {
+    return new ArrayList<>(monitors);
+  }
+
+  public void write(File workDir) {
+    File report = new File(workDir, FILE);
+    long total = System.nanoTime() - start;
+    try (Writer out = Files.newBufferedWriter(report.toPath(), StandardCharsets.UTF_8);
+      JsonWriter json = JsonWriter.of(out)) {
+      json.beginObject();
+      json.prop("totalMillis", millis(total));
+      json.name("phases").beginObject();
+      for (Map.Entry<String, Long> phase : phases().entrySet()) {
+        json.prop(phase.getKey() + "Millis", millis(phase.getValue()));
+      }
+      json.endObject();
+      json.name("counters").beginObject();
+      for (Map.Entry<String, Long> counter : counters().entrySet()) {
+        json.prop(counter.getKey(), counter.getValue());
+      }
+      json.endObject();
+      json.name("resources").beginArray();
+      for (ResourceMonitor monitor : monitors()) {
+        monitor.write(json);
+      }
+      json.endArray();
+      json.endObject();
+    } catch (IOException e) {
+      LOG.warn("Cannot write the analysis report '{}': {}", report, e.getMessage());
+    }
+  }
+
+  public void logSummary() {
+    long total = System.nanoTime() - start;
+    StringBuilder table = new StringBuilder("Roslyn analysis timings:");
+    table.append(String.format(Locale.ENGLISH, "%n  %-24s %10s %7s", "phase", "ms", "share"));
+    for (Map.Entry<String, Long> phase : phases().entrySet()) {
+      table.append(String.format(Locale.ENGLISH, "%n  %-24s %10d %6.1f%%", phase.getKey(), millis(phase.getValue()),
+        total == 0 ? 0.0 : phase.getValue() * 100.0 / total));
+    }
+    table.append(String.format(Locale.ENGLISH, "%n  %-24s %10d", "total", millis(total)));
+    for (Map.Entry<String, Long> counter : counters().entrySet()) {
+      table.append(String.format(Locale.ENGLISH, "%n  %-24s %10d", counter.getKey(), counter.getValue()));
+    }
+    LOG.info(table.toString());
+  }
+
+  private static long millis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+}
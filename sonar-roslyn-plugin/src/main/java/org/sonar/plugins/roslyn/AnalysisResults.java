@@ -0,0 +1,228 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Issues of one analysis by runner path, waiting to be imported by the module owning the file.
+ * Issues are spooled to disk in partitions by path, only the paths stay in memory; a module reads back the partitions holding its files. Each file is handed
+ * out once and then forgotten. When the module running the analysis is the last one scanned,
+ * issues go straight to its importer instead. Safe for concurrent use.
+ */
+public class AnalysisResults implements RoslynResultsDecoder.IssueHandler {
+
+  static final int PARTITIONS = 64;
+
+  private final File spoolRoot;
+  private final RoslynResultsDecoder.IssueHandler direct;
+  private final Set<String> files = new HashSet<>();
+  private final RoslynBinaryResultsWriter[] partitions = new RoslynBinaryResultsWriter[PARTITIONS];
+  private File spool;
+  private IOException spoolFailure;
+  private boolean sealed = false;
+  private long count = 0;
+
+  private AnalysisResults(File spoolRoot, RoslynResultsDecoder.IssueHandler direct) {
+    this.spoolRoot = spoolRoot;
+    this.direct = direct;
+  }
+
+  /**
+   * Results spooled to a new directory under the given one until the modules import them.
+   */
+  public static AnalysisResults spooled(File spoolRoot) {
+    return new AnalysisResults(spoolRoot, null);
+  }
+
+  /**
+   * Results handed to the handler as they arrive, for an analysis whose files all belong to
+   * the module running it.
+   */
+  public static AnalysisResults direct(RoslynResultsDecoder.IssueHandler handler) {
+    return new AnalysisResults(null, handler);
+  }
+
+  @Override
+  public synchronized void handle(RoslynIssue issue) {
+    if (sealed) {
+      throw new IllegalStateException("Issue received after the results were imported: " + issue.path());
+    }
+    count++;
+    if (direct != null) {
+      direct.handle(issue);
+      return;
+    }
+    if (spoolFailure != null) {
+      return;
+    }
+    try {
+      int partition = partition(issue.path());
+      if (partitions[partition] == null) {
+        if (spool == null) {
+          Files.createDirectories(spoolRoot.toPath());
+          spool = Files.createTempDirectory(spoolRoot.toPath(), "analysis-results").toFile();
+        }
+        partitions[partition] = new RoslynBinaryResultsWriter(new BufferedOutputStream(Files.newOutputStream(partitionFile(partition).toPath())));
+      }
+      partitions[partition].write(issue);
+      files.add(issue.path());
+    } catch (IOException e) {
+      spoolFailure = e;
+    }
+  }
+
+  /**
+   * Issues received since the analysis started, imported or not.
+   */
+  public synchronized long issues() {
+    return count;
+  }
+
+  /**
+   * Files whose issues were not imported yet.
+   */
+  public synchronized int files() {
+    return files.size();
+  }
+
+  /**
+   * Hands the issues on the files of the index to the handler and returns their number. Files
+   * of the index are matched by exact or case folded path only, a file reached through a link
+   * is left to the module whose base directory contains the runner path. Modules are scanned
+   * before their parent, so nested modules take their files first. Issues handed out directly
+   * are counted by the first import and not handed again.
+   */
+  public synchronized int importInto(String baseDir, InputFileIndex index, RoslynResultsDecoder.IssueHandler handler) throws IOException {
+    if (direct != null) {
+      int handed = sealed ? 0 : (int) count;
+      sealed = true;
+      return handed;
+    }
+    sealed = true;
+    closePartitions();
+    if (spoolFailure != null) {
+      throw new IOException("Cannot spool the analysis results: " + spoolFailure.getMessage(), spoolFailure);
+    }
+    String prefix = SolutionFingerprints.key(baseDir) + "/";
+    List<Set<String>> slice = new ArrayList<>();
+    for (int i = 0; i < PARTITIONS; i++) {
+      slice.add(new HashSet<String>());
+    }
+    for (Iterator<String> it = files.iterator(); it.hasNext();) {
+      String path = it.next();
+      if (index.knows(path) || SolutionFingerprints.key(path).startsWith(prefix)) {
+        slice.get(partition(path)).add(path);
+        it.remove();
+      }
+    }
+    int[] imported = {0};
+    for (int partition = 0; partition < PARTITIONS; partition++) {
+      Set<String> paths = slice.get(partition);
+      if (paths.isEmpty()) {
+        continue;
+      }
+      RoslynResultsDecoder.create(issue -> {
+        if (paths.contains(issue.path())) {
+          handler.handle(issue);
+          imported[0]++;
+        }
+      }).read(partitionFile(partition));
+    }
+    if (files.isEmpty()) {
+      deleteSpool();
+    }
+    return imported[0];
+  }
+
+  /**
+   * Drops the issues no module imported and deletes the spool, at the end of the scan. Returns
+   * the paths of the dropped issues.
+   */
+  public synchronized List<String> discard() throws IOException {
+    sealed = true;
+    closePartitions();
+    List<String> unclaimed = new ArrayList<>(files);
+    Collections.sort(unclaimed);
+    files.clear();
+    deleteSpool();
+    return unclaimed;
+  }
+
+  private File partitionFile(int partition) {
+    return new File(spool, "partition-" + partition + ".bin");
+  }
+
+  private static int partition(String path) {
+    return Math.floorMod(path.hashCode(), PARTITIONS);
+  }
+
+  private void closePartitions() {
+    for (int i = 0; i < PARTITIONS; i++) {
+      if (partitions[i] != null) {
+        try {
+          partitions[i].close();
+        } catch (IOException e) {
+          if (spoolFailure == null) {
+            spoolFailure = e;
+          }
+        }
+        partitions[i] = null;
+      }
+    }
+  }
+
+  private void deleteSpool() throws IOException {
+    if (spool == null) {
+      return;
+    }
+    File[] spooled = spool.listFiles();
+    if (spooled != null) {
+      for (File file : spooled) {
+        Files.deleteIfExists(file.toPath());
+      }
+    }
+    Files.deleteIfExists(spool.toPath());
+    spool = null;
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.api.utils.text.JsonWriter;
+
+/**
+ * Execution time and action counts of the analyzers, read from the files written by the
+ * runners next to their analysis input.
+ *
+ * Roslyn measures time per analyzer only, so a rule is ranked by the time of the analyzer
+ * reporting it, which is exact for analyzers with a single rule.
+ */
+public class AnalyzerTelemetry {
+
+  public static final Logger LOG = Loggers.get(AnalyzerTelemetry.class);
+  public static final String FILE = "roslyn-analyzer-telemetry.json";
+  static final int TOP = 10;
+
+  private final Map<String, Analyzer> analyzers = new HashMap<>();
+  private final Map<String, Long> issues = new HashMap<>();
+
+  /**
+   * Sums the telemetry of the given files, missing files are skipped.
+   */
+  public static AnalyzerTelemetry read(List<File> files) throws IOException {
+    AnalyzerTelemetry telemetry = new AnalyzerTelemetry();
+    for (File file : files) {
+      if (file.isFile()) {
+        telemetry.parse(file);
+      }
+    }
+    return telemetry;
+  }
+
+  private void parse(File file) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.isEmpty() && !line.startsWith("#") && !parseLine(line.split("\t", -1))) {
+          LOG.debug("Skip malformed telemetry line '{}' in {}", line, file);
+        }
+      }
+    }
+  }
+
+  private boolean parseLine(String[] fields) {
+    try {
+      if ("analyzer".equals(fields[0]) && fields.length == 6) {
+        Analyzer analyzer = analyzers.computeIfAbsent(fields[1], name -> new Analyzer(name, fields[2]));
+        analyzer.millis += Long.parseLong(fields[3]);
+        analyzer.actions += Long.parseLong(fields[4]);
+        for (String rule : fields[5].split(";")) {
+          if (!rule.isEmpty()) {
+            analyzer.rules.add(rule);
+          }
+        }
+        return true;
+      }
+      if ("rule".equals(fields[0]) && fields.length == 3) {
+        issues.merge(fields[1], Long.parseLong(fields[2]), Long::sum);
+        return true;
+      }
+    } catch (NumberFormatException e) {
+      return false;
+    }
+    return false;
+  }
+
+  public boolean isEmpty() {
+    return analyzers.isEmpty();
+  }
+
+  /**
+   * Analyzers from the slowest.
+   */
+  List<Analyzer> analyzers() {
+    List<Analyzer> sorted = new ArrayList<>(analyzers.values());
+    sorted.sort(Comparator.comparingLong((Analyzer analyzer) -> analyzer.millis).reversed().thenComparing(analyzer -> analyzer.name));
+    return sorted;
+  }
+
+  /**
+   * Rules of the slowest analyzers first, then the ones raising the most issues.
+   */
+  List<Rule> rules() {
+    List<Rule> rules = new ArrayList<>();
+    for (Analyzer analyzer : analyzers.values()) {
+      for (String id : analyzer.rules) {
+        rules.add(new Rule(id, analyzer, issues.getOrDefault(id, 0L)));
+      }
+    }
+    rules.sort(Comparator.comparingLong((Rule rule) -> rule.analyzer.millis).reversed()
+      .thenComparing(Comparator.comparingLong((Rule rule) -> rule.issues).reversed())
+      .thenComparing(rule -> rule.id));
+    return rules;
+  }
+
+  public void logTop(int top) {
+    List<Analyzer> sorted = analyzers();
+    long total = sorted.stream().mapToLong(analyzer -> analyzer.millis).sum();
+    StringBuilder message = new StringBuilder("Slowest Roslyn analyzers:");
+    for (Analyzer analyzer : sorted.subList(0, Math.min(top, sorted.size()))) {
+      message.append(String.format(Locale.ENGLISH, "%n  %8d ms %6.1f%% %10d actions  %s (%s)", analyzer.millis,
+        total == 0 ? 0.0 : analyzer.millis * 100.0 / total, analyzer.actions, analyzer.name, analyzer.assembly));
+    }
+    List<Rule> rules = rules();
+    message.append(String.format("%nMost expensive Roslyn rules:"));
+    for (Rule rule : rules.subList(0, Math.min(top, rules.size()))) {
+      message.append(String.format(Locale.ENGLISH, "%n  %-12s %8d ms %8d issues  %s", rule.id, rule.analyzer.millis, rule.issues,
+        rule.analyzer.name));
+    }
+    LOG.info(message.toString());
+  }
+
+  public void write(File report) throws IOException {
+    try (Writer out = Files.newBufferedWriter(report.toPath(), StandardCharsets.UTF_8);
+      JsonWriter json = JsonWriter.of(out)) {
+      json.beginObject();
+      json.name("analyzers").beginArray();
+      for (Analyzer analyzer : analyzers()) {
+        json.beginObject()
+          .prop("name", analyzer.name)
+          .prop("assembly", analyzer.assembly)
+          .prop("executionMillis", analyzer.millis)
+          .prop("actions", analyzer.actions);
+        json.name("rules").beginArray();
+        for (String rule : analyzer.rules) {
+          json.value(rule);
+        }
+        json.endArray().endObject();
+      }
+      json.endArray();
+      json.name("rules").beginArray();
+      for (Rule rule : rules()) {
+        json.beginObject()
+          .prop("id", rule.id)
+          .prop("analyzer", rule.analyzer.name)
+          .prop("analyzerMillis", rule.analyzer.millis)
+          .prop("issues", rule.issues)
+          .endObject();
+      }
+      json.endArray();
+      json.endObject();
+    }
+  }
+
+  static final class Analyzer {
+    final String name;
+    final String assembly;
+    final Set<String> rules = new LinkedHashSet<>();
+    long millis;
+    long actions;
+
+    Analyzer(String name, String assembly) {
+      this.name = name;
+      this.assembly = assembly;
+    }
+  }
+
+  static final class Rule {
+    final String id;
+    final Analyzer analyzer;
+    final long issues;
+
+    Rule(String id, Analyzer analyzer, long issues) {
+      this.id = id;
+      this.analyzer = analyzer;
+      this.issues = issues;
+    }
+  }
+}
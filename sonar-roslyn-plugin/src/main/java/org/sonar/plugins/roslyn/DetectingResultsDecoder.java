@@ -0,0 +1,132 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Picks the binary or text decoder from the first bytes of the stream.
+ */
+class DetectingResultsDecoder implements RoslynResultsDecoder {
+
+  private final IssueHandler handler;
+  private final ByteBuffer head = ByteBuffer.allocate(RoslynBinaryResultsParser.MAGIC.length);
+  private RoslynResultsDecoder delegate = null;
+
+  DetectingResultsDecoder(IssueHandler handler) {
+    this.handler = handler;
+  }
+
+  @Override
+  public void feed(ByteBuffer buffer) {
+    if (delegate == null) {
+      while (head.hasRemaining() && buffer.hasRemaining()) {
+        head.put(buffer.get());
+      }
+      if (head.hasRemaining()) {
+        return;
+      }
+      select();
+    }
+    delegate.feed(buffer);
+  }
+
+  @Override
+  public void finish() {
+    if (delegate == null) {
+      select();
+    }
+    delegate.finish();
+  }
+
+  @Override
+  public boolean discardPartialRecord() {
+    if (delegate == null) {
+      boolean partial = head.position() > 0;
+      head.clear();
+      return partial;
+    }
+    return delegate.discardPartialRecord();
+  }
+
+  @Override
+  public boolean hasPartialRecord() {
+    return delegate == null ? head.position() > 0 : delegate.hasPartialRecord();
+  }
+
+  @Override
+  public void read(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      while (head.hasRemaining() && channel.read(head) >= 0) {
+        // fill the detection header
+      }
+    }
+    head.flip();
+    delegate = decoderFor(head);
+    head.clear();
+    delegate.read(file);
+  }
+
+  @Override
+  public long records() {
+    return delegate == null ? 0 : delegate.records();
+  }
+
+  @Override
+  public long skipped() {
+    return delegate == null ? 0 : delegate.skipped();
+  }
+
+  @Override
+  public long bytes() {
+    return delegate == null ? head.position() : delegate.bytes();
+  }
+
+  private void select() {
+    head.flip();
+    delegate = decoderFor(head);
+    delegate.feed(head);
+  }
+
+  private RoslynResultsDecoder decoderFor(ByteBuffer start) {
+    if (RoslynBinaryResultsParser.isBinary(start)) {
+      return new RoslynBinaryResultsParser(handler);
+    }
+    return new RoslynResultsParser(handler);
+  }
+}
@@ -0,0 +1,486 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Keeps the fingerprints and issues of the last complete analysis of a solution in a cache
+ * directory, so the next scan runs RoslynRunner only on the projects affected by a change and
+ * replays the stored issues of all other files.
+ *
+ * A project is affected when its project file, one of its sources or one of the projects it
+ * references changed. A source belongs to every project whose directory contains it. A change
+ * to the global fingerprint, which covers the runner, the analyzers, the active rules and the
+ * analysis settings, or to a source outside every project directory requires a full analysis.
+ *
+ * Scans of the same solution may run concurrently: each one records its issues to a file of its
+ * own and replaces the manifest naming the current issue file with an atomic move, the modification
+ * time of the manifest is the last use of the directory for {@link #evict(File, long, File)}.
+ */
+public class IncrementalAnalysis {
+
+  public static final Logger LOG = Loggers.get(IncrementalAnalysis.class);
+  static final String MANIFEST = "manifest.properties";
+  static final String ISSUES = "issues";
+  private static final String ISSUES_EXTENSION = ".bin";
+  private static final String TMP = ".tmp";
+  private static final long STALE_MILLIS = TimeUnit.DAYS.toMillis(1);
+  private static final String GLOBAL = "global";
+  private static final String PROJECT = "project.";
+  private static final String SOURCE = "source.";
+
+  private final File cacheDir;
+
+  public IncrementalAnalysis(File cacheDir) {
+    this.cacheDir = cacheDir;
+  }
+
+  /**
+   * Cache directory of a solution, stable across scans of the same project.
+   */
+  public static File cacheDir(File root, String projectKey, String solution) {
+    return new File(root, Hashes.of(projectKey, SolutionFingerprints.key(solution)).substring(0, 16));
+  }
+
+  public Plan plan(SolutionFingerprints current, boolean force) throws IOException {
+    Properties previous = load();
+    if (force) {
+      LOG.info("Incremental analysis: full analysis forced");
+      return new Plan(current, true, Collections.<String>emptySet(), null);
+    }
+    FileChannel issues = previous == null ? null : openIssues(previous.getProperty(ISSUES));
+    if (issues == null) {
+      LOG.info("Incremental analysis: no previous analysis found, full analysis");
+      return new Plan(current, true, Collections.<String>emptySet(), null);
+    }
+    if (!current.global().equals(previous.getProperty(GLOBAL))) {
+      issues.close();
+      LOG.info("Incremental analysis: runner, analyzers, active rules or settings changed, full analysis");
+      return new Plan(current, true, Collections.<String>emptySet(), null);
+    }
+    if (!new File(cacheDir, MANIFEST).setLastModified(System.currentTimeMillis())) {
+      LOG.debug("Incremental analysis: cannot mark '{}' as recently used", cacheDir);
+    }
+
+    Set<String> changed = new HashSet<>();
+    for (Map.Entry<String, String> project : current.projects().entrySet()) {
+      if (!project.getValue().equals(previous.getProperty(PROJECT + project.getKey()))) {
+        changed.add(project.getKey());
+      }
+    }
+
+    Set<String> changedSources = new HashSet<>();
+    for (Map.Entry<String, String> source : current.sources().entrySet()) {
+      if (!source.getValue().equals(previous.getProperty(SOURCE + source.getKey()))) {
+        changedSources.add(source.getKey());
+      }
+    }
+    for (String key : previous.stringPropertyNames()) {
+      if (key.startsWith(SOURCE) && !current.sources().containsKey(key.substring(SOURCE.length()))) {
+        changedSources.add(key.substring(SOURCE.length()));
+      }
+    }
+
+    Owners owners = new Owners(current.projects().keySet());
+    for (String source : changedSources) {
+      List<String> sourceOwners = owners.of(source);
+      if (sourceOwners.isEmpty()) {
+        issues.close();
+        LOG.info("Incremental analysis: '{}' changed outside of all projects, full analysis", source);
+        return new Plan(current, true, Collections.<String>emptySet(), null);
+      }
+      changed.addAll(sourceOwners);
+    }
+
+    Set<String> affected = dependents(changed, current.references());
+    boolean full = affected.size() == current.projects().size() && !affected.isEmpty();
+    if (full) {
+      issues.close();
+    }
+    Plan plan = new Plan(current, full, affected, full ? null : issues);
+    int total = current.projects().size();
+    int unchanged = total - affected.size();
+    LOG.info("Incremental analysis: {} of {} projects unchanged ({}% cache hit), {} changed sources",
+      unchanged, total, total == 0 ? 100 : unchanged * 100 / total, changedSources.size());
+    return plan;
+  }
+
+  /**
+   * The changed projects and every project referencing one of them, directly or not.
+   */
+  private static Set<String> dependents(Set<String> changed, Map<String, List<String>> references) {
+    Map<String, List<String>> referencedBy = new HashMap<>();
+    for (Map.Entry<String, List<String>> project : references.entrySet()) {
+      for (String reference : project.getValue()) {
+        referencedBy.computeIfAbsent(reference, k -> new ArrayList<>()).add(project.getKey());
+      }
+    }
+
+    Set<String> affected = new HashSet<>(changed);
+    Deque<String> queue = new ArrayDeque<>(changed);
+    while (!queue.isEmpty()) {
+      for (String dependent : referencedBy.getOrDefault(queue.poll(), Collections.<String>emptyList())) {
+        if (affected.add(dependent)) {
+          queue.add(dependent);
+        }
+      }
+    }
+    return affected;
+  }
+
+  /**
+   * Opens the issue file named by the manifest, kept open by the plan so that a concurrent scan
+   * replacing it does not affect the replay.
+   */
+  private FileChannel openIssues(String name) throws IOException {
+    if (name == null) {
+      return null;
+    }
+    try {
+      return FileChannel.open(new File(cacheDir, name).toPath(), StandardOpenOption.READ);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  private Properties load() throws IOException {
+    File manifest = new File(cacheDir, MANIFEST);
+    if (!manifest.isFile()) {
+      return null;
+    }
+    Properties properties = new Properties();
+    try (InputStream in = Files.newInputStream(manifest.toPath())) {
+      properties.load(in);
+    }
+    return properties;
+  }
+
+  /**
+   * Removes the least recently used solution directories until the root holds at most 90% of
+   * the maximum size, the directory of the current solution is kept. Directories removed
+   * concurrently by another scan are ignored.
+   */
+  public static void evict(File root, long maxBytes, File keep) throws IOException {
+    if (!root.isDirectory()) {
+      return;
+    }
+    List<Solution> solutions = new ArrayList<>();
+    long total = 0;
+    try (DirectoryStream<Path> dirs = Files.newDirectoryStream(root.toPath())) {
+      for (Path dir : dirs) {
+        if (!Files.isDirectory(dir)) {
+          continue;
+        }
+        Solution solution = new Solution(dir.toFile());
+        solutions.add(solution);
+        total += solution.size;
+      }
+    }
+    if (total <= maxBytes) {
+      return;
+    }
+
+    solutions.sort(Comparator.comparing(s -> s.lastUsed));
+    long target = maxBytes / 10 * 9;
+    int removed = 0;
+    for (Solution solution : solutions) {
+      if (total <= target) {
+        break;
+      }
+      if (solution.dir.equals(keep)) {
+        continue;
+      }
+      for (File file : solution.files) {
+        try {
+          Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+          LOG.debug("Cannot evict '{}': {}", file, e.getMessage());
+        }
+      }
+      if (!solution.dir.delete()) {
+        LOG.debug("Cannot evict '{}'", solution.dir);
+      }
+      removed++;
+      total -= solution.size;
+    }
+    LOG.info("Incremental analysis: evicted {} solutions, {} bytes left", removed, total);
+  }
+
+  private static final class Solution {
+    private final File dir;
+    private final List<File> files = new ArrayList<>();
+    private final long lastUsed;
+    private long size = 0;
+
+    Solution(File dir) {
+      this.dir = dir;
+      File[] children = dir.listFiles();
+      for (File child : children == null ? new File[0] : children) {
+        files.add(child);
+        size += child.length();
+      }
+      File manifest = new File(dir, MANIFEST);
+      this.lastUsed = manifest.isFile() ? manifest.lastModified() : dir.lastModified();
+    }
+  }
+
+  public final class Plan implements AutoCloseable {
+    private final SolutionFingerprints current;
+    private final boolean full;
+    private final Set<String> affected;
+    private final Owners owners;
+    private final Map<String, Boolean> replayableDirs = new HashMap<>();
+    private final FileChannel issues;
+    private File recording;
+    private RoslynBinaryResultsWriter writer;
+    private long replayed = 0;
+
+    Plan(SolutionFingerprints current, boolean full, Set<String> affected, FileChannel issues) {
+      this.current = current;
+      this.full = full;
+      this.affected = affected;
+      this.issues = issues;
+      this.owners = new Owners(current.projects().keySet());
+    }
+
+    /**
+     * True when every project has to be analysed.
+     */
+    public boolean full() {
+      return full;
+    }
+
+    /**
+     * Projects to analyse when the analysis is not full, as fingerprint keys.
+     */
+    public Set<String> affectedProjects() {
+      return affected;
+    }
+
+    public boolean analysisNeeded() {
+      return full || !affected.isEmpty();
+    }
+
+    /**
+     * Hands the stored issues of unaffected files to the handler.
+     */
+    public void replay(final RoslynResultsDecoder.IssueHandler handler) throws IOException {
+      if (full) {
+        return;
+      }
+      RoslynResultsDecoder decoder = RoslynResultsDecoder.create(issue -> {
+        if (replayable(issue.path())) {
+          replayed++;
+          handler.handle(issue);
+        }
+      });
+      ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+      long position = 0;
+      int read;
+      while ((read = issues.read(buffer, position)) >= 0) {
+        position += read;
+        buffer.flip();
+        decoder.feed(buffer);
+        buffer.clear();
+      }
+      decoder.finish();
+      LOG.info("Incremental analysis: replayed {} stored issues", replayed);
+    }
+
+    /**
+     * Handler storing every issue it forwards, to be replayed by later scans.
+     */
+    public RoslynResultsDecoder.IssueHandler record(final RoslynResultsDecoder.IssueHandler target) throws IOException {
+      Files.createDirectories(cacheDir.toPath());
+      recording = new File(cacheDir, ISSUES + "-" + UUID.randomUUID() + ISSUES_EXTENSION + TMP);
+      OutputStream out = new BufferedOutputStream(Files.newOutputStream(recording.toPath()), 1 << 16);
+      writer = new RoslynBinaryResultsWriter(out);
+      return issue -> {
+        try {
+          writer.write(issue);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        target.handle(issue);
+      };
+    }
+
+    /**
+     * Stores the recorded issues and the current fingerprints, only called after a complete
+     * analysis. Only the given projects, analysed or replayed from the result cache, and the
+     * projects replayed by this plan are stored with their sources; any other project is
+     * affected on the next scan.
+     */
+    public void commit(Set<String> analysed) throws IOException {
+      writer.close();
+      writer = null;
+      Set<String> stored = new HashSet<>(analysed);
+      if (!full) {
+        for (String project : current.projects().keySet()) {
+          if (!affected.contains(project)) {
+            stored.add(project);
+          }
+        }
+      }
+      String issuesName = recording.getName().substring(0, recording.getName().length() - TMP.length());
+      Properties manifest = new Properties();
+      manifest.setProperty(GLOBAL, current.global());
+      manifest.setProperty(ISSUES, issuesName);
+      for (Map.Entry<String, String> project : current.projects().entrySet()) {
+        if (stored.contains(project.getKey())) {
+          manifest.setProperty(PROJECT + project.getKey(), project.getValue());
+        }
+      }
+      for (Map.Entry<String, String> source : current.sources().entrySet()) {
+        List<String> sourceOwners = owners.of(source.getKey());
+        if (sourceOwners.isEmpty() || !Collections.disjoint(sourceOwners, stored)) {
+          manifest.setProperty(SOURCE + source.getKey(), source.getValue());
+        }
+      }
+
+      // issues first: the manifest only ever names a complete issue file
+      Files.move(recording.toPath(), new File(cacheDir, issuesName).toPath(), StandardCopyOption.ATOMIC_MOVE);
+      recording = null;
+      File manifestFile = new File(cacheDir, MANIFEST + "." + UUID.randomUUID() + TMP);
+      try {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(manifestFile.toPath()))) {
+          manifest.store(out, null);
+        }
+        Files.move(manifestFile.toPath(), new File(cacheDir, MANIFEST).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(manifestFile.toPath());
+      }
+      clean(issuesName);
+    }
+
+    /**
+     * Removes the issue files replaced by this analysis and the temporary files left by scans
+     * that did not complete. A concurrent scan still recording or replaying is not affected:
+     * recent temporary files are kept and open issue files stay readable.
+     */
+    private void clean(String keep) {
+      long stale = System.currentTimeMillis() - STALE_MILLIS;
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDir.toPath())) {
+        for (Path file : files) {
+          String name = file.getFileName().toString();
+          boolean obsolete = name.startsWith(ISSUES) && name.endsWith(ISSUES_EXTENSION) && !name.equals(keep);
+          boolean abandoned = name.endsWith(TMP) && Files.getLastModifiedTime(file).toMillis() < stale;
+          if (obsolete || abandoned) {
+            Files.deleteIfExists(file);
+          }
+        }
+      } catch (IOException e) {
+        LOG.debug("Incremental analysis: cannot clean '{}': {}", cacheDir, e.getMessage());
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (issues != null) {
+        issues.close();
+      }
+      if (writer != null) {
+        writer.close();
+      }
+      if (recording != null) {
+        Files.deleteIfExists(recording.toPath());
+      }
+    }
+
+    private boolean replayable(String path) {
+      String key = SolutionFingerprints.key(path);
+      int slash = key.lastIndexOf('/');
+      String dir = slash < 0 ? "" : key.substring(0, slash);
+      Boolean replayable = replayableDirs.get(dir);
+      if (replayable == null) {
+        List<String> sourceOwners = owners.of(key);
+        replayable = sourceOwners.isEmpty() ? affected.isEmpty() : Collections.disjoint(sourceOwners, affected);
+        replayableDirs.put(dir, replayable);
+      }
+      return replayable;
+    }
+  }
+
+  /**
+   * Finds the projects whose directory contains a path.
+   */
+  private static final class Owners {
+    private final Map<String, String> projectDirs = new HashMap<>();
+
+    Owners(Set<String> projects) {
+      for (String project : projects) {
+        projectDirs.put(project, SolutionFingerprints.projectDir(project));
+      }
+    }
+
+    List<String> of(String path) {
+      List<String> owners = new ArrayList<>();
+      for (Map.Entry<String, String> project : projectDirs.entrySet()) {
+        if (path.startsWith(project.getValue())) {
+          owners.add(project.getKey());
+        }
+      }
+      return owners;
+    }
+  }
+}
@@ -0,0 +1,288 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Index of the files of a sensor execution by normalized absolute path.
+ *
+ * Runner paths are matched exactly first, then case folded with both separator styles, and
+ * finally through their real path to catch symlinks and 8.3 short names. The outcome is
+ * memoized per runner path, so every later issue on the same path costs one hash lookup.
+ * Safe for concurrent use.
+ */
+public class InputFileIndex {
+
+  public static final Logger LOG = Loggers.get(InputFileIndex.class);
+  private static final int LOGGED_MISSES = 10;
+
+  private final Map<String, InputFile> exact = new HashMap<>();
+  private final Map<String, InputFile> folded = new HashMap<>();
+  private final Set<String> ambiguous = new HashSet<>();
+  private final Map<String, Resolution> resolutions = new ConcurrentHashMap<>();
+  private volatile Map<String, InputFile> realPaths = null;
+
+  private final LongAdder resolvedIssues = new LongAdder();
+  private final LongAdder missedIssues = new LongAdder();
+  private final LongAdder realPathMatches = new LongAdder();
+
+  private InputFileIndex(Iterable<InputFile> inputFiles) {
+    for (InputFile inputFile : inputFiles) {
+      add(inputFile);
+    }
+  }
+
+  public static InputFileIndex build(FileSystem fileSystem) {
+    long start = System.nanoTime();
+    InputFileIndex index = new InputFileIndex(fileSystem.inputFiles(fileSystem.predicates().all()));
+    LOG.debug("Indexed {} files in {} ms", index.exact.size(), (System.nanoTime() - start) / 1000000);
+    return index;
+  }
+
+  /**
+   * Returns the indexed file for a path as reported by the runner, or null when unknown.
+   */
+  public InputFile resolve(String path) {
+    Resolution resolution = resolutions.get(path);
+    if (resolution == null) {
+      resolution = resolutions.computeIfAbsent(path, p -> new Resolution(lookup(p)));
+    }
+
+    if (resolution.inputFile != null) {
+      resolvedIssues.increment();
+    } else {
+      missedIssues.increment();
+    }
+    return resolution.inputFile;
+  }
+
+  /**
+   * True when a path as reported by the runner is an indexed file, matched exactly or case
+   * folded. Real paths are not looked up and nothing is counted.
+   */
+  public boolean knows(String path) {
+    return find(normalize(path), exact, folded) != null;
+  }
+
+  public int size() {
+    return exact.size();
+  }
+
+  public long resolvedIssues() {
+    return resolvedIssues.sum();
+  }
+
+  public long missedIssues() {
+    return missedIssues.sum();
+  }
+
+  public void logStatistics() {
+    List<String> missedPaths = new ArrayList<>();
+    int resolvedPaths = 0;
+    for (Map.Entry<String, Resolution> entry : resolutions.entrySet()) {
+      if (entry.getValue().inputFile != null) {
+        resolvedPaths++;
+      } else {
+        missedPaths.add(entry.getKey());
+      }
+    }
+
+    LOG.info("Resolved {} issues on {} files ({} through real path), {} issues on {} unknown paths were not imported",
+      resolvedIssues.sum(), resolvedPaths, realPathMatches.sum(), missedIssues.sum(), missedPaths.size());
+    for (int i = 0; i < missedPaths.size(); i++) {
+      if (i < LOGGED_MISSES) {
+        LOG.info("inputFile not created - issues will not be imported: '{}'", missedPaths.get(i));
+      } else {
+        LOG.debug("inputFile not created - issues will not be imported: '{}'", missedPaths.get(i));
+      }
+    }
+  }
+
+  private InputFile lookup(String path) {
+    String key = normalize(path);
+    InputFile inputFile = find(key, exact, folded);
+    if (inputFile != null) {
+      return inputFile;
+    }
+
+    String realPath = realPath(path);
+    Map<String, InputFile> real = realPaths();
+    inputFile = find(key, real, real);
+    if (inputFile == null && realPath != null) {
+      String realKey = normalize(realPath);
+      inputFile = find(realKey, exact, folded);
+      if (inputFile == null) {
+        inputFile = find(realKey, real, real);
+      }
+    }
+
+    if (inputFile != null) {
+      realPathMatches.increment();
+    }
+    return inputFile;
+  }
+
+  private InputFile find(String key, Map<String, InputFile> exactKeys, Map<String, InputFile> foldedKeys) {
+    InputFile inputFile = exactKeys.get(key);
+    if (inputFile != null) {
+      return inputFile;
+    }
+
+    String foldedKey = key.toLowerCase(Locale.ROOT);
+    if (ambiguous.contains(foldedKey)) {
+      return null;
+    }
+    return foldedKeys.get(foldedKey);
+  }
+
+  /**
+   * Real paths of the indexed files, only computed the first time a path misses.
+   */
+  private Map<String, InputFile> realPaths() {
+    Map<String, InputFile> real = realPaths;
+    if (real == null) {
+      synchronized (this) {
+        real = realPaths;
+        if (real == null) {
+          real = new HashMap<>();
+          for (InputFile inputFile : exact.values()) {
+            String realPath = realPath(path(inputFile));
+            if (realPath != null) {
+              String key = normalize(realPath);
+              real.put(key, inputFile);
+              real.put(key.toLowerCase(Locale.ROOT), inputFile);
+            }
+          }
+          realPaths = real;
+        }
+      }
+    }
+    return real;
+  }
+
+  private void add(InputFile inputFile) {
+    String key = normalize(path(inputFile).toString());
+    exact.put(key, inputFile);
+
+    String foldedKey = key.toLowerCase(Locale.ROOT);
+    InputFile previous = folded.put(foldedKey, inputFile);
+    if (previous != null && !previous.equals(inputFile)) {
+      LOG.debug("Files differing only by case, case insensitive lookup disabled for '{}'", key);
+      ambiguous.add(foldedKey);
+    }
+  }
+
+  /**
+   * Path of an indexed file, {@link InputFile#path()} is deprecated like {@link InputFile#absolutePath()}.
+   */
+  static Path path(InputFile inputFile) {
+    return Paths.get(inputFile.uri());
+  }
+
+  private static String realPath(String path) {
+    try {
+      return realPath(Paths.get(path));
+    } catch (InvalidPathException e) {
+      return null;
+    }
+  }
+
+  private static String realPath(Path path) {
+    try {
+      Path real = path.toRealPath();
+      return real.toString();
+    } catch (IOException | SecurityException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Forward slashes only, no empty, "." or ".." segments and no trailing separator. Case is kept.
+   */
+  static String normalize(String path) {
+    String slashed = path.replace('\\', '/');
+    boolean unc = slashed.startsWith("//");
+    boolean absolute = slashed.startsWith("/");
+    List<String> segments = new ArrayList<>();
+    for (String segment : slashed.split("/")) {
+      if (segment.isEmpty() || ".".equals(segment)) {
+        continue;
+      }
+      if ("..".equals(segment) && !segments.isEmpty() && !"..".equals(segments.get(segments.size() - 1))) {
+        segments.remove(segments.size() - 1);
+      } else {
+        segments.add(segment);
+      }
+    }
+
+    StringBuilder sb = new StringBuilder(slashed.length());
+    if (unc) {
+      sb.append("//");
+    } else if (absolute) {
+      sb.append('/');
+    }
+    for (int i = 0; i < segments.size(); i++) {
+      if (i > 0) {
+        sb.append('/');
+      }
+      sb.append(segments.get(i));
+    }
+    return sb.toString();
+  }
+
+  private static final class Resolution {
+    private final InputFile inputFile;
+
+    Resolution(InputFile inputFile) {
+      this.inputFile = inputFile;
+    }
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Drops issues already reported with the same path, line, rule and message, which happens
+ * when a file is compiled by several projects or target frameworks. Keys are kept as a
+ * 64-bit hash plus an independent 32-bit check in open addressing arrays, so no strings
+ * are retained. Once the set holds its maximum number of keys new keys are no longer
+ * remembered, and issues are let through rather than growing without bound.
+ */
+public class IssueDeduplicator {
+
+  public static final Logger LOG = Loggers.get(IssueDeduplicator.class);
+  static final int DEFAULT_MAX_KEYS = 1 << 21;
+  private static final int LOGGED_RULES = 10;
+  private static final int INITIAL_CAPACITY = 1 << 12;
+
+  private final int maxKeys;
+  private long[] hashes = new long[INITIAL_CAPACITY];
+  private int[] checks = new int[INITIAL_CAPACITY];
+  private boolean[] used = new boolean[INITIAL_CAPACITY];
+  private int size = 0;
+
+  private final Map<String, long[]> duplicatesPerRule = new HashMap<>();
+  private long duplicates = 0;
+  private long unchecked = 0;
+
+  public IssueDeduplicator() {
+    this(DEFAULT_MAX_KEYS);
+  }
+
+  public IssueDeduplicator(int maxKeys) {
+    this.maxKeys = maxKeys;
+  }
+
+  /**
+   * True when the issue is seen for the first time and should be imported.
+   */
+  public boolean add(RoslynIssue issue) {
+    long hash = 0xcbf29ce484222325L;
+    hash = hash(hash, issue.path());
+    hash = (hash ^ issue.line()) * 0x100000001b3L;
+    hash = hash(hash, issue.ruleId());
+    hash = hash(hash, issue.message());
+
+    int check = 17;
+    check = check * 31 + issue.path().hashCode();
+    check = check * 31 + issue.line();
+    check = check * 31 + issue.ruleId().hashCode();
+    check = check * 31 + issue.message().hashCode();
+
+    if (add(hash, check)) {
+      return true;
+    }
+
+    duplicates++;
+    long[] count = duplicatesPerRule.get(issue.ruleId());
+    if (count == null) {
+      count = new long[1];
+      duplicatesPerRule.put(issue.ruleId(), count);
+    }
+    count[0]++;
+    return false;
+  }
+
+  boolean add(long hash, int check) {
+    int mask = hashes.length - 1;
+    int slot = mix(hash) & mask;
+    while (used[slot]) {
+      if (hashes[slot] == hash && checks[slot] == check) {
+        return false;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    if (size >= maxKeys) {
+      unchecked++;
+      return true;
+    }
+
+    hashes[slot] = hash;
+    checks[slot] = check;
+    used[slot] = true;
+    size++;
+    if (size * 2 > hashes.length) {
+      grow();
+    }
+    return true;
+  }
+
+  public long duplicates() {
+    return duplicates;
+  }
+
+  public long duplicates(String ruleId) {
+    long[] count = duplicatesPerRule.get(ruleId);
+    return count == null ? 0 : count[0];
+  }
+
+  int size() {
+    return size;
+  }
+
+  public void logStatistics() {
+    LOG.info("Dropped {} duplicate issues", duplicates);
+    if (unchecked > 0) {
+      LOG.warn("Duplicate detection stopped remembering issues after {} distinct issues, {} issues were imported without checking", maxKeys, unchecked);
+    }
+
+    List<Map.Entry<String, long[]>> rules = new ArrayList<>(duplicatesPerRule.entrySet());
+    rules.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+    for (int i = 0; i < rules.size(); i++) {
+      if (i < LOGGED_RULES) {
+        LOG.info("Duplicate issues for rule '{}': {}", rules.get(i).getKey(), rules.get(i).getValue()[0]);
+      } else {
+        LOG.debug("Duplicate issues for rule '{}': {}", rules.get(i).getKey(), rules.get(i).getValue()[0]);
+      }
+    }
+  }
+
+  private void grow() {
+    long[] oldHashes = hashes;
+    int[] oldChecks = checks;
+    boolean[] oldUsed = used;
+    hashes = new long[oldHashes.length * 2];
+    checks = new int[oldHashes.length * 2];
+    used = new boolean[oldHashes.length * 2];
+    int mask = hashes.length - 1;
+    for (int i = 0; i < oldHashes.length; i++) {
+      if (oldUsed[i]) {
+        int slot = mix(oldHashes[i]) & mask;
+        while (used[slot]) {
+          slot = (slot + 1) & mask;
+        }
+        hashes[slot] = oldHashes[i];
+        checks[slot] = oldChecks[i];
+        used[slot] = true;
+      }
+    }
+  }
+
+  private static long hash(long hash, String value) {
+    long result = hash;
+    for (int i = 0; i < value.length(); i++) {
+      result = (result ^ value.charAt(i)) * 0x100000001b3L;
+    }
+    // separator so that ("ab", "c") and ("a", "bc") differ
+    return (result ^ 0xffff) * 0x100000001b3L;
+  }
+
+  private static int mix(long hash) {
+    long h = hash ^ (hash >>> 33);
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+}
@@ -0,0 +1,416 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Minimal pull parser for JSON documents. Values are read one token at a time so large
+ * documents never have to be held in memory, and skipped strings are scanned without
+ * being copied.
+ */
+final class JsonPullReader implements Closeable {
+
+  enum Token {
+    BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+  }
+
+  private static final int EMPTY_DOCUMENT = 0;
+  private static final int NONEMPTY_DOCUMENT = 1;
+  private static final int EMPTY_ARRAY = 2;
+  private static final int NONEMPTY_ARRAY = 3;
+  private static final int EMPTY_OBJECT = 4;
+  private static final int DANGLING_NAME = 5;
+  private static final int NONEMPTY_OBJECT = 6;
+
+  private final Reader in;
+  private final char[] buffer = new char[1 << 16];
+  private int pos = 0;
+  private int limit = 0;
+  private long offset = 0;
+
+  private int[] stack = new int[32];
+  private int depth = 0;
+
+  private Token peeked;
+  private final StringBuilder text = new StringBuilder();
+
+  JsonPullReader(Reader in) {
+    this.in = in;
+    stack[depth++] = EMPTY_DOCUMENT;
+  }
+
+  Token peek() throws IOException {
+    if (peeked != null) {
+      return peeked;
+    }
+
+    int scope = stack[depth - 1];
+    switch (scope) {
+      case EMPTY_ARRAY:
+        stack[depth - 1] = NONEMPTY_ARRAY;
+        int first = nextNonWhitespace();
+        if (first == ']') {
+          return peeked = Token.END_ARRAY;
+        }
+        if (first == -1) {
+          throw syntaxError("unexpected end of document");
+        }
+        pos--;
+        return peeked = readValue();
+      case NONEMPTY_ARRAY:
+        int c = nextNonWhitespace();
+        if (c == ']') {
+          return peeked = Token.END_ARRAY;
+        }
+        expect(c, ',');
+        return peeked = readValue();
+      case EMPTY_OBJECT:
+      case NONEMPTY_OBJECT:
+        c = nextNonWhitespace();
+        if (c == '}') {
+          return peeked = Token.END_OBJECT;
+        }
+        if (scope == NONEMPTY_OBJECT) {
+          expect(c, ',');
+          c = nextNonWhitespace();
+        }
+        expect(c, '"');
+        text.setLength(0);
+        readString(true);
+        stack[depth - 1] = DANGLING_NAME;
+        return peeked = Token.NAME;
+      case DANGLING_NAME:
+        expect(nextNonWhitespace(), ':');
+        stack[depth - 1] = NONEMPTY_OBJECT;
+        return peeked = readValue();
+      case EMPTY_DOCUMENT:
+        stack[depth - 1] = NONEMPTY_DOCUMENT;
+        return peeked = readValue();
+      default:
+        if (nextNonWhitespace() != -1) {
+          throw syntaxError("trailing content after the document");
+        }
+        return peeked = Token.END_DOCUMENT;
+    }
+  }
+
+  boolean hasNext() throws IOException {
+    Token token = peek();
+    return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+  }
+
+  void beginObject() throws IOException {
+    consume(Token.BEGIN_OBJECT);
+    push(EMPTY_OBJECT);
+  }
+
+  void endObject() throws IOException {
+    consume(Token.END_OBJECT);
+    depth--;
+  }
+
+  void beginArray() throws IOException {
+    consume(Token.BEGIN_ARRAY);
+    push(EMPTY_ARRAY);
+  }
+
+  void endArray() throws IOException {
+    consume(Token.END_ARRAY);
+    depth--;
+  }
+
+  String nextName() throws IOException {
+    consume(Token.NAME);
+    return text.toString();
+  }
+
+  /**
+   * Next string value, numbers and booleans are returned as their literal text and null as null.
+   */
+  String nextString() throws IOException {
+    Token token = peek();
+    if (token == Token.NULL) {
+      peeked = null;
+      return null;
+    }
+    if (token == Token.STRING) {
+      peeked = null;
+      text.setLength(0);
+      readString(true);
+      return text.toString();
+    }
+    if (token == Token.NUMBER || token == Token.BOOLEAN) {
+      peeked = null;
+      return text.toString();
+    }
+    throw syntaxError("expected a string but was " + token);
+  }
+
+  int nextInt() throws IOException {
+    String value = nextString();
+    if (value == null) {
+      throw syntaxError("expected a number but was null");
+    }
+    try {
+      return (int) Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      throw syntaxError("expected a number but was '" + value + "'");
+    }
+  }
+
+  void skipValue() throws IOException {
+    int count = 0;
+    do {
+      Token token = peek();
+      switch (token) {
+        case BEGIN_OBJECT:
+          beginObject();
+          count++;
+          break;
+        case BEGIN_ARRAY:
+          beginArray();
+          count++;
+          break;
+        case END_OBJECT:
+          endObject();
+          count--;
+          break;
+        case END_ARRAY:
+          endArray();
+          count--;
+          break;
+        case NAME:
+          nextName();
+          break;
+        case STRING:
+          peeked = null;
+          readString(false);
+          break;
+        case END_DOCUMENT:
+          throw syntaxError("unexpected end of document");
+        default:
+          peeked = null;
+          break;
+      }
+    } while (count > 0);
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private void consume(Token expected) throws IOException {
+    Token token = peek();
+    if (token != expected) {
+      throw syntaxError("expected " + expected + " but was " + token);
+    }
+    peeked = null;
+  }
+
+  private void push(int scope) {
+    if (depth == stack.length) {
+      int[] grown = new int[depth * 2];
+      System.arraycopy(stack, 0, grown, 0, depth);
+      stack = grown;
+    }
+    stack[depth++] = scope;
+  }
+
+  private Token readValue() throws IOException {
+    int c = nextNonWhitespace();
+    switch (c) {
+      case '{':
+        return Token.BEGIN_OBJECT;
+      case '[':
+        return Token.BEGIN_ARRAY;
+      case '"':
+        return Token.STRING;
+      case 't':
+        readLiteral("rue");
+        return Token.BOOLEAN;
+      case 'f':
+        readLiteral("alse");
+        return Token.BOOLEAN;
+      case 'n':
+        readLiteral("ull");
+        return Token.NULL;
+      case -1:
+        throw syntaxError("unexpected end of document");
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          readNumber((char) c);
+          return Token.NUMBER;
+        }
+        throw syntaxError("unexpected character '" + (char) c + "'");
+    }
+  }
+
+  private void readLiteral(String rest) throws IOException {
+    text.setLength(0);
+    text.append((char) buffer[pos - 1]);
+    for (int i = 0; i < rest.length(); i++) {
+      int c = read();
+      if (c != rest.charAt(i)) {
+        throw syntaxError("invalid literal");
+      }
+      text.append((char) c);
+    }
+  }
+
+  private void readNumber(char first) throws IOException {
+    text.setLength(0);
+    text.append(first);
+    while (pos < limit || fill()) {
+      char c = buffer[pos];
+      if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+        text.append(c);
+        pos++;
+      } else {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Reads the rest of a string after its opening quote, appending it to the text buffer when kept.
+   */
+  private void readString(boolean keep) throws IOException {
+    while (true) {
+      int start = pos;
+      while (pos < limit) {
+        char c = buffer[pos++];
+        if (c == '"') {
+          if (keep) {
+            text.append(buffer, start, pos - 1 - start);
+          }
+          return;
+        }
+        if (c == '\\') {
+          if (keep) {
+            text.append(buffer, start, pos - 1 - start);
+          }
+          char escaped = readEscape();
+          if (keep) {
+            text.append(escaped);
+          }
+          start = pos;
+        }
+      }
+      if (keep) {
+        text.append(buffer, start, pos - start);
+      }
+      if (!fill()) {
+        throw syntaxError("unterminated string");
+      }
+    }
+  }
+
+  private char readEscape() throws IOException {
+    int c = read();
+    switch (c) {
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'u':
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+          int digit = Character.digit(read(), 16);
+          if (digit < 0) {
+            throw syntaxError("invalid unicode escape");
+          }
+          value = (value << 4) | digit;
+        }
+        return (char) value;
+      case '"':
+      case '\\':
+      case '/':
+        return (char) c;
+      default:
+        throw syntaxError("invalid escape sequence");
+    }
+  }
+
+  private int nextNonWhitespace() throws IOException {
+    while (pos < limit || fill()) {
+      char c = buffer[pos++];
+      if (c != ' ' && c != '\n' && c != '\r' && c != '\t' && c != '\uFEFF') {
+        return c;
+      }
+    }
+    return -1;
+  }
+
+  private int read() throws IOException {
+    if (pos < limit || fill()) {
+      return buffer[pos++];
+    }
+    throw syntaxError("unexpected end of document");
+  }
+
+  private boolean fill() throws IOException {
+    offset += limit;
+    pos = 0;
+    limit = 0;
+    int read;
+    while ((read = in.read(buffer, 0, buffer.length)) == 0) {
+      // keep reading until data or end of stream
+    }
+    if (read < 0) {
+      return false;
+    }
+    limit = read;
+    return true;
+  }
+
+  private void expect(int actual, char expected) throws IOException {
+    if (actual != expected) {
+      throw syntaxError("expected '" + expected + "'");
+    }
+  }
+
+  private IOException syntaxError(String message) {
+    return new IOException("Malformed JSON at character " + (offset + pos) + ": " + message);
+  }
+}
@@ -0,0 +1,336 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Activates the rules of new analyzers in the quality profiles of a project.
+ *
+ * A state file keeps, per server and project, the rules already synchronized and a fingerprint
+ * of them. While the analyzers are unchanged the fingerprint matches and no call is made. The
+ * first synchronization only records the present rules: an inactive rule may have been turned
+ * off on purpose. Afterwards each rule of a new analyzer is activated once, only when still
+ * inactive in the profile, so a rule deactivated later stays deactivated.
+ *
+ * The rules of a repository with no rule synchronized or active yet, the rules of a new bundled
+ * language, are activated with one call selecting the inactive rules of the repository. Other
+ * pending rules take one call each: activate_rules selects rules with search filters and
+ * rule_key only takes one key, while a filter matching several of them, such as the repository
+ * or the date they became available, also matches the rules deactivated on purpose since the
+ * previous synchronization.
+ */
+public class ProfileSync {
+
+  public static final Logger LOG = Loggers.get(ProfileSync.class);
+  private static final String FINGERPRINT = "fingerprint";
+  private static final String SYNCED = "synced.";
+  private static final int TIMEOUT_MILLIS = 30000;
+
+  private final String serverUrl;
+  private final String authorization;
+  private final File stateFile;
+  private boolean upToDate = false;
+
+  public ProfileSync(String serverUrl, String login, String password, File stateFile) {
+    this.serverUrl = serverUrl.endsWith("/") ? serverUrl.substring(0, serverUrl.length() - 1) : serverUrl;
+    this.authorization = login == null || login.isEmpty() ? null
+      : "Basic " + Base64.getEncoder().encodeToString((login + ":" + (password == null ? "" : password)).getBytes(StandardCharsets.UTF_8));
+    this.stateFile = stateFile;
+  }
+
+  /**
+   * State file of a project, stable across scans.
+   */
+  public static File stateFile(File root, String serverUrl, String projectKey) {
+    return new File(root, Hashes.of(serverUrl, projectKey).substring(0, 16) + ".properties");
+  }
+
+  /**
+   * Activates, in the quality profiles of the project, the rules of the present analyzers never
+   * synchronized and not active, none on the first synchronization. Present rules are given as
+   * rule ids by repository. Returns the number of web service calls made. The state is only
+   * stored once every call succeeded.
+   */
+  public int synchronize(String projectKey, Map<String, Set<String>> present, RoslynActiveRules activeRules) throws IOException {
+    Properties state = load();
+    String fingerprint = fingerprint(present);
+    upToDate = fingerprint.equals(state.getProperty(FINGERPRINT));
+    if (upToDate) {
+      LOG.debug("Profile synchronization: analyzers unchanged, nothing to do");
+      return 0;
+    }
+
+    boolean baseline = state.getProperty(FINGERPRINT) == null;
+    Map<String, Set<String>> pending = baseline ? Collections.<String, Set<String>>emptyMap() : pending(state, present, activeRules);
+
+    int calls = 0;
+    if (baseline) {
+      LOG.info("Profile synchronization: first synchronization of '{}', present rules recorded without activation", projectKey);
+    } else if (!pending.isEmpty()) {
+      Map<String, String> profiles = profiles(projectKey);
+      calls++;
+      for (Map.Entry<String, Set<String>> repository : pending.entrySet()) {
+        String profile = profiles.get(language(repository.getKey()));
+        if (profile == null) {
+          LOG.info("Profile synchronization: project '{}' has no editable {} profile, {} rules not activated", projectKey,
+            language(repository.getKey()), repository.getValue().size());
+          continue;
+        }
+        int activated = 0;
+        if (repository.getValue().size() > 1 && repository.getValue().equals(present.get(repository.getKey()))) {
+          activated = activate(profile, "repositories=" + encode(repository.getKey()));
+          calls++;
+        } else {
+          for (String id : repository.getValue()) {
+            activated += activate(profile, "rule_key=" + encode(repository.getKey() + ":" + id));
+            calls++;
+          }
+        }
+        LOG.info("Profile synchronization: {} rules of {} activated in profile '{}'", activated, repository.getKey(), profile);
+      }
+    }
+
+    for (Map.Entry<String, Set<String>> repository : present.entrySet()) {
+      Set<String> synced = split(state.getProperty(SYNCED + repository.getKey(), ""));
+      synced.addAll(repository.getValue());
+      state.setProperty(SYNCED + repository.getKey(), String.join(",", synced));
+    }
+    state.setProperty(FINGERPRINT, fingerprint);
+    store(state);
+    return calls;
+  }
+
+  /**
+   * Present rules neither synchronized before nor active, by repository.
+   */
+  private static Map<String, Set<String>> pending(Properties state, Map<String, Set<String>> present, RoslynActiveRules activeRules) {
+    Map<String, Set<String>> pending = new LinkedHashMap<>();
+    for (Map.Entry<String, Set<String>> repository : present.entrySet()) {
+      Set<String> synced = split(state.getProperty(SYNCED + repository.getKey(), ""));
+      Set<String> active = activeRules.ids(repository.getKey());
+      Set<String> rules = new TreeSet<>();
+      for (String id : repository.getValue()) {
+        if (!synced.contains(id) && !active.contains(id)) {
+          rules.add(id);
+        }
+      }
+      if (!rules.isEmpty()) {
+        pending.put(repository.getKey(), rules);
+      }
+    }
+    return pending;
+  }
+
+  /**
+   * True when the last {@link #synchronize} found the analyzers of the previous synchronization.
+   */
+  public boolean upToDate() {
+    return upToDate;
+  }
+
+  private static String fingerprint(Map<String, Set<String>> present) {
+    MessageDigest digest = Hashes.sha256();
+    for (String repository : new TreeSet<>(present.keySet())) {
+      Hashes.update(digest, repository);
+      for (String id : new TreeSet<>(present.get(repository))) {
+        Hashes.update(digest, id);
+      }
+    }
+    return Hashes.hex(digest.digest());
+  }
+
+  private static String language(String repository) {
+    return RoslynPlugin.REPOSITORY_KEY_VB.equals(repository) ? "vbnet" : "cs";
+  }
+
+  private static Set<String> split(String ids) {
+    Set<String> set = new TreeSet<>();
+    for (String id : ids.split(",")) {
+      if (!id.isEmpty()) {
+        set.add(id);
+      }
+    }
+    return set;
+  }
+
+  /**
+   * Keys of the quality profiles used by the project, by language. Built-in profiles cannot be
+   * changed and are left out.
+   */
+  private Map<String, String> profiles(String projectKey) throws IOException {
+    HttpURLConnection connection = open("/api/qualityprofiles/search?project=" + encode(projectKey));
+    Map<String, String> profiles = new HashMap<>();
+    try (JsonPullReader reader = new JsonPullReader(new InputStreamReader(response(connection), StandardCharsets.UTF_8))) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if (!"profiles".equals(reader.nextName())) {
+          reader.skipValue();
+          continue;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+          String key = null;
+          String language = null;
+          boolean builtIn = false;
+          reader.beginObject();
+          while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("key".equals(name)) {
+              key = reader.nextString();
+            } else if ("language".equals(name)) {
+              language = reader.nextString();
+            } else if ("isBuiltIn".equals(name)) {
+              builtIn = "true".equals(reader.nextString());
+            } else {
+              reader.skipValue();
+            }
+          }
+          reader.endObject();
+          if (key != null && language != null && !builtIn) {
+            profiles.put(language, key);
+          }
+        }
+        reader.endArray();
+      }
+      reader.endObject();
+    }
+    return profiles;
+  }
+
+  /**
+   * Activates the rules matching the encoded selection parameter, only those not active in the
+   * profile yet so the settings of an active rule are kept, and returns the number of rules the
+   * server activated.
+   */
+  private int activate(String profile, String selection) throws IOException {
+    List<String> parameters = new ArrayList<>();
+    parameters.add("targetKey=" + encode(profile));
+    parameters.add("qprofile=" + encode(profile));
+    parameters.add("activation=false");
+    parameters.add(selection);
+
+    HttpURLConnection connection = open("/api/qualityprofiles/activate_rules");
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(String.join("&", parameters).getBytes(StandardCharsets.UTF_8));
+    }
+
+    int succeeded = 0;
+    try (JsonPullReader reader = new JsonPullReader(new InputStreamReader(response(connection), StandardCharsets.UTF_8))) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if ("succeeded".equals(reader.nextName())) {
+          succeeded = reader.nextInt();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    }
+    return succeeded;
+  }
+
+  private HttpURLConnection open(String path) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(serverUrl + path).openConnection();
+    connection.setConnectTimeout(TIMEOUT_MILLIS);
+    connection.setReadTimeout(TIMEOUT_MILLIS);
+    if (authorization != null) {
+      connection.setRequestProperty("Authorization", authorization);
+    }
+    return connection;
+  }
+
+  private static InputStream response(HttpURLConnection connection) throws IOException {
+    int status = connection.getResponseCode();
+    if (status != HttpURLConnection.HTTP_OK) {
+      throw new IOException("HTTP " + status + " from " + connection.getURL().getPath());
+    }
+    return connection.getInputStream();
+  }
+
+  private static String encode(String value) throws IOException {
+    return URLEncoder.encode(value, "UTF-8");
+  }
+
+  private Properties load() throws IOException {
+    Properties properties = new Properties();
+    if (stateFile.isFile()) {
+      try (InputStream in = Files.newInputStream(stateFile.toPath())) {
+        properties.load(in);
+      }
+    }
+    return properties;
+  }
+
+  private void store(Properties state) throws IOException {
+    Files.createDirectories(stateFile.getAbsoluteFile().getParentFile().toPath());
+    File tmp = new File(stateFile.getPath() + "." + UUID.randomUUID() + ".tmp");
+    try {
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp.toPath()))) {
+        state.store(out, null);
+      }
+      Files.move(tmp.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp.toPath());
+    }
+  }
+}
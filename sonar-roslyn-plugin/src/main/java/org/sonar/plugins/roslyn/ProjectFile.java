@@ -0,0 +1,210 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.sonar.api.utils.WildcardPattern;
+
+/**
+ * Sources, project references, imports and hint paths of a C# or VB.NET project file, or of an
+ * imported MSBuild file. SDK-style projects compile every source under their directory but bin
+ * and obj, legacy projects list their sources. Items and imports using MSBuild properties cannot
+ * be evaluated here and are left out, conditions are ignored.
+ */
+public class ProjectFile {
+
+  private static final String THIS_FILE_DIRECTORY = "$(MSBuildThisFileDirectory)";
+
+  private final File file;
+  private boolean sdkStyle;
+  private final String dir;
+  private final String extension;
+  private final Set<String> includedFiles = new HashSet<>();
+  private final List<WildcardPattern> includedPatterns = new ArrayList<>();
+  private final List<WildcardPattern> removedPatterns = new ArrayList<>();
+  private final List<File> references = new ArrayList<>();
+  private final List<File> imports = new ArrayList<>();
+  private final List<File> hintPaths = new ArrayList<>();
+
+  private ProjectFile(File file) {
+    this.file = file;
+    this.dir = SolutionFingerprints.key(file.getAbsoluteFile().getParent()) + "/";
+    this.extension = file.getName().toLowerCase(Locale.ENGLISH).endsWith(".vbproj") ? ".vb" : ".cs";
+  }
+
+  public static ProjectFile parse(File file) throws IOException {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    try (InputStream in = Files.newInputStream(file.toPath())) {
+      XMLStreamReader reader = factory.createXMLStreamReader(in);
+      ProjectFile project = null;
+      while (reader.hasNext()) {
+        if (reader.next() != XMLStreamReader.START_ELEMENT) {
+          continue;
+        }
+        String element = reader.getLocalName();
+        if (project == null) {
+          project = new ProjectFile(file);
+        }
+        if ("Sdk".equals(element) || ("Project".equals(element) || "Import".equals(element)) && reader.getAttributeValue(null, "Sdk") != null) {
+          project.sdkStyle = true;
+        }
+        if ("Import".equals(element)) {
+          project.imports(reader.getAttributeValue(null, "Project"));
+        } else if ("HintPath".equals(element)) {
+          project.hintPaths(reader.getElementText());
+        } else {
+          project.item(element, reader.getAttributeValue(null, "Include"), reader.getAttributeValue(null, "Remove"));
+        }
+      }
+      reader.close();
+      if (project == null) {
+        throw new IOException("No project in " + file);
+      }
+      return project;
+    } catch (XMLStreamException e) {
+      throw new IOException("Cannot parse project " + file + ": " + e.getMessage(), e);
+    }
+  }
+
+  private void item(String element, String include, String remove) {
+    if ("ProjectReference".equals(element)) {
+      for (String reference : values(include)) {
+        references.add(SolutionFile.fullPath(file.getAbsoluteFile().getParentFile(), reference));
+      }
+    } else if ("Compile".equals(element)) {
+      for (String source : values(include)) {
+        String path = SolutionFingerprints.key(new File(source).isAbsolute() ? source : dir + source);
+        if (path.contains("*") || path.contains("?")) {
+          includedPatterns.add(WildcardPattern.create(path));
+        } else {
+          includedFiles.add(path);
+        }
+      }
+      for (String source : values(remove)) {
+        removedPatterns.add(WildcardPattern.create(SolutionFingerprints.key(new File(source).isAbsolute() ? source : dir + source)));
+      }
+    }
+  }
+
+  private void imports(String project) {
+    for (String path : values(project == null ? null : project.replace(THIS_FILE_DIRECTORY, ""))) {
+      if (!path.contains("*")) {
+        imports.add(SolutionFile.fullPath(file.getAbsoluteFile().getParentFile(), path));
+      }
+    }
+  }
+
+  private void hintPaths(String text) {
+    for (String path : values(text)) {
+      hintPaths.add(SolutionFile.fullPath(file.getAbsoluteFile().getParentFile(), path));
+    }
+  }
+
+  private static List<String> values(String attribute) {
+    if (attribute == null) {
+      return Collections.emptyList();
+    }
+    List<String> values = new ArrayList<>();
+    for (String value : attribute.split(";")) {
+      String trimmed = value.trim().replace('\\', '/');
+      if (!trimmed.isEmpty() && !trimmed.contains("$(") && !trimmed.contains("@(")) {
+        values.add(trimmed);
+      }
+    }
+    return values;
+  }
+
+  public File file() {
+    return file;
+  }
+
+  public boolean sdkStyle() {
+    return sdkStyle;
+  }
+
+  /**
+   * Referenced project files, relative references resolved like {@link SolutionFile#projects()}.
+   */
+  public List<File> references() {
+    return Collections.unmodifiableList(references);
+  }
+
+  /**
+   * Imported MSBuild files, relative to the directory of this file.
+   */
+  public List<File> imports() {
+    return Collections.unmodifiableList(imports);
+  }
+
+  /**
+   * Referenced binaries with a hint path, relative to the directory of this file.
+   */
+  public List<File> hintPaths() {
+    return Collections.unmodifiableList(hintPaths);
+  }
+
+  /**
+   * True when the project compiles the source with the given key, see {@link SolutionFingerprints#key(String)}.
+   */
+  public boolean compiles(String source) {
+    boolean included = sdkStyle && source.startsWith(dir) && source.endsWith(extension)
+      && !source.startsWith(dir + "bin/") && !source.startsWith(dir + "obj/")
+      || includedFiles.contains(source)
+      || matches(includedPatterns, source);
+    return included && !matches(removedPatterns, source);
+  }
+
+  private static boolean matches(List<WildcardPattern> patterns, String source) {
+    for (WildcardPattern pattern : patterns) {
+      if (pattern.match(source)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Projects of a solution with their references and the sources they compile. Projects whose
+ * file cannot be read are kept as unknown, they may compile any source.
+ */
+public class ProjectGraph {
+
+  public static final Logger LOG = Loggers.get(ProjectGraph.class);
+
+  private final List<File> declared;
+  private final Map<File, ProjectFile> projects;
+  private final Set<File> unknown;
+
+  private ProjectGraph(List<File> declared, Map<File, ProjectFile> projects, Set<File> unknown) {
+    this.declared = declared;
+    this.projects = projects;
+    this.unknown = unknown;
+  }
+
+  public static ProjectGraph build(SolutionFile solution) {
+    Map<File, ProjectFile> projects = new LinkedHashMap<>();
+    Set<File> unknown = new LinkedHashSet<>();
+    for (File project : solution.projects()) {
+      try {
+        projects.put(project, ProjectFile.parse(project));
+      } catch (IOException e) {
+        LOG.debug("Cannot read project '{}': {}", project, e.getMessage());
+        unknown.add(project);
+      }
+    }
+    return new ProjectGraph(solution.projects(), projects, unknown);
+  }
+
+  /**
+   * All projects of the solution, in declaration order.
+   */
+  public List<File> projects() {
+    return declared;
+  }
+
+  /**
+   * Projects of the solution directly referenced by the given project.
+   */
+  public Set<File> references(File project) {
+    ProjectFile parsed = projects.get(project);
+    if (parsed == null) {
+      return Collections.emptySet();
+    }
+    Set<File> references = new LinkedHashSet<>();
+    for (File reference : parsed.references()) {
+      if (projects.containsKey(reference) || unknown.contains(reference)) {
+        references.add(reference);
+      }
+    }
+    return references;
+  }
+
+  /**
+   * Projects compiling the given source.
+   */
+  public Set<File> owners(String path) {
+    String source = SolutionFingerprints.key(path);
+    Set<File> owners = new LinkedHashSet<>();
+    for (ProjectFile project : projects.values()) {
+      if (project.compiles(source)) {
+        owners.add(project.file());
+      }
+    }
+    return owners;
+  }
+
+  /**
+   * Projects compiling at least one of the given sources, with the unknown projects, in
+   * declaration order.
+   */
+  public List<File> projectsOf(Iterable<File> sources) {
+    Set<File> remaining = new LinkedHashSet<>(projects.keySet());
+    Set<File> owning = new LinkedHashSet<>();
+    for (File file : sources) {
+      if (remaining.isEmpty()) {
+        break;
+      }
+      String source = SolutionFingerprints.key(file.getAbsolutePath());
+      for (File project : new ArrayList<>(remaining)) {
+        if (projects.get(project).compiles(source)) {
+          owning.add(project);
+          remaining.remove(project);
+        }
+      }
+    }
+    List<File> scoped = new ArrayList<>();
+    for (File project : declared) {
+      if (owning.contains(project) || unknown.contains(project)) {
+        scoped.add(project);
+      }
+    }
+    return scoped;
+  }
+}
@@ -0,0 +1,348 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.api.utils.text.JsonWriter;
+
+/**
+ * Samples the resident memory, CPU time and threads of a process and its descendants from
+ * /proc while it runs. Peaks are tracked on every sample; the kept time series is halved
+ * whenever it is full so long runs stay bounded. Does nothing where /proc is not available.
+ */
+public class ResourceMonitor implements AutoCloseable {
+
+  public static final Logger LOG = Loggers.get(ResourceMonitor.class);
+  static final int MAX_SAMPLES = 1024;
+  static final long CLOCK_TICKS_PER_SECOND = 100;
+
+  private final Settings settings;
+  private final File proc;
+  private final String name;
+  private final List<Sample> samples = new ArrayList<>();
+  private ScheduledExecutorService timer;
+  private long pid;
+  private long started;
+  private int stride = 1;
+  private long ticks;
+  private long peakRss;
+  private int peakThreads;
+  private int peakProcesses;
+  private long cpuMillis;
+  private boolean rssWarned;
+  private boolean threadsWarned;
+
+  public ResourceMonitor(Settings settings, String name) {
+    this(settings, new File("/proc"), name);
+  }
+
+  ResourceMonitor(Settings settings, File proc, String name) {
+    this.settings = settings;
+    this.proc = proc;
+    this.name = name;
+  }
+
+  /**
+   * Sampling interval and warning thresholds of the runners of one scan.
+   */
+  public static final class Settings {
+    private final long intervalMillis;
+    private final long rssWarningBytes;
+    private final int threadsWarning;
+
+    Settings(long intervalMillis, long rssWarningBytes, int threadsWarning) {
+      this.intervalMillis = intervalMillis;
+      this.rssWarningBytes = rssWarningBytes;
+      this.threadsWarning = threadsWarning;
+    }
+
+    /**
+     * Settings from {@link RoslynPlugin#MONITOR_INTERVAL_KEY} and the warning thresholds.
+     */
+    public static Settings create(Configuration config) {
+      return new Settings(config.getLong(RoslynPlugin.MONITOR_INTERVAL_KEY).orElse(1000L),
+        config.getLong(RoslynPlugin.MONITOR_RSS_WARNING_KEY).orElse(0L) * 1024 * 1024,
+        config.getInt(RoslynPlugin.MONITOR_THREADS_WARNING_KEY).orElse(0));
+    }
+  }
+
+  /**
+   * Starts sampling the given process.
+   */
+  public synchronized void start(Process process) {
+    OptionalLong processId = pid(process);
+    if (settings.intervalMillis <= 0 || !processId.isPresent() || !proc.isDirectory()) {
+      LOG.debug("Resources of {} are not monitored", name);
+      return;
+    }
+    start(processId.getAsLong());
+    timer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "roslyn-monitor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    timer.scheduleAtFixedRate(this::sample, 0, settings.intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  synchronized void start(long processId) {
+    pid = processId;
+    started = System.nanoTime();
+  }
+
+  /**
+   * Process id, from {@code Process.pid()} on Java 9 and later or from the process
+   * implementation on Java 8.
+   */
+  static OptionalLong pid(Process process) {
+    try {
+      return OptionalLong.of((Long) Process.class.getMethod("pid").invoke(process));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Java 8
+    }
+    try {
+      Field field = process.getClass().getDeclaredField("pid");
+      field.setAccessible(true);
+      return OptionalLong.of(field.getLong(process));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return OptionalLong.empty();
+    }
+  }
+
+  synchronized void sample() {
+    try {
+      record(measure());
+    } catch (IOException | RuntimeException e) {
+      LOG.debug("Cannot sample the resources of {}: {}", name, e.getMessage());
+    }
+  }
+
+  private Sample measure() throws IOException {
+    Map<Long, List<Long>> children = new HashMap<>();
+    Map<Long, String[]> stats = new HashMap<>();
+    File[] entries = proc.listFiles((dir, entry) -> entry.chars().allMatch(Character::isDigit));
+    for (File entry : entries == null ? new File[0] : entries) {
+      String[] stat = stat(entry);
+      if (stat != null) {
+        long id = Long.parseLong(entry.getName());
+        stats.put(id, stat);
+        children.computeIfAbsent(Long.parseLong(stat[1]), parent -> new ArrayList<>()).add(id);
+      }
+    }
+
+    long rss = 0;
+    long ticksUsed = 0;
+    int threads = 0;
+    int processes = 0;
+    List<Long> tree = new ArrayList<>(Arrays.asList(pid));
+    for (int i = 0; i < tree.size(); i++) {
+      long id = tree.get(i);
+      String[] stat = stats.get(id);
+      if (stat != null) {
+        processes++;
+        ticksUsed += Long.parseLong(stat[11]) + Long.parseLong(stat[12]);
+        threads += Integer.parseInt(stat[17]);
+        rss += residentBytes(new File(proc, Long.toString(id)));
+      }
+      tree.addAll(children.getOrDefault(id, new ArrayList<>()));
+    }
+    return new Sample(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), rss,
+      ticksUsed * 1000 / CLOCK_TICKS_PER_SECOND, threads, processes);
+  }
+
+  /**
+   * Fields of /proc/[pid]/stat following the command name: state first, then the parent id.
+   */
+  private static String[] stat(File process) {
+    try {
+      String stat = new String(Files.readAllBytes(new File(process, "stat").toPath()), StandardCharsets.UTF_8);
+      String[] fields = stat.substring(stat.lastIndexOf(')') + 2).trim().split(" ");
+      return fields.length > 17 ? fields : null;
+    } catch (IOException | RuntimeException e) {
+      // the process exited
+      return null;
+    }
+  }
+
+  private static long residentBytes(File process) {
+    try {
+      for (String line : Files.readAllLines(new File(process, "status").toPath(), StandardCharsets.UTF_8)) {
+        if (line.startsWith("VmRSS:")) {
+          return Long.parseLong(line.substring(6).replace("kB", "").trim()) * 1024;
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      // the process exited
+    }
+    return 0;
+  }
+
+  private void record(Sample sample) {
+    if (sample.processes == 0) {
+      return;
+    }
+    peakRss = Math.max(peakRss, sample.rssBytes);
+    peakThreads = Math.max(peakThreads, sample.threads);
+    peakProcesses = Math.max(peakProcesses, sample.processes);
+    cpuMillis = Math.max(cpuMillis, sample.cpuMillis);
+    if (settings.rssWarningBytes > 0 && sample.rssBytes >= settings.rssWarningBytes && !rssWarned) {
+      rssWarned = true;
+      LOG.warn("{} uses {} MB of resident memory, above the {} MB set in {}", name, mb(sample.rssBytes), mb(settings.rssWarningBytes),
+        RoslynPlugin.MONITOR_RSS_WARNING_KEY);
+    }
+    if (settings.threadsWarning > 0 && sample.threads >= settings.threadsWarning && !threadsWarned) {
+      threadsWarned = true;
+      LOG.warn("{} runs {} threads, above the {} set in {}", name, sample.threads, settings.threadsWarning,
+        RoslynPlugin.MONITOR_THREADS_WARNING_KEY);
+    }
+
+    if (ticks++ % stride != 0) {
+      return;
+    }
+    if (samples.size() == MAX_SAMPLES) {
+      for (int i = 1; i < samples.size(); i++) {
+        samples.remove(i);
+      }
+      stride *= 2;
+    }
+    samples.add(sample);
+  }
+
+  synchronized List<Sample> samples() {
+    return new ArrayList<>(samples);
+  }
+
+  synchronized long peakRss() {
+    return peakRss;
+  }
+
+  synchronized int peakThreads() {
+    return peakThreads;
+  }
+
+  /**
+   * Resident memory exceeded by the given percentage of the kept samples.
+   */
+  synchronized long rssPercentile(int percentile) {
+    if (samples.isEmpty()) {
+      return 0;
+    }
+    long[] values = samples.stream().mapToLong(sample -> sample.rssBytes).sorted().toArray();
+    return values[Math.max(0, (int) Math.ceil(percentile / 100.0 * values.length) - 1)];
+  }
+
+  @Override
+  public void close() {
+    ScheduledExecutorService running;
+    synchronized (this) {
+      running = timer;
+      timer = null;
+    }
+    if (running == null) {
+      return;
+    }
+    running.shutdownNow();
+    synchronized (this) {
+      if (!samples.isEmpty()) {
+        double seconds = samples.get(samples.size() - 1).millis / 1000.0;
+        LOG.info(String.format(Locale.ENGLISH,
+          "%s resources: peak resident memory %d MB (median %d MB, p95 %d MB), peak %d threads in %d processes, %.1f s of CPU (%.1f cores on average)",
+          name, mb(peakRss), mb(rssPercentile(50)), mb(rssPercentile(95)), peakThreads, peakProcesses, cpuMillis / 1000.0,
+          seconds > 0 ? cpuMillis / 1000.0 / seconds : 0.0));
+      }
+    }
+  }
+
+  /**
+   * Writes the peaks, percentiles and time series as a JSON object.
+   */
+  public synchronized void write(JsonWriter json) {
+    json.beginObject()
+      .prop("name", name)
+      .prop("intervalMillis", settings.intervalMillis * stride)
+      .prop("peakRssBytes", peakRss)
+      .prop("medianRssBytes", rssPercentile(50))
+      .prop("p95RssBytes", rssPercentile(95))
+      .prop("peakThreads", peakThreads)
+      .prop("peakProcesses", peakProcesses)
+      .prop("cpuMillis", cpuMillis);
+    json.name("samples").beginArray();
+    for (Sample sample : samples) {
+      json.beginObject()
+        .prop("millis", sample.millis)
+        .prop("rssBytes", sample.rssBytes)
+        .prop("cpuMillis", sample.cpuMillis)
+        .prop("threads", sample.threads)
+        .prop("processes", sample.processes)
+        .endObject();
+    }
+    json.endArray().endObject();
+  }
+
+  private static long mb(long bytes) {
+    return bytes / 1024 / 1024;
+  }
+
+  static final class Sample {
+    final long millis;
+    final long rssBytes;
+    final long cpuMillis;
+    final int threads;
+    final int processes;
+
+    Sample(long millis, long rssBytes, long cpuMillis, int threads, int processes) {
+      this.millis = millis;
+      this.rssBytes = rssBytes;
+      this.cpuMillis = cpuMillis;
+      this.threads = threads;
+      this.processes = processes;
+    }
+  }
+}
@@ -0,0 +1,421 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Content addressed cache of the issues of each source file, meant to be shared by the scans
+ * of many branches and agents, possibly on a network mount. An entry is keyed by the hashes of
+ * the source, of the compilation context of its project, of the analyzers and of the active
+ * rules, and holds the issues of the file in the binary results format.
+ *
+ * Entries are written to a unique temporary file and moved in place atomically, so readers
+ * only ever see complete entries. Reading an entry updates its modification time, which the
+ * size based eviction uses to remove the least recently used entries first.
+ */
+public class ResultCache {
+
+  public static final Logger LOG = Loggers.get(ResultCache.class);
+  static final String VERSION = "1";
+  private static final String EXTENSION = ".bin";
+  private static final int PARTITIONS = 64;
+
+  private final File dir;
+  private final long maxBytes;
+
+  public ResultCache(File dir, long maxBytes) {
+    this.dir = dir;
+    this.maxBytes = maxBytes;
+  }
+
+  public static String key(String source, String context, String analyzers, String rules) {
+    return Hashes.of(VERSION, source, context, analyzers, rules);
+  }
+
+  File entry(String key) {
+    return new File(new File(dir, key.substring(0, 2)), key + EXTENSION);
+  }
+
+  /**
+   * Whether the entry exists, marking it as recently used when the cache is writable. Entries
+   * of a read-only cache or owned by another user keep their modification time.
+   */
+  public boolean contains(String key) {
+    File entry = entry(key);
+    if (!entry.isFile()) {
+      return false;
+    }
+    if (!entry.setLastModified(System.currentTimeMillis())) {
+      LOG.debug("Result cache: cannot mark '{}' as recently used", entry);
+    }
+    return true;
+  }
+
+  /**
+   * Hands the issues of an entry to the handler, reporting them on the given path.
+   */
+  public void read(String key, final String path, final RoslynResultsDecoder.IssueHandler handler) throws IOException {
+    RoslynResultsDecoder.create(issue -> handler.handle(new RoslynIssue(path, issue.line(), issue.ruleId(), issue.message())))
+      .read(entry(key));
+  }
+
+  public void write(String key, List<RoslynIssue> issues) throws IOException {
+    File entry = entry(key);
+    Files.createDirectories(entry.getParentFile().toPath());
+    File tmp = new File(entry.getParentFile(), entry.getName() + "." + UUID.randomUUID() + ".tmp");
+    try {
+      try (RoslynBinaryResultsWriter writer = new RoslynBinaryResultsWriter(new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+        for (RoslynIssue issue : issues) {
+          writer.write(issue);
+        }
+      }
+      Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp.toPath());
+    }
+  }
+
+  /**
+   * Removes the least recently used entries until the cache holds at most 90% of its maximum
+   * size. Entries removed concurrently by another scan are ignored.
+   */
+  public void evict() throws IOException {
+    if (!dir.isDirectory()) {
+      return;
+    }
+    List<Entry> entries = new ArrayList<>();
+    long total = 0;
+    try (DirectoryStream<Path> buckets = Files.newDirectoryStream(dir.toPath())) {
+      for (Path bucket : buckets) {
+        if (!Files.isDirectory(bucket)) {
+          continue;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(bucket, "*" + EXTENSION)) {
+          for (Path file : files) {
+            try {
+              BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+              entries.add(new Entry(file, attributes.size(), attributes.lastModifiedTime()));
+              total += attributes.size();
+            } catch (NoSuchFileException e) {
+              // removed by another scan
+            }
+          }
+        }
+      }
+    }
+    if (total <= maxBytes) {
+      return;
+    }
+
+    entries.sort(Comparator.comparing(e -> e.lastUsed));
+    long target = maxBytes / 10 * 9;
+    int removed = 0;
+    for (Entry entry : entries) {
+      if (total <= target) {
+        break;
+      }
+      try {
+        Files.deleteIfExists(entry.path);
+        removed++;
+      } catch (IOException e) {
+        LOG.debug("Cannot evict '{}': {}", entry.path, e.getMessage());
+      }
+      total -= entry.size;
+    }
+    LOG.info("Result cache: evicted {} entries, {} bytes left", removed, total);
+  }
+
+  /**
+   * Looks up the entries of every source of the solution. Recorded issues are spooled to a
+   * temporary directory under the given local directory.
+   */
+  public Session open(SolutionFingerprints fingerprints, String analyzers, String rules, File spoolRoot) throws IOException {
+    Files.createDirectories(spoolRoot.toPath());
+    return new Session(fingerprints, analyzers, rules, Files.createTempDirectory(spoolRoot.toPath(), "result-cache").toFile());
+  }
+
+  /**
+   * Cache lookups of one analysis. A project whose sources are all cached does not need to be
+   * analysed, the issues of its sources are replayed instead. The issues reported on the sources
+   * of the analysed projects are spooled to disk, partitioned by source, and stored once the
+   * analysis is complete, so memory is bounded by one partition and not by the whole output.
+   */
+  public final class Session implements AutoCloseable {
+    private final SolutionFingerprints fingerprints;
+    private final File spool;
+    private final Map<String, List<String>> projectSources;
+    private final Map<String, String> keys = new HashMap<>();
+    private final Set<String> cachedProjects = new HashSet<>();
+    private final Map<String, File> pinned = new HashMap<>();
+    private final RoslynBinaryResultsWriter[] partitions = new RoslynBinaryResultsWriter[PARTITIONS];
+    private boolean spoolFailed = false;
+    private int hits = 0;
+    private int misses = 0;
+
+    Session(SolutionFingerprints fingerprints, String analyzers, String rules, File spool) {
+      this.fingerprints = fingerprints;
+      this.spool = spool;
+      this.projectSources = fingerprints.projectSources();
+      Map<String, String> contexts = fingerprints.compilationContexts();
+      for (Map.Entry<String, List<String>> project : projectSources.entrySet()) {
+        boolean cached = true;
+        for (String source : project.getValue()) {
+          String key = key(fingerprints.sources().get(source), contexts.get(project.getKey()), analyzers, rules);
+          keys.put(project.getKey() + "|" + source, key);
+          if (contains(key)) {
+            hits++;
+          } else {
+            misses++;
+            cached = false;
+          }
+        }
+        if (cached) {
+          cachedProjects.add(project.getKey());
+        }
+      }
+      LOG.info("Result cache: {} of {} projects cached, {} hits and {} misses", cachedProjects.size(), projectSources.size(), hits, misses);
+    }
+
+    /**
+     * Projects whose issues are all cached, as fingerprint keys.
+     */
+    public Set<String> cachedProjects() {
+      return cachedProjects;
+    }
+
+    /**
+     * Copies the issues of the given cached projects to the spool, so entries evicted meanwhile
+     * by another scan are not lost, and returns the projects copied. A project with an entry
+     * that cannot be read any more is left out, it has to be analysed.
+     */
+    public synchronized Set<String> pin(Set<String> projects) {
+      Set<String> copied = new HashSet<>();
+      for (String project : projects) {
+        File copy = new File(spool, "replay-" + pinned.size() + EXTENSION);
+        try {
+          try (RoslynBinaryResultsWriter writer = new RoslynBinaryResultsWriter(new BufferedOutputStream(Files.newOutputStream(copy.toPath())))) {
+            for (String source : projectSources.get(project)) {
+              read(keys.get(project + "|" + source), fingerprints.path(source), issue -> {
+                try {
+                  writer.write(issue);
+                } catch (IOException e) {
+                  throw new UncheckedIOException(e);
+                }
+              });
+            }
+          }
+          pinned.put(project, copy);
+          copied.add(project);
+        } catch (IOException | UncheckedIOException e) {
+          LOG.info("Result cache: cannot read the entries of '{}', it will be analysed: {}", project, e.getMessage());
+          try {
+            Files.deleteIfExists(copy.toPath());
+          } catch (IOException ignored) {
+            // removed with the spool
+          }
+        }
+      }
+      return copied;
+    }
+
+    /**
+     * Hands the issues of the given pinned projects to the handler.
+     */
+    public synchronized void replay(Set<String> projects, RoslynResultsDecoder.IssueHandler handler) throws IOException {
+      for (String project : projects) {
+        File copy = pinned.get(project);
+        if (copy == null) {
+          throw new IllegalStateException("Project not pinned: " + project);
+        }
+        RoslynResultsDecoder.create(handler).read(copy);
+      }
+    }
+
+    /**
+     * Handler spooling the issues reported on sources, to be stored by {@link #store(Set)}.
+     */
+    public RoslynResultsDecoder.IssueHandler record(final RoslynResultsDecoder.IssueHandler target) {
+      return issue -> {
+        spool(issue);
+        target.handle(issue);
+      };
+    }
+
+    private synchronized void spool(RoslynIssue issue) {
+      if (spoolFailed) {
+        return;
+      }
+      int partition = partition(SolutionFingerprints.key(issue.path()));
+      try {
+        if (partitions[partition] == null) {
+          partitions[partition] = new RoslynBinaryResultsWriter(new BufferedOutputStream(Files.newOutputStream(partitionFile(partition).toPath())));
+        }
+        partitions[partition].write(issue);
+      } catch (IOException e) {
+        LOG.warn("Result cache: cannot spool the issues, the cache will not be updated: {}", e.getMessage());
+        spoolFailed = true;
+      }
+    }
+
+    /**
+     * Stores the recorded issues of every source of the analysed projects, including sources
+     * without any issue, one spool partition at a time.
+     */
+    public synchronized void store(Set<String> analysedProjects) {
+      try {
+        closePartitions();
+      } catch (IOException e) {
+        LOG.warn("Result cache: cannot spool the issues, the cache will not be updated: {}", e.getMessage());
+        spoolFailed = true;
+      }
+      if (spoolFailed) {
+        return;
+      }
+
+      List<List<String[]>> entries = new ArrayList<>();
+      for (int i = 0; i < PARTITIONS; i++) {
+        entries.add(new ArrayList<String[]>());
+      }
+      for (String project : analysedProjects) {
+        for (String source : projectSources.getOrDefault(project, Collections.<String>emptyList())) {
+          entries.get(partition(source)).add(new String[] {source, keys.get(project + "|" + source)});
+        }
+      }
+
+      int stored = 0;
+      for (int partition = 0; partition < PARTITIONS; partition++) {
+        if (entries.get(partition).isEmpty()) {
+          continue;
+        }
+        Map<String, List<RoslynIssue>> recorded = new HashMap<>();
+        File file = partitionFile(partition);
+        try {
+          if (file.isFile()) {
+            RoslynResultsDecoder.create(issue -> recorded.computeIfAbsent(SolutionFingerprints.key(issue.path()), k -> new ArrayList<>()).add(issue))
+              .read(file);
+          }
+        } catch (IOException e) {
+          LOG.warn("Result cache: cannot read spooled issues, {} entries not stored: {}", entries.get(partition).size(), e.getMessage());
+          continue;
+        }
+        for (String[] entry : entries.get(partition)) {
+          try {
+            write(entry[1], recorded.getOrDefault(entry[0], Collections.<RoslynIssue>emptyList()));
+            stored++;
+          } catch (IOException | UncheckedIOException e) {
+            LOG.warn("Result cache: cannot store the issues of '{}': {}", entry[0], e.getMessage());
+          }
+        }
+      }
+      LOG.info("Result cache: stored {} entries", stored);
+    }
+
+    private File partitionFile(int partition) {
+      return new File(spool, "partition-" + partition + EXTENSION);
+    }
+
+    private void closePartitions() throws IOException {
+      IOException failure = null;
+      for (int i = 0; i < PARTITIONS; i++) {
+        if (partitions[i] != null) {
+          try {
+            partitions[i].close();
+          } catch (IOException e) {
+            failure = e;
+          }
+          partitions[i] = null;
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+    }
+
+    /**
+     * Removes the spooled issues.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+      try {
+        closePartitions();
+      } finally {
+        File[] files = spool.listFiles();
+        if (files != null) {
+          for (File file : files) {
+            Files.deleteIfExists(file.toPath());
+          }
+        }
+        Files.deleteIfExists(spool.toPath());
+      }
+    }
+  }
+
+  private static int partition(String source) {
+    return Math.floorMod(source.hashCode(), PARTITIONS);
+  }
+
+  private static final class Entry {
+    private final Path path;
+    private final long size;
+    private final FileTime lastUsed;
+
+    Entry(Path path, long size, FileTime lastUsed) {
+      this.path = path;
+      this.size = size;
+      this.lastUsed = lastUsed;
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonar.api.batch.rule.ActiveRules;
+
+/**
+ * Rules of the Roslyn repositories active in the quality profiles of the scan, with hash sets
+ * of their ids so issues of inactive rules are dropped with one lookup.
+ */
+public class RoslynActiveRules {
+
+  private final List<ActiveRule> rules;
+  private final Set<String> csIds;
+  private final Set<String> vbIds;
+
+  private RoslynActiveRules(List<ActiveRule> rules, Set<String> csIds, Set<String> vbIds) {
+    this.rules = rules;
+    this.csIds = csIds;
+    this.vbIds = vbIds;
+  }
+
+  public static RoslynActiveRules of(ActiveRules activeRules) {
+    List<ActiveRule> rules = new ArrayList<>();
+    Set<String> csIds = new HashSet<>();
+    Set<String> vbIds = new HashSet<>();
+    for (ActiveRule rule : activeRules.findByRepository(RoslynPlugin.REPOSITORY_KEY_CS)) {
+      rules.add(rule);
+      csIds.add(rule.ruleKey().rule());
+    }
+    for (ActiveRule rule : activeRules.findByRepository(RoslynPlugin.REPOSITORY_KEY_VB)) {
+      rules.add(rule);
+      vbIds.add(rule.ruleKey().rule());
+    }
+    return new RoslynActiveRules(Collections.unmodifiableList(rules), csIds, vbIds);
+  }
+
+  /**
+   * Repository of the issues reported on a path: VB.NET for .vb files, C# otherwise.
+   */
+  public static String repository(String path) {
+    return isVb(path) ? RoslynPlugin.REPOSITORY_KEY_VB : RoslynPlugin.REPOSITORY_KEY_CS;
+  }
+
+  private static boolean isVb(String path) {
+    return path.regionMatches(true, path.length() - 3, ".vb", 0, 3);
+  }
+
+  public List<ActiveRule> rules() {
+    return rules;
+  }
+
+  public int size() {
+    return rules.size();
+  }
+
+  /**
+   * Ids of the active rules of a Roslyn repository.
+   */
+  public Set<String> ids(String repository) {
+    return Collections.unmodifiableSet(RoslynPlugin.REPOSITORY_KEY_VB.equals(repository) ? vbIds : csIds);
+  }
+
+  /**
+   * True when the rule of an issue reported on the path is active.
+   */
+  public boolean isActive(String path, String ruleId) {
+    return (isVb(path) ? vbIds : csIds).contains(ruleId);
+  }
+}
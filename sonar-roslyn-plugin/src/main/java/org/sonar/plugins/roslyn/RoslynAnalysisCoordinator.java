@@ -0,0 +1,128 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.sonar.api.Startable;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.batch.ScannerSide;
+import org.sonar.api.batch.fs.internal.InputModuleHierarchy;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Runs each analysis once per scan and keeps its results for all modules: the first module
+ * needing an analysis runs it, every module then imports the issues on its own files. Runner
+ * files are written to the work directory of the root module. Issues no module imported are
+ * reported and dropped at the end of the scan.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+@ScannerSide()
+public class RoslynAnalysisCoordinator implements Startable {
+
+  public static final Logger LOG = Loggers.get(RoslynAnalysisCoordinator.class);
+
+  private final File root;
+  private final File workDir;
+  private final Map<String, AnalysisResults> analyses = new HashMap<>();
+
+  public RoslynAnalysisCoordinator(InputModuleHierarchy modules) {
+    this(modules.root().getBaseDir().toFile(), modules.root().getWorkDir().toFile());
+  }
+
+  RoslynAnalysisCoordinator(File root, File workDir) {
+    this.root = root.getAbsoluteFile();
+    this.workDir = workDir;
+  }
+
+  /**
+   * Base directory of the root module, containing the files of all modules.
+   */
+  public File root() {
+    return root;
+  }
+
+  public File workDir() {
+    return workDir;
+  }
+
+  /**
+   * Results of the analysis with the given key, run now into the target when no module of the
+   * scan ran it before. A failed analysis is not run again, later modules import what it
+   * produced.
+   */
+  public synchronized AnalysisResults results(String key, AnalysisResults target, Analysis analysis) throws IOException, InterruptedException {
+    AnalysisResults results = analyses.get(key);
+    if (results != null) {
+      LOG.info("Analysis of '{}' already run for this scan, {} files with issues left to import", key, results.files());
+      return results;
+    }
+    results = target;
+    analyses.put(key, results);
+    analysis.run(results);
+    LOG.info("Analysis of '{}' shared by all modules: {} issues on {} files", key, results.issues(), results.files());
+    return results;
+  }
+
+  @Override
+  public void start() {
+    // analyses are run on demand by the modules
+  }
+
+  @Override
+  public synchronized void stop() {
+    for (Map.Entry<String, AnalysisResults> analysis : analyses.entrySet()) {
+      try {
+        List<String> unclaimed = analysis.getValue().discard();
+        if (!unclaimed.isEmpty()) {
+          LOG.warn("Analysis of '{}': issues on {} files were not imported, no module of the scan indexes them", analysis.getKey(), unclaimed.size());
+          for (String path : unclaimed) {
+            LOG.debug("Issues not imported: '{}'", path);
+          }
+        }
+      } catch (IOException e) {
+        LOG.warn("Cannot delete the spooled results of '{}': {}", analysis.getKey(), e.getMessage());
+      }
+    }
+    analyses.clear();
+  }
+
+  public interface Analysis {
+    void run(AnalysisResults results) throws IOException, InterruptedException;
+  }
+}
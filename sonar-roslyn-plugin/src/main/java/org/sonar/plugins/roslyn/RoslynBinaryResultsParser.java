@@ -0,0 +1,348 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Decoder for the binary RoslynRunner results format.
+ *
+ * The file starts with the magic "RSLB", a version byte and three reserved bytes. Records
+ * follow as a type byte, a varint payload length and the payload:
+ * <ul>
+ * <li>{@link #STRING}: UTF-8 bytes, appended to the string table</li>
+ * <li>{@link #MESSAGE_ISSUE}: varint path, line and rule id, path and rule id as table indexes,
+ * then the UTF-8 message up to the end of the record</li>
+ * <li>{@link #ISSUE}: varint path, line, rule id and message, strings as table indexes, written
+ * by version 1</li>
+ * </ul>
+ * Only paths and rule ids are interned, so the string table is bounded by the files and rules
+ * of the analysis and not by its issues.
+ * Unknown record types are skipped. Files are read through memory-mapped windows and records
+ * are decoded in place; only a record straddling two windows is copied.
+ */
+public class RoslynBinaryResultsParser implements RoslynResultsDecoder {
+
+  public static final Logger LOG = Loggers.get(RoslynBinaryResultsParser.class);
+
+  static final byte[] MAGIC = {'R', 'S', 'L', 'B'};
+  static final int VERSION = 2;
+  static final int HEADER_SIZE = 8;
+  static final int STRING = 1;
+  static final int ISSUE = 2;
+  static final int MESSAGE_ISSUE = 3;
+
+  private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+  private static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+  private final IssueHandler handler;
+  private final List<String> strings = new ArrayList<>();
+  private ByteBuffer carry = ByteBuffer.allocate(64 * 1024);
+  private byte[] scratch = new byte[256];
+  private boolean headerRead = false;
+  private long records = 0;
+  private long skipped = 0;
+  private long bytes = 0;
+
+  public RoslynBinaryResultsParser(IssueHandler handler) {
+    this.handler = handler;
+  }
+
+  /**
+   * True when the remaining bytes start with the binary format magic.
+   */
+  public static boolean isBinary(ByteBuffer start) {
+    if (start.remaining() < MAGIC.length) {
+      return false;
+    }
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (start.get(start.position() + i) != MAGIC[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void read(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      for (long position = 0; position < size; position += MAP_WINDOW) {
+        feed(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position)));
+      }
+    } catch (IllegalStateException e) {
+      throw new IOException("Corrupt results file " + file + ": " + e.getMessage(), e);
+    }
+    finish();
+  }
+
+  @Override
+  public void feed(ByteBuffer buffer) {
+    bytes += buffer.remaining();
+    while (carry.position() > 0 && buffer.hasRemaining()) {
+      completeCarriedRecord(buffer);
+    }
+
+    while (buffer.hasRemaining() && decodeRecord(buffer)) {
+      // decoded in place
+    }
+
+    if (buffer.hasRemaining()) {
+      ensureCarryCapacity(buffer.remaining());
+      carry.put(buffer);
+    }
+  }
+
+  @Override
+  public void finish() {
+    if (discardPartialRecord()) {
+      LOG.warn("Results file ends with an incomplete record, it was not imported");
+    }
+  }
+
+  @Override
+  public boolean discardPartialRecord() {
+    boolean partial = hasPartialRecord();
+    if (partial) {
+      skipped++;
+      carry.clear();
+    }
+    return partial;
+  }
+
+  @Override
+  public boolean hasPartialRecord() {
+    return carry.position() > 0;
+  }
+
+  @Override
+  public long records() {
+    return records;
+  }
+
+  @Override
+  public long skipped() {
+    return skipped;
+  }
+
+  @Override
+  public long bytes() {
+    return bytes;
+  }
+
+  /**
+   * Moves bytes from the buffer to the carried partial record until it can be decoded,
+   * or the buffer is exhausted.
+   */
+  private void completeCarriedRecord(ByteBuffer buffer) {
+    int needed = requiredBytes();
+    int missing = needed - carry.position();
+    if (missing > 0) {
+      ensureCarryCapacity(missing);
+      int count = Math.min(missing, buffer.remaining());
+      ByteBuffer slice = buffer.duplicate();
+      slice.limit(slice.position() + count);
+      carry.put(slice);
+      buffer.position(buffer.position() + count);
+      if (count < missing) {
+        return;
+      }
+    }
+
+    carry.flip();
+    if (decodeRecord(carry)) {
+      carry.compact();
+    } else {
+      carry.position(carry.limit());
+      carry.limit(carry.capacity());
+    }
+  }
+
+  /**
+   * Size of the carried record once complete, or one more byte while its length is unknown.
+   */
+  private int requiredBytes() {
+    if (!headerRead) {
+      return HEADER_SIZE;
+    }
+
+    ByteBuffer view = (ByteBuffer) carry.duplicate().flip();
+    if (view.remaining() < 2) {
+      return view.remaining() + 1;
+    }
+    view.get();
+    long length = readVarint(view);
+    if (length < 0) {
+      return view.limit() + 1;
+    }
+    return view.position() + checkLength(length);
+  }
+
+  private boolean decodeRecord(ByteBuffer buffer) {
+    int start = buffer.position();
+    if (!headerRead) {
+      if (buffer.remaining() < HEADER_SIZE) {
+        return false;
+      }
+      readHeader(buffer);
+      return true;
+    }
+
+    if (buffer.remaining() < 2) {
+      return false;
+    }
+    int type = buffer.get() & 0xFF;
+    long length = readVarint(buffer);
+    if (length < 0 || buffer.remaining() < checkLength(length)) {
+      buffer.position(start);
+      return false;
+    }
+
+    int end = buffer.position() + (int) length;
+    if (type == STRING) {
+      strings.add(decodeString(buffer, (int) length));
+    } else if (type == ISSUE) {
+      decodeIssue(buffer);
+    } else if (type == MESSAGE_ISSUE) {
+      decodeMessageIssue(buffer, end);
+    } else {
+      LOG.debug("Skip unknown record type {}", type);
+    }
+    buffer.position(end);
+    return true;
+  }
+
+  private void readHeader(ByteBuffer buffer) {
+    if (!isBinary(buffer)) {
+      throw new IllegalStateException("missing binary results header");
+    }
+    buffer.position(buffer.position() + MAGIC.length);
+    int version = buffer.get() & 0xFF;
+    if (version > VERSION) {
+      throw new IllegalStateException("unsupported binary results version " + version);
+    }
+    buffer.position(buffer.position() + HEADER_SIZE - MAGIC.length - 1);
+    headerRead = true;
+  }
+
+  private void decodeIssue(ByteBuffer buffer) {
+    long path = readVarint(buffer);
+    long line = readVarint(buffer);
+    long rule = readVarint(buffer);
+    long message = readVarint(buffer);
+    if (!isString(path) || !isString(rule) || !isString(message) || line < 0 || line > Integer.MAX_VALUE) {
+      skipped++;
+      LOG.debug("Skip malformed issue record {}", records + skipped);
+      return;
+    }
+
+    records++;
+    handler.handle(new RoslynIssue(strings.get((int) path), (int) line, strings.get((int) rule), strings.get((int) message)));
+  }
+
+  private void decodeMessageIssue(ByteBuffer buffer, int end) {
+    long path = readVarint(buffer);
+    long line = readVarint(buffer);
+    long rule = readVarint(buffer);
+    if (!isString(path) || !isString(rule) || line < 0 || line > Integer.MAX_VALUE || buffer.position() > end) {
+      skipped++;
+      LOG.debug("Skip malformed issue record {}", records + skipped);
+      return;
+    }
+
+    records++;
+    String message = decodeString(buffer, end - buffer.position());
+    handler.handle(new RoslynIssue(strings.get((int) path), (int) line, strings.get((int) rule), message));
+  }
+
+  private boolean isString(long index) {
+    return index >= 0 && index < strings.size();
+  }
+
+  private String decodeString(ByteBuffer buffer, int length) {
+    if (buffer.hasArray()) {
+      return new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+    }
+
+    if (scratch.length < length) {
+      scratch = new byte[Math.max(length, scratch.length * 2)];
+    }
+    buffer.get(scratch, 0, length);
+    return new String(scratch, 0, length, StandardCharsets.UTF_8);
+  }
+
+  private static int checkLength(long length) {
+    if (length > MAX_RECORD_SIZE) {
+      throw new IllegalStateException("record of " + length + " bytes exceeds the maximum size");
+    }
+    return (int) length;
+  }
+
+  /**
+   * Reads an unsigned LEB128 varint, or returns -1 and leaves the position undefined when
+   * the buffer ends before the last byte.
+   */
+  static long readVarint(ByteBuffer buffer) {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      byte b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IllegalStateException("varint too long");
+  }
+
+  private void ensureCarryCapacity(int count) {
+    if (carry.remaining() < count) {
+      ByteBuffer grown = ByteBuffer.allocate(Math.max(carry.capacity() * 2, carry.position() + count));
+      carry.flip();
+      grown.put(carry);
+      carry = grown;
+    }
+  }
+}
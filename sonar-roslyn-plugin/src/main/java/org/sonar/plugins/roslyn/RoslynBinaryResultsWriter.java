@@ -0,0 +1,112 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes issues in the binary results format read by {@link RoslynBinaryResultsParser}, with
+ * interned paths and rule ids and inline messages. Mirrors the writer of RoslynRunner.
+ */
+public class RoslynBinaryResultsWriter implements AutoCloseable {
+
+  private static final int MAX_INTERNED_STRINGS = 1 << 20;
+
+  private final OutputStream out;
+  private final Map<String, Integer> strings = new HashMap<>();
+  private final ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+  private int nextString = 0;
+
+  public RoslynBinaryResultsWriter(OutputStream out) throws IOException {
+    this.out = out;
+    out.write(RoslynBinaryResultsParser.MAGIC);
+    out.write(RoslynBinaryResultsParser.VERSION);
+    out.write(new byte[RoslynBinaryResultsParser.HEADER_SIZE - RoslynBinaryResultsParser.MAGIC.length - 1]);
+  }
+
+  public void write(RoslynIssue issue) throws IOException {
+    int path = stringIndex(issue.path());
+    int rule = stringIndex(issue.ruleId());
+
+    payload.reset();
+    writeVarint(payload, path);
+    writeVarint(payload, issue.line());
+    writeVarint(payload, rule);
+    payload.write(issue.message().getBytes(StandardCharsets.UTF_8));
+    writeRecord(RoslynBinaryResultsParser.MESSAGE_ISSUE, payload.toByteArray());
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+
+  /**
+   * Index of the string in the table, written first when new. Once the table holds
+   * {@link #MAX_INTERNED_STRINGS} entries new strings are written without being remembered.
+   */
+  private int stringIndex(String value) throws IOException {
+    Integer index = strings.get(value);
+    if (index != null) {
+      return index;
+    }
+
+    writeRecord(RoslynBinaryResultsParser.STRING, value.getBytes(StandardCharsets.UTF_8));
+    int newIndex = nextString++;
+    if (strings.size() < MAX_INTERNED_STRINGS) {
+      strings.put(value, newIndex);
+    }
+    return newIndex;
+  }
+
+  private void writeRecord(int type, byte[] data) throws IOException {
+    out.write(type);
+    writeVarint(out, data.length);
+    out.write(data);
+  }
+
+  static void writeVarint(OutputStream stream, long value) throws IOException {
+    long remaining = value;
+    while ((remaining & ~0x7FL) != 0) {
+      stream.write((int) ((remaining & 0x7F) | 0x80));
+      remaining >>>= 7;
+    }
+    stream.write((int) remaining);
+  }
+}
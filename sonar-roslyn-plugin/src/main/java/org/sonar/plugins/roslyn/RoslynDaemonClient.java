@@ -0,0 +1,311 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+import org.sonar.api.utils.command.StreamConsumer;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Runs analyses in a long lived RoslynRunner started with /daemon, which keeps analyzer
+ * assemblies and synchronized rules loaded between scans. The daemon listens on loopback
+ * and publishes its port, runner fingerprint and access token in a port file. A daemon
+ * started from other runner binaries answers the handshake with a mismatch and exits, and
+ * a new one is started. A daemon already running the analysis of another scan answers BUSY, or
+ * does not complete the handshake in time when it predates that answer: it is left alone and the
+ * caller falls back to running the runner as a single process, as when the daemon cannot be used
+ * or stays silent longer than the read timeout.
+ */
+public class RoslynDaemonClient {
+
+  public static final Logger LOG = Loggers.get(RoslynDaemonClient.class);
+  static final String PROTOCOL_VERSION = "1";
+  static final String PORT_FILE = "daemon.port";
+  private static final String LOCK_FILE = "daemon.lock";
+  private static final String LOG_FILE = "daemon.log";
+  private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+  private static final int HANDSHAKE_TIMEOUT_MILLIS = 10000;
+  static final long DEFAULT_READ_TIMEOUT_MILLIS = 30L * 60 * 1000;
+  private static final long START_TIMEOUT_MILLIS = 30000;
+  private static final long POLL_MILLIS = 200;
+
+  private final File stateDir;
+  private final File executable;
+  private final int idleSeconds;
+  private final int readTimeoutMillis;
+  private final long startTimeoutMillis;
+  private final int handshakeTimeoutMillis;
+  private final Starter starter;
+  private String fingerprint;
+
+  public RoslynDaemonClient(File stateDir, File executable, int idleSeconds) {
+    this(stateDir, executable, idleSeconds, DEFAULT_READ_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * Client giving up on a daemon that sends nothing for the given time while analysing.
+   */
+  public RoslynDaemonClient(File stateDir, File executable, int idleSeconds, long readTimeoutMillis) {
+    this(stateDir, executable, idleSeconds, readTimeoutMillis, START_TIMEOUT_MILLIS, HANDSHAKE_TIMEOUT_MILLIS, RoslynDaemonClient::startProcess);
+  }
+
+  RoslynDaemonClient(File stateDir, File executable, int idleSeconds, long readTimeoutMillis, long startTimeoutMillis, int handshakeTimeoutMillis,
+    Starter starter) {
+    this.stateDir = stateDir;
+    this.executable = executable;
+    this.idleSeconds = idleSeconds;
+    this.readTimeoutMillis = (int) Math.min(Integer.MAX_VALUE, readTimeoutMillis);
+    this.startTimeoutMillis = startTimeoutMillis;
+    this.handshakeTimeoutMillis = handshakeTimeoutMillis;
+    this.starter = starter;
+  }
+
+  /**
+   * Starts the daemon process, the output of the daemon is appended to the log file.
+   */
+  interface Starter {
+    void start(List<String> command, File directory, File log) throws IOException;
+  }
+
+  /**
+   * Default location of the daemon state, shared by all scans of the user.
+   */
+  public static File defaultStateDir() {
+    return new File(System.getProperty("user.home"), ".sonar/roslyn/daemon");
+  }
+
+  /**
+   * Runs the runner arguments in the daemon and returns its exit code, or nothing when the
+   * daemon could not be reached or started.
+   */
+  public OptionalInt execute(List<String> arguments, StreamConsumer output) throws InterruptedException {
+    try {
+      Files.createDirectories(stateDir.toPath());
+      try (Socket socket = connectOrStart()) {
+        if (socket == null) {
+          return OptionalInt.empty();
+        }
+        return OptionalInt.of(run(socket, arguments, output));
+      }
+    } catch (IOException e) {
+      LOG.warn("RoslynRunner daemon failed: {}", e.getMessage());
+      return OptionalInt.empty();
+    }
+  }
+
+  private Socket connectOrStart() throws IOException, InterruptedException {
+    try (FileChannel channel = FileChannel.open(new File(stateDir, LOCK_FILE).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      FileLock lock = channel.lock()) {
+      Connection connection = connect();
+      if (connection.socket != null) {
+        LOG.info("Connected to running RoslynRunner daemon");
+        return connection.socket;
+      }
+      if (connection.busy) {
+        LOG.info("RoslynRunner daemon is busy with another analysis");
+        return null;
+      }
+
+      start();
+      long deadline = System.currentTimeMillis() + startTimeoutMillis;
+      while (System.currentTimeMillis() < deadline) {
+        Thread.sleep(POLL_MILLIS);
+        connection = connect();
+        if (connection.socket != null) {
+          LOG.info("Started RoslynRunner daemon");
+          return connection.socket;
+        }
+        if (connection.busy) {
+          LOG.info("Started RoslynRunner daemon is busy with another analysis");
+          return null;
+        }
+      }
+      LOG.warn("RoslynRunner daemon did not start within {} ms, see {}", startTimeoutMillis, new File(stateDir, LOG_FILE));
+      return null;
+    }
+  }
+
+  /**
+   * Connects and completes the handshake with the published daemon. There is no usable daemon
+   * when none is published, its port refuses connections or it runs other runner binaries, a
+   * daemon refusing the fingerprint exits on its own. A daemon accepting the connection but
+   * answering BUSY or nothing within the handshake timeout is alive and serving another scan.
+   */
+  private Connection connect() throws IOException {
+    File portFile = new File(stateDir, PORT_FILE);
+    if (!portFile.isFile()) {
+      return Connection.ABSENT;
+    }
+    String[] state = new String(Files.readAllBytes(portFile.toPath()), StandardCharsets.UTF_8).trim().split(" ");
+    if (state.length < 3) {
+      return Connection.ABSENT;
+    }
+
+    Socket socket = new Socket();
+    try {
+      socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(state[0])), CONNECT_TIMEOUT_MILLIS);
+    } catch (IOException | NumberFormatException e) {
+      LOG.debug("RoslynRunner daemon not reachable: {}", e.getMessage());
+      socket.close();
+      return Connection.ABSENT;
+    }
+    try {
+      socket.setSoTimeout(handshakeTimeoutMillis);
+      Writer writer = writer(socket);
+      writer.write("HELLO " + PROTOCOL_VERSION + " " + fingerprint() + " " + state[2] + "\n");
+      writer.flush();
+      String answer = reader(socket).readLine();
+      if ("OK".equals(answer)) {
+        return new Connection(socket, false);
+      }
+      LOG.debug("RoslynRunner daemon refused the handshake: {}", answer);
+      socket.close();
+      return "BUSY".equals(answer) ? Connection.BUSY : Connection.ABSENT;
+    } catch (SocketTimeoutException e) {
+      LOG.debug("RoslynRunner daemon did not answer the handshake within {} ms", handshakeTimeoutMillis);
+      socket.close();
+      return Connection.BUSY;
+    } catch (IOException e) {
+      LOG.debug("RoslynRunner daemon not reachable: {}", e.getMessage());
+      socket.close();
+      return Connection.ABSENT;
+    }
+  }
+
+  /**
+   * Outcome of the handshake: a connection ready to run an analysis, or none because the daemon
+   * is absent or busy.
+   */
+  private static final class Connection {
+    static final Connection ABSENT = new Connection(null, false);
+    static final Connection BUSY = new Connection(null, true);
+
+    private final Socket socket;
+    private final boolean busy;
+
+    Connection(Socket socket, boolean busy) {
+      this.socket = socket;
+      this.busy = busy;
+    }
+  }
+
+  private void start() throws IOException {
+    List<String> command = new ArrayList<>();
+    if (!OsUtils.isWindows()) {
+      command.add("mono");
+    }
+    command.add(executable.getAbsolutePath());
+    command.add("/daemon");
+    command.add("/portfile:" + new File(stateDir, PORT_FILE).getAbsolutePath());
+    command.add("/idle:" + idleSeconds);
+
+    Files.deleteIfExists(new File(stateDir, PORT_FILE).toPath());
+    starter.start(command, stateDir, new File(stateDir, LOG_FILE));
+  }
+
+  private static void startProcess(List<String> command, File directory, File log) throws IOException {
+    processBuilder(command, directory, log).start();
+  }
+
+  /**
+   * Builder of the daemon process. MSBuild node reuse is disabled: nodes left behind by the
+   * daemon would outlive it and keep the files of the analysed solutions locked.
+   */
+  static ProcessBuilder processBuilder(List<String> command, File directory, File log) {
+    ProcessBuilder builder = new ProcessBuilder(command)
+      .directory(directory)
+      .redirectErrorStream(true)
+      .redirectOutput(ProcessBuilder.Redirect.appendTo(log));
+    builder.environment().put("MSBUILDDISABLENODEREUSE", "1");
+    return builder;
+  }
+
+  private int run(Socket socket, List<String> arguments, StreamConsumer output) throws IOException {
+    socket.setSoTimeout(readTimeoutMillis);
+    Writer writer = writer(socket);
+    writer.write("RUN\n");
+    for (String argument : arguments) {
+      writer.write(argument + "\n");
+    }
+    writer.write("\n");
+    writer.flush();
+
+    BufferedReader reader = reader(socket);
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.startsWith("OUT ")) {
+        output.consumeLine(line.substring(4));
+      } else if (line.startsWith("EXIT ")) {
+        return Integer.parseInt(line.substring(5).trim());
+      }
+    }
+    throw new IOException("connection closed before the analysis completed");
+  }
+
+  /**
+   * SHA-256 of the runner executable, the daemon computes the same value from its own binary.
+   */
+  String fingerprint() throws IOException {
+    if (fingerprint == null) {
+      fingerprint = Hashes.of(executable);
+    }
+    return fingerprint;
+  }
+
+  private static Writer writer(Socket socket) throws IOException {
+    return new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+  }
+
+  private static BufferedReader reader(Socket socket) throws IOException {
+    return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+  }
+}
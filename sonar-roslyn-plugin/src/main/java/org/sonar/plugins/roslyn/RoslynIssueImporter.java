@@ -0,0 +1,226 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.sensor.SensorContext;
+import org.sonar.api.batch.sensor.issue.NewIssue;
+import org.sonar.api.batch.sensor.issue.NewIssueLocation;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Imports parsed issues in three stages. The parsing thread groups issues into batches,
+ * a fork-join pool resolves and validates each batch, and the parsing thread saves the
+ * batches back in parse order, grouped per file. With a single thread every stage runs
+ * inline on the parsing thread. Issues of inactive rules, and issues already handled with the
+ * same path, line, rule and message, are dropped before they are batched. An issue on line 0
+ * has no location in the file and is saved on the file itself.
+ */
+public class RoslynIssueImporter implements RoslynResultsDecoder.IssueHandler, AutoCloseable {
+
+  public static final Logger LOG = Loggers.get(RoslynIssueImporter.class);
+  static final int BATCH_SIZE = 4096;
+
+  private final SensorContext context;
+  private final InputFileIndex index;
+  private final RoslynActiveRules activeRules;
+  private final IssueDeduplicator deduplicator = new IssueDeduplicator();
+  private final ForkJoinPool pool;
+  private final int maxPendingBatches;
+  private final Deque<ForkJoinTask<ResolvedBatch>> pending = new ArrayDeque<>();
+  private List<RoslynIssue> batch = new ArrayList<>(BATCH_SIZE);
+
+  private long saved = 0;
+  private long invalid = 0;
+  private long inactive = 0;
+
+  public RoslynIssueImporter(SensorContext context, InputFileIndex index, RoslynActiveRules activeRules, int threads) {
+    this.context = context;
+    this.index = index;
+    this.activeRules = activeRules;
+    this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    this.maxPendingBatches = threads * 2;
+  }
+
+  /**
+   * Number of import threads from configuration, all available cores when not set.
+   */
+  public static int threads(SensorContext context) {
+    int threads = context.config().getInt(RoslynPlugin.IMPORT_THREADS_KEY).orElse(0);
+    return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+  }
+
+  @Override
+  public void handle(RoslynIssue issue) {
+    if (!activeRules.isActive(issue.path(), issue.ruleId())) {
+      inactive++;
+      return;
+    }
+    if (!deduplicator.add(issue)) {
+      return;
+    }
+    batch.add(issue);
+    if (batch.size() == BATCH_SIZE) {
+      submit();
+    }
+  }
+
+  /**
+   * Saves everything handled so far.
+   */
+  public void finish() {
+    submit();
+    while (!pending.isEmpty()) {
+      save(pending.poll().join());
+    }
+    LOG.info("Saved {} issues, {} issues with invalid lines and {} issues of inactive rules were not imported", saved, invalid, inactive);
+    deduplicator.logStatistics();
+  }
+
+  public long saved() {
+    return saved;
+  }
+
+  public long inactive() {
+    return inactive;
+  }
+
+  public long duplicates() {
+    return deduplicator.duplicates();
+  }
+
+  @Override
+  public void close() {
+    if (pool != null) {
+      pool.shutdownNow();
+    }
+  }
+
+  private void submit() {
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    final List<RoslynIssue> issues = batch;
+    batch = new ArrayList<>(BATCH_SIZE);
+    if (pool == null) {
+      save(resolve(issues));
+      return;
+    }
+
+    pending.add(pool.submit(() -> resolve(issues)));
+    while (pending.size() > maxPendingBatches) {
+      save(pending.poll().join());
+    }
+  }
+
+  private ResolvedBatch resolve(List<RoslynIssue> issues) {
+    ResolvedBatch resolved = new ResolvedBatch();
+    for (RoslynIssue issue : issues) {
+      InputFile inputFile = index.resolve(issue.path());
+      if (inputFile == null) {
+        continue;
+      }
+
+      if (issue.line() < 0) {
+        resolved.invalid++;
+        LOG.debug("Invalid line {} - issue will not be imported: '{}' : '{}'", issue.line(), issue.path(), issue.message());
+        continue;
+      }
+
+      String repository = RoslynActiveRules.repository(issue.path());
+      List<ResolvedIssue> fileIssues = resolved.issues.get(inputFile);
+      if (fileIssues == null) {
+        fileIssues = new ArrayList<>();
+        resolved.issues.put(inputFile, fileIssues);
+      }
+      fileIssues.add(new ResolvedIssue(RuleKey.of(repository, issue.ruleId()), issue.line(), issue.message()));
+    }
+    return resolved;
+  }
+
+  private void save(ResolvedBatch resolved) {
+    invalid += resolved.invalid;
+    for (Map.Entry<InputFile, List<ResolvedIssue>> entry : resolved.issues.entrySet()) {
+      InputFile inputFile = entry.getKey();
+      int lines = inputFile.lines();
+      for (ResolvedIssue issue : entry.getValue()) {
+        if (issue.line > lines) {
+          invalid++;
+          LOG.debug("Invalid line {} - issue will not be imported: '{}' : '{}'", issue.line, inputFile, issue.message);
+          continue;
+        }
+
+        NewIssue newIssue = context.newIssue().forRule(issue.ruleKey);
+        NewIssueLocation location = newIssue.newLocation()
+          .on(inputFile)
+          .message(issue.message);
+        if (issue.line > 0) {
+          location.at(inputFile.selectLine(issue.line));
+        }
+
+        newIssue.at(location);
+        newIssue.save();
+        saved++;
+      }
+    }
+  }
+
+  private static final class ResolvedBatch {
+    private final Map<InputFile, List<ResolvedIssue>> issues = new LinkedHashMap<>();
+    private int invalid = 0;
+  }
+
+  private static final class ResolvedIssue {
+    private final RuleKey ruleKey;
+    private final int line;
+    private final String message;
+
+    ResolvedIssue(RuleKey ruleKey, int line, String message) {
+      this.ruleKey = ruleKey;
+      this.line = line;
+      this.message = message;
+    }
+  }
+}
@@ -67,7 +67,7 @@ public class RoslynPlugin implements Plugin {
       .name("Enable rules")
       .type(PropertyType.BOOLEAN)
       .defaultValue("true")
-      .description("All created rules will be enabled in the current profile")
+      .description("Rules of new analyzers are activated once in the quality profile of the project, rules deactivated later stay deactivated. Built-in profiles are not changed.")
       .build(),
       PropertyDefinition.builder(RoslynSensor.ROSLYN_SENSOR_ENABLED)
       .name("Enable/Disable Sensor")
@@ -80,7 +80,139 @@ public class RoslynPlugin implements Plugin {
       .type(PropertyType.BOOLEAN)
       .defaultValue("true")
       .onQualifiers(Qualifiers.PROJECT)
-      .description("If true sonar will enforce profile define in sonar web, if false profile found in ruleset will be sync in sonar server. A new profile will be created per project. This will be ignored if sync type is false.  (might require 2 runs to have everything synched)")
+      .description("If true sonar will enforce profile define in sonar web, if false profile found in ruleset will be sync in sonar server. A new profile will be created per project. This will be ignored if sync type is false.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.CREATE_RULES_KEY)
+      .name("Create rules at scan time")
+      .type(PropertyType.BOOLEAN)
+      .defaultValue("false")
+      .onQualifiers(Qualifiers.PROJECT)
+      .description("Let RoslynRunner create in the server, through the web service, the rules of analyzers missing from the rule catalog bundled in the plugin. Needs administrator credentials and might require 2 runs.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.IMPORT_THREADS_KEY)
+      .name("Import threads")
+      .type(PropertyType.INTEGER)
+      .defaultValue("0")
+      .description("Number of threads resolving issues while importing results, 0 uses all available cores.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.STREAMING_IMPORT_KEY)
+      .name("Streaming import")
+      .type(PropertyType.BOOLEAN)
+      .defaultValue("false")
+      .onQualifiers(Qualifiers.PROJECT)
+      .description("Import issues while RoslynRunner is still writing them instead of waiting for it to finish.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.OUTPUT_FORMAT_KEY)
+      .name("Results format")
+      .type(PropertyType.SINGLE_SELECT_LIST)
+      .options(RoslynPlugin.OUTPUT_FORMAT_BINARY, RoslynPlugin.OUTPUT_FORMAT_TEXT)
+      .defaultValue(RoslynPlugin.OUTPUT_FORMAT_BINARY)
+      .onQualifiers(Qualifiers.PROJECT)
+      .description("Format RoslynRunner uses to hand results to the plugin. Text is kept for older runners and troubleshooting.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.SARIF_REPORTS_KEY)
+      .name("SARIF error logs")
+      .multiValues(true)
+      .onlyOnQualifiers(Qualifiers.PROJECT)
+      .description("Comma separated SARIF error logs written by the compiler with /errorlog. When set, diagnostics are imported from these logs and RoslynRunner is not executed. Relative paths are resolved from the project base directory.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.DAEMON_KEY)
+      .name("RoslynRunner daemon")
+      .type(PropertyType.BOOLEAN)
+      .defaultValue("false")
+      .description("Run analyses in a RoslynRunner daemon kept alive between scans, so analyzers and rules are not loaded again on every scan. Falls back to a single RoslynRunner process when the daemon cannot be used.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.DAEMON_IDLE_KEY)
+      .name("RoslynRunner daemon idle timeout")
+      .type(PropertyType.INTEGER)
+      .defaultValue("600")
+      .description("Seconds without analysis request after which the RoslynRunner daemon exits.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.SHARDS_KEY)
+      .name("Analysis shards")
+      .type(PropertyType.INTEGER)
+      .defaultValue("0")
+      .onQualifiers(Qualifiers.PROJECT)
+      .description("Number of RoslynRunner processes analysing groups of projects of the solution at the same time, 0 uses the number of available cores. Not used with streaming import or the daemon.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.ALL_SOLUTIONS_KEY)
+      .name("Analyse all solutions")
+      .type(PropertyType.BOOLEAN)
+      .defaultValue("false")
+      .onQualifiers(Qualifiers.PROJECT)
+      .description("Analyse every solution found under the base directory, projects shared between solutions are analysed once. No incremental analysis in this mode.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.SOLUTION_EXCLUSIONS_KEY)
+      .name("Solution exclusions")
+      .multiValues(true)
+      .onQualifiers(Qualifiers.PROJECT)
+      .description("Patterns of directories and solutions, relative to the base directory, not to analyse when all solutions are analysed. sonar.exclusions apply as well.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.SOLUTION_RUNNERS_KEY)
+      .name("Concurrent solutions")
+      .type(PropertyType.INTEGER)
+      .defaultValue("2")
+      .onQualifiers(Qualifiers.PROJECT)
+      .description("Number of solutions analysed at the same time when all solutions are analysed.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.INCREMENTAL_FULL_KEY)
+      .name("Force full analysis")
+      .type(PropertyType.BOOLEAN)
+      .defaultValue("false")
+      .onQualifiers(Qualifiers.PROJECT)
+      .description("Analyse every project of the solution instead of only those changed since the last analysis.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.INCREMENTAL_DIR_KEY)
+      .name("Incremental analysis directory")
+      .description("Directory keeping the last analysis of each solution for the incremental analysis, ~/.sonar/roslyn/incremental when empty.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.INCREMENTAL_SIZE_KEY)
+      .name("Incremental analysis size")
+      .type(PropertyType.INTEGER)
+      .defaultValue("1024")
+      .description("Maximum size in MB of the incremental analysis directory, least recently analysed solutions are evicted first.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.RESULT_CACHE_DIR_KEY)
+      .name("Result cache directory")
+      .description("Directory, possibly shared between agents, caching the issues of each source file. Disabled when empty.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.RESULT_CACHE_SIZE_KEY)
+      .name("Result cache size")
+      .type(PropertyType.INTEGER)
+      .defaultValue("2048")
+      .description("Maximum size in MB of the result cache, least recently used entries are evicted first.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.TIMEOUT_KEY)
+      .name("Analysis time budget")
+      .type(PropertyType.INTEGER)
+      .defaultValue("0")
+      .onQualifiers(Qualifiers.PROJECT)
+      .description("Minutes RoslynRunner may run before it is cancelled and the issues found so far are imported, 0 for no limit.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.INACTIVITY_TIMEOUT_KEY)
+      .name("Analysis inactivity timeout")
+      .type(PropertyType.INTEGER)
+      .defaultValue("0")
+      .onQualifiers(Qualifiers.PROJECT)
+      .description("Seconds without any RoslynRunner output after which it is cancelled and the issues found so far are imported, 0 to disable.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.MONITOR_INTERVAL_KEY)
+      .name("Resource monitor interval")
+      .type(PropertyType.INTEGER)
+      .defaultValue("1000")
+      .description("Milliseconds between two samples of the memory, CPU and threads used by RoslynRunner, 0 to disable. Needs /proc.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.MONITOR_RSS_WARNING_KEY)
+      .name("Resident memory warning")
+      .type(PropertyType.INTEGER)
+      .defaultValue("0")
+      .description("MB of resident memory of RoslynRunner and its child processes above which a warning is logged, 0 to disable.")
+      .build(),
+      PropertyDefinition.builder(RoslynPlugin.MONITOR_THREADS_WARNING_KEY)
+      .name("Thread count warning")
+      .type(PropertyType.INTEGER)
+      .defaultValue("0")
+      .description("Threads of RoslynRunner and its child processes above which a warning is logged, 0 to disable.")
       .build(),
       PropertyDefinition.builder(RoslynPlugin.ADDITIONAL_FILES_KEY)
         .name("Additional files key.")
@@ -116,6 +248,29 @@ public class RoslynPlugin implements Plugin {
   public static final String DIAGNOSTICS_PATH_KEY = "sonar.roslyn.diagnostic.path";  
   public static final String ENABLE_RULES_KEY = "sonar.roslyn.enable.rules";
   public static final String SYNC_PROFILE_TYPE_KEY = "sonar.roslyn.sync.type";
+  public static final String IMPORT_THREADS_KEY = "sonar.roslyn.import.threads";
+  public static final String STREAMING_IMPORT_KEY = "sonar.roslyn.import.streaming";
+  public static final String OUTPUT_FORMAT_KEY = "sonar.roslyn.output.format";
+  public static final String OUTPUT_FORMAT_BINARY = "binary";
+  public static final String OUTPUT_FORMAT_TEXT = "text";
+  public static final String SARIF_REPORTS_KEY = "sonar.roslyn.sarif.reports";
+  public static final String CREATE_RULES_KEY = "sonar.roslyn.rules.create";
+  public static final String DAEMON_KEY = "sonar.roslyn.daemon";
+  public static final String DAEMON_IDLE_KEY = "sonar.roslyn.daemon.idle";
+  public static final String SHARDS_KEY = "sonar.roslyn.shards";
+  public static final String ALL_SOLUTIONS_KEY = "sonar.roslyn.solutions.all";
+  public static final String SOLUTION_EXCLUSIONS_KEY = "sonar.roslyn.solutions.exclusions";
+  public static final String SOLUTION_RUNNERS_KEY = "sonar.roslyn.solutions.concurrent";
+  public static final String INCREMENTAL_FULL_KEY = "sonar.roslyn.incremental.full";
+  public static final String INCREMENTAL_DIR_KEY = "sonar.roslyn.incremental.dir";
+  public static final String INCREMENTAL_SIZE_KEY = "sonar.roslyn.incremental.size";
+  public static final String RESULT_CACHE_DIR_KEY = "sonar.roslyn.cache.dir";
+  public static final String RESULT_CACHE_SIZE_KEY = "sonar.roslyn.cache.size";
+  public static final String TIMEOUT_KEY = "sonar.roslyn.timeout";
+  public static final String INACTIVITY_TIMEOUT_KEY = "sonar.roslyn.inactivityTimeout";
+  public static final String MONITOR_INTERVAL_KEY = "sonar.roslyn.monitor.interval";
+  public static final String MONITOR_RSS_WARNING_KEY = "sonar.roslyn.monitor.rssWarning";
+  public static final String MONITOR_THREADS_WARNING_KEY = "sonar.roslyn.monitor.threadsWarning";
   public static final String ADDITIONAL_FILES_KEY = "sonar.roslyn.additional.files";
   public static final String ADDITIONAL_FILES_NAME_KEY = "sonar.roslyn.additional.name";
   public static final String ADDITIONAL_FILES_CONTENT_KEY = "sonar.roslyn.additional.content";
@@ -129,6 +284,7 @@ public class RoslynPlugin implements Plugin {
     l.add(SonarWayProfileCSharp.class);
     l.add(SonarWayProfileVbNet.class);
     l.add(RoslynRunnerExtractor.class);
+    l.add(RoslynAnalysisCoordinator.class);
     l.add(RoslynSensor.class);
     
     l.addAll(generalProperties());
@@ -0,0 +1,84 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Push decoder for a RoslynRunner results stream. Bytes may arrive in chunks of any size,
+ * a record split between chunks is completed by the next one.
+ */
+public interface RoslynResultsDecoder {
+
+  interface IssueHandler {
+    void handle(RoslynIssue issue);
+  }
+
+  /**
+   * Decoder recognizing the binary format by its header and falling back to text.
+   */
+  static RoslynResultsDecoder create(IssueHandler handler) {
+    return new DetectingResultsDecoder(handler);
+  }
+
+  /**
+   * Consumes all remaining bytes of the buffer.
+   */
+  void feed(ByteBuffer buffer);
+
+  /**
+   * Signals end of input.
+   */
+  void finish();
+
+  /**
+   * Drops a trailing incomplete record, used when the writer stopped in the middle of it.
+   */
+  boolean discardPartialRecord();
+
+  boolean hasPartialRecord();
+
+  /**
+   * Feeds the whole content of the file and finishes the input.
+   */
+  void read(File file) throws IOException;
+
+  long records();
+
+  long skipped();
+
+  long bytes();
+}
@@ -0,0 +1,136 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Tails the results file while RoslynRunner is still writing it, feeding new bytes to the
+ * parser as they appear. Once the runner exits the remaining bytes are read, and a last
+ * record left without line terminator is dropped since the runner always ends its records.
+ */
+public class RoslynResultsFollower {
+
+  public static final Logger LOG = Loggers.get(RoslynResultsFollower.class);
+  static final long POLL_MILLIS = 100;
+
+  private final File file;
+  private final RoslynResultsDecoder parser;
+
+  public RoslynResultsFollower(File file, RoslynResultsDecoder parser) {
+    this.file = file;
+    this.parser = parser;
+  }
+
+  /**
+   * Follows the file until the runner completes and returns the runner exit code.
+   */
+  public int follow(Future<Integer> runner) throws IOException, InterruptedException {
+    ByteBuffer buffer = ByteBuffer.allocate(RoslynResultsParser.READ_BUFFER_SIZE);
+    FileChannel channel = null;
+    try {
+      while (true) {
+        boolean done = runner.isDone();
+        if (channel == null && file.exists()) {
+          channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+
+        if (channel != null && readAvailable(channel, buffer) > 0) {
+          continue;
+        }
+
+        if (done) {
+          break;
+        }
+        waitFor(runner);
+      }
+    } finally {
+      if (channel != null) {
+        channel.close();
+      }
+    }
+
+    int exitCode = exitCode(runner);
+    if (parser.discardPartialRecord()) {
+      LOG.warn("RoslynRunner exited with code {} in the middle of a record, the incomplete record was not imported", exitCode);
+    }
+    return exitCode;
+  }
+
+  private long readAvailable(FileChannel channel, ByteBuffer buffer) throws IOException {
+    if (channel.size() < channel.position()) {
+      throw new IOException("Results file was truncated while importing: " + file);
+    }
+
+    long total = 0;
+    int read;
+    while ((read = channel.read(buffer)) > 0) {
+      buffer.flip();
+      parser.feed(buffer);
+      buffer.clear();
+      total += read;
+    }
+    return total;
+  }
+
+  private static void waitFor(Future<Integer> runner) throws InterruptedException {
+    try {
+      runner.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException | TimeoutException e) {
+      // checked again on the next iteration, after reading what is available
+    }
+  }
+
+  private static int exitCode(Future<Integer> runner) throws InterruptedException {
+    try {
+      return runner.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException("RoslynRunner failed", cause);
+    }
+  }
+}
@@ -0,0 +1,399 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Streaming parser for the RoslynRunner text results file.
+ *
+ * Each record is "path;line;ruleId;message" terminated by a new line. Files starting
+ * with {@link #HEADER} escape backslashes, separators and new lines with a backslash.
+ * Files without header are read the way older runners wrote them: no escapes, and the
+ * message takes the remainder of the line.
+ *
+ * Bytes are pushed in chunks of any size, partial records are kept between chunks and
+ * fields are decoded as UTF-8 straight out of reused buffers, so memory stays flat
+ * whatever the file size.
+ */
+public class RoslynResultsParser implements RoslynResultsDecoder {
+
+  public static final Logger LOG = Loggers.get(RoslynResultsParser.class);
+  public static final String HEADER = "#roslyn-results;1";
+
+  static final int READ_BUFFER_SIZE = 1 << 20;
+
+  private static final int PATH = 0;
+  private static final int LINE = 1;
+  private static final int RULE = 2;
+  private static final int MESSAGE = 3;
+  private static final int MAX_LINE_DIGITS = 9;
+
+  private final IssueHandler handler;
+  private final FieldBuffer[] fields = {new FieldBuffer(), new FieldBuffer(), new FieldBuffer(), new FieldBuffer()};
+  private final StringCache paths = new StringCache();
+  private final StringCache rules = new StringCache();
+
+  private int field = PATH;
+  private boolean escapedFormat = false;
+  private boolean escape = false;
+  private boolean pendingCr = false;
+  private long lines = 0;
+  private long records = 0;
+  private long skipped = 0;
+  private long bytes = 0;
+
+  public RoslynResultsParser(IssueHandler handler) {
+    this.handler = handler;
+  }
+
+  /**
+   * Parses a complete results file through a large reusable read buffer.
+   */
+  public static RoslynResultsParser parse(File file, IssueHandler handler) throws IOException {
+    RoslynResultsParser parser = new RoslynResultsParser(handler);
+    parser.read(file);
+    return parser;
+  }
+
+  @Override
+  public void read(File file) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      while (channel.read(buffer) >= 0) {
+        buffer.flip();
+        feed(buffer);
+        buffer.clear();
+      }
+    }
+    finish();
+  }
+
+  @Override
+  public void feed(ByteBuffer buffer) {
+    int remaining = buffer.remaining();
+    if (buffer.hasArray()) {
+      int from = buffer.arrayOffset() + buffer.position();
+      feed(buffer.array(), from, from + remaining);
+      buffer.position(buffer.limit());
+    } else {
+      while (buffer.hasRemaining()) {
+        accept(buffer.get());
+      }
+    }
+    bytes += remaining;
+  }
+
+  /**
+   * Signals end of input, a trailing record without line terminator is still imported.
+   */
+  @Override
+  public void finish() {
+    if (hasPartialRecord()) {
+      pendingCr = false;
+      escape = false;
+      endRecord();
+    }
+  }
+
+  @Override
+  public boolean discardPartialRecord() {
+    boolean partial = hasPartialRecord();
+    if (partial) {
+      skipped++;
+      reset();
+    }
+    return partial;
+  }
+
+  @Override
+  public boolean hasPartialRecord() {
+    return field != PATH || fields[PATH].length != 0 || escape || pendingCr;
+  }
+
+  @Override
+  public long records() {
+    return records;
+  }
+
+  @Override
+  public long skipped() {
+    return skipped;
+  }
+
+  @Override
+  public long bytes() {
+    return bytes;
+  }
+
+  private void feed(byte[] data, int from, int to) {
+    int i = from;
+    while (i < to) {
+      if (escape || pendingCr) {
+        accept(data[i++]);
+        continue;
+      }
+
+      int start = i;
+      while (i < to && !isSpecial(data[i])) {
+        i++;
+      }
+
+      if (i > start) {
+        fields[field].append(data, start, i - start);
+      }
+
+      if (i < to) {
+        accept(data[i++]);
+      }
+    }
+  }
+
+  private boolean isSpecial(byte b) {
+    return b == '\n' || b == '\r' || (b == ';' && field < MESSAGE) || (b == '\\' && escapedFormat);
+  }
+
+  private void accept(byte b) {
+    if (pendingCr) {
+      pendingCr = false;
+      if (b == '\n') {
+        endRecord();
+        return;
+      }
+      fields[field].append((byte) '\r');
+    }
+
+    if (escape) {
+      escape = false;
+      fields[field].append(unescape(b));
+      return;
+    }
+
+    switch (b) {
+      case '\n':
+        endRecord();
+        break;
+      case '\r':
+        pendingCr = true;
+        break;
+      case ';':
+        if (field < MESSAGE) {
+          field++;
+        } else {
+          fields[field].append(b);
+        }
+        break;
+      case '\\':
+        if (escapedFormat) {
+          escape = true;
+        } else {
+          fields[field].append(b);
+        }
+        break;
+      default:
+        fields[field].append(b);
+    }
+  }
+
+  private static byte unescape(byte b) {
+    switch (b) {
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      default:
+        return b;
+    }
+  }
+
+  private void endRecord() {
+    lines++;
+    try {
+      FieldBuffer pathField = fields[PATH];
+      int pathStart = 0;
+      if (lines == 1) {
+        pathStart = pathField.bomLength();
+        if (pathField.length > pathStart && pathField.data[pathStart] == '#') {
+          readHeader(pathStart);
+          return;
+        }
+      }
+
+      if (field == PATH && pathField.length == pathStart) {
+        return;
+      }
+
+      int line = field > LINE ? parseLine(fields[LINE]) : -1;
+      if (field != MESSAGE || line < 0) {
+        skipped++;
+        LOG.debug("Skip malformed record at line {}", lines);
+        return;
+      }
+
+      String path = paths.get(pathField.data, pathStart, pathField.length - pathStart);
+      String rule = rules.get(fields[RULE].data, 0, fields[RULE].length);
+      records++;
+      handler.handle(new RoslynIssue(path, line, rule, fields[MESSAGE].decode()));
+    } finally {
+      reset();
+    }
+  }
+
+  private void readHeader(int start) {
+    String header = new String(fields[PATH].data, start, fields[PATH].length - start, StandardCharsets.UTF_8)
+      + (field > PATH ? ";" + fields[LINE].decode() : "");
+    escapedFormat = HEADER.equals(header);
+    if (!escapedFormat) {
+      LOG.warn("Unknown results header '{}', reading records without escapes", header);
+    }
+  }
+
+  private void reset() {
+    for (FieldBuffer buffer : fields) {
+      buffer.length = 0;
+    }
+    field = PATH;
+    escape = false;
+    pendingCr = false;
+  }
+
+  private static int parseLine(FieldBuffer buffer) {
+    if (buffer.length == 0 || buffer.length > MAX_LINE_DIGITS) {
+      return -1;
+    }
+
+    int value = 0;
+    for (int i = 0; i < buffer.length; i++) {
+      int digit = buffer.data[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  int fieldBufferCapacity() {
+    int capacity = 0;
+    for (FieldBuffer buffer : fields) {
+      capacity += buffer.data.length;
+    }
+    return capacity;
+  }
+
+  private static final class FieldBuffer {
+    private byte[] data = new byte[256];
+    private int length = 0;
+
+    void append(byte b) {
+      ensureCapacity(1);
+      data[length++] = b;
+    }
+
+    void append(byte[] src, int offset, int count) {
+      ensureCapacity(count);
+      System.arraycopy(src, offset, data, length, count);
+      length += count;
+    }
+
+    int bomLength() {
+      if (length >= 3 && data[0] == (byte) 0xEF && data[1] == (byte) 0xBB && data[2] == (byte) 0xBF) {
+        return 3;
+      }
+      return 0;
+    }
+
+    String decode() {
+      return new String(data, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private void ensureCapacity(int count) {
+      if (length + count > data.length) {
+        byte[] grown = new byte[Math.max(data.length * 2, length + count)];
+        System.arraycopy(data, 0, grown, 0, length);
+        data = grown;
+      }
+    }
+  }
+
+  /**
+   * Small direct-mapped cache so repeated paths and rule ids decode to the same String.
+   */
+  private static final class StringCache {
+    private static final int SIZE = 1024;
+    private final byte[][] keys = new byte[SIZE][];
+    private final String[] values = new String[SIZE];
+
+    String get(byte[] data, int offset, int length) {
+      int hash = 1;
+      for (int i = offset; i < offset + length; i++) {
+        hash = 31 * hash + data[i];
+      }
+
+      int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+      byte[] key = keys[slot];
+      if (key != null && sameBytes(key, data, offset, length)) {
+        return values[slot];
+      }
+
+      String value = new String(data, offset, length, StandardCharsets.UTF_8);
+      byte[] copy = new byte[length];
+      System.arraycopy(data, offset, copy, 0, length);
+      keys[slot] = copy;
+      values[slot] = value;
+      return value;
+    }
+
+    private static boolean sameBytes(byte[] key, byte[] data, int offset, int length) {
+      if (key.length != length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (key[i] != data[offset + i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -36,13 +36,29 @@ package org.sonar.plugins.roslyn;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import org.sonar.api.batch.InstantiationStrategy;
 import org.sonar.api.batch.ScannerSide;
 import org.sonar.api.batch.bootstrap.ProjectReactor;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
+/**
+ * Extracts the bundled RoslynRunner once per plugin build into a user level cache shared by
+ * all scans: the directory is named after the hash of the bundled zip, filled in a temporary
+ * directory and renamed in place under a file lock, so concurrent scanners never see a
+ * partial runner. The extraction starts in the background when the component is created.
+ */
 @InstantiationStrategy(InstantiationStrategy.PER_BATCH)
 @ScannerSide()
 public class RoslynRunnerExtractor {
@@ -51,45 +67,108 @@ public class RoslynRunnerExtractor {
   private static final String N_SONARQUBE_ANALYZER = "RoslynRunner";
   private static final String N_SONARQUBE_ANALYZER_ZIP = N_SONARQUBE_ANALYZER + ".zip";
   private static final String N_SONARQUBE_ANALYZER_EXE = N_SONARQUBE_ANALYZER + ".exe";
+  private static final String COMPLETE_MARKER = ".complete";
+  // file locks are held per JVM, threads of one JVM are serialized here
+  private static final Object JVM_LOCK = new Object();
 
-  private final ProjectReactor reactor;
-  private File file = null;
+  private final FutureTask<File> extraction;
 
   public RoslynRunnerExtractor(ProjectReactor reactor) {
-    this.reactor = reactor;
+    this(new File(System.getProperty("user.home"), ".sonar/roslyn/runner"), reactor.getRoot().getWorkDir(),
+      () -> RoslynRunnerExtractor.class.getResourceAsStream("/" + N_SONARQUBE_ANALYZER_ZIP));
+  }
+
+  RoslynRunnerExtractor(File cacheRoot, File fallbackRoot, Callable<InputStream> zip) {
+    extraction = new FutureTask<>(() -> {
+      try {
+        return extract(cacheRoot, zip);
+      } catch (IOException e) {
+        LOG.warn("Cannot use the RoslynRunner cache '{}', extracting to '{}': {}", cacheRoot, fallbackRoot, e.getMessage());
+        return extract(fallbackRoot, zip);
+      }
+    });
+    Thread thread = new Thread(extraction, "roslyn-runner-extractor");
+    thread.setDaemon(true);
+    thread.start();
   }
 
   public File executableFile() throws IOException {
-    if (file == null) {
-      file = unzipProjectCheckerFile(N_SONARQUBE_ANALYZER_EXE);
+    try {
+      return new File(extraction.get(), N_SONARQUBE_ANALYZER_EXE);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while extracting RoslynRunner", e);
+    } catch (ExecutionException e) {
+      LOG.error("Unable to extract {}: {}", N_SONARQUBE_ANALYZER_ZIP, e.getCause().getMessage());
+      throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
     }
-
-    return file;
   }
 
-  private File unzipProjectCheckerFile(String fileName) throws IOException {
-    File workingDir = reactor.getRoot().getWorkDir();
-    File toolWorkingDir = new File(workingDir, N_SONARQUBE_ANALYZER);
-    File zipFile = new File(workingDir, N_SONARQUBE_ANALYZER_ZIP);
-    
-    if (zipFile.exists()) {
-      return new File(toolWorkingDir, fileName);
+  private static File extract(File root, Callable<InputStream> zip) throws Exception {
+    Files.createDirectories(root.toPath());
+    String hash = hash(zip);
+    File target = new File(root, N_SONARQUBE_ANALYZER + "-" + hash.substring(0, 16));
+    if (new File(target, COMPLETE_MARKER).isFile()) {
+      LOG.debug("Using cached RoslynRunner '{}'", target);
+      return target;
     }
 
-    try {
+    synchronized (JVM_LOCK) {
+      try (FileChannel channel = FileChannel.open(new File(root, target.getName() + ".lock").toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = channel.lock()) {
+        // another scanner may have extracted it while we waited
+        if (new File(target, COMPLETE_MARKER).isFile()) {
+          return target;
+        }
+        long start = System.nanoTime();
+        String tmpName = target.getName() + "." + UUID.randomUUID() + ".tmp";
+        File tmpZip = new File(root, tmpName + ".zip");
+        File tmpDir = new File(root, tmpName);
+        try {
+          try (InputStream in = zip.call()) {
+            if (in == null) {
+              throw new IOException(N_SONARQUBE_ANALYZER_ZIP + " not found in the plugin");
+            }
+            Files.copy(in, tmpZip.toPath());
+          }
+          new UnZip().unZipIt(tmpZip.getAbsolutePath(), tmpDir.getAbsolutePath());
+          Files.createFile(new File(tmpDir, COMPLETE_MARKER).toPath());
+          // an incomplete directory left by a crashed scan is replaced
+          deleteRecursively(target);
+          Files.move(tmpDir.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+          Files.deleteIfExists(tmpZip.toPath());
+          deleteRecursively(tmpDir);
+        }
+        LOG.info("Extracted RoslynRunner to '{}' in {} ms", target, (System.nanoTime() - start) / 1000000);
+        return target;
+      }
+    }
+  }
 
-      
-      try (InputStream is = getClass().getResourceAsStream("/" + N_SONARQUBE_ANALYZER_ZIP)) {
-        Files.copy(is, zipFile.toPath());
+  private static String hash(Callable<InputStream> zip) throws Exception {
+    MessageDigest digest = Hashes.sha256();
+    try (InputStream in = zip.call()) {
+      if (in == null) {
+        throw new IOException(N_SONARQUBE_ANALYZER_ZIP + " not found in the plugin");
+      }
+      DigestInputStream digesting = new DigestInputStream(in, digest);
+      byte[] buffer = new byte[1 << 16];
+      while (digesting.read(buffer) >= 0) {
+        // only hashing
       }
+    }
+    return Hashes.hex(digest.digest());
+  }
 
-      UnZip unZip = new UnZip();
-      unZip.unZipIt(zipFile.getAbsolutePath(),toolWorkingDir.getAbsolutePath());
-        
-      return new File(toolWorkingDir, fileName);
-    } catch (IOException e) {
-      LOG.error("Unable tp unzip File: {} => {}", fileName, e.getMessage());
-      throw e;
+  private static void deleteRecursively(File file) throws IOException {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
     }
+    Files.deleteIfExists(file.toPath());
   }
 }
@@ -33,29 +33,34 @@
  */
 package org.sonar.plugins.roslyn;
 
-import java.io.BufferedReader;
-
 import org.sonar.api.batch.DependedUpon;
-import org.sonar.api.batch.fs.FileSystem;
-import org.sonar.api.batch.fs.InputFile;
-import org.sonar.api.rule.RuleKey;
+import org.sonar.api.batch.rule.ActiveRule;
 import org.sonar.api.utils.command.Command;
-import org.sonar.api.utils.command.CommandExecutor;
 import org.sonar.api.utils.command.StreamConsumer;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.sonar.api.batch.sensor.Sensor;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.SensorDescriptor;
-import org.sonar.api.batch.sensor.issue.NewIssue;
-import org.sonar.api.batch.sensor.issue.NewIssueLocation;
 import org.sonar.api.config.Configuration;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
@@ -68,10 +73,13 @@ public class RoslynSensor implements Sensor {
   public static final Logger LOG = Loggers.get(RoslynSensor.class);
   private final RoslynRunnerExtractor extractor;
   private final Configuration settings;
+  private final RoslynAnalysisCoordinator coordinator;
+  private volatile boolean cleanProfiles = true;
 
-  public RoslynSensor(RoslynRunnerExtractor extractor, Configuration settings) {
+  public RoslynSensor(RoslynRunnerExtractor extractor, Configuration settings, RoslynAnalysisCoordinator coordinator) {
     this.extractor = extractor;
     this.settings = settings;
+    this.coordinator = coordinator;
   }
 
   public File[] finder(File dir, final String extension){
@@ -87,7 +95,7 @@ public class RoslynSensor implements Sensor {
 
   @Override
   public void describe(SensorDescriptor descriptor) {
-    descriptor.global().onlyOnLanguage(RoslynPlugin.CS_LANGUAGE_KEY).name("RoslynSensor");
+    descriptor.onlyOnLanguages(RoslynPlugin.CS_LANGUAGE_KEY, RoslynPlugin.VBNET_LANGUAGE_KEY).name("RoslynSensor");
   }
 
   @Override
@@ -103,20 +111,63 @@ public class RoslynSensor implements Sensor {
     } 
     
     LOG.info("Execute Roslyn Sensor : " + context.fileSystem().baseDir());
-    try {
-      String solution = getSolution(context.fileSystem().baseDir(), context);
-      if ("".equals(solution)) {
-        LOG.info("Roslyn Sensor will skip. No solution found at this level");
-        return;
-      } 
-      analyze(context, solution);
-      importResults(context);
+    AnalysisReport report = new AnalysisReport();
+    InputFileIndex index;
+    try (AnalysisReport.Phase phase = report.phase("index")) {
+      index = InputFileIndex.build(context.fileSystem());
+    }
+    try (RoslynIssueImporter importer = new RoslynIssueImporter(context, index, RoslynActiveRules.of(context.activeRules()), RoslynIssueImporter.threads(context))) {
+      AnalysisResults results = results(context, target(context, importer), report);
+      if (results != null) {
+        importSlice(context, results, index, importer, report);
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      LOG.error("Roslyn analysis interrupted");
     } catch (IOException ex) {
       LOG.error("Failed to parse results file '{}'", ex.getMessage());
       context.newAnalysisError().message("Failed to parse results file " +  ex.getMessage()).save();
+    } finally {
+      report.write(context.fileSystem().workDir());
+      report.logSummary();
     }
   }
     
+  /**
+   * Results of the analysis of this scan, run by the first module needing them, or null when
+   * there is no solution to analyse.
+   */
+  private AnalysisResults results(SensorContext ctx, AnalysisResults target, AnalysisReport report) throws IOException, InterruptedException {
+    String[] sarifReports = ctx.config().getStringArray(RoslynPlugin.SARIF_REPORTS_KEY);
+    if (sarifReports.length > 0) {
+      return coordinator.results("sarif:" + String.join(";", sarifReports), target, results -> importSarifReports(ctx, sarifReports, results, report));
+    }
+    if (ctx.config().getBoolean(RoslynPlugin.ALL_SOLUTIONS_KEY).orElse(false)) {
+      return coordinator.results("solutions:" + coordinator.root(), target, results -> analyzeSolutions(ctx, results, report));
+    }
+
+    String solution;
+    try (AnalysisReport.Phase phase = report.phase("solution")) {
+      solution = getSolution(ctx.fileSystem().baseDir(), ctx);
+    }
+    if ("".equals(solution)) {
+      LOG.info("Roslyn Sensor will skip. No solution found at this level");
+      return null;
+    }
+    return coordinator.results(solution, target, results -> {
+      try (AnalysisReport.Phase phase = report.phase("extraction")) {
+        runnerExecutable(ctx);
+      }
+      syncProfiles(ctx, report);
+      RunnerWatchdog.Budget budget = RunnerWatchdog.Budget.create(ctx.config());
+      if (ctx.config().getBoolean(RoslynPlugin.STREAMING_IMPORT_KEY).orElse(false)) {
+        analyzeStreaming(ctx, solution, budget, results, report);
+      } else {
+        analyzeIncrementally(ctx, solution, budget, results, report);
+      }
+    });
+  }
+
   private String getSolution(File startFolder, SensorContext context) {
     
     if (startFolder == null) {
@@ -145,6 +196,59 @@ public class RoslynSensor implements Sensor {
     }    
   }
   
+  /**
+   * Solutions under the base directory of the scan with the projects each one analyses.
+   */
+  private Map<File, List<File>> discoverSolutions(SensorContext ctx) throws IOException {
+    List<String> exclusions = new ArrayList<>(Arrays.asList(ctx.config().getStringArray("sonar.exclusions")));
+    exclusions.addAll(Arrays.asList(ctx.config().getStringArray(RoslynPlugin.SOLUTION_EXCLUSIONS_KEY)));
+    List<SolutionFile> solutions = new ArrayList<>();
+    for (File solution : SolutionDiscovery.discover(coordinator.root(), exclusions.toArray(new String[0]))) {
+      try {
+        solutions.add(SolutionFile.parse(solution));
+      } catch (IOException e) {
+        LOG.warn("Solution '{}' cannot be read and is not analysed: {}", solution, e.getMessage());
+      }
+    }
+    LOG.info("Found {} solutions under {}", solutions.size(), coordinator.root());
+    Map<File, List<File>> assigned = SolutionDiscovery.assignProjects(solutions);
+    List<File> sources = sources(ctx);
+    for (SolutionFile solution : solutions) {
+      List<File> projects = assigned.get(solution.file());
+      if (projects != null) {
+        projects.retainAll(ProjectGraph.build(solution).projectsOf(sources));
+        if (projects.isEmpty()) {
+          LOG.info("No file of this scan is compiled by the projects of solution '{}'", solution.file());
+          assigned.remove(solution.file());
+        }
+      }
+    }
+    return assigned;
+  }
+
+  /**
+   * Projects of the solution compiling files of this scan, all of them when none seems to.
+   */
+  private static List<File> scannedProjects(SolutionFile solution, List<File> sources) {
+    List<File> scanned = ProjectGraph.build(solution).projectsOf(sources);
+    if (scanned.isEmpty()) {
+      LOG.info("No project of the solution compiles files of this scan, all projects are analysed");
+      return solution.projects();
+    }
+    if (scanned.size() < solution.projects().size()) {
+      LOG.info("Analyse the {} projects of the solution compiling files of this scan, out of {}", scanned.size(), solution.projects().size());
+    }
+    return scanned;
+  }
+
+  /**
+   * Sources of all modules of the scan. The file systems of the other modules are not known
+   * while the first one runs the analysis, so they are read from disk under the root module.
+   */
+  private List<File> sources(SensorContext ctx) throws IOException {
+    return SolutionDiscovery.sources(coordinator.root(), ctx.config().getStringArray("sonar.exclusions"));
+  }
+
   private String getEmptyStringOrValue(SensorContext ctx, String key) {
     if (ctx.config().get(key).isPresent()) {
       return ctx.config().get(key).get();
@@ -165,7 +269,322 @@ public class RoslynSensor implements Sensor {
     return builder;
   }
   
-  private void analyze(SensorContext ctx, String solution) throws IOException {  
+  /**
+   * Analyses the projects affected since the last complete analysis and not found in the result
+   * cache, and replays the stored issues of the others.
+   */
+  private void analyzeIncrementally(SensorContext ctx, String solution, RunnerWatchdog.Budget budget, AnalysisResults sink,
+    AnalysisReport report) throws IOException, InterruptedException {
+    SolutionFile solutionFile;
+    List<File> scanned;
+    String analyzers;
+    String rules;
+    SolutionFingerprints fingerprints;
+    try (AnalysisReport.Phase phase = report.phase("fingerprints")) {
+      solutionFile = SolutionFile.parse(new File(solution));
+      List<File> sources = sources(ctx);
+      scanned = scannedProjects(solutionFile, sources);
+      analyzers = analyzersFingerprint(ctx);
+      rules = rulesFingerprint(ctx);
+      fingerprints = SolutionFingerprints.compute(solutionFile, sources, Hashes.of(analyzers, rules));
+    }
+    String projectKey = ctx.config().get("sonar.projectKey").orElse("");
+    File cacheRoot = incrementalRoot(ctx);
+    File cacheDir = IncrementalAnalysis.cacheDir(cacheRoot, projectKey, solution);
+    boolean force = ctx.config().getBoolean(RoslynPlugin.INCREMENTAL_FULL_KEY).orElse(false);
+
+    ResultCache cache = resultCache(ctx);
+    try (IncrementalAnalysis.Plan plan = new IncrementalAnalysis(cacheDir).plan(fingerprints, force);
+      ResultCache.Session session = cache == null || !plan.analysisNeeded() ? null : cache.open(fingerprints, analyzers, rules, coordinator.workDir())) {
+      List<File> projects = new ArrayList<>();
+      Set<String> analysed = new HashSet<>();
+      Set<String> cached = new HashSet<>();
+      if (plan.analysisNeeded()) {
+        List<File> affected = new ArrayList<>();
+        Set<String> affectedCached = new HashSet<>();
+        for (File project : scanned) {
+          String key = SolutionFingerprints.key(project.getAbsolutePath());
+          if (plan.full() || plan.affectedProjects().contains(key)) {
+            affected.add(project);
+            if (session != null && session.cachedProjects().contains(key)) {
+              affectedCached.add(key);
+            }
+          }
+        }
+        if (session != null) {
+          // projects whose entries were evicted meanwhile by another scan are analysed
+          cached.addAll(session.pin(affectedCached));
+        }
+        for (File project : affected) {
+          String key = SolutionFingerprints.key(project.getAbsolutePath());
+          if (!cached.contains(key)) {
+            projects.add(project);
+            analysed.add(key);
+          }
+        }
+      }
+
+      RunnerResults results;
+      if (projects.isEmpty()) {
+        LOG.info("No project to analyse, RoslynRunner will not be executed");
+        results = new RunnerResults(Collections.<File>emptyList(), Collections.<File>emptyList(), true);
+      } else {
+        results = analyze(ctx, solution, projects, projects.size() < solutionFile.projects().size(), budget, report);
+      }
+
+      decodeResults(results.outputs, null, plan, session, cached, report, sink);
+      reportTelemetry(results.telemetry);
+      if (results.complete) {
+        Set<String> complete = new HashSet<>(analysed);
+        complete.addAll(cached);
+        plan.commit(complete);
+        IncrementalAnalysis.evict(cacheRoot, ctx.config().getLong(RoslynPlugin.INCREMENTAL_SIZE_KEY).orElse(1024L) * 1024 * 1024, cacheDir);
+        if (session != null) {
+          session.store(analysed);
+          cache.evict();
+        }
+      } else {
+        LOG.warn("RoslynRunner did not complete, the incremental analysis and result caches were not updated");
+      }
+    }
+  }
+
+  /**
+   * Activates the rules of new bundled analyzers in the web profiles of the project when rules
+   * are enabled, see {@link ProfileSync}. A failure is logged and retried on the next scan.
+   */
+  private void syncProfiles(SensorContext ctx, AnalysisReport report) {
+    String url = getEmptyStringOrValue(ctx, "sonar.host.url");
+    if (url.isEmpty() || !ctx.config().getBoolean(RoslynPlugin.SYNC_PROFILE_TYPE_KEY).orElse(true)
+      || !ctx.config().getBoolean(RoslynPlugin.ENABLE_RULES_KEY).orElse(true)) {
+      return;
+    }
+    String projectKey = ctx.config().get("sonar.projectKey").orElse("");
+    File stateFile = ProfileSync.stateFile(new File(System.getProperty("user.home"), ".sonar/roslyn/profiles"), url, projectKey);
+    ProfileSync sync = new ProfileSync(url, getEmptyStringOrValue(ctx, "sonar.login"), getEmptyStringOrValue(ctx, "sonar.password"), stateFile);
+    RuleCatalog catalog = RuleCatalog.bundled();
+    Map<String, Set<String>> present = new HashMap<>();
+    for (String repository : catalog.repositories()) {
+      Set<String> ids = new HashSet<>();
+      for (RuleCatalog.Rule rule : catalog.rules(repository)) {
+        ids.add(rule.key());
+      }
+      present.put(repository, ids);
+    }
+    try (AnalysisReport.Phase phase = report.phase("profiles")) {
+      report.count("profiles.calls", sync.synchronize(projectKey, present, RoslynActiveRules.of(ctx.activeRules())));
+      cleanProfiles = !sync.upToDate();
+    } catch (IOException e) {
+      LOG.warn("Cannot synchronize the quality profiles of '{}': {}", projectKey, e.getMessage());
+    }
+  }
+
+  private static File incrementalRoot(SensorContext ctx) {
+    Optional<String> dir = ctx.config().get(RoslynPlugin.INCREMENTAL_DIR_KEY);
+    if (!dir.isPresent() || dir.get().trim().isEmpty()) {
+      return new File(System.getProperty("user.home"), ".sonar/roslyn/incremental");
+    }
+    return new File(dir.get().trim());
+  }
+
+  private static ResultCache resultCache(SensorContext ctx) {
+    Optional<String> dir = ctx.config().get(RoslynPlugin.RESULT_CACHE_DIR_KEY);
+    if (!dir.isPresent() || dir.get().trim().isEmpty()) {
+      return null;
+    }
+    long maxBytes = ctx.config().getLong(RoslynPlugin.RESULT_CACHE_SIZE_KEY).orElse(2048L) * 1024 * 1024;
+    return new ResultCache(new File(dir.get().trim()), maxBytes);
+  }
+
+  /**
+   * Hash of the contents of the runner and of the external analyzers.
+   */
+  private String analyzersFingerprint(SensorContext ctx) throws IOException {
+    MessageDigest digest = Hashes.sha256();
+    Hashes.update(digest, Hashes.of(runnerExecutable(ctx)));
+    for (String path : getEmptyStringOrValue(ctx, RoslynPlugin.DIAGNOSTICS_PATH_KEY).split(";")) {
+      File[] analyzers = new File(path.trim()).listFiles(File::isFile);
+      if (analyzers != null) {
+        Arrays.sort(analyzers);
+        for (File analyzer : analyzers) {
+          Hashes.update(digest, analyzer.getName());
+          Hashes.update(digest, Hashes.of(analyzer));
+        }
+      }
+    }
+    return Hashes.hex(digest.digest());
+  }
+
+  /**
+   * Hash of the active rules with their parameters and of the analysis settings.
+   */
+  private String rulesFingerprint(SensorContext ctx) {
+    MessageDigest digest = Hashes.sha256();
+    List<String> rules = new ArrayList<>();
+    for (ActiveRule rule : ctx.activeRules().findAll()) {
+      rules.add(rule.ruleKey() + ":" + rule.severity() + ":" + new TreeMap<>(rule.params()));
+    }
+    Collections.sort(rules);
+    for (String rule : rules) {
+      Hashes.update(digest, rule);
+    }
+
+    Hashes.update(digest, String.valueOf(ctx.config().getBoolean(RoslynPlugin.ENABLE_RULES_KEY).orElse(true)));
+    Hashes.update(digest, String.valueOf(ctx.config().getBoolean(RoslynPlugin.SYNC_PROFILE_TYPE_KEY).orElse(true)));
+    Hashes.update(digest, new TreeMap<>(buildAdditionalFileContents(ctx)).toString());
+    return Hashes.hex(digest.digest());
+  }
+
+  /**
+   * Runs the analysis of the given projects of the solution, or of the whole solution when not
+   * selected, and returns the output files to import.
+   */
+  private RunnerResults analyze(SensorContext ctx, String solution, List<File> projects, boolean selected,
+    RunnerWatchdog.Budget budget, AnalysisReport report) throws IOException, InterruptedException {
+    int shards = ShardedAnalysis.shards(ctx.config().getInt(RoslynPlugin.SHARDS_KEY).orElse(0));
+    if (shards > 1 && projects.size() > 1 && !ctx.config().getBoolean(RoslynPlugin.DAEMON_KEY).orElse(false)) {
+      try (AnalysisReport.Phase phase = report.phase("runner")) {
+        return analyzeShards(ctx, solution, projects, shards, budget, report);
+      }
+    }
+
+    StringBuilder settings = new StringBuilder();
+    if (selected) {
+      appendLine(settings, "      <Projects>" + projectPaths(projects) + "</Projects>");
+    }
+    List<String> arguments = prepareArguments(ctx, solution, toolInput(), toolOutput(), settings.toString());
+    try (RunnerWatchdog watchdog = new RunnerWatchdog(budget, cancelFile(toolInput()), "RoslynRunner")) {
+      int exitCode = run(ctx, arguments, watchdog, report);
+      return new RunnerResults(Collections.singletonList(toolOutput()), Collections.singletonList(telemetryFile(toolInput())),
+        exitCode == 0 && !watchdog.cancelled());
+    }
+  }
+
+  /**
+   * Runs one RoslynRunner per group of projects at the same time.
+   */
+  private RunnerResults analyzeShards(SensorContext ctx, String solution, List<File> projects, int shardCount,
+    RunnerWatchdog.Budget budget, AnalysisReport report) throws InterruptedException {
+    ShardedAnalysis analysis = new ShardedAnalysis(coordinator.workDir(), shardCount);
+    List<ShardedAnalysis.Shard> shards = analysis.split(new File(solution), projects);
+    LOG.info("Analyse {} projects in {} shards", projects.size(), shards.size());
+    return runShards(ctx, analysis, shards, budget, report);
+  }
+
+  /**
+   * Runs one RoslynRunner per solution of the scan, at most {@link RoslynPlugin#SOLUTION_RUNNERS_KEY} at
+   * the same time, and decodes the issues of all of them.
+   */
+  private void analyzeSolutions(SensorContext ctx, AnalysisResults sink, AnalysisReport report) throws IOException, InterruptedException {
+    Map<File, List<File>> solutions;
+    try (AnalysisReport.Phase phase = report.phase("solution")) {
+      solutions = discoverSolutions(ctx);
+    }
+    if (solutions.isEmpty()) {
+      LOG.info("Roslyn Sensor will skip. No solution found under {}", coordinator.root());
+      return;
+    }
+    try (AnalysisReport.Phase phase = report.phase("extraction")) {
+      runnerExecutable(ctx);
+    }
+    syncProfiles(ctx, report);
+    RunnerWatchdog.Budget budget = RunnerWatchdog.Budget.create(ctx.config());
+    ShardedAnalysis analysis = new ShardedAnalysis(coordinator.workDir(), ctx.config().getInt(RoslynPlugin.SOLUTION_RUNNERS_KEY).orElse(2));
+    List<ShardedAnalysis.Shard> shards = analysis.perSolution(solutions);
+    LOG.info("Analyse {} solutions", shards.size());
+    RunnerResults results;
+    try (AnalysisReport.Phase phase = report.phase("runner")) {
+      results = runShards(ctx, analysis, shards, budget, report);
+    }
+    decodeResults(results.outputs, null, null, null, Collections.<String>emptySet(), report, sink);
+    reportTelemetry(results.telemetry);
+  }
+
+  private RunnerResults runShards(SensorContext ctx, ShardedAnalysis analysis, List<ShardedAnalysis.Shard> shards,
+    RunnerWatchdog.Budget budget, AnalysisReport report) throws InterruptedException {
+    ShardedAnalysis.Result result = analysis.run(shards, shard -> runShard(ctx, shard, budget, report));
+    List<File> telemetry = new ArrayList<>();
+    for (ShardedAnalysis.Shard shard : shards) {
+      telemetry.add(telemetryFile(shard.input()));
+    }
+    return new RunnerResults(result.outputs(), telemetry, result.failed() == 0);
+  }
+
+  private static String projectPaths(List<File> projects) {
+    List<String> paths = new ArrayList<>();
+    for (File project : projects) {
+      paths.add(project.getAbsolutePath());
+    }
+    return String.join(";", paths);
+  }
+
+  private int runShard(SensorContext ctx, ShardedAnalysis.Shard shard, RunnerWatchdog.Budget budget, AnalysisReport report)
+    throws IOException, InterruptedException {
+    String solution = shard.solution().getAbsolutePath();
+    StringBuilder settings = new StringBuilder();
+    appendLine(settings, "      <Projects>" + projectPaths(shard.projects()) + "</Projects>");
+    appendLine(settings, "      <SyncRules>" + (shard.syncsRules() ? "true" : "false") + "</SyncRules>");
+    appendLine(settings, "      <ReadyFile>" + shard.readyFile().getAbsolutePath() + "</ReadyFile>");
+
+    Command command = command(ctx, runnerExecutable(ctx), prepareArguments(ctx, solution, shard.input(), shard.output(), settings.toString()));
+    File log = new File(coordinator.workDir(), "roslyn-runner-" + shard.index() + ".log");
+    try (RunnerWatchdog watchdog = new RunnerWatchdog(budget, cancelFile(shard.input()), "RoslynRunner " + shard.prefix());
+      RunnerLogPump pump = new RunnerLogPump(log, shard.prefix());
+      ResourceMonitor monitor = new ResourceMonitor(ResourceMonitor.Settings.create(ctx.config()), "RoslynRunner " + shard.prefix())) {
+      report.resources(monitor);
+      return watchdog.execute(command, pump.out(), pump.err(), monitor);
+    }
+  }
+
+  /**
+   * Runs RoslynRunner in the background and decodes issues while it writes them.
+   */
+  private void analyzeStreaming(SensorContext ctx, String solution, RunnerWatchdog.Budget budget, AnalysisResults sink,
+    AnalysisReport report) throws IOException, InterruptedException {
+    SolutionFile solutionFile = SolutionFile.parse(new File(solution));
+    List<File> scanned = scannedProjects(solutionFile, sources(ctx));
+    StringBuilder settings = new StringBuilder();
+    if (scanned.size() < solutionFile.projects().size()) {
+      appendLine(settings, "      <Projects>" + projectPaths(scanned) + "</Projects>");
+    }
+    List<String> arguments = prepareArguments(ctx, solution, toolInput(), toolOutput(), settings.toString());
+    Files.deleteIfExists(toolOutput().toPath());
+
+    ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+      Thread thread = new Thread(r, "roslyn-runner");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      decodeResults(Collections.singletonList(toolOutput()), executor.submit(() -> {
+        try (RunnerWatchdog watchdog = new RunnerWatchdog(budget, cancelFile(toolInput()), "RoslynRunner")) {
+          return run(ctx, arguments, watchdog, report);
+        }
+      }), null, null, null, report, sink);
+    } finally {
+      executor.shutdownNow();
+    }
+    reportTelemetry(Collections.singletonList(telemetryFile(toolInput())));
+  }
+
+  /**
+   * Logs the most expensive analyzers and rules and writes the telemetry of all of them.
+   */
+  private void reportTelemetry(List<File> files) throws IOException {
+    AnalyzerTelemetry telemetry = AnalyzerTelemetry.read(files);
+    if (telemetry.isEmpty()) {
+      LOG.debug("No analyzer telemetry written by RoslynRunner");
+      return;
+    }
+    telemetry.logTop(AnalyzerTelemetry.TOP);
+    telemetry.write(new File(coordinator.workDir(), AnalyzerTelemetry.FILE));
+  }
+
+  /**
+   * Writes the analysis input, with the given extra settings, and returns the RoslynRunner arguments using it.
+   */
+  List<String> prepareArguments(SensorContext ctx, String solution, File analysisInput, File analysisOutput, String extraSettings)
+    throws IOException {
         
     Map<String, String> additionalFiles = buildAdditionalFileContents(ctx);
     
@@ -186,20 +605,79 @@ public class RoslynSensor implements Sensor {
     appendLine(sb, "  <Settings>");
     appendLine(sb, "      <SolutionToUse>" + solution + "</SolutionToUse>");
     appendLine(sb, "      <ExternalDiagnostics>" + (getEmptyStringOrValue(ctx, RoslynPlugin.DIAGNOSTICS_PATH_KEY)) + "</ExternalDiagnostics>");    
-    appendLine(sb, "      <SolutionRoot>" + ctx.fileSystem().baseDir() + "</SolutionRoot>");
+    appendLine(sb, "      <SolutionRoot>" + coordinator.root() + "</SolutionRoot>");
     appendLine(sb, "      <SonarUrl>" + (getEmptyStringOrValue(ctx, "sonar.host.url")) + "</SonarUrl>");
     appendLine(sb, "      <ProjectKey>" + projectKey + "</ProjectKey>");
     appendLine(sb, "      <BranchKey>" + (getEmptyStringOrValue(ctx, "sonar.branch")) + "</BranchKey>");
     appendLine(sb, "      <EnableRules>" + (ctx.config().getBoolean(RoslynPlugin.ENABLE_RULES_KEY).get() ? "true" : "false") + "</EnableRules>");
+    appendLine(sb, "      <CreateRules>" + (ctx.config().getBoolean(RoslynPlugin.CREATE_RULES_KEY).orElse(false) ? "true" : "false") + "</CreateRules>");
+    appendLine(sb, "      <CleanProfiles>" + (cleanProfiles ? "true" : "false") + "</CleanProfiles>");
     appendLine(sb, "      <UseSonarWebProfile>" + (ctx.config().getBoolean(RoslynPlugin.SYNC_PROFILE_TYPE_KEY).get() ? "true" : "false") + "</UseSonarWebProfile>");
     appendLine(sb, "      <AdditionalFiles>" + additionalFilesString + "</AdditionalFiles>");
+    appendLine(sb, "      <OutputFormat>" + ctx.config().get(RoslynPlugin.OUTPUT_FORMAT_KEY).orElse(RoslynPlugin.OUTPUT_FORMAT_BINARY) + "</OutputFormat>");
+    appendLine(sb, "      <CancelFile>" + cancelFile(analysisInput).getAbsolutePath() + "</CancelFile>");
+    Files.deleteIfExists(cancelFile(analysisInput).toPath());
+    appendLine(sb, "      <TelemetryFile>" + telemetryFile(analysisInput).getAbsolutePath() + "</TelemetryFile>");
+    Files.deleteIfExists(telemetryFile(analysisInput).toPath());
+    appendActiveRules(sb, RoslynActiveRules.of(ctx.activeRules()));
+    sb.append(extraSettings);
     appendLine(sb, "  </Settings>");
     appendLine(sb, "</AnalysisInput>");
 
-    File analysisInput = toolInput(ctx);
-    File analysisOutput = toolOutput(ctx);
-
     Files.write(analysisInput.toPath(), sb.toString().getBytes());
+
+    String username = getEmptyStringOrValue(ctx, "sonar.login");
+    String password = getEmptyStringOrValue(ctx, "sonar.password");
+
+    List<String> arguments = new ArrayList<>();
+    arguments.add("/i:" + analysisInput.getAbsolutePath());
+    arguments.add("/u:" + username);
+    arguments.add("/p:" + password);
+    arguments.add("/o:" + analysisOutput.getAbsolutePath());
+    return arguments;
+  }
+
+  /**
+   * Active rules with their parameters, so the runner only instantiates the analyzers reporting
+   * them and does not fetch the quality profiles.
+   */
+  private void appendActiveRules(StringBuilder sb, RoslynActiveRules activeRules) {
+    appendLine(sb, "      <ActiveRules>");
+    for (ActiveRule rule : activeRules.rules()) {
+      String attributes = "Repository=\"" + escapeXml(rule.ruleKey().repository()) + "\" Id=\"" + escapeXml(rule.ruleKey().rule())
+        + "\" Severity=\"" + escapeXml(rule.severity()) + "\"";
+      if (rule.params().isEmpty()) {
+        appendLine(sb, "        <Rule " + attributes + " />");
+        continue;
+      }
+      appendLine(sb, "        <Rule " + attributes + ">");
+      for (Map.Entry<String, String> param : new TreeMap<>(rule.params()).entrySet()) {
+        appendLine(sb, "          <Param Key=\"" + escapeXml(param.getKey()) + "\" Value=\"" + escapeXml(param.getValue()) + "\" />");
+      }
+      appendLine(sb, "        </Rule>");
+    }
+    appendLine(sb, "      </ActiveRules>");
+  }
+
+  private static String escapeXml(String value) {
+    return value == null ? "" : value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+  }
+
+  /**
+   * File whose creation asks the runner using the analysis input to stop and flush its results.
+   */
+  private static File cancelFile(File analysisInput) {
+    return new File(analysisInput.getPath() + ".cancel");
+  }
+
+  /**
+   * File where the runner using the analysis input writes the execution time of each analyzer.
+   */
+  private static File telemetryFile(File analysisInput) {
+    return new File(analysisInput.getPath() + ".telemetry");
+  }
+
+  private File runnerExecutable(SensorContext ctx) throws IOException {
     File executableFile = extractor.executableFile();    
     String extExec = getEmptyStringOrValue(ctx, RoslynPlugin.EXTERNAL_ANALYSER_PATH);
     
@@ -209,66 +687,146 @@ public class RoslynSensor implements Sensor {
         executableFile = extFile;
       }      
     }
+    return executableFile;
+  }
 
-    String username = getEmptyStringOrValue(ctx, "sonar.login");
-    String password = getEmptyStringOrValue(ctx, "sonar.password");
-    
+  /**
+   * Runs the analysis in the RoslynRunner daemon when enabled, or in a new RoslynRunner process.
+   */
+  private int run(SensorContext ctx, List<String> arguments, RunnerWatchdog watchdog, AnalysisReport report)
+    throws IOException, InterruptedException {
+    File executableFile = runnerExecutable(ctx);
+    long started = System.nanoTime();
+    try (RunnerLogPump pump = new RunnerLogPump(new File(coordinator.workDir(), "roslyn-runner.log"), "")) {
+      return run(ctx, executableFile, arguments, watchdog, pump, report.runnerOutput(pump.out()), report);
+    } finally {
+      report.runner(started, System.nanoTime());
+    }
+  }
+
+  private int run(SensorContext ctx, File executableFile, List<String> arguments, RunnerWatchdog watchdog, RunnerLogPump pump,
+    StreamConsumer out, AnalysisReport report) throws IOException, InterruptedException {
+    if (ctx.config().getBoolean(RoslynPlugin.DAEMON_KEY).orElse(false)) {
+      int idleSeconds = ctx.config().getInt(RoslynPlugin.DAEMON_IDLE_KEY).orElse(600);
+      // a silent daemon is given up a minute after the watchdog asked it to stop
+      long inactivity = TimeUnit.SECONDS.toMillis(ctx.config().getLong(RoslynPlugin.INACTIVITY_TIMEOUT_KEY).orElse(0L));
+      long readTimeout = inactivity > 0 ? inactivity + TimeUnit.MINUTES.toMillis(1) : RoslynDaemonClient.DEFAULT_READ_TIMEOUT_MILLIS;
+      OptionalInt exitCode = new RoslynDaemonClient(RoslynDaemonClient.defaultStateDir(), executableFile, idleSeconds, readTimeout)
+        .execute(arguments, watchdog.watch(out));
+      if (exitCode.isPresent()) {
+        return exitCode.getAsInt();
+      }
+      LOG.warn("RoslynRunner daemon not available, running RoslynRunner as a single process");
+    }
+
+    try (ResourceMonitor monitor = new ResourceMonitor(ResourceMonitor.Settings.create(ctx.config()), "RoslynRunner")) {
+      report.resources(monitor);
+      return watchdog.execute(command(ctx, executableFile, arguments), out, pump.err(), monitor);
+    }
+  }
+
+  private Command command(SensorContext ctx, File executableFile, List<String> arguments) {
     Command command;
     if (OsUtils.isWindows()) {
-      command = Command.create(executableFile.getAbsolutePath())
-              .addArgument("/i:" + analysisInput.getAbsolutePath())
-              .addArgument("/u:" + username)
-              .addArgument("/p:" + password)
-              .addArgument("/o:" + analysisOutput.getAbsolutePath());      
+      command = Command.create(executableFile.getAbsolutePath());
     } else {
       command = Command.create("mono")
-              .addArgument(executableFile.getAbsolutePath())
-              .addArgument("/i:" + analysisInput.getAbsolutePath())
-              .addArgument("/u:" + username)
-              .addArgument("/p:" + password)              
-              .addArgument("/o:" + analysisOutput.getAbsolutePath());  
+              .addArgument(executableFile.getAbsolutePath());
     }
+    command.addArguments(arguments);
 
     command.setEnvironmentVariable("MSBUILDDISABLENODEREUSE", "1");
-    LOG.info(command.toCommandLine().replace(password, "xxxxxx"));
-    CommandExecutor.create().execute(command, new LogInfoStreamConsumer(), new LogErrorStreamConsumer(), Integer.MAX_VALUE);
-  }
-
-  private void importResults(SensorContext ctx) throws FileNotFoundException, IOException {
-    File analysisOutput = toolOutput(ctx);
-
-    LOG.info("Import data from: " + analysisOutput);
-    try(BufferedReader br = new BufferedReader(new FileReader(analysisOutput))) {
-        for(String line; (line = br.readLine()) != null; ) {
-          String [] elements = line.split(";");
-          String path    = elements[0];
-          String lineval = elements[1];
-          String id      = elements[2];
-          String message = elements[3];
-                                
-          String repository = RoslynPlugin.REPOSITORY_KEY_CS;
-          if(path.toLowerCase().endsWith(".vb")) {
-            repository = RoslynPlugin.REPOSITORY_KEY_VB;
-          }          
-          
-          InputFile inputFile = ctx.fileSystem().inputFile(ctx.fileSystem().predicates().is(new File(path)));
-          if (inputFile != null) {
-            NewIssue newIssue = ctx.newIssue().forRule(RuleKey.of(repository, id));
-            NewIssueLocation location = newIssue.newLocation()
-              .on(inputFile)
-              .at(inputFile.selectLine(Integer.parseInt(lineval)))
-              .message(message);
-
-            newIssue.at(location);
-            newIssue.save();
-         
-          } else {
-            LOG.info("inputFile not created - issue will not be imported: '{}' : '{}'", path, message);
-          }
+    String password = getEmptyStringOrValue(ctx, "sonar.password");
+    LOG.info("".equals(password) ? command.toCommandLine() : command.toCommandLine().replace(password, "xxxxxx"));
+    return command;
+  }
+
+  /**
+   * Decodes the results files into the sink, following the only file while the given runner is still executing.
+   */
+  private static void decodeResults(List<File> outputs, Future<Integer> runner, IncrementalAnalysis.Plan plan,
+    ResultCache.Session session, Set<String> cached, AnalysisReport report, AnalysisResults sink) throws IOException, InterruptedException {
+    try (AnalysisReport.Phase phase = report.phase("decode")) {
+      RoslynResultsDecoder.IssueHandler handler = sink;
+      if (plan != null) {
+        handler = plan.record(sink);
+        plan.replay(handler);
+      }
+      if (session != null) {
+        session.replay(cached, handler);
+        handler = session.record(handler);
+      }
+      for (File analysisOutput : outputs) {
+        LOG.info("Import data from: " + analysisOutput);
+        RoslynResultsDecoder parser = RoslynResultsDecoder.create(handler);
+        if (runner == null) {
+          parser.read(analysisOutput);
+        } else {
+          int exitCode = new RoslynResultsFollower(analysisOutput, parser).follow(runner);
+          LOG.info("RoslynRunner exited with code {}", exitCode);
         }
+        LOG.info("Parsed {} issues from {} bytes, skipped {} malformed records", parser.records(), parser.bytes(), parser.skipped());
+        report.count("issues.parsed", parser.records());
+        report.count("bytes.read", parser.bytes());
+        report.count("records.skipped", parser.skipped());
+      }
     }
   }
+
+  /**
+   * Where an analysis run by this module puts its issues. The scanner of SonarQube 6.7 scans
+   * child modules before the root module, so when the root runs the analysis no other module
+   * will import afterwards and its issues go straight to its importer. Analyses run by other
+   * modules spool their issues until the modules owning the files import them.
+   */
+  private AnalysisResults target(SensorContext ctx, RoslynIssueImporter importer) {
+    if (coordinator.root().equals(ctx.fileSystem().baseDir().getAbsoluteFile())) {
+      return AnalysisResults.direct(importer);
+    }
+    return AnalysisResults.spooled(coordinator.workDir());
+  }
+
+  private static void importSlice(SensorContext ctx, AnalysisResults results, InputFileIndex index, RoslynIssueImporter importer, AnalysisReport report)
+    throws IOException {
+    try (AnalysisReport.Phase phase = report.phase("import")) {
+      int imported = results.importInto(ctx.fileSystem().baseDir().getAbsolutePath(), index, importer);
+      LOG.info("Import {} issues on the files of this module, issues on {} other files are left to other modules", imported, results.files());
+      importer.finish();
+      countImport(report, importer, index);
+    }
+    index.logStatistics();
+  }
+
+  private static void countImport(AnalysisReport report, RoslynIssueImporter importer, InputFileIndex index) {
+    report.count("issues.saved", importer.saved());
+    report.count("issues.duplicates", importer.duplicates());
+    report.count("issues.inactive", importer.inactive());
+    report.count("issues.unresolved", index.missedIssues());
+  }
   
+  /**
+   * Decodes diagnostics from compiler error logs instead of running RoslynRunner.
+   */
+  private void importSarifReports(SensorContext ctx, String[] reports, AnalysisResults sink, AnalysisReport report) throws InterruptedException {
+    List<File> logs = new ArrayList<>();
+    for (String path : reports) {
+      File log = new File(path.trim());
+      if (!log.isAbsolute()) {
+        log = new File(coordinator.root(), path.trim());
+      }
+      if (log.isFile()) {
+        logs.add(log);
+      } else {
+        LOG.warn("SARIF log '{}' not found, it will not be imported", log);
+      }
+    }
+
+    LOG.info("Import {} SARIF logs, RoslynRunner will not be executed", logs.size());
+    try (AnalysisReport.Phase phase = report.phase("decode")) {
+      SarifLogParser.parseAll(logs, coordinator.root(), RoslynIssueImporter.threads(ctx), sink);
+    }
+  }
+
   private void appendLine(StringBuilder sb, String line) {
     sb.append(line);
     sb.append("\r\n");
@@ -283,34 +841,28 @@ public class RoslynSensor implements Sensor {
 
 
 
-  private static class LogInfoStreamConsumer implements StreamConsumer {
-    @Override
-    public void consumeLine(String line) {
-      LOG.info(line);
-    }
-  }
+  private static final class RunnerResults {
+    private final List<File> outputs;
+    private final List<File> telemetry;
+    private final boolean complete;
 
-  private static class LogErrorStreamConsumer implements StreamConsumer {
-    @Override
-    public void consumeLine(String line) {
-      LOG.error(line);
+    RunnerResults(List<File> outputs, List<File> telemetry, boolean complete) {
+      this.outputs = outputs;
+      this.telemetry = telemetry;
+      this.complete = complete;
     }
   }
 
   private File additionalIncludeFile(String fileName, String content, SensorContext ctx) throws IOException {
-    File additionalFile = new File(ctx.fileSystem().workDir(), fileName);    
+    File additionalFile = new File(coordinator.workDir(), fileName);    
     Files.write(additionalFile.toPath(), content.getBytes());
     return additionalFile;    
   }
-  private File toolInput(SensorContext ctx) {
-    return new File(ctx.fileSystem().workDir(), "roslyn-analysis-input.xml");
-  }
-
-  private File toolOutput(SensorContext ctx) {
-    return toolOutput(ctx.fileSystem());
+  private File toolInput() {
+    return new File(coordinator.workDir(), "roslyn-analysis-input.xml");
   }
 
-  public static File toolOutput(FileSystem fileSystem) {
-    return new File(fileSystem.workDir(), "roslyn-analysis-output.xml");
+  private File toolOutput() {
+    return new File(coordinator.workDir(), "roslyn-analysis-output.xml");
   }
 }
@@ -0,0 +1,316 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.server.rule.RulesDefinition.NewRepository;
+import org.sonar.api.server.rule.RulesDefinition.NewRule;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Rules of the analyzers known when the plugin was built, written by RoslynRunner /catalog and
+ * bundled in the plugin. A header gives the byte range of each repository, so a repository only
+ * decodes its own rules:
+ * <pre>
+ * #roslyn-rules;1
+ * &#64;roslyn-cs	offset	length	rules
+ * #
+ * roslyn-cs	id	roslyn severity	title	category	help url	description
+ * </pre>
+ * Fields escape tabs, line breaks and backslashes. The bundled catalog is read the first time
+ * a repository is defined.
+ */
+public class RuleCatalog {
+
+  public static final Logger LOG = Loggers.get(RuleCatalog.class);
+  public static final String RESOURCE = "/org/sonar/plugins/roslyn/roslyn-rules.catalog";
+  static final String HEADER = "#roslyn-rules;1";
+  private static final int MAX_NAME_LENGTH = 200;
+
+  private final byte[] content;
+  private final int body;
+  private final Map<String, int[]> sections;
+
+  private RuleCatalog(byte[] content, int body, Map<String, int[]> sections) {
+    this.content = content;
+    this.body = body;
+    this.sections = sections;
+  }
+
+  /**
+   * Catalog bundled in the plugin, empty when the plugin was built without one.
+   */
+  public static RuleCatalog bundled() {
+    return Bundled.CATALOG;
+  }
+
+  public static RuleCatalog read(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[65536];
+    int read;
+    while ((read = in.read(buffer)) >= 0) {
+      out.write(buffer, 0, read);
+    }
+    byte[] content = out.toByteArray();
+
+    Map<String, int[]> sections = new LinkedHashMap<>();
+    int start = 0;
+    boolean first = true;
+    while (true) {
+      int end = lineEnd(content, start);
+      if (end < 0) {
+        throw new IOException("Rule catalog header not terminated");
+      }
+      String line = new String(content, start, end - start, StandardCharsets.UTF_8);
+      start = end + 1;
+      if (first) {
+        if (!HEADER.equals(line)) {
+          throw new IOException("Not a rule catalog: " + line);
+        }
+        first = false;
+      } else if ("#".equals(line)) {
+        break;
+      } else if (line.startsWith("@")) {
+        String[] fields = line.substring(1).split("\t");
+        if (fields.length < 4) {
+          throw new IOException("Malformed rule catalog index: " + line);
+        }
+        try {
+          sections.put(fields[0], new int[] {Integer.parseInt(fields[1]), Integer.parseInt(fields[2]), Integer.parseInt(fields[3])});
+        } catch (NumberFormatException e) {
+          throw new IOException("Malformed rule catalog index: " + line, e);
+        }
+      }
+    }
+    for (Map.Entry<String, int[]> section : sections.entrySet()) {
+      if (section.getValue()[0] < 0 || start + (long) section.getValue()[0] + section.getValue()[1] > content.length) {
+        throw new IOException("Rule catalog truncated in repository " + section.getKey());
+      }
+    }
+    return new RuleCatalog(content, start, sections);
+  }
+
+  private static int lineEnd(byte[] content, int start) {
+    for (int i = start; i < content.length; i++) {
+      if (content[i] == '\n') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  public Set<String> repositories() {
+    return Collections.unmodifiableSet(sections.keySet());
+  }
+
+  /**
+   * Number of rules of the repository as given by the index, without decoding them.
+   */
+  public int size(String repository) {
+    int[] section = sections.get(repository);
+    return section == null ? 0 : section[2];
+  }
+
+  public List<Rule> rules(String repository) {
+    int[] section = sections.get(repository);
+    if (section == null) {
+      return Collections.emptyList();
+    }
+    List<Rule> rules = new ArrayList<>(section[2]);
+    int start = body + section[0];
+    int end = start + section[1];
+    while (start < end) {
+      int lineEnd = lineEnd(content, start);
+      if (lineEnd < 0 || lineEnd > end) {
+        lineEnd = end;
+      }
+      String[] fields = new String(content, start, lineEnd - start, StandardCharsets.UTF_8).split("\t", -1);
+      start = lineEnd + 1;
+      if (fields.length < 7 || !repository.equals(fields[0]) || fields[1].isEmpty()) {
+        LOG.debug("Malformed rule in catalog repository {}", repository);
+        continue;
+      }
+      rules.add(new Rule(unescape(fields[1]), unescape(fields[2]), unescape(fields[3]), unescape(fields[4]), unescape(fields[5]),
+        unescape(fields[6])));
+    }
+    return rules;
+  }
+
+  /**
+   * Adds the rules of the repository, keeping the rules it already defines.
+   */
+  public void define(NewRepository repository) {
+    int defined = 0;
+    for (Rule rule : rules(repository.key())) {
+      if (repository.rule(rule.key()) != null) {
+        continue;
+      }
+      NewRule newRule = repository.createRule(rule.key())
+        .setName(rule.name())
+        .setSeverity(rule.severity())
+        .setHtmlDescription(rule.htmlDescription());
+      String tag = rule.tag();
+      if (!tag.isEmpty()) {
+        newRule.addTags(tag);
+      }
+      defined++;
+    }
+    LOG.debug("Defined {} rules of repository {} from the rule catalog", defined, repository.key());
+  }
+
+  static String unescape(String field) {
+    if (field.indexOf('\\') < 0) {
+      return field;
+    }
+    StringBuilder sb = new StringBuilder(field.length());
+    for (int i = 0; i < field.length(); i++) {
+      char c = field.charAt(i);
+      if (c == '\\' && i + 1 < field.length()) {
+        char next = field.charAt(++i);
+        sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  private static String escapeHtml(String text) {
+    return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+  }
+
+  /**
+   * Diagnostic descriptor of an analyzer as written in the catalog.
+   */
+  public static final class Rule {
+    private final String key;
+    private final String roslynSeverity;
+    private final String title;
+    private final String category;
+    private final String helpUrl;
+    private final String description;
+
+    Rule(String key, String roslynSeverity, String title, String category, String helpUrl, String description) {
+      this.key = key;
+      this.roslynSeverity = roslynSeverity;
+      this.title = title;
+      this.category = category;
+      this.helpUrl = helpUrl;
+      this.description = description;
+    }
+
+    public String key() {
+      return key;
+    }
+
+    public String name() {
+      String name = title.trim().isEmpty() ? key : title.trim();
+      return name.length() > MAX_NAME_LENGTH ? name.substring(0, MAX_NAME_LENGTH - 3) + "..." : name;
+    }
+
+    public String category() {
+      return category;
+    }
+
+    public String helpUrl() {
+      return helpUrl;
+    }
+
+    /**
+     * Severity of the rule from the default severity of the diagnostic.
+     */
+    public String severity() {
+      switch (roslynSeverity) {
+        case "Error":
+          return Severity.CRITICAL;
+        case "Info":
+          return Severity.MINOR;
+        case "Hidden":
+          return Severity.INFO;
+        default:
+          return Severity.MAJOR;
+      }
+    }
+
+    /**
+     * Category as a rule tag, empty when there is none.
+     */
+    public String tag() {
+      return category.toLowerCase(Locale.ENGLISH).replaceAll("[^a-z0-9+#.\\-]+", "-").replaceAll("^-+|-+$", "");
+    }
+
+    public String htmlDescription() {
+      StringBuilder html = new StringBuilder("<p>").append(escapeHtml(description.trim().isEmpty() ? name() : description)).append("</p>");
+      if (!helpUrl.isEmpty()) {
+        html.append("<p><a href=\"").append(escapeHtml(helpUrl)).append("\">Help Url</a></p>");
+      }
+      return html.toString();
+    }
+  }
+
+  private static final class Bundled {
+    private static final RuleCatalog CATALOG = load();
+
+    private static RuleCatalog load() {
+      try (InputStream in = RuleCatalog.class.getResourceAsStream(RESOURCE)) {
+        if (in == null) {
+          LOG.info("No rule catalog bundled, Roslyn repositories only define the template rule");
+          return empty();
+        }
+        RuleCatalog catalog = read(in);
+        LOG.info("Loaded rule catalog with {} repositories", catalog.sections.size());
+        return catalog;
+      } catch (IOException e) {
+        LOG.warn("Cannot read the bundled rule catalog, Roslyn repositories only define the template rule: {}", e.getMessage());
+        return empty();
+      }
+    }
+
+    private static RuleCatalog empty() {
+      return new RuleCatalog(new byte[0], 0, Collections.<String, int[]>emptyMap());
+    }
+  }
+}
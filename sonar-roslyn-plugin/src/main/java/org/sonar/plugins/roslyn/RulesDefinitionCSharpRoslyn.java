@@ -50,6 +50,7 @@ public class RulesDefinitionCSharpRoslyn implements RulesDefinition {
       .setSeverity(Severity.MAJOR)
       .setTemplate(true)
       .setHtmlDescription("<p>template rule<p>");
+    RuleCatalog.bundled().define(repository);
     repository.done();
   }
 }
@@ -0,0 +1,242 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.sonar.api.utils.command.StreamConsumer;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Moves the RoslynRunner output to the scanner log without slowing the runner down. The
+ * stream readers only append each line to a raw log file and offer it to a bounded ring
+ * buffer; a background thread drains the buffer into the logger, collapsing repeated lines
+ * and limiting the number of lines logged per second. Lines that do not fit in the buffer or
+ * exceed the rate are only in the raw log file, and a summary is logged at the end.
+ */
+public class RunnerLogPump implements AutoCloseable {
+
+  public static final Logger LOG = Loggers.get(RunnerLogPump.class);
+  static final int CAPACITY = 8192;
+  static final int LINES_PER_SECOND = 200;
+
+  private final File rawLog;
+  private final String prefix;
+  private final int linesPerSecond;
+  private final Writer raw;
+  private final BlockingQueue<Line> buffer;
+  private final Thread drainer;
+  private volatile boolean closing;
+
+  private long lines = 0;
+  private long errors = 0;
+  private final AtomicLong dropped = new AtomicLong();
+
+  // drainer state
+  private Line previous;
+  private long repeats = 0;
+  private long collapsed = 0;
+  private long limited = 0;
+  private long limitedSinceNotice = 0;
+  private double tokens;
+  private long refilledAt = System.nanoTime();
+
+  public RunnerLogPump(File rawLog, String prefix) throws IOException {
+    this(rawLog, prefix, CAPACITY, LINES_PER_SECOND);
+  }
+
+  RunnerLogPump(File rawLog, String prefix, int capacity, int linesPerSecond) throws IOException {
+    this.rawLog = rawLog;
+    this.prefix = prefix.isEmpty() ? "" : (prefix + " ");
+    this.linesPerSecond = linesPerSecond;
+    this.tokens = linesPerSecond;
+    this.raw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(rawLog), StandardCharsets.UTF_8), 1 << 16);
+    this.buffer = new ArrayBlockingQueue<>(capacity);
+    this.drainer = new Thread(this::drain, "roslyn-log-pump");
+    this.drainer.setDaemon(true);
+    this.drainer.start();
+  }
+
+  public StreamConsumer out() {
+    return line -> offer(line, false);
+  }
+
+  public StreamConsumer err() {
+    return line -> offer(line, true);
+  }
+
+  private void offer(String line, boolean error) {
+    synchronized (raw) {
+      lines++;
+      if (error) {
+        errors++;
+      }
+      try {
+        raw.write(error ? "[err] " : "[out] ");
+        raw.write(line);
+        raw.write('\n');
+      } catch (IOException e) {
+        // the raw log is best effort, the line still goes to the logger
+      }
+    }
+    if (!buffer.offer(new Line(line, error))) {
+      dropped.incrementAndGet();
+    }
+  }
+
+  private void drain() {
+    try {
+      while (!closing || !buffer.isEmpty()) {
+        Line line = buffer.poll(100, TimeUnit.MILLISECONDS);
+        if (line != null) {
+          handle(line);
+        } else {
+          flushRepeats();
+        }
+        noticeLimited();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flushRepeats();
+    noticeLimited();
+  }
+
+  private void handle(Line line) {
+    if (line.equals(previous)) {
+      repeats++;
+      collapsed++;
+      return;
+    }
+    flushRepeats();
+    previous = line;
+    if (acquire()) {
+      log(line.error, line.text);
+    } else {
+      limited++;
+      limitedSinceNotice++;
+    }
+  }
+
+  private void flushRepeats() {
+    if (repeats > 0) {
+      log(previous.error, "(previous line repeated " + repeats + " times)");
+      repeats = 0;
+    }
+  }
+
+  private void noticeLimited() {
+    if (limitedSinceNotice > 0 && acquire()) {
+      LOG.info("{}{} lines not logged, see {}", prefix, limitedSinceNotice, rawLog);
+      limitedSinceNotice = 0;
+    }
+  }
+
+  private boolean acquire() {
+    long now = System.nanoTime();
+    tokens = Math.min(linesPerSecond, tokens + (now - refilledAt) * linesPerSecond / 1e9);
+    refilledAt = now;
+    if (tokens >= 1) {
+      tokens--;
+      return true;
+    }
+    return false;
+  }
+
+  private void log(boolean error, String text) {
+    if (error) {
+      LOG.error("{}{}", prefix, text);
+    } else {
+      LOG.info("{}{}", prefix, text);
+    }
+  }
+
+  /**
+   * Logs the remaining lines and the summary, and closes the raw log. When interrupted, the
+   * lines not logged yet stay in the raw log only and the interrupt flag is set again.
+   */
+  @Override
+  public void close() {
+    closing = true;
+    boolean interrupted = false;
+    try {
+      drainer.join();
+    } catch (InterruptedException e) {
+      interrupted = true;
+      drainer.interrupt();
+    }
+    synchronized (raw) {
+      try {
+        raw.close();
+      } catch (IOException e) {
+        LOG.warn("Cannot write RoslynRunner output to '{}': {}", rawLog, e.getMessage());
+      }
+      LOG.info("{}RoslynRunner printed {} lines ({} on stderr): {} repeated lines collapsed, {} rate limited, {} dropped. Full output: {}",
+        prefix, lines, errors, collapsed, limited, dropped.get(), rawLog);
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static final class Line {
+    private final String text;
+    private final boolean error;
+
+    Line(String text, boolean error) {
+      this.text = text;
+      this.error = error;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Line && ((Line) other).error == error && ((Line) other).text.equals(text);
+    }
+
+    @Override
+    public int hashCode() {
+      return text.hashCode();
+    }
+  }
+}
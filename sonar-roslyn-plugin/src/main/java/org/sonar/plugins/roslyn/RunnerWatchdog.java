@@ -0,0 +1,259 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.utils.command.Command;
+import org.sonar.api.utils.command.StreamConsumer;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Bounds the execution time of RoslynRunner. When the wall-clock budget of the scan is spent,
+ * or when the runner printed nothing for too long, the cancel file named in the analysis input
+ * is created: the runner then stops before its next analysis and flushes the results it has.
+ * A runner still alive after a grace period is terminated, and killed forcibly when it ignores
+ * termination too. Either way the results written so far stay in the output file and can be
+ * imported.
+ */
+public class RunnerWatchdog implements AutoCloseable {
+
+  public static final Logger LOG = Loggers.get(RunnerWatchdog.class);
+  static final long CHECK_MILLIS = 1000;
+  static final long PUMP_JOIN_MILLIS = 2000;
+
+  private final Budget budget;
+  private final File cancelFile;
+  private final String name;
+  private final AtomicLong lastActivity = new AtomicLong(System.nanoTime());
+  private final ScheduledExecutorService timer;
+  private volatile Process process;
+  private volatile String cancelReason;
+  private volatile long cancelledAt;
+  private volatile boolean killed;
+  private volatile long killedAt;
+  private volatile boolean forced;
+
+  public RunnerWatchdog(Budget budget, File cancelFile, String name) {
+    this.budget = budget;
+    this.cancelFile = cancelFile;
+    this.name = name;
+    this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "roslyn-watchdog");
+      thread.setDaemon(true);
+      return thread;
+    });
+    if (budget.bounded()) {
+      timer.scheduleWithFixedDelay(this::check, CHECK_MILLIS, CHECK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Wall-clock deadline and inactivity limit of the runners of one scan.
+   */
+  public static final class Budget {
+    private final long deadline;
+    private final long inactivityNanos;
+    private final long graceMillis;
+    private final long killGraceMillis;
+
+    Budget(long timeoutMillis, long inactivityMillis, long graceMillis) {
+      this(timeoutMillis, inactivityMillis, graceMillis, TimeUnit.SECONDS.toMillis(5));
+    }
+
+    Budget(long timeoutMillis, long inactivityMillis, long graceMillis, long killGraceMillis) {
+      this.deadline = timeoutMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : Long.MAX_VALUE;
+      this.inactivityNanos = inactivityMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(inactivityMillis) : Long.MAX_VALUE;
+      this.graceMillis = graceMillis;
+      this.killGraceMillis = killGraceMillis;
+    }
+
+    /**
+     * Budget starting now, from {@link RoslynPlugin#TIMEOUT_KEY} and {@link RoslynPlugin#INACTIVITY_TIMEOUT_KEY}.
+     */
+    public static Budget create(Configuration config) {
+      long timeout = TimeUnit.MINUTES.toMillis(config.getLong(RoslynPlugin.TIMEOUT_KEY).orElse(0L));
+      long inactivity = TimeUnit.SECONDS.toMillis(config.getLong(RoslynPlugin.INACTIVITY_TIMEOUT_KEY).orElse(0L));
+      return new Budget(timeout, inactivity, TimeUnit.SECONDS.toMillis(30));
+    }
+
+    boolean bounded() {
+      return deadline != Long.MAX_VALUE || inactivityNanos != Long.MAX_VALUE;
+    }
+  }
+
+  /**
+   * Consumer recording output as activity before handing it over.
+   */
+  public StreamConsumer watch(final StreamConsumer consumer) {
+    return line -> {
+      lastActivity.set(System.nanoTime());
+      consumer.consumeLine(line);
+    };
+  }
+
+  /**
+   * True once the runner was asked to stop, its results are then partial.
+   */
+  public boolean cancelled() {
+    return cancelReason != null;
+  }
+
+  /**
+   * Runs the command in a new process, killed when it does not stop after being cancelled.
+   * Unlike {@link org.sonar.api.utils.command.CommandExecutor} this keeps hold of the process.
+   * Output still open shortly after the process exited, for instance held by a process it
+   * started, is not waited for.
+   */
+  public int execute(Command command, StreamConsumer out, StreamConsumer err) throws IOException, InterruptedException {
+    return execute(command, out, err, null);
+  }
+
+  /**
+   * Runs the command as {@link #execute(Command, StreamConsumer, StreamConsumer)}, sampling its resources
+   * with the given monitor when not null.
+   */
+  public int execute(Command command, StreamConsumer out, StreamConsumer err, ResourceMonitor monitor)
+    throws IOException, InterruptedException {
+    List<String> commandLine = new ArrayList<>();
+    commandLine.add(command.getExecutable());
+    commandLine.addAll(command.getArguments());
+    ProcessBuilder builder = new ProcessBuilder(commandLine);
+    builder.environment().putAll(command.getEnvironmentVariables());
+    if (command.getDirectory() != null) {
+      builder.directory(command.getDirectory());
+    }
+
+    process = builder.start();
+    if (monitor != null) {
+      monitor.start(process);
+    }
+    process.getOutputStream().close();
+    Thread outPump = pump(process.getInputStream(), watch(out), "roslyn-runner-out");
+    Thread errPump = pump(process.getErrorStream(), watch(err), "roslyn-runner-err");
+    try {
+      int exitCode = process.waitFor();
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PUMP_JOIN_MILLIS);
+      for (Thread pump : new Thread[] {outPump, errPump}) {
+        pump.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        if (pump.isAlive()) {
+          LOG.warn("{} exited but its output is still open or being read, no longer waiting for it", name);
+          pump.interrupt();
+        }
+      }
+      return exitCode;
+    } finally {
+      if (process.isAlive()) {
+        process.destroyForcibly();
+      }
+    }
+  }
+
+  private static Thread pump(final InputStream stream, final StreamConsumer consumer, String name) {
+    Thread thread = new Thread(() -> {
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, Charset.defaultCharset()))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          consumer.consumeLine(line);
+        }
+      } catch (IOException e) {
+        LOG.debug("RoslynRunner output closed: {}", e.getMessage());
+      }
+    }, name);
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  void check() {
+    long now = System.nanoTime();
+    if (cancelReason == null) {
+      String reason = null;
+      if (now - budget.deadline >= 0) {
+        reason = "the analysis time budget is spent";
+      } else if (now - lastActivity.get() >= budget.inactivityNanos) {
+        reason = "no output for " + TimeUnit.NANOSECONDS.toSeconds(now - lastActivity.get()) + " seconds";
+      }
+      if (reason != null) {
+        cancel(reason);
+      }
+    } else if (!killed && now - cancelledAt >= TimeUnit.MILLISECONDS.toNanos(budget.graceMillis)) {
+      killed = true;
+      killedAt = now;
+      Process running = process;
+      if (running == null) {
+        LOG.warn("{} did not stop within {} seconds after cancellation and cannot be killed", name, TimeUnit.MILLISECONDS.toSeconds(budget.graceMillis));
+      } else {
+        LOG.warn("{} did not stop within {} seconds after cancellation, killing it", name, TimeUnit.MILLISECONDS.toSeconds(budget.graceMillis));
+        running.destroy();
+      }
+    } else if (killed && !forced && now - killedAt >= TimeUnit.MILLISECONDS.toNanos(budget.killGraceMillis)) {
+      forced = true;
+      Process running = process;
+      if (running != null && running.isAlive()) {
+        LOG.warn("{} still running {} seconds after being killed, killing it forcibly", name, TimeUnit.MILLISECONDS.toSeconds(budget.killGraceMillis));
+        running.destroyForcibly();
+      }
+    }
+  }
+
+  private void cancel(String reason) {
+    cancelReason = reason;
+    cancelledAt = System.nanoTime();
+    LOG.warn("{} cancelled, {}: the issues found so far are imported and the analysis results are partial", name, reason);
+    try {
+      Files.write(cancelFile.toPath(), reason.getBytes(Charset.defaultCharset()));
+    } catch (IOException e) {
+      LOG.warn("Cannot create cancel file '{}': {}", cancelFile, e.getMessage());
+    }
+  }
+
+  @Override
+  public void close() {
+    timer.shutdownNow();
+  }
+}
@@ -0,0 +1,412 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Streams the results of SARIF error logs written by the compiler with /errorlog. Both the
+ * 1.0 layout written by older compilers and the 2.x layout are understood. Suppressed
+ * results and results without a file location are not reported, results on a file without a
+ * region are reported on line 0, the whole file.
+ */
+public class SarifLogParser {
+
+  public static final Logger LOG = Loggers.get(SarifLogParser.class);
+  static final int CHUNK_SIZE = 1024;
+
+  private final File baseDir;
+  private final RoslynResultsDecoder.IssueHandler handler;
+
+  private long results = 0;
+  private long suppressed = 0;
+  private long withoutLocation = 0;
+
+  public SarifLogParser(File baseDir, RoslynResultsDecoder.IssueHandler handler) {
+    this.baseDir = baseDir;
+    this.handler = handler;
+  }
+
+  /**
+   * Parses the logs on up to the given number of threads. Issues are handed to the handler on
+   * the calling thread only. A log that cannot be read is reported and the others are still
+   * imported.
+   */
+  public static void parseAll(List<File> logs, File baseDir, int threads, RoslynResultsDecoder.IssueHandler handler)
+    throws InterruptedException {
+    int workers = Math.min(threads, logs.size());
+    if (workers <= 1) {
+      for (File log : logs) {
+        parseAndReport(new SarifLogParser(baseDir, handler), log);
+      }
+      return;
+    }
+
+    final BlockingQueue<List<RoslynIssue>> queue = new ArrayBlockingQueue<>(workers * 2);
+    final List<RoslynIssue> endOfLog = new ArrayList<>(0);
+    ExecutorService executor = Executors.newFixedThreadPool(workers, r -> {
+      Thread thread = new Thread(r, "roslyn-sarif");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      List<Future<?>> tasks = new ArrayList<>();
+      for (final File log : logs) {
+        tasks.add(executor.submit(() -> {
+          ChunkingHandler chunks = new ChunkingHandler(queue);
+          try {
+            parseAndReport(new SarifLogParser(baseDir, chunks), log);
+            chunks.flush();
+          } catch (CancellationException e) {
+            // interrupted by shutdownNow, nobody is waiting for the end of this log
+            throw new InterruptedException();
+          } catch (RuntimeException e) {
+            queue.put(endOfLog);
+            throw e;
+          }
+          queue.put(endOfLog);
+          return null;
+        }));
+      }
+
+      int remaining = logs.size();
+      while (remaining > 0) {
+        List<RoslynIssue> chunk = queue.take();
+        if (chunk == endOfLog) {
+          remaining--;
+          continue;
+        }
+        for (RoslynIssue issue : chunk) {
+          handler.handle(issue);
+        }
+      }
+
+      for (Future<?> task : tasks) {
+        task.get();
+      }
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("SARIF import failed", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void parseAndReport(SarifLogParser parser, File log) throws InterruptedException {
+    try {
+      parser.parse(log);
+      LOG.info("Parsed {} results from '{}', skipped {} suppressed and {} without location",
+        parser.results(), log, parser.suppressed(), parser.withoutLocation());
+    } catch (IOException e) {
+      LOG.error("Failed to parse SARIF log '{}', {} results were imported before the error: {}", log, parser.results(), e.getMessage());
+    }
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+  }
+
+  public void parse(File log) throws IOException {
+    try (JsonPullReader reader = new JsonPullReader(new InputStreamReader(new FileInputStream(log), StandardCharsets.UTF_8))) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if ("runs".equals(reader.nextName())) {
+          reader.beginArray();
+          while (reader.hasNext()) {
+            readRun(reader);
+          }
+          reader.endArray();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    }
+  }
+
+  public long results() {
+    return results;
+  }
+
+  public long suppressed() {
+    return suppressed;
+  }
+
+  public long withoutLocation() {
+    return withoutLocation;
+  }
+
+  private void readRun(JsonPullReader reader) throws IOException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if ("results".equals(reader.nextName()) && reader.peek() == JsonPullReader.Token.BEGIN_ARRAY) {
+        reader.beginArray();
+        Result result = new Result();
+        while (reader.hasNext()) {
+          result.clear();
+          readResult(reader, result);
+          report(result);
+        }
+        reader.endArray();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+  }
+
+  private void report(Result result) {
+    if (result.suppressed) {
+      suppressed++;
+      return;
+    }
+    if (result.uri == null || result.ruleId == null) {
+      withoutLocation++;
+      return;
+    }
+
+    String path = toPath(result.uri);
+    if (path == null) {
+      withoutLocation++;
+      return;
+    }
+    results++;
+    handler.handle(new RoslynIssue(path, result.line, result.ruleId, result.message == null ? result.ruleId : result.message));
+  }
+
+  private static void readResult(JsonPullReader reader, Result result) throws IOException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("ruleId".equals(name)) {
+        result.ruleId = reader.nextString();
+      } else if ("message".equals(name)) {
+        result.message = readMessage(reader);
+      } else if ("locations".equals(name) && reader.peek() == JsonPullReader.Token.BEGIN_ARRAY) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+          if (result.uri == null) {
+            readLocation(reader, result);
+          } else {
+            reader.skipValue();
+          }
+        }
+        reader.endArray();
+      } else if ("suppressionStates".equals(name) || "suppressions".equals(name)) {
+        result.suppressed |= isNonEmptyArray(reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+  }
+
+  /**
+   * Message is a plain string in SARIF 1.0 and an object with a text property in 2.x.
+   */
+  private static String readMessage(JsonPullReader reader) throws IOException {
+    if (reader.peek() != JsonPullReader.Token.BEGIN_OBJECT) {
+      return reader.nextString();
+    }
+
+    String text = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if ("text".equals(reader.nextName())) {
+        text = reader.nextString();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return text;
+  }
+
+  /**
+   * Reads resultFile (1.0) or physicalLocation (2.x) of a location.
+   */
+  private static void readLocation(JsonPullReader reader, Result result) throws IOException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("resultFile".equals(name) || "physicalLocation".equals(name)) {
+        readPhysicalLocation(reader, result);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+  }
+
+  private static void readPhysicalLocation(JsonPullReader reader, Result result) throws IOException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("uri".equals(name)) {
+        result.uri = reader.nextString();
+      } else if ("artifactLocation".equals(name) || "fileLocation".equals(name)) {
+        readPhysicalLocation(reader, result);
+      } else if ("region".equals(name)) {
+        readRegion(reader, result);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+  }
+
+  private static void readRegion(JsonPullReader reader, Result result) throws IOException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if ("startLine".equals(reader.nextName())) {
+        result.line = reader.nextInt();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+  }
+
+  private static boolean isNonEmptyArray(JsonPullReader reader) throws IOException {
+    if (reader.peek() != JsonPullReader.Token.BEGIN_ARRAY) {
+      reader.skipValue();
+      return false;
+    }
+    reader.beginArray();
+    boolean nonEmpty = reader.hasNext();
+    while (reader.hasNext()) {
+      reader.skipValue();
+    }
+    reader.endArray();
+    return nonEmpty;
+  }
+
+  /**
+   * Local path of a result uri, relative uris are resolved against the base directory.
+   */
+  String toPath(String uri) {
+    if (!uri.regionMatches(true, 0, "file:", 0, 5)) {
+      boolean drive = uri.length() > 1 && uri.charAt(1) == ':';
+      if (drive || uri.startsWith("/") || uri.startsWith("\\")) {
+        return uri;
+      }
+      if (uri.indexOf(':') > 0) {
+        return null;
+      }
+      return new File(baseDir, uri).getPath();
+    }
+
+    try {
+      URI parsed = new URI(uri.replace('\\', '/').replace(" ", "%20"));
+      String path = parsed.getPath();
+      if (path == null) {
+        return null;
+      }
+      if (parsed.getAuthority() != null && !parsed.getAuthority().isEmpty()) {
+        return "//" + parsed.getAuthority() + path;
+      }
+      if (path.length() > 2 && path.charAt(0) == '/' && path.charAt(2) == ':') {
+        return path.substring(1);
+      }
+      return path;
+    } catch (URISyntaxException e) {
+      LOG.debug("Invalid result uri '{}'", uri);
+      return null;
+    }
+  }
+
+  private static final class Result {
+    private String ruleId;
+    private String message;
+    private String uri;
+    private int line;
+    private boolean suppressed;
+
+    void clear() {
+      ruleId = null;
+      message = null;
+      uri = null;
+      line = 0;
+      suppressed = false;
+    }
+  }
+
+  /**
+   * Collects issues of a worker into chunks handed over to the importing thread.
+   */
+  private static final class ChunkingHandler implements RoslynResultsDecoder.IssueHandler {
+    private final BlockingQueue<List<RoslynIssue>> queue;
+    private List<RoslynIssue> chunk = new ArrayList<>(CHUNK_SIZE);
+
+    ChunkingHandler(BlockingQueue<List<RoslynIssue>> queue) {
+      this.queue = queue;
+    }
+
+    @Override
+    public void handle(RoslynIssue issue) {
+      chunk.add(issue);
+      if (chunk.size() == CHUNK_SIZE) {
+        flush();
+      }
+    }
+
+    void flush() {
+      if (chunk.isEmpty()) {
+        return;
+      }
+      try {
+        queue.put(chunk);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CancellationException("SARIF import interrupted");
+      }
+      chunk = new ArrayList<>(CHUNK_SIZE);
+    }
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Splits the projects of a solution into shards analysed by concurrent RoslynRunner processes,
+ * or gives each of several solutions its own shard, each with its own analysis input and output
+ * in the work directory. At most the configured number of shards run at once. Only the first shard
+ * synchronizes rules and profiles with the server, the others start once it reports through
+ * its ready file that the profiles are in place. A failed shard is reported and the outputs of
+ * the other shards are still returned for import.
+ */
+public class ShardedAnalysis {
+
+  public static final Logger LOG = Loggers.get(ShardedAnalysis.class);
+  static final long READY_POLL_MILLIS = 200;
+
+  public interface ShardRunner {
+    /**
+     * Runs the shard and returns the runner exit code.
+     */
+    int run(Shard shard) throws Exception;
+  }
+
+  private final File workDir;
+  private final int shardCount;
+
+  public ShardedAnalysis(File workDir, int shardCount) {
+    this.workDir = workDir;
+    this.shardCount = shardCount;
+  }
+
+  /**
+   * Number of shards from configuration, all available cores when not set.
+   */
+  public static int shards(int configured) {
+    return configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Round robin assignment of the projects to at most the configured number of shards.
+   */
+  public List<Shard> split(File solution, List<File> projects) {
+    int count = Math.max(1, Math.min(shardCount, projects.size()));
+    List<List<File>> groups = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      groups.add(new ArrayList<>());
+    }
+    for (int i = 0; i < projects.size(); i++) {
+      groups.get(i % count).add(projects.get(i));
+    }
+
+    List<Shard> shards = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      shards.add(new Shard(i, groups.get(i), workDir, solution, "[shard " + (i + 1) + "/" + count + "]"));
+    }
+    return shards;
+  }
+
+  /**
+   * One shard per solution, analysing the given projects of the solution.
+   */
+  public List<Shard> perSolution(Map<File, List<File>> projectsBySolution) {
+    List<Shard> shards = new ArrayList<>();
+    for (Map.Entry<File, List<File>> solution : projectsBySolution.entrySet()) {
+      shards.add(new Shard(shards.size(), solution.getValue(), workDir, solution.getKey(), "[" + solution.getKey().getName() + "]"));
+    }
+    return shards;
+  }
+
+  /**
+   * Runs all shards and returns the output files to import, in shard order.
+   */
+  public Result run(List<Shard> shards, final ShardRunner runner) throws InterruptedException {
+    final CountDownLatch ready = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(shardCount, shards.size())), r -> {
+      Thread thread = new Thread(r, "roslyn-shard");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (final Shard shard : shards) {
+        Files.deleteIfExists(shard.output().toPath());
+        Files.deleteIfExists(shard.readyFile().toPath());
+        results.add(executor.submit(() -> {
+          if (!shard.syncsRules()) {
+            awaitReady(shards.get(0), ready);
+          }
+          try {
+            return runner.run(shard);
+          } finally {
+            if (shard.syncsRules()) {
+              ready.countDown();
+            }
+          }
+        }));
+      }
+
+      List<File> outputs = new ArrayList<>();
+      int failed = 0;
+      for (int i = 0; i < shards.size(); i++) {
+        Shard shard = shards.get(i);
+        if (!succeeded(shard, results.get(i))) {
+          failed++;
+        }
+        if (shard.output().isFile()) {
+          outputs.add(shard.output());
+        }
+      }
+      if (failed > 0) {
+        LOG.error("{} of {} shards failed, issues of their projects may be missing", failed, shards.size());
+      }
+      return new Result(outputs, failed);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to prepare shard outputs", e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static boolean succeeded(Shard shard, Future<Integer> result) throws InterruptedException {
+    try {
+      int exitCode = result.get();
+      if (exitCode == 0) {
+        LOG.info("{} analysed {} projects", shard.prefix(), shard.projects().size());
+        return true;
+      }
+      LOG.error("{} RoslynRunner exited with code {}, projects: {}", shard.prefix(), exitCode, shard.projects());
+    } catch (ExecutionException e) {
+      LOG.error("{} failed: {}, projects: {}", shard.prefix(), e.getCause().getMessage(), shard.projects());
+    }
+    return false;
+  }
+
+  private static void awaitReady(Shard first, CountDownLatch ready) throws InterruptedException {
+    while (!first.readyFile().exists() && !ready.await(READY_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+      // wait for the first shard to synchronize profiles
+    }
+  }
+
+  public static final class Result {
+    private final List<File> outputs;
+    private final int failed;
+
+    Result(List<File> outputs, int failed) {
+      this.outputs = outputs;
+      this.failed = failed;
+    }
+
+    public List<File> outputs() {
+      return outputs;
+    }
+
+    public int failed() {
+      return failed;
+    }
+  }
+
+  public static final class Shard {
+    private final int index;
+    private final List<File> projects;
+    private final File workDir;
+    private final File solution;
+    private final String prefix;
+
+    Shard(int index, List<File> projects, File workDir, File solution, String prefix) {
+      this.index = index;
+      this.projects = Collections.unmodifiableList(projects);
+      this.workDir = workDir;
+      this.solution = solution;
+      this.prefix = prefix;
+    }
+
+    public int index() {
+      return index;
+    }
+
+    public File solution() {
+      return solution;
+    }
+
+    public List<File> projects() {
+      return projects;
+    }
+
+    public File input() {
+      return new File(workDir, "roslyn-analysis-input-" + index + ".xml");
+    }
+
+    public File output() {
+      return new File(workDir, "roslyn-analysis-output-" + index + ".xml");
+    }
+
+    /**
+     * Written by the runner once rules and profiles are synchronized.
+     */
+    public File readyFile() {
+      return new File(workDir, "roslyn-analysis-ready-" + index);
+    }
+
+    public boolean syncsRules() {
+      return index == 0;
+    }
+
+    /**
+     * Prefix of the log lines of this shard.
+     */
+    public String prefix() {
+      return prefix;
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import org.sonar.api.utils.WildcardPattern;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Finds all solutions under a directory in one walk and assigns each project to a single
+ * solution, so projects shared between solutions are analysed once.
+ */
+public class SolutionDiscovery {
+
+  public static final Logger LOG = Loggers.get(SolutionDiscovery.class);
+
+  private SolutionDiscovery() {
+  }
+
+  /**
+   * Solutions under the base directory, in path order. Hidden directories are skipped, as well
+   * as directories and solutions whose path relative to the base directory matches an exclusion.
+   */
+  public static List<File> discover(File baseDir, String[] exclusions) throws IOException {
+    return walk(baseDir, exclusions, false, ".sln");
+  }
+
+  /**
+   * C# and VB.NET sources under the base directory, in path order, skipping the directories
+   * skipped by {@link #discover(File, String[])} and the bin and obj build outputs.
+   */
+  public static List<File> sources(File baseDir, String[] exclusions) throws IOException {
+    return walk(baseDir, exclusions, true, ".cs", ".vb");
+  }
+
+  private static List<File> walk(File baseDir, String[] exclusions, final boolean skipOutputs, final String... extensions)
+    throws IOException {
+    final Path base = baseDir.toPath();
+    final WildcardPattern[] patterns = WildcardPattern.create(exclusions);
+    final List<File> files = new ArrayList<>();
+    Files.walkFileTree(base, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        if (dir.equals(base)) {
+          return FileVisitResult.CONTINUE;
+        }
+        String name = dir.getFileName().toString();
+        boolean skipped = name.startsWith(".") || skipOutputs && ("bin".equalsIgnoreCase(name) || "obj".equalsIgnoreCase(name));
+        return skipped || WildcardPattern.match(patterns, relative(base, dir)) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ENGLISH);
+        for (String extension : extensions) {
+          if (name.endsWith(extension)) {
+            if (WildcardPattern.match(patterns, relative(base, file))) {
+              LOG.debug("'{}' excluded", file);
+            } else {
+              files.add(file.toFile().getAbsoluteFile());
+            }
+          }
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException e) {
+        LOG.debug("Cannot read '{}' while walking '{}': {}", file, base, e.getMessage());
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    Collections.sort(files);
+    return files;
+  }
+
+  private static String relative(Path base, Path path) {
+    return base.relativize(path).toString().replace('\\', '/');
+  }
+
+  /**
+   * Projects each solution analyses: the ones of the solution not already taken by a solution
+   * before it. Solutions left without project are dropped.
+   */
+  public static Map<File, List<File>> assignProjects(List<SolutionFile> solutions) {
+    Map<File, List<File>> assigned = new LinkedHashMap<>();
+    Set<File> taken = new HashSet<>();
+    int shared = 0;
+    for (SolutionFile solution : solutions) {
+      List<File> projects = new ArrayList<>();
+      for (File project : solution.projects()) {
+        if (taken.add(project)) {
+          projects.add(project);
+        } else if (!projects.contains(project)) {
+          shared++;
+        }
+      }
+      if (projects.isEmpty()) {
+        LOG.info("All projects of solution '{}' are analysed with other solutions", solution.file());
+      } else {
+        assigned.put(solution.file(), projects);
+      }
+    }
+    if (shared > 0) {
+      LOG.info("{} project references are shared between solutions, each project is analysed once", shared);
+    }
+    return assigned;
+  }
+}
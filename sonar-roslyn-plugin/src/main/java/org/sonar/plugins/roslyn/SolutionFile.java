@@ -0,0 +1,129 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Projects declared in a Visual Studio solution file. Project paths are made absolute and
+ * normalized without resolving links, as RoslynRunner does with Path.GetFullPath, so both
+ * sides name a project the same way.
+ */
+public class SolutionFile {
+
+  private static final Pattern PROJECT = Pattern.compile("^Project\\(\"[^\"]*\"\\)\\s*=\\s*\"([^\"]*)\"\\s*,\\s*\"([^\"]*)\"");
+
+  private final File file;
+  private final List<File> projects;
+
+  private SolutionFile(File file, List<File> projects) {
+    this.file = file;
+    this.projects = Collections.unmodifiableList(projects);
+  }
+
+  public static SolutionFile parse(File file) throws IOException {
+    List<File> projects = new ArrayList<>();
+    File dir = file.getAbsoluteFile().getParentFile();
+    for (String line : decode(Files.readAllBytes(file.toPath())).split("\r\n|\r|\n")) {
+      Matcher matcher = PROJECT.matcher(line.trim());
+      if (!matcher.find()) {
+        continue;
+      }
+      String path = matcher.group(2).replace('\\', '/');
+      String lowerCase = path.toLowerCase(Locale.ENGLISH);
+      if (lowerCase.endsWith(".csproj") || lowerCase.endsWith(".vbproj")) {
+        projects.add(fullPath(dir, path));
+      }
+    }
+    return new SolutionFile(file, projects);
+  }
+
+  /**
+   * Absolute normalized form of a path relative to a directory, links are not resolved.
+   */
+  static File fullPath(File dir, String path) {
+    File file = new File(path);
+    return new File(InputFileIndex.normalize((file.isAbsolute() ? file : new File(dir, path)).getAbsolutePath()));
+  }
+
+  /**
+   * Text of a solution file: Visual Studio writes UTF-8 with a BOM, but older or generated
+   * solutions may be UTF-16 or in the ANSI code page, read as Windows-1252.
+   */
+  static String decode(byte[] data) {
+    if (data.length >= 3 && data[0] == (byte) 0xEF && data[1] == (byte) 0xBB && data[2] == (byte) 0xBF) {
+      return new String(data, 3, data.length - 3, StandardCharsets.UTF_8);
+    }
+    if (data.length >= 2 && data[0] == (byte) 0xFF && data[1] == (byte) 0xFE) {
+      return new String(data, 2, data.length - 2, StandardCharsets.UTF_16LE);
+    }
+    if (data.length >= 2 && data[0] == (byte) 0xFE && data[1] == (byte) 0xFF) {
+      return new String(data, 2, data.length - 2, StandardCharsets.UTF_16BE);
+    }
+    try {
+      return StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT)
+        .decode(ByteBuffer.wrap(data))
+        .toString();
+    } catch (CharacterCodingException e) {
+      Charset ansi = Charset.isSupported("windows-1252") ? Charset.forName("windows-1252") : StandardCharsets.ISO_8859_1;
+      return new String(data, ansi);
+    }
+  }
+
+  public File file() {
+    return file;
+  }
+
+  /**
+   * C# and VB.NET projects in declaration order, solution folders and other project types are left out.
+   */
+  public List<File> projects() {
+    return projects;
+  }
+}
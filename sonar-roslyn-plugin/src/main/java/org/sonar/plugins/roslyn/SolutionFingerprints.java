@@ -0,0 +1,291 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Content fingerprints of a solution as used by incremental analysis: a hash of everything
+ * affecting all projects, the project files with their project references, and every C# and
+ * VB.NET source. Paths are kept normalized and lower case.
+ */
+public class SolutionFingerprints {
+
+  /**
+   * Files MSBuild or the compiler pick up from the directory of a project or any directory
+   * above it.
+   */
+  private static final String[] IMPLICIT_INPUTS = {"Directory.Build.props", "Directory.Build.targets", "Directory.Packages.props", ".editorconfig",
+    ".globalconfig"};
+
+  private final String global;
+  private final Map<String, String> projects;
+  private final Map<String, List<String>> references;
+  private final Map<String, String> sources;
+  private final Map<String, String> paths;
+
+  SolutionFingerprints(String global, Map<String, String> projects, Map<String, List<String>> references, Map<String, String> sources) {
+    this(global, projects, references, sources, Collections.<String, String>emptyMap());
+  }
+
+  SolutionFingerprints(String global, Map<String, String> projects, Map<String, List<String>> references, Map<String, String> sources,
+    Map<String, String> paths) {
+    this.global = global;
+    this.projects = projects;
+    this.references = references;
+    this.sources = sources;
+    this.paths = paths;
+  }
+
+  /**
+   * Fingerprints of the solution. The solution file is part of the global hash. Each project
+   * hash covers the project file, its packages.config, the build files and editor configs
+   * picked up from its directory and above, the files they import and the referenced binaries
+   * with a hint path, as read by {@link ProjectFile}. A project or build file that cannot be
+   * parsed is hashed without following its imports.
+   */
+  public static SolutionFingerprints compute(SolutionFile solution, Iterable<File> files, String global) throws IOException {
+    Map<File, String> inputs = new HashMap<>();
+    Map<String, String> projects = new HashMap<>();
+    Map<String, List<String>> references = new HashMap<>();
+    for (File project : solution.projects()) {
+      String key = key(project.getAbsolutePath());
+      if (!project.isFile()) {
+        projects.put(key, "missing");
+        references.put(key, Collections.<String>emptyList());
+        continue;
+      }
+
+      MessageDigest digest = Hashes.sha256();
+      Hashes.update(digest, project);
+      File packages = new File(project.getParentFile(), "packages.config");
+      if (packages.isFile()) {
+        Hashes.update(digest, packages);
+      }
+      ProjectFile parsed = parse(project);
+      Set<File> visited = new HashSet<>();
+      for (File dir = project.getAbsoluteFile().getParentFile(); dir != null; dir = dir.getParentFile()) {
+        for (String name : IMPLICIT_INPUTS) {
+          File input = new File(dir, name);
+          if (input.isFile()) {
+            updateWithImports(digest, input, inputs, visited);
+          }
+        }
+      }
+      List<String> projectReferences = new ArrayList<>();
+      if (parsed != null) {
+        updateImports(digest, parsed, inputs, visited);
+        for (File hintPath : parsed.hintPaths()) {
+          update(digest, hintPath, inputs);
+        }
+        for (File reference : parsed.references()) {
+          projectReferences.add(key(reference.getPath()));
+        }
+      }
+      projects.put(key, Hashes.hex(digest.digest()));
+      references.put(key, projectReferences);
+    }
+
+    Map<String, String> sources = new HashMap<>();
+    Map<String, String> paths = new HashMap<>();
+    for (File file : files) {
+      String path = key(file.getAbsolutePath());
+      if (path.endsWith(".cs") || path.endsWith(".vb")) {
+        sources.put(path, Hashes.of(file));
+        paths.put(path, file.getAbsolutePath());
+      }
+    }
+    String solutionHash = solution.file().isFile() ? Hashes.of(solution.file()) : "missing";
+    return new SolutionFingerprints(Hashes.of(global, solutionHash), projects, references, sources, paths);
+  }
+
+  private static void updateWithImports(MessageDigest digest, File file, Map<File, String> inputs, Set<File> visited) throws IOException {
+    if (!visited.add(file)) {
+      return;
+    }
+    update(digest, file, inputs);
+    String name = file.getName().toLowerCase(Locale.ENGLISH);
+    ProjectFile parsed = file.isFile() && (name.endsWith(".props") || name.endsWith(".targets")) ? parse(file) : null;
+    if (parsed != null) {
+      updateImports(digest, parsed, inputs, visited);
+    }
+  }
+
+  private static void updateImports(MessageDigest digest, ProjectFile file, Map<File, String> inputs, Set<File> visited) throws IOException {
+    for (File imported : file.imports()) {
+      updateWithImports(digest, imported, inputs, visited);
+    }
+  }
+
+  /**
+   * The parsed file, or null when it is not well-formed: its content is hashed all the same.
+   */
+  private static ProjectFile parse(File file) {
+    try {
+      return ProjectFile.parse(file);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Adds the name and content of an input, hashed once per solution, so that the hash does not
+   * depend on where the solution is checked out.
+   */
+  private static void update(MessageDigest digest, File file, Map<File, String> inputs) throws IOException {
+    String hash = inputs.get(file);
+    if (hash == null) {
+      hash = file.isFile() ? Hashes.of(file) : "missing";
+      inputs.put(file, hash);
+    }
+    Hashes.update(digest, file.getName());
+    Hashes.update(digest, hash);
+  }
+
+  /**
+   * Normalized lower case form of a path, used to compare paths reported by different tools.
+   */
+  public static String key(String path) {
+    return InputFileIndex.normalize(path).toLowerCase(Locale.ENGLISH);
+  }
+
+  /**
+   * Directory prefix of a project key, containing the sources of the project.
+   */
+  static String projectDir(String project) {
+    int slash = project.lastIndexOf('/');
+    return slash < 0 ? "/" : project.substring(0, slash + 1);
+  }
+
+  /**
+   * Sources in the directory of each project, sorted. A source in nested project directories
+   * belongs to all of them.
+   */
+  public Map<String, List<String>> projectSources() {
+    List<String> sorted = new ArrayList<>(sources.keySet());
+    Collections.sort(sorted);
+    Map<String, List<String>> projectSources = new HashMap<>();
+    for (String project : projects.keySet()) {
+      String dir = projectDir(project);
+      List<String> owned = new ArrayList<>();
+      for (String source : sorted) {
+        if (source.startsWith(dir)) {
+          owned.add(source);
+        }
+      }
+      projectSources.put(project, owned);
+    }
+    return projectSources;
+  }
+
+  /**
+   * Hash of everything the compilation of each project depends on: the project file, its
+   * sources and the compilation context of the projects it references. Paths are hashed
+   * relative to the project directory so checkouts in different places share contexts.
+   */
+  public Map<String, String> compilationContexts() {
+    Map<String, List<String>> projectSources = projectSources();
+    Map<String, String> contexts = new HashMap<>();
+    for (String project : projects.keySet()) {
+      compilationContext(project, projectSources, contexts, new HashSet<String>());
+    }
+    return contexts;
+  }
+
+  private String compilationContext(String project, Map<String, List<String>> projectSources, Map<String, String> contexts,
+    Set<String> visiting) {
+    String context = contexts.get(project);
+    if (context != null) {
+      return context;
+    }
+    MessageDigest digest = Hashes.sha256();
+    Hashes.update(digest, projects.getOrDefault(project, "missing"));
+    int dir = projectDir(project).length();
+    for (String source : projectSources.getOrDefault(project, Collections.<String>emptyList())) {
+      Hashes.update(digest, source.substring(dir));
+      Hashes.update(digest, sources.get(source));
+    }
+    if (visiting.add(project)) {
+      List<String> sortedReferences = new ArrayList<>(references.getOrDefault(project, Collections.<String>emptyList()));
+      Collections.sort(sortedReferences);
+      for (String reference : sortedReferences) {
+        // cycles are broken by leaving the context of the reference out
+        Hashes.update(digest, visiting.contains(reference) ? "cycle" : compilationContext(reference, projectSources, contexts, visiting));
+      }
+      visiting.remove(project);
+    }
+    context = Hashes.hex(digest.digest());
+    contexts.put(project, context);
+    return context;
+  }
+
+  public String global() {
+    return global;
+  }
+
+  /**
+   * Hash of each project file, keyed by project path.
+   */
+  public Map<String, String> projects() {
+    return projects;
+  }
+
+  public Map<String, List<String>> references() {
+    return references;
+  }
+
+  /**
+   * Hash of each source file, keyed by path.
+   */
+  public Map<String, String> sources() {
+    return sources;
+  }
+
+  /**
+   * Absolute path of a source as reported by the file system, or the key itself when unknown.
+   */
+  public String path(String source) {
+    return paths.getOrDefault(source, source);
+  }
+}
@@ -33,75 +33,156 @@
  */
 package org.sonar.plugins.roslyn;
 
-
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
-// https://www.mkyong.com/java/how-to-decompress-files-from-a-zip-file/
+/**
+ * Extracts a zip file with a bounded pool of threads. Entry paths must stay inside the output
+ * folder, and the size and CRC of every extracted file are checked against the zip directory.
+ * The zip format as read by {@link ZipFile} carries no file modes, executables are recognized
+ * by their extension.
+ */
 public class UnZip
 {
   public static final Logger LOG = Loggers.get(UnZip.class);
-  List<String> fileList;
+  static final int BUFFER_SIZE = 1 << 16;
+  private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocate(BUFFER_SIZE));
+
+  private final int threads;
+
+  public UnZip() {
+    this(Math.min(4, Runtime.getRuntime().availableProcessors()));
+  }
+
+  UnZip(int threads) {
+    this.threads = Math.max(1, threads);
+  }
 
   /**
    * Unzip it
    * @param zipFile input zip file
-   * @param output zip file output folder
+   * @param outputFolder zip file output folder
    */
-  public void unZipIt(String zipFile, String outputFolder) throws IOException{
-
-    byte[] buffer = new byte[1024];
-
-    try{
-
-      //create output directory is not exists
-      File folder = new File(outputFolder);
-      if(!folder.exists()){
-          folder.mkdir();
+  public void unZipIt(String zipFile, String outputFolder) throws IOException {
+    long start = System.nanoTime();
+    Path output = Paths.get(outputFolder).toAbsolutePath().normalize();
+    try (ZipFile zip = new ZipFile(zipFile)) {
+      List<ZipEntry> entries = new ArrayList<>();
+      List<Path> targets = new ArrayList<>();
+      TreeSet<Path> directories = new TreeSet<>();
+      directories.add(output);
+      Enumeration<? extends ZipEntry> all = zip.entries();
+      while (all.hasMoreElements()) {
+        ZipEntry entry = all.nextElement();
+        Path target = output.resolve(entry.getName()).normalize();
+        if (!target.startsWith(output) || target.equals(output)) {
+          throw new IOException("Zip entry '" + entry.getName() + "' is outside of the output folder");
+        }
+        if (entry.isDirectory()) {
+          directories.add(target);
+        } else {
+          directories.add(target.getParent());
+          entries.add(entry);
+          targets.add(target);
+        }
+      }
+      for (Path directory : directories) {
+        Files.createDirectories(directory);
       }
 
-      //get the zip file content
-      ZipInputStream zis =
-          new ZipInputStream(new FileInputStream(zipFile));
-      //get the zipped file list entry
-      ZipEntry ze = zis.getNextEntry();
-
-      while(ze!=null){
-
-         String fileName = ze.getName();
-         File newFile = new File(outputFolder + File.separator + fileName);
-
-         LOG.debug("Unzip {}", newFile.getAbsolutePath());
-
-          //create all non exists folders
-          //else you will hit FileNotFoundException for compressed folder
-          new File(newFile.getParent()).mkdirs();
-
-          FileOutputStream fos = new FileOutputStream(newFile);
-
-          int len;
-          while ((len = zis.read(buffer)) > 0) {
-          fos.write(buffer, 0, len);
-          }
+      long bytes = extractAll(zip, entries, targets);
+      long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+      LOG.debug("Unzipped {} files, {} bytes in {} ms ({} MB/s) with {} threads", entries.size(), bytes, millis,
+        String.format(Locale.ENGLISH, "%.1f", bytes / 1048576.0 / (millis / 1000.0)), threads);
+    } catch (IOException ex) {
+      LOG.error("Unzip Failed {}", ex.getMessage());
+      throw ex;
+    }
+  }
 
-          fos.close();
-          ze = zis.getNextEntry();
+  private long extractAll(ZipFile zip, List<ZipEntry> entries, List<Path> targets) throws IOException {
+    if (threads == 1 || entries.size() < 2) {
+      long bytes = 0;
+      for (int i = 0; i < entries.size(); i++) {
+        bytes += extract(zip, entries.get(i), targets.get(i));
       }
+      return bytes;
+    }
 
-      zis.closeEntry();
-      zis.close();
+    ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, entries.size()), r -> {
+      Thread thread = new Thread(r, "roslyn-unzip");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      List<Future<Long>> extractions = new ArrayList<>();
+      for (int i = 0; i < entries.size(); i++) {
+        final ZipEntry entry = entries.get(i);
+        final Path target = targets.get(i);
+        extractions.add(pool.submit(() -> extract(zip, entry, target)));
+      }
+      long bytes = 0;
+      for (Future<Long> extraction : extractions) {
+        bytes += extraction.get();
+      }
+      return bytes;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while unzipping", e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
 
-      LOG.debug("Unzip Done.");
-    }catch(IOException ex){
-      LOG.error("Unzip Failed {}", ex.getMessage());
-      throw ex;
+  private static long extract(ZipFile zip, ZipEntry entry, Path target) throws IOException {
+    LOG.trace("Unzip {}", target);
+    ByteBuffer buffer = BUFFERS.get();
+    CRC32 crc = new CRC32();
+    long written = 0;
+    try (InputStream in = zip.getInputStream(entry);
+      FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      int read;
+      while ((read = in.read(buffer.array())) >= 0) {
+        crc.update(buffer.array(), 0, read);
+        buffer.position(0).limit(read);
+        while (buffer.hasRemaining()) {
+          written += out.write(buffer);
+        }
+        buffer.clear();
+      }
+    }
+    if (entry.getSize() >= 0 && written != entry.getSize()) {
+      throw new IOException("Size mismatch for zip entry '" + entry.getName() + "': " + written + " bytes instead of " + entry.getSize());
+    }
+    if (entry.getCrc() >= 0 && crc.getValue() != entry.getCrc()) {
+      throw new IOException("CRC mismatch for zip entry '" + entry.getName() + "'");
+    }
+    String name = entry.getName().toLowerCase(Locale.ENGLISH);
+    if (name.endsWith(".exe") || name.endsWith(".sh")) {
+      target.toFile().setExecutable(true, false);
     }
+    return written;
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,114 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.utils.command.StreamConsumer;
+import org.sonar.api.utils.log.LogTester;
+import org.sonar.api.utils.log.LoggerLevel;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class AnalysisReportTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Rule
+  public LogTester logTester = new LogTester();
+
+  @Test
+  public void addsUpPhasesAndCounters() throws Exception {
+    AnalysisReport report = new AnalysisReport();
+    report.add("import", 2_000_000L);
+    report.add("import", 3_000_000L);
+    try (AnalysisReport.Phase phase = report.phase("solution")) {
+      Thread.sleep(5);
+    }
+    report.count("issues.saved", 10);
+    report.count("issues.saved", 5);
+
+    assertThat(report.phases().get("import")).isEqualTo(5_000_000L);
+    assertThat(report.phases().get("solution")).isGreaterThanOrEqualTo(5_000_000L);
+    assertThat(report.counters().get("issues.saved")).isEqualTo(15L);
+  }
+
+  @Test
+  public void splitsRunnerAtTheFirstAnalysedProject() throws Exception {
+    AnalysisReport report = new AnalysisReport();
+    List<String> lines = new ArrayList<>();
+    StreamConsumer out = report.runnerOutput(lines::add);
+    long started = System.nanoTime();
+    out.consumeLine("loading workspace");
+    Thread.sleep(5);
+    out.consumeLine("[RoslynRunner] : Analyse: a.csproj ");
+    out.consumeLine("[RoslynRunner] : Analyse: b.csproj ");
+    report.runner(started, System.nanoTime());
+
+    assertThat(lines).hasSize(3);
+    long load = report.phases().get("runner.workspaceLoad");
+    long analysis = report.phases().get("runner.analysis");
+    assertThat(load).isGreaterThanOrEqualTo(5_000_000L);
+    assertThat(load + analysis).isEqualTo(report.phases().get("runner"));
+  }
+
+  @Test
+  public void runnerWithoutProjectIsNotSplit() {
+    AnalysisReport report = new AnalysisReport();
+    report.runner(0, 1_000_000L);
+
+    assertThat(report.phases().keySet()).containsOnly("runner");
+  }
+
+  @Test
+  public void writesJsonAndSummary() throws Exception {
+    AnalysisReport report = new AnalysisReport();
+    report.add("import", 42_000_000L);
+    report.count("bytes.read", 1024);
+    report.write(temp.getRoot());
+    report.logSummary();
+
+    String json = new String(Files.readAllBytes(new File(temp.getRoot(), AnalysisReport.FILE).toPath()), StandardCharsets.UTF_8);
+    assertThat(json).contains("\"phases\":{\"importMillis\":42}").contains("\"counters\":{\"bytes.read\":1024}");
+    String summary = logTester.logs(LoggerLevel.INFO).get(0);
+    assertThat(summary).startsWith("Roslyn analysis timings:").contains("import").contains("bytes.read");
+  }
+}
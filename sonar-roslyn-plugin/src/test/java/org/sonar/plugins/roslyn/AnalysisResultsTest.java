@@ -0,0 +1,137 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class AnalysisResultsTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private File root;
+  private File work;
+  private AnalysisResults results;
+
+  @Before
+  public void setUp() throws IOException {
+    root = temp.newFolder("solution");
+    work = temp.newFolder("work");
+    results = AnalysisResults.spooled(work);
+    results.handle(new RoslynIssue(path("App/Program.cs"), 1, "CS0168", "unused"));
+    results.handle(new RoslynIssue(path("App/Program.cs").toUpperCase().replace('/', '\\'), 2, "CS0219", "assigned"));
+    results.handle(new RoslynIssue(path("Core/Model.cs"), 3, "CS0168", "unused"));
+    results.handle(new RoslynIssue(path("Shared/Linked.cs"), 4, "CS0168", "unused"));
+  }
+
+  @Test
+  public void handsEachFileToOneModule() throws IOException {
+    List<RoslynIssue> app = new ArrayList<>();
+    List<RoslynIssue> core = new ArrayList<>();
+
+    assertThat(results.importInto(path("App"), index("App", "App/Program.cs"), app::add)).isEqualTo(2);
+    assertThat(results.importInto(path("Core"), index("Core", "Core/Model.cs", "App/Program.cs"), core::add)).isEqualTo(1);
+
+    assertThat(app).hasSize(2);
+    assertThat(core.get(0).path()).isEqualTo(path("Core/Model.cs"));
+    assertThat(results.issues()).isEqualTo(4);
+    assertThat(results.files()).isEqualTo(1);
+  }
+
+  @Test
+  public void leavesUnknownPathsUnderTheModuleToIt() throws IOException {
+    List<RoslynIssue> rootModule = new ArrayList<>();
+
+    assertThat(results.importInto(root.getAbsolutePath(), index("", "App/Program.cs"), rootModule::add)).isEqualTo(4);
+    assertThat(results.files()).isEqualTo(0);
+  }
+
+  @Test
+  public void spoolsIssuesUntilTheLastFileIsImported() throws IOException {
+    List<RoslynIssue> app = new ArrayList<>();
+
+    assertThat(work.list()).hasSize(1);
+    results.importInto(path("App"), index("App", "App/Program.cs"), app::add);
+    assertThat(work.list()).hasSize(1);
+    results.importInto(root.getAbsolutePath(), index(""), app::add);
+
+    assertThat(app).hasSize(4);
+    assertThat(app.get(0).message()).isIn("unused", "assigned");
+    assertThat(work.list()).isEmpty();
+  }
+
+  @Test
+  public void discardsFilesNoModuleImported() throws IOException {
+    results.importInto(path("App"), index("App", "App/Program.cs"), issue -> { });
+
+    assertThat(results.discard()).containsExactly(path("Core/Model.cs"), path("Shared/Linked.cs"));
+    assertThat(results.files()).isEqualTo(0);
+    assertThat(work.list()).isEmpty();
+  }
+
+  @Test
+  public void handsIssuesStraightToTheModuleRunningTheAnalysis() throws IOException {
+    List<RoslynIssue> handled = new ArrayList<>();
+    AnalysisResults direct = AnalysisResults.direct(handled::add);
+    direct.handle(new RoslynIssue(path("App/Program.cs"), 1, "CS0168", "unused"));
+
+    assertThat(handled).hasSize(1);
+    assertThat(direct.importInto(root.getAbsolutePath(), index(""), handled::add)).isEqualTo(1);
+    assertThat(handled).hasSize(1);
+    assertThat(direct.files()).isEqualTo(0);
+  }
+
+  private String path(String relative) {
+    return new File(root, relative).getAbsolutePath();
+  }
+
+  private InputFileIndex index(String module, String... files) {
+    DefaultFileSystem fs = new DefaultFileSystem(new File(root, module));
+    for (String file : files) {
+      fs.add(TestInputFileBuilder.create("key", root, new File(root, file)).setLanguage("cs").build());
+    }
+    return InputFileIndex.build(fs);
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.utils.log.LogTester;
+import org.sonar.api.utils.log.LoggerLevel;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class AnalyzerTelemetryTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Rule
+  public LogTester logTester = new LogTester();
+
+  @Test
+  public void sumsTheFilesOfAllRunners() throws Exception {
+    File first = telemetry("first",
+      "#roslyn-telemetry;1",
+      "analyzer\tA.Slow\ta.dll\t900\t40\tA001;A002",
+      "analyzer\tB.Fast\tb.dll\t10\t5\tB001",
+      "rule\tA002\t3");
+    File second = telemetry("second",
+      "#roslyn-telemetry;1",
+      "analyzer\tA.Slow\ta.dll\t100\t10\tA001;A002",
+      "analyzer\tbroken",
+      "rule\tA002\t2",
+      "rule\tB001\t7");
+
+    AnalyzerTelemetry telemetry = AnalyzerTelemetry.read(Arrays.asList(first, second, new File(temp.getRoot(), "missing")));
+
+    List<AnalyzerTelemetry.Analyzer> analyzers = telemetry.analyzers();
+    assertThat(analyzers).hasSize(2);
+    assertThat(analyzers.get(0).name).isEqualTo("A.Slow");
+    assertThat(analyzers.get(0).millis).isEqualTo(1000L);
+    assertThat(analyzers.get(0).actions).isEqualTo(50L);
+    assertThat(analyzers.get(0).rules).containsOnly("A001", "A002");
+
+    List<AnalyzerTelemetry.Rule> rules = telemetry.rules();
+    assertThat(rules).hasSize(3);
+    assertThat(rules.get(0).id).isEqualTo("A002");
+    assertThat(rules.get(0).issues).isEqualTo(5L);
+    assertThat(rules.get(1).id).isEqualTo("A001");
+    assertThat(rules.get(2).id).isEqualTo("B001");
+  }
+
+  @Test
+  public void logsTheTopAndWritesEverything() throws Exception {
+    AnalyzerTelemetry telemetry = AnalyzerTelemetry.read(Arrays.asList(telemetry("run",
+      "analyzer\tA.Slow\ta.dll\t900\t40\tA001",
+      "analyzer\tB.Fast\tb.dll\t100\t5\tB001",
+      "rule\tB001\t7")));
+    File report = new File(temp.getRoot(), AnalyzerTelemetry.FILE);
+
+    telemetry.logTop(1);
+    telemetry.write(report);
+
+    String log = logTester.logs(LoggerLevel.INFO).get(0);
+    assertThat(log).contains("A.Slow (a.dll)").contains("90.0%").doesNotContain("B.Fast");
+    String json = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+    assertThat(json)
+      .contains("{\"name\":\"A.Slow\",\"assembly\":\"a.dll\",\"executionMillis\":900,\"actions\":40,\"rules\":[\"A001\"]}")
+      .contains("{\"id\":\"B001\",\"analyzer\":\"B.Fast\",\"analyzerMillis\":100,\"issues\":7}");
+  }
+
+  private File telemetry(String name, String... lines) throws Exception {
+    File file = new File(temp.getRoot(), name + ".telemetry");
+    Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+    return file;
+  }
+}
@@ -0,0 +1,273 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class IncrementalAnalysisTest {
+
+  private static final String A = "/src/a/a.csproj";
+  private static final String B = "/src/b/b.csproj";
+  private static final String C = "/src/c/c.csproj";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private File cacheDir;
+  private IncrementalAnalysis incremental;
+  private Map<String, String> sources;
+
+  @Before
+  public void setUp() throws IOException {
+    cacheDir = temp.newFolder("cache");
+    incremental = new IncrementalAnalysis(cacheDir);
+    sources = new HashMap<>();
+    sources.put("/src/a/a.cs", "1");
+    sources.put("/src/b/b.cs", "1");
+    sources.put("/src/c/c.cs", "1");
+  }
+
+  @Test
+  public void firstAnalysisIsFull() throws IOException {
+    try (IncrementalAnalysis.Plan plan = incremental.plan(fingerprints("g"), false)) {
+      assertThat(plan.full()).isTrue();
+      assertThat(plan.analysisNeeded()).isTrue();
+    }
+  }
+
+  @Test
+  public void unchangedSolutionReplaysEverything() throws IOException {
+    analyse(fingerprints("g"));
+
+    try (IncrementalAnalysis.Plan plan = incremental.plan(fingerprints("g"), false)) {
+      assertThat(plan.full()).isFalse();
+      assertThat(plan.analysisNeeded()).isFalse();
+      assertThat(replay(plan)).containsOnly("/src/a/a.cs", "/src/b/b.cs", "/src/c/c.cs");
+    }
+  }
+
+  @Test
+  public void changedSourceAffectsItsProjectAndDependents() throws IOException {
+    analyse(fingerprints("g"));
+    sources.put("/src/b/b.cs", "2");
+
+    try (IncrementalAnalysis.Plan plan = incremental.plan(fingerprints("g"), false)) {
+      assertThat(plan.full()).isFalse();
+      assertThat(plan.affectedProjects()).containsOnly(B, C);
+    }
+  }
+
+  @Test
+  public void changedSourceOutsideProjectsRequiresFullAnalysis() throws IOException {
+    analyse(fingerprints("g"));
+    sources.put("/src/shared/shared.cs", "1");
+
+    try (IncrementalAnalysis.Plan plan = incremental.plan(fingerprints("g"), false)) {
+      assertThat(plan.full()).isTrue();
+    }
+  }
+
+  @Test
+  public void globalChangeRequiresFullAnalysis() throws IOException {
+    analyse(fingerprints("g"));
+
+    try (IncrementalAnalysis.Plan plan = incremental.plan(fingerprints("h"), false)) {
+      assertThat(plan.full()).isTrue();
+      assertThat(replay(plan)).isEmpty();
+    }
+  }
+
+  @Test
+  public void forcedAnalysisIsFull() throws IOException {
+    analyse(fingerprints("g"));
+
+    try (IncrementalAnalysis.Plan plan = incremental.plan(fingerprints("g"), true)) {
+      assertThat(plan.full()).isTrue();
+    }
+  }
+
+  @Test
+  public void uncommittedAnalysisKeepsPreviousCache() throws IOException {
+    analyse(fingerprints("g"));
+    sources.put("/src/a/a.cs", "2");
+    try (IncrementalAnalysis.Plan plan = incremental.plan(fingerprints("g"), false)) {
+      plan.record(issue -> {
+      }).handle(new RoslynIssue("/src/a/a.cs", 1, "CS0001", "changed"));
+    }
+
+    try (IncrementalAnalysis.Plan plan = incremental.plan(fingerprints("g"), false)) {
+      assertThat(plan.affectedProjects()).containsOnly(A);
+      assertThat(replay(plan)).containsOnly("/src/b/b.cs", "/src/c/c.cs");
+    }
+  }
+
+  @Test
+  public void projectsLeftOutOfTheScanAreAnalysedNextTime() throws IOException {
+    try (IncrementalAnalysis.Plan plan = incremental.plan(fingerprints("g"), false)) {
+      assertThat(plan.full()).isTrue();
+      plan.record(issue -> {
+      }).handle(new RoslynIssue("/src/a/a.cs", 1, "CS0001", "message"));
+      plan.commit(Collections.singleton(A));
+    }
+
+    try (IncrementalAnalysis.Plan plan = incremental.plan(fingerprints("g"), false)) {
+      assertThat(plan.full()).isFalse();
+      assertThat(plan.affectedProjects()).containsOnly(B, C);
+      List<String> replayed = new ArrayList<>();
+      RoslynResultsDecoder.IssueHandler handler = plan.record(issue -> replayed.add(issue.path()));
+      plan.replay(handler);
+      handler.handle(new RoslynIssue("/src/b/b.cs", 1, "CS0001", "message"));
+      assertThat(replayed).containsExactly("/src/a/a.cs", "/src/b/b.cs");
+      plan.commit(Collections.singleton(B));
+    }
+
+    try (IncrementalAnalysis.Plan plan = incremental.plan(fingerprints("g"), false)) {
+      assertThat(plan.affectedProjects()).containsOnly(C);
+      assertThat(replay(plan)).containsOnly("/src/a/a.cs", "/src/b/b.cs");
+    }
+  }
+
+  @Test
+  public void concurrentScansRecordToTheirOwnFiles() throws IOException {
+    analyse(fingerprints("g"));
+    sources.put("/src/a/a.cs", "2");
+    try (IncrementalAnalysis.Plan first = incremental.plan(fingerprints("g"), false);
+      IncrementalAnalysis.Plan second = incremental.plan(fingerprints("g"), false)) {
+      RoslynResultsDecoder.IssueHandler firstHandler = first.record(issue -> {
+      });
+      List<String> replayed = new ArrayList<>();
+      RoslynResultsDecoder.IssueHandler secondHandler = second.record(issue -> replayed.add(issue.path()));
+      firstHandler.handle(new RoslynIssue("/src/a/a.cs", 1, "CS0001", "first"));
+      secondHandler.handle(new RoslynIssue("/src/a/a.cs", 2, "CS0001", "second"));
+      first.commit(Collections.singleton(A));
+
+      second.replay(secondHandler);
+      assertThat(replayed).containsOnly("/src/a/a.cs", "/src/b/b.cs", "/src/c/c.cs");
+      second.commit(Collections.singleton(A));
+    }
+
+    assertThat(cacheDir.list()).hasSize(2);
+    try (IncrementalAnalysis.Plan plan = incremental.plan(fingerprints("g"), false)) {
+      assertThat(plan.analysisNeeded()).isFalse();
+      List<String> messages = new ArrayList<>();
+      plan.replay(issue -> messages.add(issue.message()));
+      assertThat(messages).containsOnly("second", "message", "message");
+    }
+  }
+
+  @Test
+  public void manifestWithoutIssueFileRequiresFullAnalysis() throws IOException {
+    analyse(fingerprints("g"));
+    for (File file : cacheDir.listFiles()) {
+      if (!file.getName().equals(IncrementalAnalysis.MANIFEST)) {
+        assertThat(file.delete()).isTrue();
+      }
+    }
+
+    try (IncrementalAnalysis.Plan plan = incremental.plan(fingerprints("g"), false)) {
+      assertThat(plan.full()).isTrue();
+    }
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedSolutions() throws IOException {
+    File root = temp.newFolder("root");
+    List<File> dirs = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      File dir = new File(root, "solution" + i);
+      incremental = new IncrementalAnalysis(dir);
+      analyse(fingerprints("g"));
+      new File(dir, IncrementalAnalysis.MANIFEST).setLastModified(1000000000000L + i * 1000L);
+      dirs.add(dir);
+    }
+    long size = size(dirs.get(0));
+
+    IncrementalAnalysis.evict(root, size * 7 / 2, dirs.get(0));
+
+    assertThat(dirs.get(0).isDirectory()).isTrue();
+    assertThat(dirs.get(1).exists()).isFalse();
+    assertThat(dirs.get(2).isDirectory()).isTrue();
+    assertThat(dirs.get(3).isDirectory()).isTrue();
+  }
+
+  private static long size(File dir) {
+    long size = 0;
+    for (File file : dir.listFiles()) {
+      size += file.length();
+    }
+    return size;
+  }
+
+  private void analyse(SolutionFingerprints fingerprints) throws IOException {
+    try (IncrementalAnalysis.Plan plan = incremental.plan(fingerprints, false)) {
+      RoslynResultsDecoder.IssueHandler handler = plan.record(issue -> {
+      });
+      for (String source : fingerprints.sources().keySet()) {
+        handler.handle(new RoslynIssue(source, 1, "CS0001", "message"));
+      }
+      plan.commit(fingerprints.projects().keySet());
+    }
+  }
+
+  private SolutionFingerprints fingerprints(String global) {
+    Map<String, String> projects = new HashMap<>();
+    projects.put(A, "1");
+    projects.put(B, "1");
+    projects.put(C, "1");
+    Map<String, List<String>> references = new HashMap<>();
+    references.put(A, Collections.<String>emptyList());
+    references.put(B, Collections.<String>emptyList());
+    references.put(C, Arrays.asList(B));
+    return new SolutionFingerprints(global, projects, references, new HashMap<>(sources));
+  }
+
+  private static List<String> replay(IncrementalAnalysis.Plan plan) throws IOException {
+    List<String> paths = new ArrayList<>();
+    plan.replay(issue -> paths.add(issue.path()));
+    return paths;
+  }
+}
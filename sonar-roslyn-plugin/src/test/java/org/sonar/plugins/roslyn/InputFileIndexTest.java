@@ -0,0 +1,117 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class InputFileIndexTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private File baseDir;
+  private DefaultFileSystem fs;
+  private InputFile foo;
+
+  @Before
+  public void setUp() throws IOException {
+    baseDir = temp.newFolder("solution");
+    fs = new DefaultFileSystem(baseDir);
+    foo = add("Project/Foo.cs");
+  }
+
+  @Test
+  public void resolvesWindowsStyleAndCaseFoldedPaths() {
+    InputFileIndex index = InputFileIndex.build(fs);
+    String windowsPath = baseDir.getAbsolutePath().toUpperCase().replace('/', '\\') + "\\project\\.\\FOO.CS";
+
+    assertThat(index.resolve(InputFileIndex.path(foo).toString())).isEqualTo(foo);
+    assertThat(index.resolve(windowsPath)).isEqualTo(foo);
+    assertThat(index.resolve(baseDir.getAbsolutePath() + "/Other/../Project//Foo.cs")).isEqualTo(foo);
+    assertThat(index.resolve(baseDir.getAbsolutePath() + "/Project/Missing.cs")).isNull();
+    assertThat(index.resolvedIssues()).isEqualTo(3);
+    assertThat(index.missedIssues()).isEqualTo(1);
+  }
+
+  @Test
+  public void resolvesThroughSymlinks() throws IOException {
+    Files.createDirectories(InputFileIndex.path(foo).getParent());
+    Files.write(InputFileIndex.path(foo), "class Foo {}".getBytes());
+    Path link = temp.getRoot().toPath().resolve("link");
+    Files.createSymbolicLink(link, baseDir.toPath());
+
+    InputFileIndex index = InputFileIndex.build(fs);
+
+    assertThat(index.resolve(link.resolve("Project/Foo.cs").toString())).isEqualTo(foo);
+  }
+
+  @Test
+  public void filesDifferingByCaseOnlyMatchExactly() {
+    InputFile upper = add("Project/FOO.cs");
+    InputFileIndex index = InputFileIndex.build(fs);
+
+    assertThat(index.resolve(InputFileIndex.path(foo).toString())).isEqualTo(foo);
+    assertThat(index.resolve(InputFileIndex.path(upper).toString())).isEqualTo(upper);
+    assertThat(index.resolve(baseDir.getAbsolutePath() + "/project/foo.CS")).isNull();
+  }
+
+  @Test
+  public void normalizesSeparatorsAndSegments() {
+    assertThat(InputFileIndex.normalize("C:\\src\\.\\a\\..\\Foo.cs")).isEqualTo("C:/src/Foo.cs");
+    assertThat(InputFileIndex.normalize("\\\\server\\share\\Foo.cs")).isEqualTo("//server/share/Foo.cs");
+    assertThat(InputFileIndex.normalize("/src//Foo.cs/")).isEqualTo("/src/Foo.cs");
+  }
+
+  private InputFile add(String relativePath) {
+    InputFile inputFile = new TestInputFileBuilder("module", relativePath)
+      .setModuleBaseDir(baseDir.toPath())
+      .setLanguage("cs")
+      .setLines(10)
+      .build();
+    fs.add(inputFile);
+    return inputFile;
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class IssueDeduplicatorTest {
+
+  @Test
+  public void dropsRepeatedIssuesAndCountsThemPerRule() {
+    IssueDeduplicator deduplicator = new IssueDeduplicator();
+    assertThat(deduplicator.add(new RoslynIssue("C:/src/Shared.cs", 10, "CA1822", "Make static"))).isTrue();
+    assertThat(deduplicator.add(new RoslynIssue("C:/src/Shared.cs", 10, "CA1822", "Make static"))).isFalse();
+    assertThat(deduplicator.add(new RoslynIssue("C:/src/Shared.cs", 10, "CA1822", "Make static"))).isFalse();
+    assertThat(deduplicator.add(new RoslynIssue("C:/src/Shared.cs", 11, "CA1822", "Make static"))).isTrue();
+    assertThat(deduplicator.add(new RoslynIssue("C:/src/Shared.cs", 10, "CA1822", "Make it static"))).isTrue();
+    assertThat(deduplicator.add(new RoslynIssue("C:/src/Shared.cs", 10, "SA1600", "Make static"))).isTrue();
+    assertThat(deduplicator.add(new RoslynIssue("C:/src/Shared.cs", 10, "SA1600", "Make static"))).isFalse();
+
+    assertThat(deduplicator.duplicates()).isEqualTo(3);
+    assertThat(deduplicator.duplicates("CA1822")).isEqualTo(2);
+    assertThat(deduplicator.duplicates("SA1600")).isEqualTo(1);
+    assertThat(deduplicator.duplicates("CS0168")).isEqualTo(0);
+  }
+
+  @Test
+  public void fieldBoundariesAreSignificant() {
+    IssueDeduplicator deduplicator = new IssueDeduplicator();
+    assertThat(deduplicator.add(new RoslynIssue("a.cs", 1, "AB", "C"))).isTrue();
+    assertThat(deduplicator.add(new RoslynIssue("a.cs", 1, "A", "BC"))).isTrue();
+  }
+
+  @Test
+  public void sameHashWithDifferentCheckIsNotADuplicate() {
+    IssueDeduplicator deduplicator = new IssueDeduplicator();
+    assertThat(deduplicator.add(42L, 1)).isTrue();
+    assertThat(deduplicator.add(42L, 2)).isTrue();
+    assertThat(deduplicator.add(42L, 1)).isFalse();
+    assertThat(deduplicator.add(42L, 2)).isFalse();
+  }
+
+  @Test
+  public void keepsAllKeysWhileGrowing() {
+    IssueDeduplicator deduplicator = new IssueDeduplicator();
+    for (int i = 0; i < 100000; i++) {
+      assertThat(deduplicator.add(new RoslynIssue("File" + (i % 100) + ".cs", i, "R", "m"))).isTrue();
+    }
+    for (int i = 0; i < 100000; i += 7) {
+      assertThat(deduplicator.add(new RoslynIssue("File" + (i % 100) + ".cs", i, "R", "m"))).isFalse();
+    }
+    assertThat(deduplicator.size()).isEqualTo(100000);
+  }
+
+  @Test
+  public void stopsRememberingAtMaximumSize() {
+    IssueDeduplicator deduplicator = new IssueDeduplicator(100);
+    for (int i = 0; i < 200; i++) {
+      deduplicator.add(new RoslynIssue("a.cs", i, "R", "m"));
+    }
+    assertThat(deduplicator.size()).isEqualTo(100);
+    assertThat(deduplicator.add(new RoslynIssue("a.cs", 5, "R", "m"))).isFalse();
+    assertThat(deduplicator.add(new RoslynIssue("a.cs", 150, "R", "m"))).isTrue();
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.rule.internal.ActiveRulesBuilder;
+import org.sonar.api.rule.RuleKey;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ProfileSyncTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private HttpServer server;
+  private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+  private String profiles = "{\"profiles\":[{\"key\":\"cs-profile\",\"language\":\"cs\",\"isBuiltIn\":false},"
+    + "{\"key\":\"vb-way\",\"language\":\"vbnet\",\"isBuiltIn\":true}]}";
+  private int activationStatus = 200;
+
+  @Before
+  public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/api/qualityprofiles/search", exchange -> {
+      requests.add("GET " + exchange.getRequestURI().getRawQuery());
+      respond(exchange, 200, profiles);
+    });
+    server.createContext("/api/qualityprofiles/activate_rules", exchange -> {
+      try (InputStream in = exchange.getRequestBody(); Scanner scanner = new Scanner(in, "UTF-8")) {
+        requests.add(exchange.getRequestMethod() + " " + (scanner.hasNextLine() ? scanner.nextLine() : "")
+          + " " + exchange.getRequestHeaders().getFirst("Authorization"));
+      }
+      respond(exchange, activationStatus, "{\"succeeded\":2,\"failed\":0}");
+    });
+    server.start();
+  }
+
+  @After
+  public void stopServer() {
+    server.stop(0);
+  }
+
+  private static void respond(com.sun.net.httpserver.HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private ProfileSync sync(File state) {
+    return new ProfileSync("http://localhost:" + server.getAddress().getPort() + "/", "token", "", state);
+  }
+
+  private static Map<String, Set<String>> present(String... csIds) {
+    Map<String, Set<String>> present = new HashMap<>();
+    present.put(RoslynPlugin.REPOSITORY_KEY_CS, new HashSet<>(Arrays.asList(csIds)));
+    present.put(RoslynPlugin.REPOSITORY_KEY_VB, new HashSet<>(Arrays.asList("BC1")));
+    return present;
+  }
+
+  private static RoslynActiveRules active(String... csIds) {
+    ActiveRulesBuilder builder = new ActiveRulesBuilder();
+    for (String id : csIds) {
+      builder.create(RuleKey.of(RoslynPlugin.REPOSITORY_KEY_CS, id)).activate();
+    }
+    return RoslynActiveRules.of(builder.build());
+  }
+
+  @Test
+  public void firstSynchronizationActivatesNothing() throws IOException {
+    File state = new File(temp.getRoot(), "profiles/state.properties");
+
+    ProfileSync first = sync(state);
+    assertThat(first.synchronize("p", present("CA1", "CA2"), active("CA1"))).isEqualTo(0);
+    assertThat(first.upToDate()).isFalse();
+    assertThat(requests).isEmpty();
+    assertThat(state).exists();
+  }
+
+  @Test
+  public void activatesRulesOfNewAnalyzersByKeyThenMakesNoCall() throws IOException {
+    File state = new File(temp.getRoot(), "state.properties");
+    sync(state).synchronize("my:project", present("CA1"), active("CA1"));
+
+    assertThat(sync(state).synchronize("my:project", present("CA1", "CA2", "CA3"), active("CA1"))).isEqualTo(3);
+    assertThat(requests).containsExactly("GET project=my%3Aproject",
+      "POST targetKey=cs-profile&qprofile=cs-profile&activation=false&rule_key=roslyn-cs%3ACA2 Basic dG9rZW46",
+      "POST targetKey=cs-profile&qprofile=cs-profile&activation=false&rule_key=roslyn-cs%3ACA3 Basic dG9rZW46");
+
+    requests.clear();
+    ProfileSync unchanged = sync(state);
+    assertThat(unchanged.synchronize("my:project", present("CA3", "CA2", "CA1"), active("CA1"))).isEqualTo(0);
+    assertThat(unchanged.upToDate()).isTrue();
+    assertThat(requests).isEmpty();
+  }
+
+  @Test
+  public void rulesDeactivatedAfterSynchronizationStayDeactivated() throws IOException {
+    File state = new File(temp.getRoot(), "state.properties");
+    sync(state).synchronize("p", present("CA1", "CA2"), active("CA1", "CA2"));
+
+    // CA1 was deactivated in the profile since
+    assertThat(sync(state).synchronize("p", present("CA1", "CA2", "CA4"), active("CA2"))).isEqualTo(2);
+    assertThat(requests).containsExactly("GET project=p",
+      "POST targetKey=cs-profile&qprofile=cs-profile&activation=false&rule_key=roslyn-cs%3ACA4 Basic dG9rZW46");
+  }
+
+  @Test
+  public void activatesTheRulesOfANewRepositoryWithOneCall() throws IOException {
+    profiles = "{\"profiles\":[{\"key\":\"cs-profile\",\"language\":\"cs\",\"isBuiltIn\":false},"
+      + "{\"key\":\"vb-profile\",\"language\":\"vbnet\",\"isBuiltIn\":false}]}";
+    File state = new File(temp.getRoot(), "state.properties");
+    Map<String, Set<String>> present = present("CA1");
+    present.put(RoslynPlugin.REPOSITORY_KEY_VB, Collections.<String>emptySet());
+    sync(state).synchronize("p", present, active("CA1"));
+
+    present = present("CA1");
+    present.put(RoslynPlugin.REPOSITORY_KEY_VB, new HashSet<>(Arrays.asList("BC1", "BC2", "BC3")));
+    assertThat(sync(state).synchronize("p", present, active("CA1"))).isEqualTo(2);
+    assertThat(requests).containsExactly("GET project=p",
+      "POST targetKey=vb-profile&qprofile=vb-profile&activation=false&repositories=roslyn-vbnet Basic dG9rZW46");
+    assertThat(state.getParentFile().list()).containsOnly("state.properties");
+  }
+
+  @Test
+  public void makesNoCallWhenEveryNewRuleIsActive() throws IOException {
+    File state = new File(temp.getRoot(), "state.properties");
+    sync(state).synchronize("p", present("CA1"), active("CA1"));
+    Map<String, Set<String>> present = present("CA1", "CA2");
+    present.put(RoslynPlugin.REPOSITORY_KEY_VB, Collections.<String>emptySet());
+    assertThat(sync(state).synchronize("p", present, active("CA1", "CA2"))).isEqualTo(0);
+    assertThat(requests).isEmpty();
+  }
+
+  @Test
+  public void keepsTheStateWhenActivationFails() throws IOException {
+    File state = new File(temp.getRoot(), "state.properties");
+    sync(state).synchronize("p", present(), active());
+    activationStatus = 403;
+    try {
+      sync(state).synchronize("p", present("CA1"), active());
+      throw new AssertionError("activation failure not reported");
+    } catch (IOException e) {
+      assertThat(e.getMessage()).contains("HTTP 403");
+    }
+
+    activationStatus = 200;
+    requests.clear();
+    assertThat(sync(state).synchronize("p", present("CA1"), active())).isEqualTo(2);
+    assertThat(requests).hasSize(2);
+  }
+
+  @Test
+  public void statesAreSeparatedByServerAndProject() {
+    File root = temp.getRoot();
+    assertThat(ProfileSync.stateFile(root, "http://a", "p")).isEqualTo(ProfileSync.stateFile(root, "http://a", "p"));
+    assertThat(ProfileSync.stateFile(root, "http://a", "p")).isNotEqualTo(ProfileSync.stateFile(root, "http://b", "p"));
+    assertThat(ProfileSync.stateFile(root, "http://a", "p")).isNotEqualTo(ProfileSync.stateFile(root, "http://a", "q"));
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ProjectGraphTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void sdkStyleProjectCompilesItsDirectory() throws Exception {
+    File project = write("src/Core/Core.csproj",
+      "<Project Sdk=\"Microsoft.NET.Sdk\">\n"
+        + "  <ItemGroup>\n"
+        + "    <Compile Remove=\"Generated\\**\" />\n"
+        + "    <Compile Include=\"..\\Shared\\Link.cs\" />\n"
+        + "    <Compile Include=\"$(SharedDir)\\Other.cs\" />\n"
+        + "    <ProjectReference Include=\"..\\Model\\Model.csproj\" />\n"
+        + "  </ItemGroup>\n"
+        + "</Project>\n");
+
+    ProjectFile parsed = ProjectFile.parse(project);
+
+    assertThat(parsed.sdkStyle()).isTrue();
+    assertThat(parsed.references()).containsExactly(new File(temp.getRoot(), "src/Model/Model.csproj").getCanonicalFile());
+    assertThat(parsed.compiles(key("src/Core/Service.cs"))).isTrue();
+    assertThat(parsed.compiles(key("src/Core/Deep/Nested/Service.cs"))).isTrue();
+    assertThat(parsed.compiles(key("src/Shared/Link.cs"))).isTrue();
+    assertThat(parsed.compiles(key("src/Core/obj/Debug/AssemblyInfo.cs"))).isFalse();
+    assertThat(parsed.compiles(key("src/Core/Generated/Proxy.cs"))).isFalse();
+    assertThat(parsed.compiles(key("src/Core/Module.vb"))).isFalse();
+    assertThat(parsed.compiles(key("src/Other/Other.cs"))).isFalse();
+  }
+
+  @Test
+  public void legacyProjectCompilesItsItems() throws Exception {
+    File project = write("Legacy/Legacy.vbproj",
+      "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+        + "<Project ToolsVersion=\"14.0\" xmlns=\"http://schemas.microsoft.com/developer/msbuild/2003\">\n"
+        + "  <ItemGroup>\n"
+        + "    <Compile Include=\"Module1.vb\" />\n"
+        + "    <Compile Include=\"Forms\\*.vb\" />\n"
+        + "  </ItemGroup>\n"
+        + "</Project>\n");
+
+    ProjectFile parsed = ProjectFile.parse(project);
+
+    assertThat(parsed.sdkStyle()).isFalse();
+    assertThat(parsed.compiles(key("Legacy/Module1.vb"))).isTrue();
+    assertThat(parsed.compiles(key("legacy/module1.VB"))).isTrue();
+    assertThat(parsed.compiles(key("Legacy/Forms/Main.vb"))).isTrue();
+    assertThat(parsed.compiles(key("Legacy/Unlisted.vb"))).isFalse();
+  }
+
+  @Test
+  public void scopesSolutionToProjectsOfTheScannedFiles() throws Exception {
+    write("App/App.csproj", "<Project Sdk=\"Microsoft.NET.Sdk\"><ItemGroup><ProjectReference Include=\"..\\Core\\Core.csproj\" /></ItemGroup></Project>");
+    write("Core/Core.csproj", "<Project Sdk=\"Microsoft.NET.Sdk\" />");
+    write("Tests/Tests.csproj", "<Project Sdk=\"Microsoft.NET.Sdk\" />");
+    write("Broken/Broken.csproj", "<Project");
+    File sln = write("App.sln", "Microsoft Visual Studio Solution File, Format Version 12.00\r\n"
+      + project("App") + project("Core") + project("Tests") + project("Broken") + project("Missing"));
+
+    ProjectGraph graph = ProjectGraph.build(SolutionFile.parse(sln));
+
+    File app = new File(temp.getRoot(), "App/App.csproj").getCanonicalFile();
+    File core = new File(temp.getRoot(), "Core/Core.csproj").getCanonicalFile();
+    File broken = new File(temp.getRoot(), "Broken/Broken.csproj").getCanonicalFile();
+    File missing = new File(temp.getRoot(), "Missing/Missing.csproj").getCanonicalFile();
+    assertThat(graph.projects()).hasSize(5);
+    assertThat(graph.references(app)).containsOnly(core);
+    assertThat(graph.owners(new File(temp.getRoot(), "Core/Model.cs").getAbsolutePath())).containsOnly(core);
+    assertThat(graph.projectsOf(Arrays.asList(source("App/Program.cs"), source("Core/Model.cs"), source("Core/Other.cs"))))
+      .containsExactly(app, core, broken, missing);
+  }
+
+  private File source(String path) {
+    return new File(temp.getRoot(), path);
+  }
+
+  private static String project(String name) {
+    return "Project(\"{9A19103F-16F7-4668-BE54-9A1E7A4F7556}\") = \"" + name + "\", \"" + name + "\\" + name
+      + ".csproj\", \"{11111111-1111-1111-1111-111111111111}\"\r\nEndProject\r\n";
+  }
+
+  private String key(String path) {
+    return SolutionFingerprints.key(new File(temp.getRoot(), path).getAbsolutePath());
+  }
+
+  private File write(String path, String content) throws Exception {
+    File file = new File(temp.getRoot(), path);
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+}
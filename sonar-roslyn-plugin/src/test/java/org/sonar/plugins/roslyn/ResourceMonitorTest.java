@@ -0,0 +1,143 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.utils.log.LogTester;
+import org.sonar.api.utils.log.LoggerLevel;
+import org.sonar.api.utils.text.JsonWriter;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class ResourceMonitorTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Rule
+  public LogTester logTester = new LogTester();
+
+  @Test
+  public void sumsTheProcessTree() throws Exception {
+    File proc = temp.newFolder("proc");
+    process(proc, 100, 1, 1024, 200, 50, 10);
+    process(proc, 101, 100, 2048, 100, 0, 5);
+    process(proc, 102, 101, 1024, 0, 0, 1);
+    process(proc, 200, 1, 999999, 999, 999, 99);
+    ResourceMonitor monitor = new ResourceMonitor(new ResourceMonitor.Settings(1000, 0, 0), proc, "runner");
+
+    monitor.start(100);
+    monitor.sample();
+
+    List<ResourceMonitor.Sample> samples = monitor.samples();
+    assertThat(samples).hasSize(1);
+    assertThat(samples.get(0).rssBytes).isEqualTo(4096L * 1024);
+    assertThat(samples.get(0).cpuMillis).isEqualTo(3500L);
+    assertThat(samples.get(0).threads).isEqualTo(16);
+    assertThat(samples.get(0).processes).isEqualTo(3);
+  }
+
+  @Test
+  public void warnsOnceAboveThresholds() throws Exception {
+    File proc = temp.newFolder("proc");
+    process(proc, 100, 1, 3 * 1024, 0, 0, 60);
+    ResourceMonitor monitor = new ResourceMonitor(new ResourceMonitor.Settings(1000, 2 * 1024 * 1024, 50), proc, "runner");
+
+    monitor.start(100);
+    monitor.sample();
+    monitor.sample();
+
+    List<String> warnings = logTester.logs(LoggerLevel.WARN);
+    assertThat(warnings).hasSize(2);
+    assertThat(warnings.get(0)).contains("runner uses 3 MB of resident memory, above the 2 MB");
+    assertThat(warnings.get(1)).contains("runner runs 60 threads, above the 50");
+  }
+
+  @Test
+  public void halvesTheSeriesWhenFull() throws Exception {
+    File proc = temp.newFolder("proc");
+    process(proc, 100, 1, 1024, 0, 0, 1);
+    ResourceMonitor monitor = new ResourceMonitor(new ResourceMonitor.Settings(1000, 0, 0), proc, "runner");
+
+    monitor.start(100);
+    for (int i = 0; i < ResourceMonitor.MAX_SAMPLES + 2; i++) {
+      monitor.sample();
+    }
+
+    assertThat(monitor.samples()).hasSize(ResourceMonitor.MAX_SAMPLES / 2 + 1);
+    assertThat(monitor.peakRss()).isEqualTo(1024L * 1024);
+    assertThat(monitor.rssPercentile(95)).isEqualTo(1024L * 1024);
+  }
+
+  @Test
+  public void samplesARunningProcess() throws Exception {
+    assumeTrue(new File("/proc/self/stat").isFile());
+    ResourceMonitor monitor = new ResourceMonitor(new ResourceMonitor.Settings(10, 0, 0), "sleep");
+    Process process = new ProcessBuilder("sleep", "5").start();
+    try {
+      monitor.start(process);
+      Thread.sleep(200);
+    } finally {
+      monitor.close();
+      process.destroyForcibly();
+    }
+
+    assertThat(monitor.samples()).isNotEmpty();
+    assertThat(monitor.peakRss()).isGreaterThan(0L);
+    assertThat(monitor.peakThreads()).isGreaterThan(0);
+    StringWriter json = new StringWriter();
+    try (JsonWriter writer = JsonWriter.of(json)) {
+      monitor.write(writer);
+    }
+    assertThat(json.toString()).contains("\"name\":\"sleep\"").contains("\"samples\":[{\"millis\":");
+  }
+
+  private static void process(File proc, long pid, long parent, long rssKb, long utime, long stime, int threads) throws Exception {
+    File dir = new File(proc, Long.toString(pid));
+    dir.mkdirs();
+    String stat = pid + " (some proc) S " + parent + " 0 0 0 -1 0 0 0 0 0 " + utime + " " + stime + " 0 0 20 0 " + threads
+      + " 0 12345 1000 250\n";
+    Files.write(new File(dir, "stat").toPath(), stat.getBytes(StandardCharsets.UTF_8));
+    String status = "Name:\tproc\nVmRSS:\t    " + rssKb + " kB\nThreads:\t" + threads + "\n";
+    Files.write(new File(dir, "status").toPath(), status.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ResultCacheTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = temp.newFolder("cache");
+  }
+
+  @Test
+  public void replaysEntriesOnTheCurrentPath() throws IOException {
+    ResultCache cache = new ResultCache(dir, 1 << 20);
+    String key = ResultCache.key("source", "context", "analyzers", "rules");
+    assertThat(cache.contains(key)).isFalse();
+
+    cache.write(key, Arrays.asList(new RoslynIssue("/agent1/src/a.cs", 3, "CS0168", "unused")));
+    assertThat(cache.contains(key)).isTrue();
+
+    List<RoslynIssue> issues = new ArrayList<>();
+    cache.read(key, "/agent2/src/a.cs", issues::add);
+    assertThat(issues).hasSize(1);
+    assertThat(issues.get(0).path()).isEqualTo("/agent2/src/a.cs");
+    assertThat(issues.get(0).line()).isEqualTo(3);
+    assertThat(issues.get(0).ruleId()).isEqualTo("CS0168");
+  }
+
+  @Test
+  public void keysDependOnEveryHash() {
+    String key = ResultCache.key("s", "c", "a", "r");
+    assertThat(ResultCache.key("s", "c", "a", "r2")).isNotEqualTo(key);
+    assertThat(ResultCache.key("s", "c", "a2", "r")).isNotEqualTo(key);
+    assertThat(ResultCache.key("s", "c2", "a", "r")).isNotEqualTo(key);
+    assertThat(ResultCache.key("s2", "c", "a", "r")).isNotEqualTo(key);
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedEntries() throws IOException {
+    ResultCache cache = new ResultCache(dir, 300);
+    List<String> keys = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      String key = ResultCache.key("source" + i, "c", "a", "r");
+      cache.write(key, Arrays.asList(new RoslynIssue("a.cs", i, "CS0001", "a message long enough to fill some bytes in the entry " + i)));
+      cache.entry(key).setLastModified(1000000000000L + i * 1000L);
+      keys.add(key);
+    }
+    cache.entry(keys.get(0)).setLastModified(1000000010000L);
+
+    cache.evict();
+
+    assertThat(cache.entry(keys.get(0)).isFile()).isTrue();
+    assertThat(cache.entry(keys.get(1)).isFile()).isFalse();
+    assertThat(cache.entry(keys.get(4)).isFile()).isTrue();
+    long size = 0;
+    for (String key : keys) {
+      size += cache.entry(key).length();
+    }
+    assertThat(size).isLessThanOrEqualTo(270);
+  }
+
+  @Test
+  public void sessionsShareEntriesBetweenCheckouts() throws IOException {
+    ResultCache cache = new ResultCache(dir, 1 << 20);
+    File spool = temp.newFolder("spool");
+    Map<String, String> sources = new HashMap<>();
+    sources.put("a/a.cs", "1");
+    sources.put("b/b.cs", "1");
+    sources.put("c/c.cs", "1");
+
+    ResultCache.Session first = cache.open(fingerprints("/agent1/", sources), "analyzers", "rules", spool);
+    assertThat(first.cachedProjects()).isEmpty();
+    RoslynResultsDecoder.IssueHandler handler = first.record(issue -> {
+    });
+    handler.handle(new RoslynIssue("/agent1/a/a.cs", 1, "CS0001", "a"));
+    handler.handle(new RoslynIssue("/agent1/c/c.cs", 2, "CS0002", "c"));
+    first.store(new HashSet<>(Arrays.asList("/agent1/a/a.csproj", "/agent1/b/b.csproj", "/agent1/c/c.csproj")));
+    first.close();
+    assertThat(spool.list()).isEmpty();
+
+    ResultCache.Session second = cache.open(fingerprints("/agent2/", sources), "analyzers", "rules", spool);
+    assertThat(second.cachedProjects()).containsOnly("/agent2/a/a.csproj", "/agent2/b/b.csproj", "/agent2/c/c.csproj");
+    List<String> replayed = new ArrayList<>();
+    assertThat(second.pin(second.cachedProjects())).isEqualTo(second.cachedProjects());
+    second.replay(second.cachedProjects(), issue -> replayed.add(issue.path() + ":" + issue.line()));
+    assertThat(replayed).containsOnly("/agent2/a/a.cs:1", "/agent2/c/c.cs:2");
+
+    sources.put("b/b.cs", "2");
+    ResultCache.Session changed = cache.open(fingerprints("/agent2/", sources), "analyzers", "rules", spool);
+    assertThat(changed.cachedProjects()).containsOnly("/agent2/a/a.csproj");
+
+    ResultCache.Session otherRules = cache.open(fingerprints("/agent2/", sources), "analyzers", "other rules", spool);
+    assertThat(otherRules.cachedProjects()).isEmpty();
+  }
+
+  @Test
+  public void projectsWithEvictedEntriesAreNotPinned() throws IOException {
+    ResultCache cache = new ResultCache(dir, 1 << 20);
+    File spool = temp.newFolder("spool");
+    Map<String, String> sources = new HashMap<>();
+    sources.put("a/a.cs", "1");
+    sources.put("b/b.cs", "1");
+    try (ResultCache.Session first = cache.open(fingerprints("/agent1/", sources), "analyzers", "rules", spool)) {
+      first.record(issue -> {
+      }).handle(new RoslynIssue("/agent1/a/a.cs", 1, "CS0001", "a"));
+      first.store(new HashSet<>(Arrays.asList("/agent1/a/a.csproj", "/agent1/b/b.csproj")));
+    }
+
+    try (ResultCache.Session second = cache.open(fingerprints("/agent1/", sources), "analyzers", "rules", spool)) {
+      assertThat(second.cachedProjects()).contains("/agent1/a/a.csproj", "/agent1/b/b.csproj");
+      // another scan evicts the entry of a between lookup and replay
+      for (File bucket : dir.listFiles()) {
+        for (File entry : bucket.listFiles()) {
+          if (entry.length() > RoslynBinaryResultsParser.HEADER_SIZE) {
+            assertThat(entry.delete()).isTrue();
+          }
+        }
+      }
+      assertThat(second.pin(second.cachedProjects())).contains("/agent1/b/b.csproj").excludes("/agent1/a/a.csproj");
+    }
+  }
+
+  /**
+   * Projects a, b and c under the root, c referencing b.
+   */
+  private static SolutionFingerprints fingerprints(String root, Map<String, String> relativeSources) {
+    Map<String, String> projects = new HashMap<>();
+    Map<String, List<String>> references = new HashMap<>();
+    for (String name : Arrays.asList("a", "b", "c")) {
+      projects.put(root + name + "/" + name + ".csproj", "1");
+      references.put(root + name + "/" + name + ".csproj", Collections.<String>emptyList());
+    }
+    references.put(root + "c/c.csproj", Arrays.asList(root + "b/b.csproj"));
+    Map<String, String> sources = new HashMap<>();
+    for (Map.Entry<String, String> source : relativeSources.entrySet()) {
+      sources.put(root + source.getKey(), source.getValue());
+    }
+    return new SolutionFingerprints("global", projects, references, sources);
+  }
+}
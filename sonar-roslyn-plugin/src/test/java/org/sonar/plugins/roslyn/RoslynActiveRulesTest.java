@@ -0,0 +1,65 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import org.junit.Test;
+import org.sonar.api.batch.rule.internal.ActiveRulesBuilder;
+import org.sonar.api.rule.RuleKey;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RoslynActiveRulesTest {
+
+  @Test
+  public void keepsOnlyRoslynRepositories() {
+    RoslynActiveRules rules = RoslynActiveRules.of(new ActiveRulesBuilder()
+      .create(RuleKey.of(RoslynPlugin.REPOSITORY_KEY_CS, "SA1000")).setParam("max", "3").activate()
+      .create(RuleKey.of(RoslynPlugin.REPOSITORY_KEY_VB, "BC42024")).activate()
+      .create(RuleKey.of("csharpsquid", "S100")).activate()
+      .build());
+
+    assertThat(rules.size()).isEqualTo(2);
+    assertThat(rules.isActive("/src/Program.cs", "SA1000")).isTrue();
+    assertThat(rules.isActive("/src/Module.VB", "SA1000")).isFalse();
+    assertThat(rules.isActive("C:\\src\\Module.vb", "BC42024")).isTrue();
+    assertThat(rules.isActive("/src/Program.cs", "S100")).isFalse();
+  }
+
+  @Test
+  public void choosesTheRepositoryFromTheExtension() {
+    assertThat(RoslynActiveRules.repository("/src/Module.Vb")).isEqualTo(RoslynPlugin.REPOSITORY_KEY_VB);
+    assertThat(RoslynActiveRules.repository("/src/Program.cs")).isEqualTo(RoslynPlugin.REPOSITORY_KEY_CS);
+    assertThat(RoslynActiveRules.repository("vb")).isEqualTo(RoslynPlugin.REPOSITORY_KEY_CS);
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RoslynAnalysisCoordinatorTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void runsEachAnalysisOncePerScan() throws Exception {
+    RoslynAnalysisCoordinator coordinator = new RoslynAnalysisCoordinator(temp.newFolder("root"), temp.newFolder("work"));
+    AtomicInteger runs = new AtomicInteger();
+    RoslynAnalysisCoordinator.Analysis analysis = results -> {
+      runs.incrementAndGet();
+      results.handle(new RoslynIssue("/src/Program.cs", 1, "CS0168", "unused"));
+    };
+
+    AnalysisResults first = coordinator.results("/src/App.sln", AnalysisResults.spooled(coordinator.workDir()), analysis);
+    AnalysisResults second = coordinator.results("/src/App.sln", AnalysisResults.spooled(coordinator.workDir()), analysis);
+    coordinator.results("/src/Tools.sln", AnalysisResults.spooled(coordinator.workDir()), analysis);
+
+    assertThat(second).isSameAs(first);
+    assertThat(first.issues()).isEqualTo(1);
+    assertThat(runs.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void doesNotRunAFailedAnalysisAgain() throws Exception {
+    RoslynAnalysisCoordinator coordinator = new RoslynAnalysisCoordinator(temp.newFolder("root"), temp.newFolder("work"));
+    AtomicInteger runs = new AtomicInteger();
+    RoslynAnalysisCoordinator.Analysis analysis = results -> {
+      runs.incrementAndGet();
+      results.handle(new RoslynIssue("/src/Program.cs", 1, "CS0168", "unused"));
+      throw new IOException("runner failed");
+    };
+
+    try {
+      coordinator.results("/src/App.sln", AnalysisResults.spooled(coordinator.workDir()), analysis);
+    } catch (IOException e) {
+      assertThat(e.getMessage()).isEqualTo("runner failed");
+    }
+
+    assertThat(coordinator.results("/src/App.sln", AnalysisResults.spooled(coordinator.workDir()), analysis).issues()).isEqualTo(1);
+    assertThat(runs.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void dropsUnimportedIssuesAtTheEndOfTheScan() throws Exception {
+    File work = temp.newFolder("work");
+    RoslynAnalysisCoordinator coordinator = new RoslynAnalysisCoordinator(temp.newFolder("root"), work);
+    coordinator.results("/src/App.sln", AnalysisResults.spooled(work),
+      results -> results.handle(new RoslynIssue("/src/Program.vb", 1, "BC42024", "unused")));
+    assertThat(work.list()).hasSize(1);
+
+    coordinator.stop();
+
+    assertThat(work.list()).isEmpty();
+  }
+}
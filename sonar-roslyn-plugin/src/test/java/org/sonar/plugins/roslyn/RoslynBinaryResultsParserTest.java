@@ -0,0 +1,165 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RoslynBinaryResultsParserTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void readsWhatTheWriterWrites() throws IOException {
+    File file = temp.newFile();
+    try (RoslynBinaryResultsWriter writer = new RoslynBinaryResultsWriter(new FileOutputStream(file))) {
+      writer.write(new RoslynIssue("C:\\src\\Foo.cs", 1, "CA1001", "message; with separator\nand new line"));
+      writer.write(new RoslynIssue("C:\\src\\Foo.cs", 300, "CA1001", "caf\u00e9"));
+      writer.write(new RoslynIssue("C:\\src\\Bar.vb", 2, "BC1", "caf\u00e9"));
+    }
+
+    List<RoslynIssue> issues = new ArrayList<>();
+    RoslynResultsDecoder decoder = RoslynResultsDecoder.create(issues::add);
+    decoder.read(file);
+
+    assertThat(issues).hasSize(3);
+    assertThat(issues.get(0).message()).isEqualTo("message; with separator\nand new line");
+    assertThat(issues.get(1).line()).isEqualTo(300);
+    assertThat(issues.get(1).path()).isSameAs(issues.get(0).path());
+    assertThat(issues.get(2).path()).isEqualTo("C:\\src\\Bar.vb");
+    assertThat(issues.get(2).message()).isEqualTo("caf\u00e9");
+    assertThat(decoder.bytes()).isEqualTo(file.length());
+  }
+
+  @Test
+  public void recordsSplitAcrossChunksAreReassembled() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (RoslynBinaryResultsWriter writer = new RoslynBinaryResultsWriter(out)) {
+      for (int i = 0; i < 100; i++) {
+        writer.write(new RoslynIssue("Foo.cs", i + 1, "R" + (i % 3), new String(new char[i * 3]).replace('\0', 'x')));
+      }
+    }
+
+    byte[] data = out.toByteArray();
+    List<RoslynIssue> issues = new ArrayList<>();
+    RoslynResultsDecoder decoder = RoslynResultsDecoder.create(issues::add);
+    for (byte b : data) {
+      decoder.feed(ByteBuffer.wrap(new byte[] {b}));
+    }
+    decoder.finish();
+
+    assertThat(issues).hasSize(100);
+    assertThat(issues.get(99).line()).isEqualTo(100);
+    assertThat(issues.get(99).message()).hasSize(297);
+    assertThat(decoder.skipped()).isEqualTo(0);
+  }
+
+  @Test
+  public void truncatedRecordIsDropped() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (RoslynBinaryResultsWriter writer = new RoslynBinaryResultsWriter(out)) {
+      writer.write(new RoslynIssue("Foo.cs", 1, "R1", "complete"));
+      writer.write(new RoslynIssue("Foo.cs", 2, "R1", "truncated"));
+    }
+    byte[] data = out.toByteArray();
+
+    List<RoslynIssue> issues = new ArrayList<>();
+    RoslynResultsDecoder decoder = RoslynResultsDecoder.create(issues::add);
+    decoder.feed(ByteBuffer.wrap(data, 0, data.length - 2));
+
+    assertThat(decoder.hasPartialRecord()).isTrue();
+    assertThat(decoder.discardPartialRecord()).isTrue();
+    assertThat(issues).hasSize(1);
+  }
+
+  @Test
+  public void messagesAreNotInterned() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (RoslynBinaryResultsWriter writer = new RoslynBinaryResultsWriter(out)) {
+      writer.write(new RoslynIssue("Foo.cs", 1, "R1", "same"));
+      writer.write(new RoslynIssue("Foo.cs", 2, "R1", "same"));
+    }
+
+    // header, the path and rule id strings, then two issue records of 3 varints and 4 message bytes
+    assertThat(out.size()).isEqualTo(RoslynBinaryResultsParser.HEADER_SIZE + (2 + 6) + (2 + 2) + 2 * (2 + 3 + 4));
+  }
+
+  @Test
+  public void readsVersion1Records() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(RoslynBinaryResultsParser.MAGIC);
+    out.write(new byte[] {1, 0, 0, 0});
+    for (String value : new String[] {"Foo.cs", "R1", "interned"}) {
+      out.write(RoslynBinaryResultsParser.STRING);
+      out.write(value.length());
+      out.write(value.getBytes(StandardCharsets.UTF_8));
+    }
+    out.write(new byte[] {RoslynBinaryResultsParser.ISSUE, 4, 0, 7, 1, 2});
+
+    List<RoslynIssue> issues = new ArrayList<>();
+    RoslynResultsDecoder decoder = RoslynResultsDecoder.create(issues::add);
+    decoder.feed(ByteBuffer.wrap(out.toByteArray()));
+    decoder.finish();
+
+    assertThat(issues).hasSize(1);
+    assertThat(issues.get(0).path()).isEqualTo("Foo.cs");
+    assertThat(issues.get(0).line()).isEqualTo(7);
+    assertThat(issues.get(0).message()).isEqualTo("interned");
+  }
+
+  @Test
+  public void textOutputIsStillDetected() throws IOException {
+    File file = temp.newFile();
+    Files.write(file.toPath(), "Foo.cs;4;R1;text\n".getBytes(StandardCharsets.UTF_8));
+
+    List<RoslynIssue> issues = new ArrayList<>();
+    RoslynResultsDecoder.create(issues::add).read(file);
+
+    assertThat(issues).hasSize(1);
+    assertThat(issues.get(0).message()).isEqualTo("text");
+  }
+}
@@ -0,0 +1,246 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalInt;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RoslynDaemonClientTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private ServerSocket server;
+  private final List<List<String>> started = new ArrayList<>();
+
+  @After
+  public void stopServer() throws IOException {
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  @Test
+  public void runsAnalysisInPublishedDaemon() throws Exception {
+    File stateDir = temp.newFolder();
+    RoslynDaemonClient client = client(stateDir, runner("runner v1"));
+    final List<String> received = new ArrayList<>();
+    publish(stateDir, client.fingerprint(), "secret", received);
+
+    List<String> output = new ArrayList<>();
+    OptionalInt exitCode = client.execute(Arrays.asList("/i:input.xml", "/o:output.xml"), output::add);
+
+    assertThat(exitCode.isPresent()).isTrue();
+    assertThat(exitCode.getAsInt()).isEqualTo(3);
+    assertThat(output).containsExactly("[RoslynRunner] : Analyse: a.csproj", "[RoslynRunner] : Found 2 issues");
+    assertThat(received).containsExactly("HELLO " + RoslynDaemonClient.PROTOCOL_VERSION + " " + client.fingerprint() + " secret",
+      "RUN", "/i:input.xml", "/o:output.xml");
+  }
+
+  @Test
+  public void fallsBackWhenDaemonRunsOtherBinariesAndCannotBeStarted() throws Exception {
+    File stateDir = temp.newFolder();
+    RoslynDaemonClient client = client(stateDir, runner("runner v2"));
+    List<String> received = new ArrayList<>();
+    publish(stateDir, client(stateDir, runner("runner v1")).fingerprint(), "secret", received);
+
+    assertThat(client.execute(Arrays.asList("/i:input.xml"), line -> { }).isPresent()).isFalse();
+    assertThat(received).containsExactly("HELLO " + RoslynDaemonClient.PROTOCOL_VERSION + " " + client.fingerprint() + " secret");
+    assertThat(started).hasSize(1);
+    assertThat(started.get(0)).contains("/daemon", "/idle:60");
+  }
+
+  @Test
+  public void givesUpOnASilentDaemon() throws Exception {
+    File stateDir = temp.newFolder();
+    RoslynDaemonClient client = new RoslynDaemonClient(stateDir, runner("runner v1"), 60, 300, 500, 1000, (command, directory, log) -> started.add(command));
+    server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    Files.write(new File(stateDir, RoslynDaemonClient.PORT_FILE).toPath(),
+      (server.getLocalPort() + " " + client.fingerprint() + " secret 1234").getBytes(StandardCharsets.UTF_8));
+    Thread thread = new Thread(() -> {
+      try (Socket socket = server.accept()) {
+        Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+        writer.write("OK\n");
+        writer.flush();
+        Thread.sleep(10000);
+      } catch (IOException | InterruptedException e) {
+        // server closed by the test
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+
+    long start = System.nanoTime();
+    assertThat(client.execute(Arrays.asList("/i:input.xml"), line -> { }).isPresent()).isFalse();
+    assertThat((System.nanoTime() - start) / 1000000).isLessThan(5000);
+  }
+
+  @Test
+  public void busyDaemonIsLeftRunning() throws Exception {
+    File stateDir = temp.newFolder();
+    RoslynDaemonClient client = client(stateDir, runner("runner v1"));
+    answer(stateDir, client.fingerprint(), "BUSY\n");
+
+    assertThat(client.execute(Arrays.asList("/i:input.xml"), line -> { }).isPresent()).isFalse();
+    assertThat(started).isEmpty();
+    assertThat(new File(stateDir, RoslynDaemonClient.PORT_FILE).isFile()).isTrue();
+  }
+
+  @Test
+  public void daemonAcceptingWithoutAnsweringTheHandshakeIsBusy() throws Exception {
+    File stateDir = temp.newFolder();
+    RoslynDaemonClient client = client(stateDir, runner("runner v1"));
+    answer(stateDir, client.fingerprint(), "");
+
+    long start = System.nanoTime();
+    assertThat(client.execute(Arrays.asList("/i:input.xml"), line -> { }).isPresent()).isFalse();
+    assertThat((System.nanoTime() - start) / 1000000).isLessThan(5000);
+    assertThat(started).isEmpty();
+    assertThat(new File(stateDir, RoslynDaemonClient.PORT_FILE).isFile()).isTrue();
+  }
+
+  @Test
+  public void daemonIsStartedWhenThePublishedPortIsClosed() throws Exception {
+    File stateDir = temp.newFolder();
+    RoslynDaemonClient client = client(stateDir, runner("runner v1"));
+    answer(stateDir, client.fingerprint(), "");
+    server.close();
+
+    assertThat(client.execute(Arrays.asList("/i:input.xml"), line -> { }).isPresent()).isFalse();
+    assertThat(started).hasSize(1);
+  }
+
+  @Test
+  public void daemonDisablesMsBuildNodeReuse() throws Exception {
+    File stateDir = temp.newFolder();
+    ProcessBuilder builder = RoslynDaemonClient.processBuilder(Arrays.asList("runner", "/daemon"), stateDir, new File(stateDir, "daemon.log"));
+
+    assertThat(builder.environment().get("MSBUILDDISABLENODEREUSE")).isEqualTo("1");
+    assertThat(builder.directory()).isEqualTo(stateDir);
+  }
+
+  @Test
+  public void fingerprintDependsOnRunnerContent() throws Exception {
+    File stateDir = temp.newFolder();
+    String v1 = new RoslynDaemonClient(stateDir, runner("runner v1"), 60).fingerprint();
+    assertThat(v1).hasSize(64);
+    assertThat(new RoslynDaemonClient(stateDir, runner("runner v1"), 60).fingerprint()).isEqualTo(v1);
+    assertThat(new RoslynDaemonClient(stateDir, runner("runner v2"), 60).fingerprint()).isNotEqualTo(v1);
+  }
+
+  private RoslynDaemonClient client(File stateDir, File runner) {
+    return new RoslynDaemonClient(stateDir, runner, 60, 5000, 500, 300, (command, directory, log) -> started.add(command));
+  }
+
+  private File runner(String content) throws IOException {
+    File runner = new File(temp.getRoot(), "RoslynRunner-" + content.hashCode() + ".exe");
+    Files.write(runner.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return runner;
+  }
+
+  /**
+   * Publishes a daemon answering the handshake of a single connection with the given text, and
+   * keeping the connection open.
+   */
+  private void answer(File stateDir, String fingerprint, final String answer) throws IOException {
+    server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    Files.write(new File(stateDir, RoslynDaemonClient.PORT_FILE).toPath(),
+      (server.getLocalPort() + " " + fingerprint + " secret 1234").getBytes(StandardCharsets.UTF_8));
+    Thread thread = new Thread(() -> {
+      try (Socket socket = server.accept()) {
+        Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+        writer.write(answer);
+        writer.flush();
+        Thread.sleep(10000);
+      } catch (IOException | InterruptedException e) {
+        // server closed by the test
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Serves a single connection speaking the daemon protocol and records the lines it receives.
+   */
+  private void publish(File stateDir, final String fingerprint, final String token, final List<String> received) throws IOException {
+    server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    Files.write(new File(stateDir, RoslynDaemonClient.PORT_FILE).toPath(),
+      (server.getLocalPort() + " " + fingerprint + " " + token + " 1234").getBytes(StandardCharsets.UTF_8));
+
+    Thread thread = new Thread(() -> {
+      try (Socket socket = server.accept()) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+        String line;
+        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+          received.add(line);
+          if (line.startsWith("HELLO")) {
+            boolean matches = line.equals("HELLO " + RoslynDaemonClient.PROTOCOL_VERSION + " " + fingerprint + " " + token);
+            writer.write(matches ? "OK\n" : "MISMATCH " + RoslynDaemonClient.PROTOCOL_VERSION + " " + fingerprint + "\n");
+            writer.flush();
+            if (!matches) {
+              return;
+            }
+          }
+        }
+        writer.write("OUT [RoslynRunner] : Analyse: a.csproj\nOUT [RoslynRunner] : Found 2 issues\nEXIT 3\n");
+        writer.flush();
+      } catch (IOException e) {
+        // server closed by the test
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.batch.rule.internal.ActiveRulesBuilder;
+import org.sonar.api.batch.sensor.internal.SensorContextTester;
+import org.sonar.api.batch.sensor.issue.Issue;
+import org.sonar.api.rule.RuleKey;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RoslynIssueImporterTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void parallelImportMatchesSingleThreadedImport() throws IOException {
+    File baseDir = temp.newFolder();
+    List<RoslynIssue> issues = new ArrayList<>();
+    for (int i = 0; i < 3 * RoslynIssueImporter.BATCH_SIZE + 17; i++) {
+      String path = new File(baseDir, "File" + (i % 7) + (i % 3 == 0 ? ".vb" : ".cs")).getAbsolutePath();
+      issues.add(new RoslynIssue(i % 11 == 0 ? path + ".missing" : path, i % 60, "R" + (i % 13), "message " + i));
+    }
+
+    List<String> single = importIssues(baseDir, issues, 1);
+    List<String> parallel = importIssues(baseDir, issues, 4);
+
+    assertThat(single).isNotEmpty();
+    assertThat(parallel).isEqualTo(single);
+  }
+
+  @Test
+  public void duplicateIssuesAreSavedOnce() throws IOException {
+    File baseDir = temp.newFolder();
+    String path = new File(baseDir, "File1.cs").getAbsolutePath();
+    List<RoslynIssue> issues = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      issues.add(new RoslynIssue(path, 4, "CA1822", "Make static"));
+      issues.add(new RoslynIssue(path, 5, "CA1822", "Make static"));
+    }
+
+    assertThat(importIssues(baseDir, issues, 1)).hasSize(2);
+  }
+
+  @Test
+  public void issuesOfInactiveRulesAreDropped() throws IOException {
+    File baseDir = temp.newFolder();
+    List<RoslynIssue> issues = new ArrayList<>();
+    issues.add(new RoslynIssue(new File(baseDir, "File1.cs").getAbsolutePath(), 4, "CA1822", "Make static"));
+    issues.add(new RoslynIssue(new File(baseDir, "File1.vb").getAbsolutePath(), 4, "CA1822", "Make static"));
+    issues.add(new RoslynIssue(new File(baseDir, "File2.cs").getAbsolutePath(), 4, "CA9999", "Inactive"));
+
+    assertThat(importIssues(baseDir, issues, 1)).containsExactly("module:File1.cs:4:roslyn-cs:CA1822:Make static");
+  }
+
+  @Test
+  public void issuesWithoutLineAreSavedOnTheFile() throws IOException {
+    File baseDir = temp.newFolder();
+    List<RoslynIssue> issues = new ArrayList<>();
+    issues.add(new RoslynIssue(new File(baseDir, "File1.cs").getAbsolutePath(), 0, "CA1822", "On the file"));
+    issues.add(new RoslynIssue(new File(baseDir, "File2.cs").getAbsolutePath(), -1, "CA1822", "Invalid"));
+
+    assertThat(importIssues(baseDir, issues, 1)).containsExactly("module:File1.cs:0:roslyn-cs:CA1822:On the file");
+  }
+
+  private List<String> importIssues(File baseDir, List<RoslynIssue> issues, int threads) {
+    SensorContextTester context = SensorContextTester.create(baseDir);
+    for (int i = 0; i < 7; i++) {
+      for (String extension : new String[] {".cs", ".vb"}) {
+        context.fileSystem().add(new TestInputFileBuilder("module", "File" + i + extension)
+          .setModuleBaseDir(baseDir.toPath())
+          .setLines(50)
+          .setOriginalLineOffsets(lineOffsets(50))
+          .setLastValidOffset(50 * 10)
+          .build());
+      }
+    }
+
+    ActiveRulesBuilder activeRules = new ActiveRulesBuilder();
+    for (int i = 0; i < 13; i++) {
+      activeRules.create(RuleKey.of(RoslynPlugin.REPOSITORY_KEY_CS, "R" + i)).activate();
+      activeRules.create(RuleKey.of(RoslynPlugin.REPOSITORY_KEY_VB, "R" + i)).activate();
+    }
+    activeRules.create(RuleKey.of(RoslynPlugin.REPOSITORY_KEY_CS, "CA1822")).activate();
+    context.setActiveRules(activeRules.build());
+
+    InputFileIndex index = InputFileIndex.build(context.fileSystem());
+    try (RoslynIssueImporter importer = new RoslynIssueImporter(context, index, RoslynActiveRules.of(context.activeRules()), threads)) {
+      for (RoslynIssue issue : issues) {
+        importer.handle(issue);
+      }
+      importer.finish();
+    }
+
+    List<String> imported = new ArrayList<>();
+    for (Issue issue : context.allIssues()) {
+      int line = issue.primaryLocation().textRange() == null ? 0 : issue.primaryLocation().textRange().start().line();
+      imported.add(issue.primaryLocation().inputComponent().key() + ":" + line
+        + ":" + issue.ruleKey() + ":" + issue.primaryLocation().message());
+    }
+    return imported;
+  }
+
+  private static int[] lineOffsets(int lines) {
+    int[] offsets = new int[lines];
+    for (int i = 0; i < lines; i++) {
+      offsets[i] = i * 10;
+    }
+    return offsets;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RoslynResultsFollowerTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void importsWhileWritingAndDropsTruncatedRecord() throws Exception {
+    final File output = new File(temp.getRoot(), "roslyn-analysis-output.xml");
+    final CompletableFuture<Integer> runner = new CompletableFuture<>();
+    final String[] chunks = {
+      RoslynResultsParser.HEADER + "\r\nFoo.cs;1;R1;fir",
+      "st\r\nFoo.cs;2;R2;second\r\n",
+      "Foo.cs;3;R3;cut in the mid"
+    };
+
+    Thread writer = new Thread(() -> {
+      try (OutputStream stream = new FileOutputStream(output, true)) {
+        for (String chunk : chunks) {
+          Thread.sleep(RoslynResultsFollower.POLL_MILLIS * 2);
+          stream.write(chunk.getBytes(StandardCharsets.UTF_8));
+          stream.flush();
+        }
+        runner.complete(1);
+      } catch (IOException | InterruptedException e) {
+        runner.completeExceptionally(e);
+      }
+    });
+
+    List<RoslynIssue> issues = new ArrayList<>();
+    RoslynResultsParser parser = new RoslynResultsParser(issues::add);
+    writer.start();
+    int exitCode = new RoslynResultsFollower(output, parser).follow(runner);
+    writer.join();
+
+    assertThat(exitCode).isEqualTo(1);
+    assertThat(issues).hasSize(2);
+    assertThat(issues.get(0).message()).isEqualTo("first");
+    assertThat(issues.get(1).message()).isEqualTo("second");
+    assertThat(parser.skipped()).isEqualTo(1);
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RoslynResultsParserTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void legacyFormatKeepsSeparatorsInMessage() throws IOException {
+    List<RoslynIssue> issues = parse("C:\\src\\Foo.cs;12;CA1001;Type owns fields; implement IDisposable\r\n");
+
+    assertThat(issues).hasSize(1);
+    assertThat(issues.get(0).path()).isEqualTo("C:\\src\\Foo.cs");
+    assertThat(issues.get(0).line()).isEqualTo(12);
+    assertThat(issues.get(0).ruleId()).isEqualTo("CA1001");
+    assertThat(issues.get(0).message()).isEqualTo("Type owns fields; implement IDisposable");
+  }
+
+  @Test
+  public void escapedFormatUnescapesFields() throws IOException {
+    List<RoslynIssue> issues = parse("\uFEFF" + RoslynResultsParser.HEADER + "\r\n"
+      + "C:\\\\my\\;src\\\\Foo.cs;3;SA1600;first\\nsecond \\\\ \\; done\r\n"
+      + "/src/Bar.vb;7;BC42024;unused\n");
+
+    assertThat(issues).hasSize(2);
+    assertThat(issues.get(0).path()).isEqualTo("C:\\my;src\\Foo.cs");
+    assertThat(issues.get(0).message()).isEqualTo("first\nsecond \\ ; done");
+    assertThat(issues.get(1).path()).isEqualTo("/src/Bar.vb");
+    assertThat(issues.get(1).line()).isEqualTo(7);
+  }
+
+  @Test
+  public void recordsSplitAcrossChunksAreReassembled() {
+    byte[] data = (RoslynResultsParser.HEADER + "\r\nFoo.cs;1;R1;caf\u00e9 \\; ok\r\nFoo.cs;2;R2;last").getBytes(StandardCharsets.UTF_8);
+    List<RoslynIssue> issues = new ArrayList<>();
+    RoslynResultsParser parser = new RoslynResultsParser(issues::add);
+    for (byte b : data) {
+      parser.feed(ByteBuffer.wrap(new byte[] {b}));
+    }
+
+    assertThat(issues).hasSize(1);
+    assertThat(parser.hasPartialRecord()).isTrue();
+    parser.finish();
+
+    assertThat(issues).hasSize(2);
+    assertThat(issues.get(0).message()).isEqualTo("caf\u00e9 ; ok");
+    assertThat(issues.get(1).message()).isEqualTo("last");
+    assertThat(issues.get(0).path()).isSameAs(issues.get(1).path());
+  }
+
+  @Test
+  public void malformedRecordsAreSkipped() throws IOException {
+    List<RoslynIssue> issues = new ArrayList<>();
+    File file = write("Foo.cs;x;R1;bad line\n\nFoo.cs;4\nFoo.cs;5;R1;good\n");
+    RoslynResultsParser parser = RoslynResultsParser.parse(file, issues::add);
+
+    assertThat(issues).hasSize(1);
+    assertThat(parser.records()).isEqualTo(1);
+    assertThat(parser.skipped()).isEqualTo(2);
+  }
+
+  /**
+   * Run with -Droslyn.test.largeOutputGb=3 to parse a synthetic multi-GB output.
+   */
+  @Test
+  public void largeOutputIsParsedWithFlatMemory() throws IOException {
+    String size = System.getProperty("roslyn.test.largeOutputGb");
+    Assume.assumeTrue(size != null);
+
+    long targetBytes = (long) (Double.parseDouble(size) * 1024 * 1024 * 1024);
+    File file = temp.newFile("roslyn-analysis-output.xml");
+    long written = 0;
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap((RoslynResultsParser.HEADER + "\n").getBytes(StandardCharsets.UTF_8)));
+      StringBuilder chunk = new StringBuilder();
+      long bytes = 0;
+      while (bytes < targetBytes) {
+        chunk.setLength(0);
+        for (int i = 0; i < 10000; i++) {
+          chunk.append("C:\\\\src\\\\Project").append(written % 50).append("\\\\File").append(written % 997)
+            .append(".cs;").append(written % 5000 + 1).append(";CA").append(written % 300)
+            .append(";Message \\; with separator for issue ").append(written).append('\n');
+          written++;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(chunk.toString().getBytes(StandardCharsets.UTF_8));
+        bytes += buffer.remaining();
+        channel.write(buffer);
+      }
+    }
+
+    final long[] count = {0};
+    RoslynResultsParser parser = RoslynResultsParser.parse(file, issue -> count[0]++);
+
+    assertThat(count[0]).isEqualTo(written);
+    assertThat(parser.skipped()).isEqualTo(0);
+    assertThat(parser.bytes()).isEqualTo(file.length());
+    assertThat(parser.fieldBufferCapacity()).isLessThan(4096);
+  }
+
+  private List<RoslynIssue> parse(String content) throws IOException {
+    List<RoslynIssue> issues = new ArrayList<>();
+    RoslynResultsParser.parse(write(content), issues::add);
+    return issues;
+  }
+
+  private File write(String content) throws IOException {
+    File file = temp.newFile();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RoslynRunnerExtractorTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void concurrentExtractorsShareOneCopy() throws Exception {
+    File cache = temp.newFolder("cache");
+    byte[] zip = zip("v1");
+    List<RoslynRunnerExtractor> extractors = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      extractors.add(new RoslynRunnerExtractor(cache, temp.newFolder(), () -> new ByteArrayInputStream(zip)));
+    }
+
+    File executable = extractors.get(0).executableFile();
+    for (RoslynRunnerExtractor extractor : extractors) {
+      assertThat(extractor.executableFile()).isEqualTo(executable);
+    }
+    assertThat(new String(Files.readAllBytes(executable.toPath()), StandardCharsets.UTF_8)).isEqualTo("v1");
+    assertThat(new File(executable.getParentFile(), "lib/Analyzer.dll")).exists();
+    assertThat(cache.list()).hasSize(2);
+  }
+
+  @Test
+  public void newPluginBuildUsesNewDirectory() throws Exception {
+    File cache = temp.newFolder("cache");
+    byte[] v1 = zip("v1");
+    byte[] v2 = zip("v2");
+
+    File first = new RoslynRunnerExtractor(cache, temp.newFolder(), () -> new ByteArrayInputStream(v1)).executableFile();
+    File second = new RoslynRunnerExtractor(cache, temp.newFolder(), () -> new ByteArrayInputStream(v2)).executableFile();
+
+    assertThat(second.getParentFile()).isNotEqualTo(first.getParentFile());
+    assertThat(new String(Files.readAllBytes(second.toPath()), StandardCharsets.UTF_8)).isEqualTo("v2");
+  }
+
+  @Test
+  public void fallsBackToWorkDirWhenCacheIsNotUsable() throws Exception {
+    File cache = temp.newFile("not-a-directory");
+    File workDir = temp.newFolder("work");
+    byte[] zip = zip("v1");
+
+    File executable = new RoslynRunnerExtractor(cache, workDir, () -> new ByteArrayInputStream(zip)).executableFile();
+
+    assertThat(executable.getParentFile().getParentFile()).isEqualTo(workDir);
+    assertThat(executable).exists();
+  }
+
+  @Test(expected = IOException.class)
+  public void missingZipFails() throws Exception {
+    new RoslynRunnerExtractor(temp.newFolder(), temp.newFolder(), () -> null).executableFile();
+  }
+
+  private static byte[] zip(String version) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+      zip.putNextEntry(new ZipEntry("RoslynRunner.exe"));
+      zip.write(version.getBytes(StandardCharsets.UTF_8));
+      zip.putNextEntry(new ZipEntry("lib/Analyzer.dll"));
+      zip.write(new byte[] {1, 2, 3});
+    }
+    return bytes.toByteArray();
+  }
+}
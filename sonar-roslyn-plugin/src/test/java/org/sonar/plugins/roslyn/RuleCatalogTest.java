@@ -0,0 +1,116 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.server.rule.RulesDefinition;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RuleCatalogTest {
+
+  private static final String CS = "roslyn-cs\tSA1000\tWarning\tKeywords must be spaced correctly\tStyleCop.CSharp.SpacingRules\t"
+    + "https://example.org/SA1000\tThe spacing around a C# keyword is incorrect.\\nSee <docs>.\n"
+    + "roslyn-cs\tSA1001\tError\tCommas \\t spaced\tSpacing\t\t\n";
+  private static final String VB = "roslyn-vbnet\tBC42024\tHidden\tUnused local\t\t\tUnused local variable\n";
+
+  @Test
+  public void decodesOnlyTheRequestedRepository() throws IOException {
+    RuleCatalog catalog = RuleCatalog.read(catalog(CS, VB));
+
+    assertThat(catalog.repositories()).containsOnly("roslyn-cs", "roslyn-vbnet");
+    assertThat(catalog.size("roslyn-cs")).isEqualTo(2);
+    assertThat(catalog.size("roslyn-other")).isEqualTo(0);
+
+    List<RuleCatalog.Rule> rules = catalog.rules("roslyn-cs");
+    assertThat(rules).hasSize(2);
+    assertThat(rules.get(0).key()).isEqualTo("SA1000");
+    assertThat(rules.get(0).severity()).isEqualTo(Severity.MAJOR);
+    assertThat(rules.get(0).tag()).isEqualTo("stylecop.csharp.spacingrules");
+    assertThat(rules.get(0).htmlDescription())
+      .isEqualTo("<p>The spacing around a C# keyword is incorrect.\nSee &lt;docs&gt;.</p><p><a href=\"https://example.org/SA1000\">Help Url</a></p>");
+    assertThat(rules.get(1).name()).isEqualTo("Commas \t spaced");
+    assertThat(rules.get(1).severity()).isEqualTo(Severity.CRITICAL);
+    assertThat(rules.get(1).htmlDescription()).isEqualTo("<p>Commas \t spaced</p>");
+    assertThat(catalog.rules("roslyn-vbnet").get(0).severity()).isEqualTo(Severity.INFO);
+  }
+
+  @Test
+  public void definesRulesNextToTheTemplate() throws IOException {
+    RulesDefinition.Context context = new RulesDefinition.Context();
+    RulesDefinition.NewRepository repository = context.createRepository(RoslynPlugin.REPOSITORY_KEY_CS, RoslynPlugin.CS_LANGUAGE_KEY);
+    repository.createRule("SA1001").setName("Existing").setHtmlDescription("<p>existing</p>");
+
+    RuleCatalog.read(catalog(CS, VB)).define(repository);
+    repository.done();
+
+    RulesDefinition.Repository defined = context.repository(RoslynPlugin.REPOSITORY_KEY_CS);
+    assertThat(defined.rules()).hasSize(2);
+    assertThat(defined.rule("SA1000").tags()).containsOnly("stylecop.csharp.spacingrules");
+    assertThat(defined.rule("SA1001").name()).isEqualTo("Existing");
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsTruncatedCatalogs() throws IOException {
+    byte[] content = read(catalog(CS, VB));
+    RuleCatalog.read(new ByteArrayInputStream(Arrays.copyOf(content, content.length - 10)));
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsOtherFiles() throws IOException {
+    RuleCatalog.read(new ByteArrayInputStream("roslyn-cs\tSA1000\n".getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static ByteArrayInputStream catalog(String cs, String vb) {
+    byte[] csBytes = cs.getBytes(StandardCharsets.UTF_8);
+    byte[] vbBytes = vb.getBytes(StandardCharsets.UTF_8);
+    String header = RuleCatalog.HEADER + "\n"
+      + "@roslyn-cs\t0\t" + csBytes.length + "\t2\n"
+      + "@roslyn-vbnet\t" + csBytes.length + "\t" + vbBytes.length + "\t1\n"
+      + "#\n";
+    return new ByteArrayInputStream((header + cs + vb).getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static byte[] read(ByteArrayInputStream in) {
+    byte[] content = new byte[in.available()];
+    in.read(content, 0, content.length);
+    return content;
+  }
+}
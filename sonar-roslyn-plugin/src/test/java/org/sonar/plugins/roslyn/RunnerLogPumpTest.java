@@ -0,0 +1,106 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.utils.log.LogTester;
+import org.sonar.api.utils.log.LoggerLevel;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RunnerLogPumpTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Rule
+  public LogTester logTester = new LogTester();
+
+  @Test
+  public void collapsesRepeatedLines() throws Exception {
+    File raw = new File(temp.getRoot(), "runner.log");
+    try (RunnerLogPump pump = new RunnerLogPump(raw, "[shard 1/2]")) {
+      pump.out().consumeLine("restoring");
+      pump.out().consumeLine("restoring");
+      pump.out().consumeLine("restoring");
+      pump.err().consumeLine("failed");
+    }
+
+    List<String> info = logTester.logs(LoggerLevel.INFO);
+    assertThat(info).contains("[shard 1/2] restoring", "[shard 1/2] (previous line repeated 2 times)");
+    assertThat(info.get(info.size() - 1)).contains("printed 4 lines (1 on stderr): 2 repeated lines collapsed, 0 rate limited, 0 dropped");
+    assertThat(logTester.logs(LoggerLevel.ERROR)).containsExactly("[shard 1/2] failed");
+    assertThat(Files.readAllLines(raw.toPath(), StandardCharsets.UTF_8))
+      .containsExactly("[out] restoring", "[out] restoring", "[out] restoring", "[err] failed");
+  }
+
+  @Test
+  public void limitsLoggedLinesButKeepsTheRawStream() throws Exception {
+    File raw = new File(temp.getRoot(), "runner.log");
+    try (RunnerLogPump pump = new RunnerLogPump(raw, "", 1024, 5)) {
+      for (int i = 0; i < 100; i++) {
+        pump.out().consumeLine("line " + i);
+      }
+    }
+
+    assertThat(Files.readAllLines(raw.toPath(), StandardCharsets.UTF_8)).hasSize(100);
+    int logged = 0;
+    for (String line : logTester.logs(LoggerLevel.INFO)) {
+      if (line.startsWith("line ")) {
+        logged++;
+      }
+    }
+    assertThat(logged).isLessThan(20);
+    assertThat(logTester.logs(LoggerLevel.INFO).get(logTester.logs(LoggerLevel.INFO).size() - 1)).contains("printed 100 lines");
+  }
+
+  @Test
+  public void interruptedCloseKeepsTheRawLogAndTheInterrupt() throws Exception {
+    File raw = new File(temp.getRoot(), "runner.log");
+    try (RunnerLogPump pump = new RunnerLogPump(raw, "")) {
+      pump.out().consumeLine("analysing");
+      Thread.currentThread().interrupt();
+    }
+
+    assertThat(Thread.interrupted()).isTrue();
+    assertThat(Files.readAllLines(raw.toPath(), StandardCharsets.UTF_8)).containsExactly("[out] analysing");
+    assertThat(logTester.logs(LoggerLevel.INFO).get(logTester.logs(LoggerLevel.INFO).size() - 1)).contains("printed 1 lines");
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.utils.command.Command;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RunnerWatchdogTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private File cancelFile;
+  private final List<String> lines = new CopyOnWriteArrayList<>();
+
+  @Before
+  public void setUp() {
+    Assume.assumeFalse(OsUtils.isWindows());
+    cancelFile = new File(temp.getRoot(), "input.xml.cancel");
+  }
+
+  @Test
+  public void unboundedRunnerCompletes() throws IOException, InterruptedException {
+    try (RunnerWatchdog watchdog = new RunnerWatchdog(new RunnerWatchdog.Budget(0, 0, 0), cancelFile, "runner")) {
+      assertThat(watchdog.execute(shell("echo done"), lines::add, lines::add)).isEqualTo(0);
+      assertThat(watchdog.cancelled()).isFalse();
+    }
+    assertThat(lines).containsExactly("done");
+    assertThat(cancelFile).doesNotExist();
+  }
+
+  @Test
+  public void silentRunnerIsCancelledAndFlushes() throws IOException, InterruptedException {
+    try (RunnerWatchdog watchdog = new RunnerWatchdog(new RunnerWatchdog.Budget(0, 500, 30000), cancelFile, "runner")) {
+      int exitCode = watchdog.execute(shell(waitForCancel() + "echo flushed; exit 3"), lines::add, lines::add);
+
+      assertThat(exitCode).isEqualTo(3);
+      assertThat(watchdog.cancelled()).isTrue();
+    }
+    assertThat(lines).containsExactly("flushed");
+    assertThat(cancelFile).exists();
+  }
+
+  @Test
+  public void runnerExceedingTheBudgetIsCancelled() throws IOException, InterruptedException {
+    String busy = "while [ ! -f '" + cancelFile.getAbsolutePath() + "' ]; do echo working; sleep 0.1; done; exit 3";
+    try (RunnerWatchdog watchdog = new RunnerWatchdog(new RunnerWatchdog.Budget(500, 0, 30000), cancelFile, "runner")) {
+      assertThat(watchdog.execute(shell(busy), lines::add, lines::add)).isEqualTo(3);
+      assertThat(watchdog.cancelled()).isTrue();
+    }
+    assertThat(lines).contains("working");
+  }
+
+  @Test
+  public void runnerIgnoringCancellationIsKilled() throws IOException, InterruptedException {
+    long start = System.nanoTime();
+    try (RunnerWatchdog watchdog = new RunnerWatchdog(new RunnerWatchdog.Budget(0, 500, 500), cancelFile, "runner")) {
+      assertThat(watchdog.execute(shell("exec sleep 60"), lines::add, lines::add)).isNotEqualTo(0);
+      assertThat(watchdog.cancelled()).isTrue();
+    }
+    assertThat((System.nanoTime() - start) / 1000000).isLessThan(30000);
+  }
+
+  @Test
+  public void runnerIgnoringTerminationIsKilledForcibly() throws IOException, InterruptedException {
+    long start = System.nanoTime();
+    try (RunnerWatchdog watchdog = new RunnerWatchdog(new RunnerWatchdog.Budget(0, 500, 500, 500), cancelFile, "runner")) {
+      assertThat(watchdog.execute(shell("trap '' TERM; while true; do sleep 0.1; done"), lines::add, lines::add)).isNotEqualTo(0);
+      assertThat(watchdog.cancelled()).isTrue();
+    }
+    assertThat((System.nanoTime() - start) / 1000000).isLessThan(30000);
+  }
+
+  @Test
+  public void outputStillBeingReadIsNotAwaitedForever() throws IOException, InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    long start = System.nanoTime();
+    try (RunnerWatchdog watchdog = new RunnerWatchdog(new RunnerWatchdog.Budget(0, 0, 0), cancelFile, "runner")) {
+      assertThat(watchdog.execute(shell("echo started"), line -> {
+        lines.add(line);
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }, lines::add)).isEqualTo(0);
+    } finally {
+      release.countDown();
+    }
+    assertThat(lines).containsExactly("started");
+    assertThat((System.nanoTime() - start) / 1000000).isLessThan(15000);
+  }
+
+  private String waitForCancel() {
+    return "while [ ! -f '" + cancelFile.getAbsolutePath() + "' ]; do sleep 0.1; done; ";
+  }
+
+  private static Command shell(String script) {
+    return Command.create("sh").addArgument("-c").addArgument(script);
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class SarifLogParserTest {
+
+  private static final String V1_LOG = "{\n"
+    + "  \"$schema\": \"http://json.schemastore.org/sarif-1.0.0\",\n"
+    + "  \"version\": \"1.0.0\",\n"
+    + "  \"runs\": [{\n"
+    + "    \"tool\": {\"name\": \"Microsoft (R) Visual C# Compiler\", \"version\": \"2.10.0.0\"},\n"
+    + "    \"results\": [\n"
+    + "      {\"ruleId\": \"CS0168\", \"level\": \"warning\", \"message\": \"The variable 'e' is declared but never used\",\n"
+    + "       \"locations\": [{\"resultFile\": {\"uri\": \"file:///C:/src/My%20App/Program.cs\", \"region\": {\"startLine\": 12, \"startColumn\": 5}}}],\n"
+    + "       \"properties\": {\"warningLevel\": 3}},\n"
+    + "      {\"ruleId\": \"SA1600\", \"level\": \"warning\", \"message\": \"Elements should be documented\",\n"
+    + "       \"suppressionStates\": [\"suppressedInSource\"],\n"
+    + "       \"locations\": [{\"resultFile\": {\"uri\": \"file:///C:/src/Program.cs\", \"region\": {\"startLine\": 3}}}]},\n"
+    + "      {\"ruleId\": \"CS8021\", \"level\": \"warning\", \"message\": \"No value for RuntimeMetadataVersion found\"}\n"
+    + "    ],\n"
+    + "    \"rules\": {\"CS0168\": {\"id\": \"CS0168\", \"shortDescription\": \"Variable is declared but never used\"}}\n"
+    + "  }]\n"
+    + "}\n";
+
+  private static final String V2_LOG = "\uFEFF{\n"
+    + "  \"$schema\": \"http://json.schemastore.org/sarif-2.1.0\",\n"
+    + "  \"version\": \"2.1.0\",\n"
+    + "  \"runs\": [{\n"
+    + "    \"results\": [\n"
+    + "      {\"ruleId\": \"CA1822\", \"ruleIndex\": 0, \"level\": \"note\", \"message\": {\"text\": \"Member \\\"Run\\\" can be \\u0073tatic\"},\n"
+    + "       \"locations\": [{\"physicalLocation\": {\"artifactLocation\": {\"uri\": \"Lib/Worker.vb\"}, \"region\": {\"startLine\": 7, \"endLine\": 9}}}]},\n"
+    + "      {\"ruleId\": \"CA2000\", \"message\": {\"text\": \"Dispose objects\"}, \"suppressions\": [{\"kind\": \"inSource\"}],\n"
+    + "       \"locations\": [{\"physicalLocation\": {\"artifactLocation\": {\"uri\": \"file://server/share/Worker.cs\"}, \"region\": {\"startLine\": 4}}}]},\n"
+    + "      {\"ruleId\": \"CA1000\", \"message\": {\"text\": \"Unsuppressed\"}, \"suppressions\": [],\n"
+    + "       \"locations\": [{\"physicalLocation\": {\"artifactLocation\": {\"uri\": \"file://server/share/Worker.cs\"}, \"region\": {\"startLine\": 5}}}]}\n"
+    + "    ],\n"
+    + "    \"tool\": {\"driver\": {\"name\": \"csc\", \"rules\": [{\"id\": \"CA1822\", \"properties\": {\"tags\": [\"x\", null, true, -1.5e3]}}]}}\n"
+    + "  }]\n"
+    + "}\n";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void parsesSarifOneResults() throws IOException {
+    File baseDir = temp.newFolder();
+    List<RoslynIssue> issues = new ArrayList<>();
+    SarifLogParser parser = new SarifLogParser(baseDir, issues::add);
+    parser.parse(write("v1.sarif", V1_LOG));
+
+    assertThat(issues).hasSize(1);
+    assertThat(issues.get(0).path()).isEqualTo("C:/src/My App/Program.cs");
+    assertThat(issues.get(0).line()).isEqualTo(12);
+    assertThat(issues.get(0).ruleId()).isEqualTo("CS0168");
+    assertThat(issues.get(0).message()).isEqualTo("The variable 'e' is declared but never used");
+    assertThat(parser.suppressed()).isEqualTo(1);
+    assertThat(parser.withoutLocation()).isEqualTo(1);
+  }
+
+  @Test
+  public void parsesSarifTwoResults() throws IOException {
+    File baseDir = temp.newFolder();
+    List<RoslynIssue> issues = new ArrayList<>();
+    SarifLogParser parser = new SarifLogParser(baseDir, issues::add);
+    parser.parse(write("v2.sarif", V2_LOG));
+
+    assertThat(issues).hasSize(2);
+    assertThat(issues.get(0).path()).isEqualTo(new File(baseDir, "Lib/Worker.vb").getPath());
+    assertThat(issues.get(0).line()).isEqualTo(7);
+    assertThat(issues.get(0).message()).isEqualTo("Member \"Run\" can be static");
+    assertThat(issues.get(1).path()).isEqualTo("//server/share/Worker.cs");
+    assertThat(issues.get(1).ruleId()).isEqualTo("CA1000");
+    assertThat(parser.suppressed()).isEqualTo(1);
+  }
+
+  @Test
+  public void resultsWithoutRegionAreOnTheWholeFile() throws IOException {
+    List<RoslynIssue> issues = new ArrayList<>();
+    new SarifLogParser(temp.getRoot(), issues::add).parse(write("file.sarif", "{\"version\": \"2.1.0\", \"runs\": [{\"results\": ["
+      + "{\"ruleId\": \"CA1016\", \"message\": {\"text\": \"Mark assemblies\"}, "
+      + "\"locations\": [{\"physicalLocation\": {\"artifactLocation\": {\"uri\": \"file:///src/AssemblyInfo.cs\"}}}]}]}]}"));
+
+    assertThat(issues).hasSize(1);
+    assertThat(issues.get(0).path()).isEqualTo("/src/AssemblyInfo.cs");
+    assertThat(issues.get(0).line()).isEqualTo(0);
+  }
+
+  @Test(expected = IOException.class)
+  public void failsOnMalformedLog() throws IOException {
+    new SarifLogParser(temp.getRoot(), issue -> { }).parse(write("broken.sarif", "{\"runs\": [{\"results\": [{\"ruleId\": \"CS1\""));
+  }
+
+  @Test
+  public void parsesLogsInParallelAndKeepsGoingAfterBrokenLog() throws Exception {
+    File baseDir = temp.newFolder();
+    StringBuilder big = new StringBuilder("{\"version\": \"2.1.0\", \"runs\": [{\"results\": [");
+    int count = 3 * SarifLogParser.CHUNK_SIZE + 5;
+    for (int i = 0; i < count; i++) {
+      big.append(i == 0 ? "" : ",").append("{\"ruleId\": \"R").append(i % 7).append("\", \"message\": {\"text\": \"m\"}, ")
+        .append("\"locations\": [{\"physicalLocation\": {\"artifactLocation\": {\"uri\": \"file:///src/F").append(i)
+        .append(".cs\"}, \"region\": {\"startLine\": 1}}}]}");
+    }
+    big.append("]}]}");
+
+    List<File> logs = Arrays.asList(write("a.sarif", V1_LOG), write("b.sarif", "{\"runs\": ["), write("c.sarif", big.toString()),
+      write("d.sarif", V2_LOG));
+    final List<RoslynIssue> issues = new ArrayList<>();
+    final Thread caller = Thread.currentThread();
+    final List<Thread> handlerThreads = Collections.synchronizedList(new ArrayList<>());
+    SarifLogParser.parseAll(logs, baseDir, 4, issue -> {
+      handlerThreads.add(Thread.currentThread());
+      issues.add(issue);
+    });
+
+    assertThat(issues).hasSize(1 + count + 2);
+    for (Thread thread : handlerThreads) {
+      assertThat(thread).isSameAs(caller);
+    }
+  }
+
+  @Test
+  public void interruptionStopsTheWorkers() throws Exception {
+    StringBuilder big = new StringBuilder("{\"version\": \"2.1.0\", \"runs\": [{\"results\": [");
+    for (int i = 0; i < 20 * SarifLogParser.CHUNK_SIZE; i++) {
+      big.append(i == 0 ? "" : ",").append("{\"ruleId\": \"R1\", \"message\": {\"text\": \"m\"}, ")
+        .append("\"locations\": [{\"physicalLocation\": {\"artifactLocation\": {\"uri\": \"file:///src/F").append(i)
+        .append(".cs\"}, \"region\": {\"startLine\": 1}}}]}");
+    }
+    big.append("]}]}");
+    List<File> logs = Arrays.asList(write("a.sarif", big.toString()), write("b.sarif", big.toString()), write("c.sarif", big.toString()));
+
+    try {
+      SarifLogParser.parseAll(logs, temp.getRoot(), 2, issue -> Thread.currentThread().interrupt());
+      fail("interruption not propagated");
+    } catch (InterruptedException e) {
+      // expected
+    }
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (workersAlive() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    assertThat(workersAlive()).isFalse();
+  }
+
+  private static boolean workersAlive() {
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if ("roslyn-sarif".equals(thread.getName()) && thread.isAlive()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private File write(String name, String content) throws IOException {
+    File file = new File(temp.getRoot(), name);
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+}
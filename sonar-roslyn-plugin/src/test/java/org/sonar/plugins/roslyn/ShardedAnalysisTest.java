@@ -0,0 +1,183 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ShardedAnalysisTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void splitsProjectsRoundRobin() throws IOException {
+    ShardedAnalysis analysis = new ShardedAnalysis(temp.getRoot(), 3);
+    List<ShardedAnalysis.Shard> shards = analysis.split(new File("Solution.sln"), projects(7));
+
+    assertThat(shards).hasSize(3);
+    assertThat(shards.get(0).projects()).containsExactly(new File("P0.csproj"), new File("P3.csproj"), new File("P6.csproj"));
+    assertThat(shards.get(1).projects()).containsExactly(new File("P1.csproj"), new File("P4.csproj"));
+    assertThat(shards.get(2).prefix()).isEqualTo("[shard 3/3]");
+    assertThat(shards.get(0).syncsRules()).isTrue();
+    assertThat(shards.get(1).syncsRules()).isFalse();
+    assertThat(shards.get(1).input()).isNotEqualTo(shards.get(2).input());
+    assertThat(shards.get(1).output()).isNotEqualTo(shards.get(2).output());
+  }
+
+  @Test
+  public void neverCreatesEmptyShards() {
+    assertThat(new ShardedAnalysis(temp.getRoot(), 8).split(new File("Solution.sln"), projects(2))).hasSize(2);
+  }
+
+  @Test
+  public void failedShardDoesNotDiscardOtherResults() throws Exception {
+    ShardedAnalysis analysis = new ShardedAnalysis(temp.getRoot(), 3);
+    List<ShardedAnalysis.Shard> shards = analysis.split(new File("Solution.sln"), projects(3));
+
+    ShardedAnalysis.Result result = analysis.run(shards, shard -> {
+      write(shard.output(), "results " + shard.index());
+      if (shard.index() == 1) {
+        throw new IOException("runner crashed");
+      }
+      return shard.index() == 2 ? 1 : 0;
+    });
+
+    assertThat(result.outputs()).containsExactly(shards.get(0).output(), shards.get(1).output(), shards.get(2).output());
+    assertThat(result.failed()).isEqualTo(2);
+  }
+
+  @Test
+  public void otherShardsWaitForProfilesOfFirstShard() throws Exception {
+    ShardedAnalysis analysis = new ShardedAnalysis(temp.getRoot(), 4);
+    List<ShardedAnalysis.Shard> shards = analysis.split(new File("Solution.sln"), projects(4));
+    final AtomicBoolean ready = new AtomicBoolean();
+    final List<Integer> startedEarly = new ArrayList<>();
+
+    analysis.run(shards, shard -> {
+      if (shard.syncsRules()) {
+        Thread.sleep(3 * ShardedAnalysis.READY_POLL_MILLIS);
+        ready.set(true);
+        write(shard.readyFile(), "");
+        Thread.sleep(3 * ShardedAnalysis.READY_POLL_MILLIS);
+      } else if (!ready.get()) {
+        synchronized (startedEarly) {
+          startedEarly.add(shard.index());
+        }
+      }
+      return 0;
+    });
+
+    assertThat(startedEarly).isEmpty();
+  }
+
+  @Test
+  public void givesEachSolutionAShard() {
+    Map<File, List<File>> solutions = new LinkedHashMap<>();
+    solutions.put(new File("a/A.sln"), projects(2));
+    solutions.put(new File("b/B.sln"), projects(1));
+    List<ShardedAnalysis.Shard> shards = new ShardedAnalysis(temp.getRoot(), 1).perSolution(solutions);
+
+    assertThat(shards).hasSize(2);
+    assertThat(shards.get(1).solution()).isEqualTo(new File("b/B.sln"));
+    assertThat(shards.get(1).projects()).containsExactly(new File("P0.csproj"));
+    assertThat(shards.get(1).prefix()).isEqualTo("[B.sln]");
+    assertThat(shards.get(0).syncsRules()).isTrue();
+  }
+
+  @Test
+  public void runsAtMostTheConfiguredNumberOfShardsAtOnce() throws Exception {
+    ShardedAnalysis analysis = new ShardedAnalysis(temp.getRoot(), 2);
+    Map<File, List<File>> solutions = new LinkedHashMap<>();
+    for (int i = 0; i < 5; i++) {
+      solutions.put(new File("S" + i + ".sln"), projects(1));
+    }
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger peak = new AtomicInteger();
+
+    ShardedAnalysis.Result result = analysis.run(analysis.perSolution(solutions), shard -> {
+      if (shard.syncsRules()) {
+        write(shard.readyFile(), "");
+      }
+      peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+      Thread.sleep(50);
+      running.decrementAndGet();
+      return 0;
+    });
+
+    assertThat(result.failed()).isEqualTo(0);
+    assertThat(peak.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void readsProjectsOfSolution() throws IOException {
+    File sln = new File(temp.getRoot(), "App.sln");
+    write(sln, "Microsoft Visual Studio Solution File, Format Version 12.00\r\n"
+      + "Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Core\", \"src\\Core\\Core.csproj\", \"{11111111-1111-1111-1111-111111111111}\"\r\n"
+      + "EndProject\r\n"
+      + "Project(\"{2150E333-8FDC-42A3-9474-1A3956D46DE8}\") = \"Solution Items\", \"Solution Items\", \"{22222222-2222-2222-2222-222222222222}\"\r\n"
+      + "EndProject\r\n"
+      + "Project(\"{F184B08F-C81C-45F6-A57F-5ABD9991F28F}\") = \"Legacy\", \"..\\Legacy\\Legacy.vbproj\", \"{33333333-3333-3333-3333-333333333333}\"\r\n"
+      + "EndProject\r\n");
+
+    assertThat(SolutionFile.parse(sln).projects()).containsExactly(
+      new File(temp.getRoot(), "src/Core/Core.csproj").getCanonicalFile(),
+      new File(temp.getRoot().getParentFile(), "Legacy/Legacy.vbproj").getCanonicalFile());
+  }
+
+  private static List<File> projects(int count) {
+    List<File> projects = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      projects.add(new File("P" + i + ".csproj"));
+    }
+    return projects;
+  }
+
+  private static void write(File file, String content) throws IOException {
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SolutionDiscoveryTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void findsSolutionsInOneWalk() throws Exception {
+    File base = temp.getRoot();
+    File app = solution(base, "App.sln");
+    File tools = solution(base, "tools/build/Tools.sln");
+    solution(base, ".git/modules/Hidden.sln");
+    solution(base, "legacy/Old.sln");
+    solution(base, "samples/Sample.sln");
+    solution(base, "third-party/lib/Lib.sln");
+
+    List<File> solutions = SolutionDiscovery.discover(base, new String[] {"legacy/**", "**/Sample.sln", "third-party"});
+
+    assertThat(solutions).containsExactly(app.getAbsoluteFile(), tools.getAbsoluteFile());
+  }
+
+  @Test
+  public void listsSourcesWithoutBuildOutputs() throws Exception {
+    File base = temp.getRoot();
+    File program = solution(base, "App/Program.cs");
+    File module = solution(base, "Lib/Module.vb");
+    solution(base, "App/obj/Debug/AssemblyInfo.cs");
+    solution(base, "App/BIN/Generated.cs");
+    solution(base, ".vs/Temp.cs");
+    solution(base, "legacy/Old.cs");
+    solution(base, "App/readme.txt");
+
+    List<File> sources = SolutionDiscovery.sources(base, new String[] {"legacy/**"});
+
+    assertThat(sources).containsExactly(program.getAbsoluteFile(), module.getAbsoluteFile());
+  }
+
+  @Test
+  public void analysesSharedProjectsOnce() throws Exception {
+    File base = temp.getRoot();
+    SolutionFile all = SolutionFile.parse(solution(base, "All.sln", "Core\\Core.csproj", "App\\App.csproj"));
+    SolutionFile app = SolutionFile.parse(solution(base, "App.sln", "App\\App.csproj"));
+    SolutionFile tools = SolutionFile.parse(solution(base, "Tools.sln", "Core\\Core.csproj", "Tools\\Tools.vbproj"));
+
+    Map<File, List<File>> assigned = SolutionDiscovery.assignProjects(Arrays.asList(all, app, tools));
+
+    assertThat(new ArrayList<>(assigned.keySet())).containsExactly(all.file(), tools.file());
+    assertThat(assigned.get(all.file())).isEqualTo(all.projects());
+    assertThat(assigned.get(tools.file())).containsExactly(new File(base, "Tools/Tools.vbproj").getCanonicalFile());
+  }
+
+  private static File solution(File base, String path, String... projects) throws Exception {
+    File solution = new File(base, path);
+    solution.getParentFile().mkdirs();
+    StringBuilder content = new StringBuilder("Microsoft Visual Studio Solution File, Format Version 12.00\r\n");
+    for (String project : projects) {
+      content.append("Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"P\", \"").append(project)
+        .append("\", \"{11111111-1111-1111-1111-111111111111}\"\r\nEndProject\r\n");
+    }
+    Files.write(solution.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+    return solution;
+  }
+}
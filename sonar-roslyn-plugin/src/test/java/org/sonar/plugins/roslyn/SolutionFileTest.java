@@ -0,0 +1,99 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SolutionFileTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private static final String SOLUTION = "Microsoft Visual Studio Solution File, Format Version 12.00\r\n"
+    + "Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Café\", \"Café\\Café.csproj\", \"{11111111-1111-1111-1111-111111111111}\"\r\n"
+    + "EndProject\r\n"
+    + "Project(\"{2150E333-8FDC-42A3-9474-1A3956D46DE8}\") = \"Docs\", \"Docs\", \"{22222222-2222-2222-2222-222222222222}\"\r\n"
+    + "EndProject\r\n";
+
+  @Test
+  public void readsUtf8WithAndWithoutBom() throws Exception {
+    assertProjects(concat(new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF}, SOLUTION.getBytes(StandardCharsets.UTF_8)));
+    assertProjects(SOLUTION.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void readsUtf16() throws Exception {
+    assertProjects(concat(new byte[] {(byte) 0xFF, (byte) 0xFE}, SOLUTION.getBytes(StandardCharsets.UTF_16LE)));
+    assertProjects(concat(new byte[] {(byte) 0xFE, (byte) 0xFF}, SOLUTION.getBytes(StandardCharsets.UTF_16BE)));
+  }
+
+  @Test
+  public void readsAnsi() throws Exception {
+    assertProjects(SOLUTION.getBytes(Charset.forName("windows-1252")));
+  }
+
+  @Test
+  public void normalizesProjectPathsWithoutResolvingLinks() throws Exception {
+    File target = temp.newFolder("target");
+    File link = new File(temp.getRoot(), "link");
+    Files.createSymbolicLink(link.toPath(), target.toPath());
+    File sln = new File(link, "App.sln");
+    Files.write(sln.toPath(), ("Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"App\", \".\\src\\..\\App\\App.csproj\", \"{1}\"\r\n")
+      .getBytes(StandardCharsets.UTF_8));
+
+    assertThat(SolutionFile.parse(sln).projects()).containsExactly(new File(link, "App/App.csproj").getAbsoluteFile());
+  }
+
+  private void assertProjects(byte[] content) throws Exception {
+    File sln = temp.newFile();
+    Files.write(sln.toPath(), content);
+
+    assertThat(SolutionFile.parse(sln).projects()).containsExactly(new File(sln.getParentFile(), "Café/Café.csproj").getAbsoluteFile());
+  }
+
+  private static byte[] concat(byte[] bom, byte[] text) {
+    byte[] data = new byte[bom.length + text.length];
+    System.arraycopy(bom, 0, data, 0, bom.length);
+    System.arraycopy(text, 0, data, bom.length, text.length);
+    return data;
+  }
+}
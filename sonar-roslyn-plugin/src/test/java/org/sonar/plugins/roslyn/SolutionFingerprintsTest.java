@@ -0,0 +1,163 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SolutionFingerprintsTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private File sln;
+
+  @Before
+  public void setUp() throws Exception {
+    write("src/App/App.csproj", "<Project Sdk=\"Microsoft.NET.Sdk\">\n"
+      + "  <Import Project=\"$(MSBuildThisFileDirectory)..\\build\\Common.props\" />\n"
+      + "  <Import Project=\"$(SolutionDir)\\Other.props\" />\n"
+      + "  <ItemGroup><Reference Include=\"Vendor\"><HintPath>..\\..\\lib\\Vendor.dll</HintPath></Reference></ItemGroup>\n"
+      + "</Project>");
+    write("src/Core/Core.csproj", "<Project Sdk=\"Microsoft.NET.Sdk\" />");
+    write("src/build/Common.props", "<Project />");
+    write("lib/Vendor.dll", "v1");
+    write("src/Directory.Build.props", "<Project><Import Project=\"Shared.targets\" /></Project>");
+    write("src/Shared.targets", "<Project />");
+    write("src/App/.editorconfig", "[*.cs]\nindent_size = 2\n");
+    sln = write("src/App.sln", "Microsoft Visual Studio Solution File, Format Version 12.00\r\n" + project("App") + project("Core"));
+  }
+
+  @Test
+  public void solutionFileIsPartOfTheGlobalHash() throws Exception {
+    SolutionFingerprints before = compute();
+    write("src/App.sln", "Microsoft Visual Studio Solution File, Format Version 12.00\r\n# Visual Studio 15\r\n" + project("App") + project("Core"));
+
+    assertThat(compute().global()).isNotEqualTo(before.global());
+  }
+
+  @Test
+  public void buildFilesAboveTheProjectAreHashedWithItsImports() throws Exception {
+    assertChanges("src/Directory.Build.props", "<Project><Import Project=\"Shared.targets\" /><PropertyGroup /></Project>", "App", "Core");
+    assertChanges("src/Shared.targets", "<Project><PropertyGroup /></Project>", "App", "Core");
+  }
+
+  @Test
+  public void importsEditorConfigsAndHintPathsOfAProjectAreHashed() throws Exception {
+    assertChanges("src/build/Common.props", "<Project><PropertyGroup /></Project>", "App");
+    assertChanges("src/App/.editorconfig", "[*.cs]\nindent_size = 4\n", "App");
+    assertChanges("lib/Vendor.dll", "v2", "App");
+  }
+
+  @Test
+  public void conditionalAndSingleQuotedItemsWithAttributesInAnyOrderAreRead() throws Exception {
+    write("src/Core/Core.csproj", "<Project Sdk=\"Microsoft.NET.Sdk\">\n"
+      + "  <Import Condition=\"Exists('..\\build\\Core.props')\" Project='..\\build\\Core.props' />\n"
+      + "  <ItemGroup>\n"
+      + "    <ProjectReference Condition=\"'$(Configuration)' == 'Debug'\" Include='..\\App\\App.csproj' />\n"
+      + "    <Reference Include=\"Vendor\">\n      <HintPath>\n        ..\\..\\lib\\Vendor.dll\n      </HintPath>\n    </Reference>\n"
+      + "  </ItemGroup>\n"
+      + "</Project>");
+    write("src/build/Core.props", "<Project />");
+
+    assertThat(compute().references().get(SolutionFingerprints.key(new File(temp.getRoot(), "src/Core/Core.csproj").getAbsolutePath())))
+      .containsOnly(SolutionFingerprints.key(new File(temp.getRoot(), "src/App/App.csproj").getAbsolutePath()));
+    assertChanges("src/build/Core.props", "<Project><PropertyGroup /></Project>", "Core");
+    assertChanges("lib/Vendor.dll", "v2", "App", "Core");
+  }
+
+  @Test
+  public void malformedBuildFilesAreHashedWithoutTheirImports() throws Exception {
+    assertChanges("src/Directory.Build.props", "<Project><Import Project=\"Shared.targets\"></Project>", "App", "Core");
+    assertChanges("src/Shared.targets", "<Project><PropertyGroup /></Project>");
+  }
+
+  @Test
+  public void hashesDoNotDependOnTheCheckoutDirectory() throws Exception {
+    SolutionFingerprints first = compute();
+    File copy = temp.newFolder("copy");
+    for (String path : new String[] {"src/App/App.csproj", "src/Core/Core.csproj", "src/build/Common.props", "lib/Vendor.dll",
+      "src/Directory.Build.props", "src/Shared.targets", "src/App/.editorconfig", "src/App.sln"}) {
+      File target = new File(copy, path);
+      target.getParentFile().mkdirs();
+      Files.copy(new File(temp.getRoot(), path).toPath(), target.toPath());
+    }
+
+    SolutionFingerprints second = SolutionFingerprints.compute(SolutionFile.parse(new File(copy, "src/App.sln")), Collections.<File>emptyList(), "rules");
+
+    assertThat(second.global()).isEqualTo(first.global());
+    assertThat(second.projects().get(SolutionFingerprints.key(new File(copy, "src/App/App.csproj").getAbsolutePath())))
+      .isEqualTo(hash(first, "App"));
+  }
+
+  private void assertChanges(String path, String content, String... changed) throws Exception {
+    SolutionFingerprints before = compute();
+    write(path, content);
+    SolutionFingerprints after = compute();
+
+    for (String name : new String[] {"App", "Core"}) {
+      boolean expected = Arrays.asList(changed).contains(name);
+      assertThat(hash(after, name).equals(hash(before, name))).as(path + " changes " + name).isEqualTo(!expected);
+    }
+  }
+
+  private SolutionFingerprints compute() throws Exception {
+    return SolutionFingerprints.compute(SolutionFile.parse(sln), Collections.<File>emptyList(), "rules");
+  }
+
+  private String hash(SolutionFingerprints fingerprints, String name) {
+    return fingerprints.projects().get(SolutionFingerprints.key(new File(temp.getRoot(), "src/" + name + "/" + name + ".csproj").getAbsolutePath()));
+  }
+
+  private static String project(String name) {
+    return "Project(\"{9A19103F-16F7-4668-BE54-9A1E7A4F7556}\") = \"" + name + "\", \"" + name + "\\" + name
+      + ".csproj\", \"{11111111-1111-1111-1111-111111111111}\"\r\nEndProject\r\n";
+  }
+
+  private File write(String path, String content) throws Exception {
+    File file = new File(temp.getRoot(), path);
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Sonar Roslyn Plugin :: Core
+ * Copyright (C) 2016-2018 jmecsoftware.com
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar Roslyn Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ *
+ * Sonar Roslyn Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar Roslyn Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.roslyn;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class UnZipTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void extractsAllEntriesInParallel() throws IOException {
+    File zip = temp.newFile("runner.zip");
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+      out.putNextEntry(new ZipEntry("bin/"));
+      for (int i = 0; i < 50; i++) {
+        out.putNextEntry(new ZipEntry("bin/lib" + (i % 5) + "/Assembly" + i + ".dll"));
+        out.write(content(i));
+      }
+      out.putNextEntry(new ZipEntry("RoslynRunner.exe"));
+      out.write("runner".getBytes(StandardCharsets.UTF_8));
+    }
+
+    File output = new File(temp.getRoot(), "out");
+    new UnZip(4).unZipIt(zip.getAbsolutePath(), output.getAbsolutePath());
+
+    for (int i = 0; i < 50; i++) {
+      assertThat(Files.readAllBytes(new File(output, "bin/lib" + (i % 5) + "/Assembly" + i + ".dll").toPath())).isEqualTo(content(i));
+    }
+    File executable = new File(output, "RoslynRunner.exe");
+    assertThat(new String(Files.readAllBytes(executable.toPath()), StandardCharsets.UTF_8)).isEqualTo("runner");
+    if (!OsUtils.isWindows()) {
+      assertThat(executable.canExecute()).isTrue();
+    }
+  }
+
+  @Test
+  public void rejectsEntriesOutsideOfTheOutputFolder() throws IOException {
+    File zip = temp.newFile("evil.zip");
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+      out.putNextEntry(new ZipEntry("ok.txt"));
+      out.write(1);
+      out.putNextEntry(new ZipEntry("../evil.txt"));
+      out.write(2);
+    }
+
+    File output = new File(temp.getRoot(), "out");
+    try {
+      new UnZip(2).unZipIt(zip.getAbsolutePath(), output.getAbsolutePath());
+      fail("zip slip not detected");
+    } catch (IOException e) {
+      assertThat(e.getMessage()).contains("../evil.txt");
+    }
+    assertThat(new File(temp.getRoot(), "evil.txt")).doesNotExist();
+  }
+
+  private static byte[] content(int index) {
+    byte[] content = new byte[1000 + index * 997];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) (i * 31 + index);
+    }
+    return content;
+  }
+}